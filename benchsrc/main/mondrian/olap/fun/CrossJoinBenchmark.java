@@ -0,0 +1,102 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.olap.fun;
+
+import mondrian.calc.TupleList;
+import mondrian.calc.impl.ArrayTupleList;
+import mondrian.olap.Member;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro-benchmark for {@link CrossJoinFunDef#mutableCrossJoin}, the
+ * cartesian product behind CrossJoin and NonEmptyCrossJoin, over two
+ * {@link ArrayTupleList}s of arity 2.
+ *
+ * <p>The cross join only copies members, so the members are proxies that
+ * implement nothing but identity.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CrossJoinBenchmark {
+    @Param({"30", "300"})
+    public int size;
+
+    private TupleList list1;
+    private TupleList list2;
+
+    @Setup
+    public void setup() {
+        list1 = makeList("a", size);
+        list2 = makeList("b", size);
+    }
+
+    private static TupleList makeList(String prefix, int size) {
+        final ArrayTupleList list = new ArrayTupleList(2, size);
+        for (int i = 0; i < size; i++) {
+            list.addTuple(
+                makeMember(prefix + "x" + i),
+                makeMember(prefix + "y" + i));
+        }
+        return list;
+    }
+
+    private static Member makeMember(final String name) {
+        return (Member) Proxy.newProxyInstance(
+            CrossJoinBenchmark.class.getClassLoader(),
+            new Class[] {Member.class},
+            new InvocationHandler() {
+                public Object invoke(
+                    Object proxy, Method method, Object[] args)
+                {
+                    final String methodName = method.getName();
+                    if (methodName.equals("hashCode")) {
+                        return System.identityHashCode(proxy);
+                    } else if (methodName.equals("equals")) {
+                        return proxy == args[0];
+                    } else if (methodName.equals("toString")) {
+                        return name;
+                    }
+                    throw new UnsupportedOperationException(methodName);
+                }
+            });
+    }
+
+    @Benchmark
+    public TupleList crossJoin() {
+        return CrossJoinFunDef.mutableCrossJoin(list1, list2);
+    }
+
+    /**
+     * Cross join followed by a full scan of the result, as when the result
+     * is evaluated or filtered.
+     */
+    @Benchmark
+    public int crossJoinAndScan() {
+        final TupleList list =
+            CrossJoinFunDef.mutableCrossJoin(list1, list2);
+        int n = 0;
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(3, i) != null) {
+                ++n;
+            }
+        }
+        return n;
+    }
+}
+
+// End CrossJoinBenchmark.java
@@ -0,0 +1,66 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.olap.fun;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro-benchmark for {@link FunUtil#stablePartialSort}, which implements
+ * TopCount and BottomCount.
+ *
+ * <p>The list has many duplicate values, so the sort has to be stable. The
+ * {@link #algorithm} parameter selects one of the algorithms, as in
+ * {@link FunUtil#stablePartialSort(List, Comparator, int, int)}; 0 is the
+ * default, which chooses an algorithm based on the ratio of the limit to the
+ * list size.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PartialSortBenchmark {
+    private static final int LIST_SIZE = 100000;
+
+    private static final Comparator<Integer> COMPARATOR =
+        new Comparator<Integer>() {
+            public int compare(Integer o1, Integer o2) {
+                return o1.compareTo(o2);
+            }
+        };
+
+    @Param({"10", "1000", "50000"})
+    public int limit;
+
+    @Param({"0", "1", "2", "3", "4"})
+    public int algorithm;
+
+    private List<Integer> list;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(0x5047);
+        list = new ArrayList<Integer>(LIST_SIZE);
+        for (int i = 0; i < LIST_SIZE; i++) {
+            list.add(random.nextInt(LIST_SIZE / 10));
+        }
+    }
+
+    @Benchmark
+    public List<Integer> stablePartialSort() {
+        return FunUtil.stablePartialSort(list, COMPARATOR, limit, algorithm);
+    }
+}
+
+// End PartialSortBenchmark.java
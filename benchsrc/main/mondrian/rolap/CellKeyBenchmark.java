@@ -0,0 +1,77 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.rolap;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro-benchmark for {@link CellKey.Generator}: creating cell keys, and
+ * using them to look up a hash map, as the cell cache does.
+ *
+ * <p>The {@link #axisCount} parameter covers the specialized key classes
+ * (up to 4 axes) and the general, array-based one.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CellKeyBenchmark {
+    private static final int KEY_COUNT = 10000;
+
+    @Param({"2", "4", "6"})
+    public int axisCount;
+
+    private int[][] coordinates;
+    private CellKey[] probes;
+    private Map<CellKey, Object> map;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(0xCE11);
+        coordinates = new int[KEY_COUNT][axisCount];
+        for (int[] coordinate : coordinates) {
+            for (int j = 0; j < axisCount; j++) {
+                coordinate[j] = random.nextInt(50);
+            }
+        }
+        map = new HashMap<CellKey, Object>();
+        probes = new CellKey[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            final CellKey key = CellKey.Generator.newCellKey(coordinates[i]);
+            map.put(key, i);
+            // A distinct but equal key, so that lookups call equals.
+            probes[i] = CellKey.Generator.newCellKey(coordinates[i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(KEY_COUNT)
+    public void newCellKey(Blackhole blackhole) {
+        for (int[] coordinate : coordinates) {
+            blackhole.consume(CellKey.Generator.newCellKey(coordinate));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(KEY_COUNT)
+    public void hashLookup(Blackhole blackhole) {
+        for (CellKey probe : probes) {
+            blackhole.consume(map.get(probe));
+        }
+    }
+}
+
+// End CellKeyBenchmark.java
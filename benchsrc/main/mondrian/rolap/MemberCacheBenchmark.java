@@ -0,0 +1,106 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.rolap;
+
+import mondrian.rolap.cache.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Multi-threaded micro-benchmark for the member caches of
+ * {@link MemberCacheHelper}, which many queries read at the same time for
+ * hot hierarchies such as Time and Product.
+ *
+ * <p>Eight threads look up the children of random parents, as member readers
+ * do; one lookup in 64 misses and puts a new list into the cache. The
+ * implementations are:</p>
+ *
+ * <ul>
+ * <li>"synchronized": {@link SoftSmartCache} inside a
+ *     <code>synchronized</code> block, as member readers used to lock
+ *     <code>cacheHelper</code>;</li>
+ * <li>"soft": {@link SoftSmartCache}, which takes a read-write lock for
+ *     every call;</li>
+ * <li>"concurrent": {@link ConcurrentSoftSmartCache}, whose lookups take no
+ *     lock.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class MemberCacheBenchmark {
+    private static final int KEY_COUNT = 10000;
+
+    @Param({"synchronized", "soft", "concurrent"})
+    public String cacheType;
+
+    private SmartCache<Object, List<Object>> cache;
+    private boolean lock;
+    private Object[] keys;
+    private final Object mutex = new Object();
+
+    @Setup
+    public void setup() {
+        if (cacheType.equals("concurrent")) {
+            cache = new ConcurrentSoftSmartCache<Object, List<Object>>();
+        } else {
+            cache = new SoftSmartCache<Object, List<Object>>();
+        }
+        lock = cacheType.equals("synchronized");
+        keys = new Object[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keys[i] = "[Product].[p" + i + "]";
+            cache.put(keys[i], children(i));
+        }
+    }
+
+    private static List<Object> children(int i) {
+        return Arrays.<Object>asList("c" + i + ".0", "c" + i + ".1");
+    }
+
+    /**
+     * Per-thread state: the random number generator that chooses keys.
+     */
+    @State(Scope.Thread)
+    public static class ThreadState {
+        final Random random = new Random();
+    }
+
+    @Benchmark
+    public Object lookup(ThreadState state) {
+        final int i = state.random.nextInt(KEY_COUNT);
+        final boolean miss = (i & 63) == 0;
+        if (lock) {
+            synchronized (mutex) {
+                return lookup(i, miss);
+            }
+        } else {
+            return lookup(i, miss);
+        }
+    }
+
+    private Object lookup(int i, boolean miss) {
+        if (miss) {
+            final List<Object> children = children(i);
+            cache.put(keys[i], children);
+            return children;
+        }
+        return cache.get(keys[i]);
+    }
+}
+
+// End MemberCacheBenchmark.java
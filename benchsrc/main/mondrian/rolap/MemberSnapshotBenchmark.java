@@ -0,0 +1,182 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.rolap;
+
+import mondrian.olap.MondrianProperties;
+import mondrian.spi.Dialect;
+import mondrian.spi.DialectManager;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro-benchmark for reading and writing a {@link RolapMemberSnapshot}.
+ *
+ * <p>The level resembles [Customers].[Name]: each member has three ancestor
+ * keys, a name and four properties.</p>
+ *
+ * <p>The {@link #loadFromSql} baseline reads the same columns of the real
+ * [Customers].[Name] level from the FoodMart database, as
+ * {@link SqlMemberSource} would, into the same rows. It needs the JDBC
+ * driver on the classpath (set driver.classpath) and the
+ * mondrian.foodmart.* properties. Its time does not depend on
+ * memberCount; FoodMart has 10,281 customers, so compare it with
+ * {@link #read} at memberCount=10000.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemberSnapshotBenchmark {
+    private static final String LEVEL_NAME = "[Customers].[Name]";
+    private static final String[] PROPERTY_NAMES = {
+        "$name", "Gender", "Marital Status", "Education", "Yearly Income"
+    };
+
+    @Param({"10000", "1000000"})
+    public int memberCount;
+
+    private File directory;
+    private RolapMemberSnapshot snapshot;
+    private List<RolapMemberSnapshot.Row> rows;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = File.createTempFile("snapshot", "");
+        directory.delete();
+        snapshot = new RolapMemberSnapshot(directory, "members-bench-");
+        rows = new ArrayList<RolapMemberSnapshot.Row>(memberCount);
+        final Random random = new Random(0);
+        for (int i = 0; i < memberCount; i++) {
+            rows.add(
+                new RolapMemberSnapshot.Row(
+                    new Object[] {"USA", "CA" + (i % 50), "City" + (i % 5000),
+                        i},
+                    null,
+                    null,
+                    new Object[] {
+                        "Customer " + i,
+                        random.nextBoolean() ? "M" : "F",
+                        random.nextBoolean() ? "M" : "S",
+                        "Education " + random.nextInt(5),
+                        "$" + random.nextInt(10) + "0K - $"
+                        + random.nextInt(10) + "0K"
+                    }));
+        }
+        snapshot.write(4, LEVEL_NAME, PROPERTY_NAMES, rows);
+    }
+
+    @TearDown
+    public void tearDown() {
+        snapshot.markStale();
+        directory.delete();
+    }
+
+    @Benchmark
+    public Object read() {
+        return snapshot.read(4, LEVEL_NAME, PROPERTY_NAMES);
+    }
+
+    @Benchmark
+    public void write() {
+        snapshot.write(4, LEVEL_NAME, PROPERTY_NAMES, rows);
+    }
+
+    @Benchmark
+    public Object loadFromSql(FoodMart foodMart) throws SQLException {
+        final List<RolapMemberSnapshot.Row> list =
+            new ArrayList<RolapMemberSnapshot.Row>();
+        final Statement statement = foodMart.connection.createStatement();
+        try {
+            final ResultSet resultSet = statement.executeQuery(foodMart.sql);
+            while (resultSet.next()) {
+                list.add(
+                    new RolapMemberSnapshot.Row(
+                        new Object[] {
+                            resultSet.getObject(1),
+                            resultSet.getObject(2),
+                            resultSet.getObject(3),
+                            resultSet.getObject(4)},
+                        null,
+                        null,
+                        new Object[] {
+                            resultSet.getObject(5),
+                            resultSet.getObject(6),
+                            resultSet.getObject(7),
+                            resultSet.getObject(8),
+                            resultSet.getObject(9)}));
+            }
+            resultSet.close();
+        } finally {
+            statement.close();
+        }
+        return list;
+    }
+
+    /**
+     * Connection to the FoodMart database, and the query that reads the
+     * [Customers].[Name] level.
+     */
+    @State(Scope.Benchmark)
+    public static class FoodMart {
+        private Connection connection;
+        private String sql;
+
+        @Setup
+        public void setup() throws SQLException {
+            final MondrianProperties properties =
+                MondrianProperties.instance();
+            RolapUtil.loadDrivers(properties.JdbcDrivers.get());
+            connection =
+                DriverManager.getConnection(
+                    properties.FoodmartJdbcURL.get(),
+                    properties.TestJdbcUser.get(),
+                    properties.TestJdbcPassword.get());
+            final Dialect dialect =
+                DialectManager.createDialect(null, connection);
+            final StringBuilder buf = new StringBuilder("select ");
+            final String[] columns = {
+                "country", "state_province", "city", "customer_id",
+                "fullname", "gender", "marital_status", "education",
+                "yearly_income"
+            };
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) {
+                    buf.append(", ");
+                }
+                buf.append(dialect.quoteIdentifier(columns[i]));
+            }
+            buf.append(" from ")
+                .append(dialect.quoteIdentifier("customer"))
+                .append(" order by ");
+            for (int i = 0; i < 4; i++) {
+                if (i > 0) {
+                    buf.append(", ");
+                }
+                buf.append(dialect.quoteIdentifier(columns[i]));
+            }
+            sql = buf.toString();
+        }
+
+        @TearDown
+        public void tearDown() throws SQLException {
+            connection.close();
+        }
+    }
+}
+
+// End MemberSnapshotBenchmark.java
@@ -0,0 +1,178 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.rolap;
+
+import mondrian.olap.Member;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro-benchmark for {@link ScenarioImpl.WritebackIndex}, which finds the
+ * writeback cells related to a cell being evaluated in a scenario, compared
+ * with a scan of all writeback cells.
+ *
+ * <p>The cube has 10 hierarchies, each with an 'all' member, 10 members at
+ * the first level and 10 children of each at the second level. Each
+ * writeback cell sets a random leaf member in 3 of the first 5 hierarchies,
+ * as a planner entering values would. Each operation evaluates the
+ * relation of 1,000 random cells of a grid (first-level members of 2
+ * hierarchies) to every writeback cell.</p>
+ *
+ * <p>The members are proxies that implement only what
+ * {@link ScenarioImpl#getRelation} uses.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScenarioBenchmark {
+    private static final int HIERARCHY_COUNT = 10;
+    private static final int FAN_OUT = 10;
+    private static final int GRID_CELL_COUNT = 1000;
+
+    @Param({"10", "1000", "5000"})
+    public int writebackCount;
+
+    private List<Member[]> writebackCells;
+    private ScenarioImpl.WritebackIndex<Member[]> index;
+    private Member[][] gridCells;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(0xCAFE);
+        final Member[] roots = new Member[HIERARCHY_COUNT];
+        final Member[][] levels1 = new Member[HIERARCHY_COUNT][];
+        final Member[][] levels2 = new Member[HIERARCHY_COUNT][];
+        for (int h = 0; h < HIERARCHY_COUNT; h++) {
+            roots[h] = makeMember("[H" + h + "].[All]", null);
+            levels1[h] = new Member[FAN_OUT];
+            levels2[h] = new Member[FAN_OUT * FAN_OUT];
+            for (int i = 0; i < FAN_OUT; i++) {
+                levels1[h][i] =
+                    makeMember(
+                        "[H" + h + "].[All].[m" + i + "]", roots[h]);
+                for (int j = 0; j < FAN_OUT; j++) {
+                    levels2[h][i * FAN_OUT + j] =
+                        makeMember(
+                            "[H" + h + "].[All].[m" + i + "].[m" + j + "]",
+                            levels1[h][i]);
+                }
+            }
+        }
+
+        writebackCells = new ArrayList<Member[]>();
+        for (int i = 0; i < writebackCount; i++) {
+            final Member[] members = roots.clone();
+            for (int k = 0; k < 3; k++) {
+                final int h = random.nextInt(5);
+                members[h] = levels2[h][random.nextInt(levels2[h].length)];
+            }
+            writebackCells.add(members);
+        }
+        index =
+            new ScenarioImpl.WritebackIndex<Member[]>(
+                writebackCells, writebackCells);
+
+        gridCells = new Member[GRID_CELL_COUNT][];
+        for (int i = 0; i < GRID_CELL_COUNT; i++) {
+            final Member[] members = roots.clone();
+            members[0] = levels1[0][random.nextInt(FAN_OUT)];
+            members[1] = levels1[1][random.nextInt(FAN_OUT)];
+            gridCells[i] = members;
+        }
+    }
+
+    private static Member makeMember(
+        final String uniqueName,
+        final Member parent)
+    {
+        return (Member) Proxy.newProxyInstance(
+            ScenarioBenchmark.class.getClassLoader(),
+            new Class[] {Member.class},
+            new InvocationHandler() {
+                public Object invoke(
+                    Object proxy, Method method, Object[] args)
+                {
+                    final String methodName = method.getName();
+                    if (methodName.equals("getUniqueName")
+                        || methodName.equals("toString"))
+                    {
+                        return uniqueName;
+                    } else if (methodName.equals("getParentMember")) {
+                        return parent;
+                    } else if (methodName.equals("hashCode")) {
+                        return uniqueName.hashCode();
+                    } else if (methodName.equals("equals")) {
+                        return args[0] instanceof Member
+                            && uniqueName.equals(
+                                ((Member) args[0]).getUniqueName());
+                    } else if (methodName.equals("isChildOrEqualTo")) {
+                        final String name = ((Member) args[0]).getUniqueName();
+                        for (Member m = (Member) proxy;
+                            m != null;
+                            m = m.getParentMember())
+                        {
+                            if (m.getUniqueName().equals(name)) {
+                                return true;
+                            }
+                        }
+                        return false;
+                    }
+                    throw new UnsupportedOperationException(methodName);
+                }
+            });
+    }
+
+    /**
+     * Evaluates each grid cell's relation to every writeback cell, as
+     * scenarios did before the index.
+     */
+    @Benchmark
+    public int scan() {
+        int n = 0;
+        for (Member[] gridCell : gridCells) {
+            for (Member[] writebackCell : writebackCells) {
+                if (ScenarioImpl.getRelation(writebackCell, gridCell)
+                    != ScenarioImpl.CellRelation.NONE)
+                {
+                    ++n;
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Evaluates each grid cell's relation to the writeback cells that the
+     * index returns.
+     */
+    @Benchmark
+    public int index() {
+        int n = 0;
+        for (Member[] gridCell : gridCells) {
+            for (Member[] writebackCell : index.candidates(gridCell)) {
+                if (ScenarioImpl.getRelation(writebackCell, gridCell)
+                    != ScenarioImpl.CellRelation.NONE)
+                {
+                    ++n;
+                }
+            }
+        }
+        return n;
+    }
+}
+
+// End ScenarioBenchmark.java
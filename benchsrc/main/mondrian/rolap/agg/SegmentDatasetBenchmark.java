@@ -0,0 +1,153 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.rolap.agg;
+
+import mondrian.rolap.CellKey;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro-benchmark for the lookups done when a cell is read from a loaded
+ * segment: {@link SegmentAxis#getOffset(Comparable)} to map each column
+ * value to an ordinal, then {@link DenseDoubleSegmentDataset} or
+ * {@link SparseSegmentDataset} to find the value at those ordinals.
+ *
+ * <p>The segment has three axes of {@link #axisLength} integer keys each.
+ * The dense dataset has a value for every cell; the sparse dataset for one
+ * cell in a hundred.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SegmentDatasetBenchmark {
+    private static final int AXIS_COUNT = 3;
+    private static final int PROBE_COUNT = 10000;
+
+    @Param({"10", "50"})
+    public int axisLength;
+
+    private SegmentAxis[] axes;
+    private DenseDoubleSegmentDataset denseDataset;
+    private SparseSegmentDataset sparseDataset;
+
+    /** Column values to look up, {@link #AXIS_COUNT} per probe. */
+    private Comparable[][] probeValues;
+
+    /** Cell keys to look up. */
+    private CellKey[] probeKeys;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(0x5E6);
+        final Comparable[] keys = new Comparable[axisLength];
+        for (int i = 0; i < axisLength; i++) {
+            keys[i] = i * 7;
+        }
+        axes = new SegmentAxis[AXIS_COUNT];
+        int cellCount = 1;
+        for (int i = 0; i < AXIS_COUNT; i++) {
+            axes[i] =
+                new SegmentAxis(new LiteralStarPredicate(null, true), keys);
+            cellCount *= axisLength;
+        }
+
+        final double[] values = new double[cellCount];
+        for (int i = 0; i < cellCount; i++) {
+            values[i] = random.nextDouble() * 1000d;
+        }
+        denseDataset =
+            new DenseDoubleSegmentDataset(axes, values, new BitSet());
+
+        final Map<CellKey, Object> sparseValues =
+            new HashMap<CellKey, Object>();
+        for (int i = 0; i < cellCount / 100; i++) {
+            sparseValues.put(randomKey(random), random.nextDouble());
+        }
+        sparseDataset = new SparseSegmentDataset(sparseValues);
+
+        probeValues = new Comparable[PROBE_COUNT][AXIS_COUNT];
+        probeKeys = new CellKey[PROBE_COUNT];
+        for (int i = 0; i < PROBE_COUNT; i++) {
+            final CellKey key = randomKey(random);
+            probeKeys[i] = key;
+            for (int j = 0; j < AXIS_COUNT; j++) {
+                probeValues[i][j] = keys[key.getAxis(j)];
+            }
+        }
+    }
+
+    private CellKey randomKey(Random random) {
+        final int[] ordinals = new int[AXIS_COUNT];
+        for (int j = 0; j < AXIS_COUNT; j++) {
+            ordinals[j] = random.nextInt(axisLength);
+        }
+        return CellKey.Generator.newCellKey(ordinals);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROBE_COUNT * AXIS_COUNT)
+    public void axisOffset(Blackhole blackhole) {
+        for (Comparable[] values : probeValues) {
+            for (int j = 0; j < AXIS_COUNT; j++) {
+                blackhole.consume(axes[j].getOffset(values[j]));
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROBE_COUNT)
+    public void denseGetDouble(Blackhole blackhole) {
+        for (CellKey key : probeKeys) {
+            blackhole.consume(denseDataset.getDouble(key));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROBE_COUNT)
+    public void denseGetObject(Blackhole blackhole) {
+        for (CellKey key : probeKeys) {
+            blackhole.consume(denseDataset.getObject(key));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROBE_COUNT)
+    public void sparseGetObject(Blackhole blackhole) {
+        for (CellKey key : probeKeys) {
+            blackhole.consume(sparseDataset.getObject(key));
+        }
+    }
+
+    /**
+     * Reads a cell as {@link SegmentWithData#getCellValue} does: maps each
+     * column value to an ordinal, builds a key, then reads the dense
+     * dataset.
+     */
+    @Benchmark
+    @OperationsPerInvocation(PROBE_COUNT)
+    public void denseLookupByValue(Blackhole blackhole) {
+        final CellKey key = CellKey.Generator.newCellKey(AXIS_COUNT);
+        for (Comparable[] values : probeValues) {
+            for (int j = 0; j < AXIS_COUNT; j++) {
+                key.setAxis(j, axes[j].getOffset(values[j]));
+            }
+            blackhole.consume(denseDataset.getDouble(key));
+        }
+    }
+}
+
+// End SegmentDatasetBenchmark.java
@@ -0,0 +1,103 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.rolap.agg;
+
+import mondrian.rolap.BitKey;
+import mondrian.rolap.RolapAggregator;
+import mondrian.spi.*;
+import mondrian.util.ByteString;
+import mondrian.util.Pair;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro-benchmark for {@link SegmentBuilder#rollup}, which builds a segment
+ * by summing the cells of a cached segment that has more columns.
+ *
+ * <p>The source segment has three columns of {@link #valuesPerColumn}
+ * string values each, and a dense body of doubles. It is rolled up to its
+ * first two columns, or to its first column.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SegmentRollupBenchmark {
+    private static final String[] COLUMNS = {"col0", "col1", "col2"};
+
+    @Param({"10", "40"})
+    public int valuesPerColumn;
+
+    private Map<SegmentHeader, SegmentBody> map;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(0x2011);
+        final List<SegmentColumn> constrainedColumns =
+            new ArrayList<SegmentColumn>();
+        final List<Pair<SortedSet<Comparable>, Boolean>> axes =
+            new ArrayList<Pair<SortedSet<Comparable>, Boolean>>();
+        int cellCount = 1;
+        for (int i = 0; i < COLUMNS.length; i++) {
+            final SortedSet<Comparable> values = new TreeSet<Comparable>();
+            for (int j = 0; j < valuesPerColumn; j++) {
+                values.add("c" + i + "v" + j);
+            }
+            constrainedColumns.add(
+                new SegmentColumn(COLUMNS[i], valuesPerColumn, values));
+            axes.add(Pair.of(values, Boolean.FALSE));
+            cellCount *= valuesPerColumn;
+        }
+        final double[] cells = new double[cellCount];
+        for (int i = 0; i < cellCount; i++) {
+            cells[i] = random.nextInt(1000);
+        }
+        final SegmentHeader header =
+            new SegmentHeader(
+                "schema",
+                new ByteString(new byte[0]),
+                "cube",
+                "measure",
+                constrainedColumns,
+                Collections.<String>emptyList(),
+                "fact",
+                BitKey.Factory.makeBitKey(COLUMNS.length),
+                Collections.<SegmentColumn>emptyList());
+        map = new HashMap<SegmentHeader, SegmentBody>();
+        map.put(header, new DenseDoubleSegmentBody(new BitSet(), cells, axes));
+    }
+
+    @Benchmark
+    public Pair<SegmentHeader, SegmentBody> rollupTwoColumns() {
+        return SegmentBuilder.rollup(
+            map,
+            new HashSet<String>(Arrays.asList(COLUMNS[0], COLUMNS[1])),
+            null,
+            RolapAggregator.Sum,
+            Dialect.Datatype.Numeric);
+    }
+
+    @Benchmark
+    public Pair<SegmentHeader, SegmentBody> rollupOneColumn() {
+        return SegmentBuilder.rollup(
+            map,
+            Collections.singleton(COLUMNS[0]),
+            null,
+            RolapAggregator.Sum,
+            Dialect.Datatype.Numeric);
+    }
+}
+
+// End SegmentRollupBenchmark.java
@@ -0,0 +1,71 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.util;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro-benchmark for {@link Format#format(Object)}, which formats the value
+ * of every cell in a result.
+ *
+ * <p>Formats are looked up via {@link Format#get}, as the cell formatter
+ * does, so the cost of parsing the format string is excluded.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormatBenchmark {
+    private static final int VALUE_COUNT = 1000;
+
+    @Param({
+        "Standard",
+        "#,##0.00",
+        "Currency",
+        "Percent",
+        "#,##0.00;(#,##0.00);\"-\"",
+        "yyyy-mm-dd"})
+    public String formatString;
+
+    private Format format;
+    private Object[] values;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(0xF0);
+        format = Format.get(formatString, Locale.US);
+        values = new Object[VALUE_COUNT];
+        final boolean date = formatString.startsWith("yyyy");
+        for (int i = 0; i < VALUE_COUNT; i++) {
+            if (date) {
+                values[i] =
+                    new Date(1000000000000L + random.nextInt() * 1000L);
+            } else {
+                values[i] = (random.nextDouble() - 0.25d) * 1000000d;
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUE_COUNT)
+    public void format(Blackhole blackhole) {
+        for (Object value : values) {
+            blackhole.consume(format.format(value));
+        }
+    }
+}
+
+// End FormatBenchmark.java
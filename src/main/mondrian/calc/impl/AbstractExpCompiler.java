@@ -30,8 +30,7 @@ import java.util.*;
 public class AbstractExpCompiler implements ExpCompiler {
     private final Evaluator evaluator;
     private final Validator validator;
-    private final Map<Parameter, ParameterSlotImpl> parameterSlots =
-        new HashMap<Parameter, ParameterSlotImpl>();
+    private final Map<Parameter, ParameterSlot> parameterSlots;
     private List<ResultStyle> resultStyles;
 
     /**
@@ -61,6 +60,13 @@ public class AbstractExpCompiler implements ExpCompiler {
         this.validator = validator;
         this.resultStyles = (resultStyles == null)
             ? ResultStyle.ANY_LIST : resultStyles;
+        // Share slots with other compilers of the same query, so that calcs
+        // compiled later see the same parameter values as the query's axes.
+        final Query query = validator == null ? null : validator.getQuery();
+        this.parameterSlots =
+            query == null
+                ? new HashMap<Parameter, ParameterSlot>()
+                : query.getParameterSlots();
     }
 
     public Evaluator getEvaluator() {
@@ -433,6 +439,12 @@ public class AbstractExpCompiler implements ExpCompiler {
     }
 
     public ParameterSlot registerParameter(Parameter parameter) {
+        synchronized (parameterSlots) {
+            return registerParameterInternal(parameter);
+        }
+    }
+
+    private ParameterSlot registerParameterInternal(Parameter parameter) {
         ParameterSlot slot = parameterSlots.get(parameter);
         if (slot != null) {
             return slot;
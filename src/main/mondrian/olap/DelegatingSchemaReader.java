@@ -6,7 +6,7 @@
 //
 // Copyright (C) 2003-2005 Julian Hyde
 // Copyright (C) 2004-2005 TONBELLER AG
-// Copyright (C) 2005-2012 Pentaho
+// Copyright (C) 2005-2014 Pentaho
 // All Rights Reserved.
 */
 
@@ -196,6 +196,12 @@ public abstract class DelegatingSchemaReader implements SchemaReader {
         return schemaReader.getLevelMembers(level, includeCalculated);
     }
 
+    public List<Member> getLevelMembersByName(
+        Level level, List<String> names)
+    {
+        return schemaReader.getLevelMembersByName(level, names);
+    }
+
     public List<Level> getHierarchyLevels(Hierarchy hierarchy) {
         return schemaReader.getHierarchyLevels(hierarchy);
     }
@@ -10,6 +10,7 @@
 package mondrian.olap;
 
 import mondrian.rolap.RolapConnection;
+import mondrian.rolap.RolapResultCache;
 import mondrian.rolap.RolapResultShepherd;
 import mondrian.rolap.agg.AggregationManager;
 import mondrian.server.*;
@@ -237,6 +238,13 @@ public abstract class MondrianServer {
 
     public abstract AggregationManager getAggregationManager();
 
+    /**
+     * Returns the cache of query results of this server.
+     *
+     * @return Result cache
+     */
+    public abstract RolapResultCache getResultCache();
+
     /**
      * Description of the version of the server.
      */
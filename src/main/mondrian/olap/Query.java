@@ -136,7 +136,22 @@ public class Query extends QueryPart {
     private ResultStyle resultStyle =
         Util.Retrowoven ? ResultStyle.LIST : ResultStyle.ITERABLE;
 
-    private Map<String, Object> evalCache = new HashMap<String, Object>();
+    private Map<String, Object> evalCache =
+        Collections.synchronizedMap(new HashMap<String, Object>());
+
+    /**
+     * Slots that hold the values of this query's parameters; see
+     * {@link #getParameterSlots()}.
+     */
+    private final Map<Parameter, ParameterSlot> parameterSlots =
+        new HashMap<Parameter, ParameterSlot>();
+
+    /**
+     * Expressions that are compiled on demand while this query is evaluated;
+     * see {@link #getCompiledExpressions()}.
+     */
+    private final Map<Object, Calc> compiledExps =
+        Collections.synchronizedMap(new HashMap<Object, Calc>());
 
     /**
      * List of aliased expressions defined in this query, and where they are
@@ -504,6 +519,7 @@ public class Query extends QueryPart {
      * @param compiler Compiler
      */
     private void compile(ExpCompiler compiler) {
+        compiledExps.clear();
         if (formulas != null) {
             for (Formula formula : formulas) {
                 formula.compile();
@@ -937,6 +953,38 @@ public class Query extends QueryPart {
         return parameters.toArray(new Parameter[parameters.size()]);
     }
 
+    /**
+     * Returns the slots that hold the values of this query's parameters.
+     *
+     * <p>Every compiler created for this query registers parameters here, so
+     * an expression that is compiled while the query is executing reads the
+     * same slot as the axes that were compiled when it was prepared, and sees
+     * the value most recently assigned by {@link Parameter#setValue}. Callers
+     * must synchronize on the map.
+     *
+     * @return Map from parameters to their slots
+     */
+    public Map<Parameter, ParameterSlot> getParameterSlots() {
+        return parameterSlots;
+    }
+
+    /**
+     * Returns the cache of expressions that are compiled on demand while this
+     * query is evaluated, such as the formulas of calculated members, named
+     * sets and format strings.
+     *
+     * <p>The cache belongs to the query, not to an execution, so a query that
+     * is executed many times (say an olap4j prepared statement whose
+     * parameters change between executions) compiles each expression once.
+     * Calcs read parameter values through slots, so remain valid when those
+     * values change. The cache is cleared when the query is resolved again.
+     *
+     * @return Map from expression keys to compiled expressions
+     */
+    public Map<Object, Calc> getCompiledExpressions() {
+        return compiledExps;
+    }
+
     public Cube getCube() {
         return cube;
     }
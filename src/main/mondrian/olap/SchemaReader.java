@@ -5,7 +5,7 @@
 // You must accept the terms of that agreement to use this software.
 //
 // Copyright (C) 2003-2005 Julian Hyde
-// Copyright (C) 2005-2012 Pentaho
+// Copyright (C) 2005-2014 Pentaho
 // All Rights Reserved.
 */
 
@@ -390,6 +390,22 @@ public interface SchemaReader {
         Level level,
         boolean includeCalculated);
 
+    /**
+     * Returns the members of a level, including calculated members, whose
+     * names are in a given list.
+     *
+     * <p>The result is the same as filtering the result of
+     * {@link #getLevelMembers(Level, boolean)}, but the implementation may
+     * avoid reading the other members of the level.</p>
+     *
+     * @param level Level
+     * @param names Names of members
+     * @return Members of this level whose names are in the list, in order
+     */
+    List<Member> getLevelMembersByName(
+        Level level,
+        List<String> names);
+
     /**
      * Returns the members of a level, optionally filtering out members which
      * are empty.
@@ -4,7 +4,7 @@
 * http://www.eclipse.org/legal/epl-v10.html.
 * You must accept the terms of that agreement to use this software.
 *
-* Copyright (c) 2002-2013 Pentaho Corporation..  All rights reserved.
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
 */
 
 package mondrian.olap.fun;
@@ -37,7 +37,10 @@ class CountFunDef extends AbstractAggregateFunDef {
         super(dummyFunDef);
     }
 
-    public Calc compileCall(ResolvedFunCall call, ExpCompiler compiler) {
+    public Calc compileCall(
+        final ResolvedFunCall call,
+        ExpCompiler compiler)
+    {
         final Calc calc =
             compiler.compileAs(
                 call.getArg(0), null, ResultStyle.ITERABLE_ANY);
@@ -50,6 +53,15 @@ class CountFunDef extends AbstractAggregateFunDef {
             new Calc[] {calc})
         {
             public int evaluateInteger(Evaluator evaluator) {
+                // Use a native evaluator, if more efficient.
+                final NativeEvaluator nativeEvaluator =
+                    evaluator.getSchemaReader().getNativeSetEvaluator(
+                        call.getFunDef(), call.getArgs(), evaluator, this);
+                if (nativeEvaluator != null) {
+                    return (Integer)
+                        nativeEvaluator.execute(ResultStyle.VALUE);
+                }
+
                 final int savepoint = evaluator.savepoint();
                 try {
                     evaluator.setNonEmpty(false);
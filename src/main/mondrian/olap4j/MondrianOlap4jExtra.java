@@ -4,7 +4,7 @@
 * http://www.eclipse.org/legal/epl-v10.html.
 * You must accept the terms of that agreement to use this software.
 *
-* Copyright (c) 2002-2013 Pentaho Corporation..  All rights reserved.
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
 */
 
 package mondrian.olap4j;
@@ -228,6 +228,52 @@ class MondrianOlap4jExtra implements XmlaHandler.XmlaExtra {
         }
     }
 
+    public List<Member> getLevelMembersByName(
+        Level level,
+        List<String> names)
+    {
+        final MondrianOlap4jLevel olap4jLevel = (MondrianOlap4jLevel) level;
+        final MondrianOlap4jConnection olap4jConnection =
+            olap4jLevel.olap4jSchema.olap4jCatalog.olap4jDatabaseMetaData
+                .olap4jConnection;
+        final mondrian.olap.SchemaReader schemaReader =
+            olap4jConnection.getMondrianConnection().getSchemaReader()
+                .withLocus();
+        final List<Member> list = new ArrayList<Member>();
+        for (mondrian.olap.Member member
+            : schemaReader.getLevelMembersByName(olap4jLevel.level, names))
+        {
+            list.add(olap4jConnection.toOlap4j(member));
+        }
+        return list;
+    }
+
+    public long getMetadataVersion(OlapConnection connection)
+        throws SQLException
+    {
+        // Read the version first. If the schema is removed from the pool
+        // after we check it, the version will have changed.
+        final long version = RolapSchema.getPoolVersion();
+        final RolapSchema schema =
+            connection.unwrap(RolapConnection.class).getSchema();
+        if (!RolapSchema.isPooled(schema)) {
+            // For example, UseSchemaPool=false. The schema is loaded again
+            // for each connection, and the pool version does not change.
+            return -1;
+        }
+        return version;
+    }
+
+    public String getSchemaChecksum(OlapConnection connection)
+        throws SQLException
+    {
+        final RolapSchema schema =
+            connection.unwrap(RolapConnection.class).getSchema();
+        return schema.getChecksum() == null
+            ? null
+            : schema.getChecksum().toString();
+    }
+
     public boolean shouldReturnCellProperty(
         CellSet cellSet,
         org.olap4j.metadata.Property cellProperty,
@@ -10,6 +10,8 @@
 package mondrian.olap4j;
 
 import mondrian.olap.*;
+import mondrian.rolap.RolapConnection;
+import mondrian.rolap.RolapSchema;
 import mondrian.util.Pair;
 
 import org.olap4j.*;
@@ -36,6 +38,12 @@ import java.util.Calendar;
  * <p>This class has sub-classes which implement JDBC 3.0 and JDBC 4.0 APIs;
  * it is instantiated using {@link Factory#newPreparedStatement}.</p>
  *
+ * <p>The query is parsed, validated and compiled once, when the statement is
+ * prepared; executions differ only in the values of parameters, which
+ * compiled expressions read from slots. If the role of the connection
+ * changes, the query is prepared again, because its members were resolved
+ * and its expressions compiled using the previous role.</p>
+ *
  * @author jhyde
  * @since Jun 12, 2007
  */
@@ -43,9 +51,15 @@ abstract class MondrianOlap4jPreparedStatement
     extends MondrianOlap4jStatement
     implements PreparedOlapStatement, OlapParameterMetaData
 {
-    private final String mdx; // for debug
+    private final String mdx;
     MondrianOlap4jCellSetMetaData cellSetMetaData;
 
+    /**
+     * Role and schema of the connection when the query was prepared.
+     */
+    private Role role;
+    private RolapSchema schema;
+
     /**
      * Creates a MondrianOlap4jPreparedStatement.
      *
@@ -61,14 +75,54 @@ abstract class MondrianOlap4jPreparedStatement
     {
         super(olap4jConnection);
         this.mdx = mdx;
+        prepare();
+    }
+
+    /**
+     * Parses, validates and compiles the query, and remembers the role and
+     * schema it was compiled for.
+     *
+     * @throws OlapException if database error occurs
+     */
+    private void prepare() throws OlapException {
+        final RolapConnection connection = getMondrianConnection();
+        this.role = connection.getRole();
+        this.schema = connection.getSchema();
         final Pair<Query, MondrianOlap4jCellSetMetaData> pair = parseQuery(mdx);
         this.query = pair.left;
         this.cellSetMetaData = pair.right;
     }
 
+    /**
+     * Prepares the query again if the role or schema of the connection has
+     * changed since it was prepared. The values of parameters that have been
+     * set are carried over.
+     *
+     * @throws OlapException if database error occurs
+     */
+    private void revalidate() throws OlapException {
+        final RolapConnection connection = getMondrianConnection();
+        if (connection.getRole() == role && connection.getSchema() == schema) {
+            return;
+        }
+        final Query previousQuery = query;
+        prepare();
+        for (Parameter previous : previousQuery.getParameters()) {
+            if (!previous.isSet()) {
+                continue;
+            }
+            for (Parameter parameter : query.getParameters()) {
+                if (parameter.getName().equals(previous.getName())) {
+                    parameter.setValue(previous.getValue());
+                }
+            }
+        }
+    }
+
     // implement PreparedOlapStatement
 
     public CellSet executeQuery() throws OlapException {
+        revalidate();
         return executeOlapQueryInternal(query, cellSetMetaData);
     }
 
@@ -4,7 +4,7 @@
 * http://www.eclipse.org/legal/epl-v10.html.
 * You must accept the terms of that agreement to use this software.
 *
-* Copyright (c) 2002-2013 Pentaho Corporation..  All rights reserved.
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
 */
 
 package mondrian.rolap;
@@ -181,6 +181,25 @@ public class CacheControlImpl implements CacheControl {
                     return null;
                 }
             });
+        flushResults(connection.getSchema());
+    }
+
+    /**
+     * Discards cached query results. If schema is null, discards the results
+     * of all schemas.
+     *
+     * @param schema Schema, or null
+     */
+    private void flushResults(RolapSchema schema) {
+        final MondrianServer server =
+            connection == null
+                ? MondrianServer.forId(null)
+                : MondrianServer.forConnection(connection);
+        if (schema == null) {
+            server.getResultCache().flushAll();
+        } else {
+            server.getResultCache().flush(schema);
+        }
     }
 
     private void flushInternal(CellRegion region) {
@@ -265,6 +284,7 @@ public class CacheControlImpl implements CacheControl {
         {
             connection.getSchema().finalCleanUp();
         }
+        flushResults(null);
     }
 
     // todo: document
@@ -279,6 +299,7 @@ public class CacheControlImpl implements CacheControl {
             connectionKey,
             jdbcUser,
             dataSourceStr);
+        flushResults(null);
     }
 
     // todo: document
@@ -289,6 +310,7 @@ public class CacheControlImpl implements CacheControl {
         RolapSchemaPool.instance().remove(
             catalogUrl,
             dataSource);
+        flushResults(null);
     }
 
     /**
@@ -299,6 +321,7 @@ public class CacheControlImpl implements CacheControl {
     public void flushSchema(Schema schema) {
         if (RolapSchema.class.isInstance(schema)) {
             RolapSchemaPool.instance().remove((RolapSchema)schema);
+            flushResults((RolapSchema) schema);
         } else {
             throw new UnsupportedOperationException(
                 schema.getClass().getName() + " cannot be flushed");
@@ -624,18 +647,27 @@ public class CacheControlImpl implements CacheControl {
         // REVIEW How is flush(s) different to executing createDeleteCommand(s)?
         synchronized (MEMBER_CACHE_LOCK) {
             final List<CellRegion> cellRegionList = new ArrayList<CellRegion>();
+            final Set<RolapHierarchy> hierarchies =
+                new HashSet<RolapHierarchy>();
             ((MemberSetPlus) memberSet).accept(
                 new MemberSetVisitorImpl() {
                     public void visit(RolapMember member) {
                         flushMember(member, cellRegionList);
+                        hierarchies.add(member.getHierarchy());
                     }
                 }
            );
             // STUB: flush the set: another visitor
 
+            // the saved members of these hierarchies are stale
+            for (RolapHierarchy hierarchy : hierarchies) {
+                hierarchy.getRolapSchema().flushMemberSnapshot(hierarchy);
+            }
+
             // finally, flush cells now invalid
             flushRegionList(cellRegionList);
         }
+        flushResults(connection.getSchema());
     }
 
     public void printCacheState(PrintWriter pw, MemberSet set)
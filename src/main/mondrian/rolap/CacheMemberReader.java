@@ -5,7 +5,7 @@
 // You must accept the terms of that agreement to use this software.
 //
 // Copyright (C) 2001-2005 Julian Hyde
-// Copyright (C) 2005-2012 Pentaho and others
+// Copyright (C) 2005-2014 Pentaho and others
 // All Rights Reserved.
 */
 
@@ -97,6 +97,16 @@ class CacheMemberReader implements MemberReader, MemberCache {
         return mapKeyToMember.put(key, value);
     }
 
+    // implement MemberCache
+    public RolapMember putMemberIfAbsent(Object key, RolapMember value) {
+        final RolapMember previous = mapKeyToMember.get(key);
+        if (previous != null) {
+            return previous;
+        }
+        mapKeyToMember.put(key, value);
+        return value;
+    }
+
     // don't need to implement this MemberCache method because we're never
     // used in a context where it is needed
     public void putChildren(
@@ -25,7 +25,7 @@ import org.apache.log4j.Logger;
 import org.apache.log4j.MDC;
 
 import java.util.*;
-import java.util.concurrent.Future;
+import java.util.concurrent.*;
 
 /**
  * A <code>FastBatchingCellReader</code> doesn't really Read cells: when asked
@@ -178,6 +178,25 @@ public class FastBatchingCellReader implements CellReader {
         }
     }
 
+    /**
+     * Takes the pending cell requests and the statistics of another reader,
+     * so that the requests are loaded by the next call to
+     * {@link #loadAggregations()}.
+     *
+     * <p>Used when part of a query has been evaluated in another thread,
+     * with its own reader. The other reader must no longer be in use.</p>
+     *
+     * @param reader Reader whose requests to take
+     */
+    void merge(FastBatchingCellReader reader) {
+        hitCount += reader.hitCount;
+        missCount += reader.missCount;
+        pendingCount += reader.pendingCount;
+        dirty |= reader.dirty;
+        cellRequests.addAll(reader.cellRequests);
+        reader.cellRequests.clear();
+    }
+
     /**
      * Returns whether this reader has told a lie. This is the case if there
      * are pending batches to load or if {@link #setDirty(boolean)} has been
@@ -187,6 +206,54 @@ public class FastBatchingCellReader implements CellReader {
         return dirty || !cellRequests.isEmpty();
     }
 
+    /**
+     * Sends cell requests to the cache manager, which decides how each is to
+     * be satisfied.
+     *
+     * <p>Each shard of the cache manager owns the indexes of some stars. The
+     * requests of a virtual cube may span several stars, so they are split
+     * into one command per shard, and the responses are merged.</p>
+     */
+    private BatchLoader.LoadBatchResponse loadBatch(
+        List<CellRequest> cellRequests)
+    {
+        final SortedMap<Integer, List<CellRequest>> requestsByShard =
+            new TreeMap<Integer, List<CellRequest>>();
+        if (cacheMgr.getShardCount() == 1 || cellRequests.isEmpty()) {
+            requestsByShard.put(0, cellRequests);
+        } else {
+            for (CellRequest cellRequest : cellRequests) {
+                final int shard =
+                    cacheMgr.getShard(cellRequest.getMeasure().getStar());
+                List<CellRequest> list = requestsByShard.get(shard);
+                if (list == null) {
+                    list = new ArrayList<CellRequest>();
+                    requestsByShard.put(shard, list);
+                }
+                list.add(cellRequest);
+            }
+        }
+        BatchLoader.LoadBatchResponse response = null;
+        for (Map.Entry<Integer, List<CellRequest>> entry
+            : requestsByShard.entrySet())
+        {
+            final BatchLoader.LoadBatchResponse shardResponse =
+                cacheMgr.execute(
+                    entry.getKey(),
+                    new BatchLoader.LoadBatchCommand(
+                        Locus.peek(),
+                        cacheMgr,
+                        getDialect(),
+                        cube,
+                        Collections.unmodifiableList(entry.getValue())));
+            response =
+                response == null
+                    ? shardResponse
+                    : response.merge(shardResponse);
+        }
+        return response;
+    }
+
     /**
      * Resolves any pending cell reads using the cache. After calling this
      * method, all cells requested in a given batch are loaded into this
@@ -241,13 +308,7 @@ public class FastBatchingCellReader implements CellReader {
 
         for (int iteration = 0;; ++iteration) {
             final BatchLoader.LoadBatchResponse response =
-                cacheMgr.execute(
-                    new BatchLoader.LoadBatchCommand(
-                        Locus.peek(),
-                        cacheMgr,
-                        getDialect(),
-                        cube,
-                        Collections.unmodifiableList(cellRequests1)));
+                loadBatch(cellRequests1);
 
             int failureCount = 0;
 
@@ -258,9 +319,26 @@ public class FastBatchingCellReader implements CellReader {
 
             // Load each suggested segment from cache, and place it in
             // thread-local cache. Note that this step can't be done by the
-            // cacheMgr -- it's our cache.
-            for (SegmentHeader header : response.cacheSegments) {
-                final SegmentBody body = cacheMgr.compositeCache.get(header);
+            // cacheMgr -- it's our cache. Each fetch may be a round trip to
+            // an external cache, so they are issued concurrently.
+            final List<Callable<SegmentBody>> fetches =
+                new ArrayList<Callable<SegmentBody>>();
+            for (final SegmentHeader header : response.cacheSegments) {
+                fetches.add(
+                    new Callable<SegmentBody>() {
+                        public SegmentBody call() {
+                            return cacheMgr.compositeCache.get(header);
+                        }
+                    });
+            }
+            final List<SegmentBody> fetchedBodies =
+                runAll(
+                    cacheMgr.cacheExecutor,
+                    fetches,
+                    "Waiting for segment to load from cache");
+            for (int i = 0; i < response.cacheSegments.size(); i++) {
+                final SegmentHeader header = response.cacheSegments.get(i);
+                final SegmentBody body = fetchedBodies.get(i);
                 if (body == null) {
                     // REVIEW: This is an async call. It will return before the
                     // index is informed that this header is there,
@@ -283,14 +361,14 @@ public class FastBatchingCellReader implements CellReader {
             // TODO this could be improved.
             // See http://jira.pentaho.com/browse/MONDRIAN-1195
 
-            // Rollups that succeeded. Will tell cache mgr to put the headers
-            // into the index and the header/bodies in cache.
-            final Map<SegmentHeader, SegmentBody> succeededRollups =
-                new HashMap<SegmentHeader, SegmentBody>();
-
+            // Rollups are independent of each other; each reads only the
+            // segments fetched above. Compute them in parallel, then
+            // register the results in order.
+            final List<Callable<Pair<SegmentHeader, SegmentBody>>> rollups =
+                new ArrayList<Callable<Pair<SegmentHeader, SegmentBody>>>();
             for (final BatchLoader.RollupInfo rollup : response.rollups) {
                 // Gather the required segments.
-                Map<SegmentHeader, SegmentBody> map =
+                final Map<SegmentHeader, SegmentBody> map =
                     findResidentRollupCandidate(headerBodies, rollup);
                 if (map == null) {
                     // None of the candidate segment-sets for this rollup was
@@ -303,14 +381,32 @@ public class FastBatchingCellReader implements CellReader {
                     keepColumns.add(
                         column.getExpression().getGenericExpression());
                 }
-                Pair<SegmentHeader, SegmentBody> rollupHeaderBody =
-                    SegmentBuilder.rollup(
-                        map,
-                        keepColumns,
-                        rollup.constrainedColumnsBitKey,
-                        rollup.measure.getAggregator().getRollup(),
-                        rollup.measure.getDatatype());
-
+                rollups.add(
+                    new Callable<Pair<SegmentHeader, SegmentBody>>() {
+                        public Pair<SegmentHeader, SegmentBody> call() {
+                            return SegmentBuilder.rollup(
+                                map,
+                                keepColumns,
+                                rollup.constrainedColumnsBitKey,
+                                rollup.measure.getAggregator().getRollup(),
+                                rollup.measure.getDatatype());
+                        }
+                    });
+            }
+            final List<Pair<SegmentHeader, SegmentBody>> rollupHeaderBodies =
+                runAll(
+                    cacheMgr.rollupExecutor,
+                    rollups,
+                    "Waiting for segment rollup");
+
+            // Rollups that succeeded, per star. Will tell cache mgr to put
+            // the headers into the index and the header/bodies in cache.
+            final Map<RolapStar, List<SegmentWithData>> succeededRollups =
+                new LinkedHashMap<RolapStar, List<SegmentWithData>>();
+
+            for (Pair<SegmentHeader, SegmentBody> rollupHeaderBody
+                : rollupHeaderBodies)
+            {
                 final SegmentHeader header = rollupHeaderBody.left;
                 final SegmentBody body = rollupHeaderBody.right;
 
@@ -320,7 +416,6 @@ public class FastBatchingCellReader implements CellReader {
                 }
 
                 headerBodies.put(header, body);
-                succeededRollups.put(header, body);
 
                 final SegmentWithData segmentWithData =
                     response.convert(header, body);
@@ -328,34 +423,27 @@ public class FastBatchingCellReader implements CellReader {
                 // Register this segment with the local star.
                 segmentWithData.getStar().register(segmentWithData);
 
-                // Make sure that the cache manager knows about this new
-                // segment. First thing we do is to add it to the index.
-                // Then we insert the segment body into the SlotFuture.
-                // This has to be done on the SegmentCacheManager's
-                // Actor thread to ensure thread safety.
-                if (!MondrianProperties.instance().DisableCaching.get()) {
-                    final Locus locus = Locus.peek();
-                    cacheMgr.execute(
-                        new SegmentCacheManager.Command<Void>() {
-                            public Void call() throws Exception {
-                                SegmentCacheIndex index =
-                                    cacheMgr.getIndexRegistry()
-                                    .getIndex(segmentWithData.getStar());
-                                index.add(
-                                    segmentWithData.getHeader(),
-                                    response.converterMap.get(
-                                        SegmentCacheIndexImpl
-                                            .makeConverterKey(
-                                                segmentWithData.getHeader())),
-                                    true);
-                                index.loadSucceeded(
-                                    segmentWithData.getHeader(), body);
-                                return null;
-                            }
-                            public Locus getLocus() {
-                                return locus;
-                            }
-                        });
+                List<SegmentWithData> list =
+                    succeededRollups.get(segmentWithData.getStar());
+                if (list == null) {
+                    list = new ArrayList<SegmentWithData>();
+                    succeededRollups.put(segmentWithData.getStar(), list);
+                }
+                list.add(segmentWithData);
+            }
+
+            // Make sure that the cache manager knows about the new
+            // segments. First thing we do is to add them to the index.
+            // Then we insert the segment bodies into the SlotFutures.
+            // This has to be done on the SegmentCacheManager's
+            // Actor thread to ensure thread safety. One command per star.
+            if (!MondrianProperties.instance().DisableCaching.get()) {
+                for (Map.Entry<RolapStar, List<SegmentWithData>> entry
+                    : succeededRollups.entrySet())
+                {
+                    registerRollups(
+                        response, entry.getKey(), entry.getValue(),
+                        headerBodies);
                 }
             }
 
@@ -445,6 +533,79 @@ public class FastBatchingCellReader implements CellReader {
         return true;
     }
 
+    /**
+     * Adds segments that were created by rolling up to the index of a star,
+     * in a single command on the shard that owns the star.
+     */
+    private void registerRollups(
+        final BatchLoader.LoadBatchResponse response,
+        final RolapStar star,
+        final List<SegmentWithData> segments,
+        final Map<SegmentHeader, SegmentBody> headerBodies)
+    {
+        final Locus locus = Locus.peek();
+        cacheMgr.execute(
+            star,
+            new SegmentCacheManager.Command<Void>() {
+                public Void call() throws Exception {
+                    SegmentCacheIndex index =
+                        cacheMgr.getIndexRegistry().getIndex(star);
+                    for (SegmentWithData segmentWithData : segments) {
+                        final SegmentHeader header =
+                            segmentWithData.getHeader();
+                        index.add(
+                            header,
+                            response.converterMap.get(
+                                SegmentCacheIndexImpl.makeConverterKey(
+                                    header)),
+                            true);
+                        index.loadSucceeded(header, headerBodies.get(header));
+                    }
+                    return null;
+                }
+                public Locus getLocus() {
+                    return locus;
+                }
+            });
+    }
+
+    /**
+     * Runs tasks concurrently on an executor, and returns their results in
+     * the same order. A single task, and any task that the executor rejects
+     * because it is saturated, runs on the calling thread.
+     */
+    private static <T> List<T> runAll(
+        ExecutorService executor,
+        List<Callable<T>> tasks,
+        String message)
+    {
+        final List<Future<T>> futures = new ArrayList<Future<T>>();
+        for (Callable<T> task : tasks) {
+            Future<T> future = null;
+            if (tasks.size() > 1) {
+                try {
+                    future = executor.submit(task);
+                } catch (RejectedExecutionException e) {
+                    // fall through, and run the task ourselves
+                } catch (MondrianException e) {
+                    // The cache executor's rejection handler throws
+                    // SegmentCacheLimitReached. Run the task ourselves.
+                }
+            }
+            if (future == null) {
+                final FutureTask<T> futureTask = new FutureTask<T>(task);
+                futureTask.run();
+                future = futureTask;
+            }
+            futures.add(future);
+        }
+        final List<T> results = new ArrayList<T>(futures.size());
+        for (Future<T> future : futures) {
+            results.add(Util.safeGet(future, message));
+        }
+        return results;
+    }
+
     /**
      * Iterates through cell requests and makes sure .getCardinality has
      * been called on all constrained columns.  This is a  workaround
@@ -1157,6 +1318,41 @@ class BatchLoader {
             this.futures = futures;
         }
 
+        /**
+         * Combines this response with the response to a command for another
+         * shard.
+         */
+        LoadBatchResponse merge(LoadBatchResponse other) {
+            final List<CellRequest> cellRequests =
+                new ArrayList<CellRequest>(this.cellRequests);
+            cellRequests.addAll(other.cellRequests);
+            final List<SegmentHeader> cacheSegments =
+                new ArrayList<SegmentHeader>(this.cacheSegments);
+            cacheSegments.addAll(other.cacheSegments);
+            final List<RollupInfo> rollups =
+                new ArrayList<RollupInfo>(this.rollups);
+            rollups.addAll(other.rollups);
+            final Map<List, SegmentBuilder.SegmentConverter> converterMap =
+                new HashMap<List, SegmentBuilder.SegmentConverter>(
+                    this.converterMap);
+            converterMap.putAll(other.converterMap);
+            final List<Future<Map<Segment, SegmentWithData>>>
+                sqlSegmentMapFutures =
+                new ArrayList<Future<Map<Segment, SegmentWithData>>>(
+                    this.sqlSegmentMapFutures);
+            sqlSegmentMapFutures.addAll(other.sqlSegmentMapFutures);
+            final Map<SegmentHeader, Future<SegmentBody>> futures =
+                new HashMap<SegmentHeader, Future<SegmentBody>>(this.futures);
+            futures.putAll(other.futures);
+            return new LoadBatchResponse(
+                cellRequests,
+                cacheSegments,
+                rollups,
+                converterMap,
+                sqlSegmentMapFutures,
+                futures);
+        }
+
         public SegmentWithData convert(
             SegmentHeader header,
             SegmentBody body)
@@ -5,7 +5,7 @@
 // You must accept the terms of that agreement to use this software.
 //
 // Copyright (C) 2001-2005 Julian Hyde
-// Copyright (C) 2005-2009 Pentaho and others
+// Copyright (C) 2005-2014 Pentaho and others
 // All Rights Reserved.
 //
 // jhyde, 22 December, 2001
@@ -64,6 +64,22 @@ interface MemberCache {
      */
     Object putMember(Object key, RolapMember member);
 
+    /**
+     * Adds a {@link RolapMember} with a given key, unless the cache already
+     * contains a member with that key, and returns the member that the cache
+     * contains afterwards.
+     *
+     * <p>Several threads may create the same member at the same time. They
+     * must all use the returned member, so that there is only one instance
+     * of each member.
+     *
+     * @param key cache key, created by {@link #makeKey}
+     * @param member new member
+     * @return Member with that key; the member that was already in the
+     *   cache, or <code>member</code>
+     */
+    RolapMember putMemberIfAbsent(Object key, RolapMember member);
+
     /**
      * Returns whether the cache supports removing selected items. If it does,
      * it is valid to call the {@link #removeMember(Object)} and
@@ -6,7 +6,7 @@
 //
 // Copyright (C) 2001-2005 Julian Hyde
 // Copyright (C) 2004-2005 TONBELLER AG
-// Copyright (C) 2005-2012 Pentaho and others
+// Copyright (C) 2005-2014 Pentaho and others
 // All Rights Reserved.
 */
 
@@ -14,8 +14,8 @@ package mondrian.rolap;
 
 import mondrian.olap.Level;
 import mondrian.olap.Util;
+import mondrian.rolap.cache.ConcurrentSoftSmartCache;
 import mondrian.rolap.cache.SmartCache;
-import mondrian.rolap.cache.SoftSmartCache;
 import mondrian.rolap.sql.MemberChildrenConstraint;
 import mondrian.rolap.sql.TupleConstraint;
 import mondrian.spi.DataSourceChangeListener;
@@ -23,14 +23,24 @@ import mondrian.util.Pair;
 
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Encapsulation of member caching.
  *
+ * <p>The caches can be read without locking. A thread that misses the cache
+ * and loads an entry holds the {@link #lockForLoad load lock} of its key, so
+ * that other threads wait for that load rather than repeating it, while
+ * threads looking up other keys are not blocked.</p>
+ *
  * @author Will Gorman
  */
 public class MemberCacheHelper implements MemberCache {
 
+    /** Number of load locks; a power of 2. */
+    private static final int LOAD_LOCK_COUNT = 16;
+
     private final SqlConstraintFactory sqlConstraintFactory =
         SqlConstraintFactory.instance();
 
@@ -47,6 +57,13 @@ public class MemberCacheHelper implements MemberCache {
     final SmartMemberListCache<RolapLevel, List<RolapMember>>
         mapLevelToMembers;
 
+    private final ReentrantLock[] loadLocks =
+        new ReentrantLock[LOAD_LOCK_COUNT];
+
+    /** The load lock held by the current thread, if any. */
+    private final ThreadLocal<ReentrantLock> heldLoadLock =
+        new ThreadLocal<ReentrantLock>();
+
     /**
      * Creates a MemberCacheHelper.
      *
@@ -57,9 +74,12 @@ public class MemberCacheHelper implements MemberCache {
         this.mapLevelToMembers =
             new SmartMemberListCache<RolapLevel, List<RolapMember>>();
         this.mapKeyToMember =
-            new SoftSmartCache<Object, RolapMember>();
+            new ConcurrentSoftSmartCache<Object, RolapMember>();
         this.mapMemberToChildren =
             new SmartMemberListCache<RolapMember, List<RolapMember>>();
+        for (int i = 0; i < loadLocks.length; i++) {
+            loadLocks[i] = new ReentrantLock();
+        }
 
         if (rolapHierarchy != null) {
             changeListener =
@@ -85,6 +105,12 @@ public class MemberCacheHelper implements MemberCache {
         return mapKeyToMember.put(key, value);
     }
 
+    // implement MemberCache
+    public RolapMember putMemberIfAbsent(Object key, RolapMember value) {
+        final RolapMember previous = mapKeyToMember.putIfAbsent(key, value);
+        return previous == null ? value : previous;
+    }
+
     // implement MemberCache
     public Object makeKey(RolapMember parent, Object key) {
         return new MemberKey(parent, key);
@@ -95,14 +121,62 @@ public class MemberCacheHelper implements MemberCache {
         return getMember(key, true);
     }
 
-    public synchronized void checkCacheStatus() {
+    public void checkCacheStatus() {
+        final DataSourceChangeListener changeListener = this.changeListener;
         if (changeListener != null) {
-            if (changeListener.isHierarchyChanged(rolapHierarchy)) {
-                flushCache();
+            synchronized (this) {
+                if (changeListener.isHierarchyChanged(rolapHierarchy)) {
+                    flushCache();
+                }
             }
         }
     }
 
+    /**
+     * Acquires the lock that a thread must hold while it loads the entry for
+     * a given key into this cache. The caller must release it by calling
+     * {@link #unlockAfterLoad} in a <code>finally</code> block.
+     *
+     * <p>A thread that misses the cache locks the key, looks in the cache
+     * again, and only if the entry is still missing, loads it and puts it
+     * into the cache. Keys are hashed onto a fixed number of locks, so
+     * occasionally loads of different keys wait for each other; lookups
+     * never wait.</p>
+     *
+     * <p>If the current thread already holds a load lock of this cache,
+     * because one load has led to another, no other lock is acquired, and
+     * the method returns null. So a thread never holds two load locks of the
+     * same cache, and two threads cannot deadlock by acquiring them in
+     * different orders.</p>
+     *
+     * @param key Key, for example a level or a parent member
+     * @return Lock acquired, or null
+     */
+    public Lock lockForLoad(Object key) {
+        if (heldLoadLock.get() != null) {
+            return null;
+        }
+        int h = key == null ? 0 : key.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        final ReentrantLock lock = loadLocks[h & (LOAD_LOCK_COUNT - 1)];
+        lock.lock();
+        heldLoadLock.set(lock);
+        return lock;
+    }
+
+    /**
+     * Releases a lock acquired by {@link #lockForLoad}.
+     *
+     * @param lock Lock, or null
+     */
+    public void unlockAfterLoad(Lock lock) {
+        if (lock != null) {
+            heldLoadLock.remove();
+            lock.unlock();
+        }
+    }
+
     /**
      * Deprecated in favor of
      * {@link #putChildren(RolapLevel, TupleConstraint, List)}
@@ -166,6 +240,8 @@ public class MemberCacheHelper implements MemberCache {
         for (Level level : rolapHierarchy.getLevels()) {
             ((RolapLevel)level).setApproxRowCount(Integer.MIN_VALUE);
         }
+        // The members saved for the next restart are stale, too.
+        rolapHierarchy.getRolapSchema().flushMemberSnapshot(rolapHierarchy);
     }
 
     public DataSourceChangeListener getChangeListener() {
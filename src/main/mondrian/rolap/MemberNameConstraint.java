@@ -0,0 +1,105 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.rolap;
+
+import mondrian.rolap.aggmatcher.AggStar;
+import mondrian.rolap.sql.MemberChildrenConstraint;
+import mondrian.rolap.sql.SqlQuery;
+
+import java.util.*;
+
+/**
+ * Constraint which restricts the members of a level to those with given
+ * names. It is used when a client asks for a few members of a level by name,
+ * for example via the MEMBER_NAME restriction of the XMLA MDSCHEMA_MEMBERS
+ * rowset, so that the other members of the level are not read.
+ *
+ * <p>Only the level whose members are being read is constrained; its
+ * ancestor levels, which are read in the same query, are not.</p>
+ */
+class MemberNameConstraint extends DefaultTupleConstraint {
+    private final int depth;
+    private final List<String> names;
+    private final Object cacheKey;
+
+    /**
+     * Creates a MemberNameConstraint.
+     *
+     * @param level Level whose members are being read
+     * @param names Names of the members
+     */
+    MemberNameConstraint(RolapLevel level, List<String> names) {
+        this.depth = level.getDepth();
+        this.names = new ArrayList<String>(names);
+        this.cacheKey =
+            Arrays.asList(MemberNameConstraint.class, depth, this.names);
+    }
+
+    @Override
+    public int hashCode() {
+        return getCacheKey().hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof MemberNameConstraint
+            && getCacheKey().equals(
+                ((MemberNameConstraint) obj).getCacheKey());
+    }
+
+    public void addLevelConstraint(
+        SqlQuery query,
+        RolapCube baseCube,
+        AggStar aggStar,
+        RolapLevel level)
+    {
+        super.addLevelConstraint(query, baseCube, aggStar, level);
+        if (level.getDepth() != depth) {
+            return;
+        }
+        final StringBuilder buf = new StringBuilder();
+        for (String name : names) {
+            final String predicate;
+            try {
+                predicate =
+                    SqlConstraintUtils.constrainLevel(
+                        level, query, baseCube, aggStar, name, true);
+            } catch (NumberFormatException e) {
+                // Name is not a number, so cannot match a numeric column.
+                continue;
+            }
+            buf.append(buf.length() == 0 ? "(" : " or ");
+            buf.append(predicate);
+        }
+        if (buf.length() == 0) {
+            query.addWhere("(1 = 0)");
+        } else {
+            buf.append(")");
+            query.addWhere(buf.toString());
+        }
+    }
+
+    public MemberChildrenConstraint getMemberChildrenConstraint(
+        RolapMember parent)
+    {
+        // The members read are only some of their parents' children.
+        return null;
+    }
+
+    public String toString() {
+        return "MemberNameConstraint(" + names + ")";
+    }
+
+    public Object getCacheKey() {
+        return cacheKey;
+    }
+}
+
+// End MemberNameConstraint.java
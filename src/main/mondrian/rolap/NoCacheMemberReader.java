@@ -7,7 +7,7 @@
 // Copyright (C) 2001-2002 Julian Hyde
 // Copyright (C) 2004-2005 TONBELLER AG
 // Copyright (C) 2007-2008 StrateBI
-// Copyright (C) 2008-2012 Pentaho and others
+// Copyright (C) 2008-2014 Pentaho and others
 // All Rights Reserved.
 */
 
@@ -99,6 +99,15 @@ public class NoCacheMemberReader implements MemberReader, MemberCache {
         return value;
     }
 
+    // implement MemberCache
+    public RolapMember putMemberIfAbsent(
+        final Object key,
+        final RolapMember value)
+    {
+        LOGGER.debug("putMemberIfAbsent void for no caching");
+        return value;
+    }
+
     // implement MemberReader
     public List<RolapMember> getMembers() {
         System.out.println("NoCache getMembers");
@@ -0,0 +1,354 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.rolap;
+
+import mondrian.olap.Util;
+import mondrian.resource.MondrianResource;
+import mondrian.server.Execution;
+import mondrian.server.monitor.QueryQueueEvent;
+
+import java.util.*;
+
+/**
+ * Admits queries to the threads of a {@link RolapResultShepherd}.
+ *
+ * <p>At most {@code maxRunningCount} queries run at a time. When all are
+ * busy, a query waits in a queue. There is one queue for each combination
+ * of {@link Priority} and tenant (typically the schema and role of the
+ * connection), and when a thread becomes free the scheduler admits the head
+ * of the queue that has received the least service relative to its
+ * weight. This is stride scheduling: each time a queue has a query
+ * admitted, its "pass" advances by a stride inversely proportional to its
+ * weight, and the queue with the lowest pass goes next. So an interactive
+ * queue is admitted four times as often as a batch queue, and tenants of
+ * the same priority take turns, however many queries each has
+ * submitted.</p>
+ *
+ * <p>A queue that has been idle starts again at the current virtual time,
+ * so it cannot save up credit while it is idle.</p>
+ *
+ * <p>A query that has waited longer than the timeout, or whose execution is
+ * canceled while it waits, leaves its queue.</p>
+ */
+class QueryScheduler {
+    /**
+     * Stride of a queue of weight 1. Divisible by every weight.
+     */
+    private static final long STRIDE = 1L << 20;
+
+    private final int maxRunningCount;
+    private final String propertyPath;
+
+    // The following fields are guarded by "this".
+    private final Map<String, TicketQueue> queues =
+        new LinkedHashMap<String, TicketQueue>();
+    private int runningCount;
+    private int queuedCount;
+    private long virtualTime;
+    private long admitCount;
+    private long waitCount;
+    private long waitNanos;
+    private long timeoutCount;
+
+    /**
+     * Priority class of a query. Set via the
+     * {@link RolapConnectionProperties#QueryPriority} connect string
+     * property.
+     */
+    enum Priority {
+        /** Query from a user who is waiting for the result. */
+        INTERACTIVE(4),
+
+        /** Query from a report or a job that can wait. */
+        BATCH(1);
+
+        final int weight;
+
+        Priority(int weight) {
+            this.weight = weight;
+            assert STRIDE % weight == 0;
+        }
+
+        /**
+         * Looks up a priority by name, ignoring case.
+         *
+         * @param name Name of priority, or null
+         * @return Priority; {@link #INTERACTIVE} if name is null
+         */
+        static Priority lookup(String name) {
+            if (name == null || name.length() == 0) {
+                return INTERACTIVE;
+            }
+            for (Priority priority : values()) {
+                if (priority.name().equalsIgnoreCase(name)) {
+                    return priority;
+                }
+            }
+            throw Util.newError(
+                "Unknown value '" + name + "' of connection property '"
+                + RolapConnectionProperties.QueryPriority.name()
+                + "'; expected one of " + Arrays.toString(values()));
+        }
+    }
+
+    /**
+     * Creates a QueryScheduler.
+     *
+     * @param maxRunningCount Maximum number of queries that run at a time
+     * @param propertyPath Path of the property that sets the maximum number
+     *     of running queries; for error messages
+     */
+    QueryScheduler(int maxRunningCount, String propertyPath) {
+        assert maxRunningCount > 0;
+        this.maxRunningCount = maxRunningCount;
+        this.propertyPath = propertyPath;
+    }
+
+    /**
+     * Waits until a query is admitted.
+     *
+     * @param tenant Tenant; queries of the same tenant and priority share a
+     *     queue
+     * @param priority Priority
+     * @param execution Execution; if it is canceled while the query waits,
+     *     the query leaves its queue and the execution throws. May be null.
+     * @param timeoutMillis Maximum time to wait; if zero, fails at once if
+     *     all threads are busy
+     * @return Ticket, to be passed to {@link #release}
+     *
+     * @throws mondrian.olap.MondrianException if the query was not admitted
+     *     within the timeout: QueryLimitReached if the timeout is zero,
+     *     otherwise QueryQueueTimeout
+     * @throws InterruptedException if the thread was interrupted while
+     *     waiting
+     */
+    Ticket acquire(
+        String tenant,
+        Priority priority,
+        Execution execution,
+        long timeoutMillis)
+        throws InterruptedException
+    {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        final Ticket ticket = enqueue(tenant, priority);
+        boolean canceled = false;
+        synchronized (this) {
+            try {
+                while (!ticket.admitted) {
+                    if (execution != null && execution.isCancelOrTimeout()) {
+                        canceled = true;
+                        break;
+                    }
+                    final long remaining =
+                        deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        ++timeoutCount;
+                        break;
+                    }
+                    // Wake up from time to time to check whether the
+                    // execution has been canceled.
+                    wait(Math.min(remaining, 100));
+                }
+            } finally {
+                if (!ticket.admitted) {
+                    remove(ticket);
+                }
+            }
+        }
+        if (canceled) {
+            execution.checkCancelOrTimeout();
+        }
+        if (!ticket.admitted) {
+            if (timeoutMillis == 0) {
+                // Queueing is disabled; fail as if there were no queue.
+                throw MondrianResource.instance().QueryLimitReached.ex(
+                    maxRunningCount,
+                    propertyPath);
+            }
+            throw MondrianResource.instance().QueryQueueTimeout.ex(
+                timeoutMillis,
+                maxRunningCount,
+                propertyPath);
+        }
+        return ticket;
+    }
+
+    /**
+     * Adds a query to the queue for its tenant and priority, and admits it
+     * at once if a thread is free and no other query is waiting.
+     *
+     * @param tenant Tenant
+     * @param priority Priority
+     * @return Ticket
+     */
+    synchronized Ticket enqueue(String tenant, Priority priority) {
+        final String key = priority + ":" + tenant;
+        TicketQueue queue = queues.get(key);
+        if (queue == null) {
+            queue = new TicketQueue(key, priority);
+            queues.put(key, queue);
+        }
+        if (queue.tickets.isEmpty()) {
+            // Do not let an idle queue build up credit.
+            queue.pass = Math.max(queue.pass, virtualTime);
+        }
+        final Ticket ticket = new Ticket(queue);
+        queue.tickets.add(ticket);
+        ++queuedCount;
+        dispatch();
+        ticket.waited = !ticket.admitted;
+        return ticket;
+    }
+
+    /**
+     * Releases the thread held by an admitted query, and admits the next
+     * query, if any.
+     *
+     * @param ticket Ticket of admitted query
+     */
+    synchronized void release(Ticket ticket) {
+        assert ticket.admitted;
+        --runningCount;
+        --ticket.queue.runningCount;
+        discardIfIdle(ticket.queue);
+        dispatch();
+    }
+
+    private void remove(Ticket ticket) {
+        ticket.queue.tickets.remove(ticket);
+        --queuedCount;
+        discardIfIdle(ticket.queue);
+    }
+
+    private void discardIfIdle(TicketQueue queue) {
+        if (queue.tickets.isEmpty() && queue.runningCount == 0) {
+            queues.remove(queue.key);
+        }
+    }
+
+    private void dispatch() {
+        boolean admitted = false;
+        while (runningCount < maxRunningCount) {
+            TicketQueue best = null;
+            for (TicketQueue queue : queues.values()) {
+                if (!queue.tickets.isEmpty()
+                    && (best == null || queue.pass < best.pass))
+                {
+                    best = queue;
+                }
+            }
+            if (best == null) {
+                break;
+            }
+            final Ticket ticket = best.tickets.removeFirst();
+            virtualTime = Math.max(virtualTime, best.pass);
+            best.pass += STRIDE / best.priority.weight;
+            ++best.runningCount;
+            ++runningCount;
+            --queuedCount;
+            ++admitCount;
+            if (ticket.waited) {
+                ++waitCount;
+                waitNanos += System.nanoTime() - ticket.enqueueNanos;
+            }
+            ticket.admitted = true;
+            admitted = true;
+        }
+        if (admitted) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Returns the number of queries running.
+     */
+    synchronized int getRunningCount() {
+        return runningCount;
+    }
+
+    /**
+     * Returns the number of queries waiting to be admitted.
+     */
+    synchronized int getQueuedCount() {
+        return queuedCount;
+    }
+
+    /**
+     * Creates an event that describes the state of the queues.
+     *
+     * @param timestamp Timestamp
+     * @param serverId Server identifier
+     * @return Event
+     */
+    synchronized QueryQueueEvent createEvent(long timestamp, int serverId) {
+        final Map<String, Integer> queueLengths =
+            new LinkedHashMap<String, Integer>();
+        for (TicketQueue queue : queues.values()) {
+            if (!queue.tickets.isEmpty()) {
+                queueLengths.put(queue.key, queue.tickets.size());
+            }
+        }
+        return new QueryQueueEvent(
+            timestamp,
+            serverId,
+            runningCount,
+            queuedCount,
+            Collections.unmodifiableMap(queueLengths),
+            admitCount,
+            waitCount,
+            waitNanos,
+            timeoutCount);
+    }
+
+    /**
+     * A query's place in a queue.
+     */
+    static class Ticket {
+        private final TicketQueue queue;
+        private final long enqueueNanos = System.nanoTime();
+        private boolean admitted;
+        private boolean waited;
+
+        Ticket(TicketQueue queue) {
+            this.queue = queue;
+        }
+
+        /**
+         * Returns whether the query has been admitted.
+         */
+        boolean isAdmitted() {
+            synchronized (queue.scheduler()) {
+                return admitted;
+            }
+        }
+    }
+
+    /**
+     * Queue of the queries of a tenant at a given priority.
+     */
+    private class TicketQueue {
+        private final String key;
+        private final Priority priority;
+        private final LinkedList<Ticket> tickets = new LinkedList<Ticket>();
+        private int runningCount;
+        private long pass;
+
+        TicketQueue(String key, Priority priority) {
+            this.key = key;
+            this.priority = priority;
+        }
+
+        QueryScheduler scheduler() {
+            return QueryScheduler.this;
+        }
+    }
+}
+
+// End QueryScheduler.java
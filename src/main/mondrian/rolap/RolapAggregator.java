@@ -5,7 +5,7 @@
 // You must accept the terms of that agreement to use this software.
 //
 // Copyright (C) 2003-2005 Julian Hyde
-// Copyright (C) 2005-2013 Pentaho
+// Copyright (C) 2005-2014 Pentaho
 // All Rights Reserved.
 */
 
@@ -53,34 +53,28 @@ public abstract class RolapAggregator
                 assert rawData.size() > 0;
                 switch (datatype) {
                 case Integer:
-                    int sumInt = Integer.MIN_VALUE;
+                    boolean sumIntFound = false;
+                    int sumInt = 0;
                     for (Object data : rawData) {
                         if (data != null) {
-                            if (sumInt == Integer.MIN_VALUE) {
-                                sumInt = 0;
-                            }
+                            sumIntFound = true;
                             if (data instanceof Double) {
                                 data = ((Double) data).intValue();
                             }
                             sumInt += (Integer) data;
                         }
                     }
-                    return sumInt == Integer.MIN_VALUE
-                        ? null
-                        : sumInt;
+                    return sumIntFound ? sumInt : null;
                 case Numeric:
-                    double sumDouble = Double.MIN_VALUE;
+                    boolean sumDoubleFound = false;
+                    double sumDouble = 0;
                     for (Object data : rawData) {
                         if (data != null) {
-                            if (sumDouble == Double.MIN_VALUE) {
-                                sumDouble = 0;
-                            }
+                            sumDoubleFound = true;
                             sumDouble += ((Number) data).doubleValue();
                         }
                     }
-                    return sumDouble == Double.MIN_VALUE
-                        ? null
-                        : sumDouble;
+                    return sumDoubleFound ? sumDouble : null;
                 default:
                     throw new MondrianException(
                         "Aggregator " + this.name
@@ -122,28 +116,28 @@ public abstract class RolapAggregator
                 assert rawData.size() > 0;
                 switch (datatype) {
                 case Integer:
+                    boolean minIntFound = false;
                     int minInt = Integer.MAX_VALUE;
                     for (Object data : rawData) {
                         if (data != null) {
+                            minIntFound = true;
                             minInt = Math.min(minInt, (Integer)data);
                         }
                     }
-                    return minInt == Integer.MAX_VALUE
-                        ? null
-                        : minInt;
+                    return minIntFound ? minInt : null;
                 case Numeric:
+                    boolean minDoubleFound = false;
                     double minDouble = Double.MAX_VALUE;
                     for (Object data : rawData) {
                         if (data != null) {
+                            minDoubleFound = true;
                             minDouble =
                                 Math.min(
                                     minDouble,
                                     ((Number)data).doubleValue());
                         }
                     }
-                    return minDouble == Double.MAX_VALUE
-                        ? null
-                        : minDouble;
+                    return minDoubleFound ? minDouble : null;
                 default:
                     throw new MondrianException(
                         "Aggregator " + this.name
@@ -172,29 +166,30 @@ public abstract class RolapAggregator
                 assert rawData.size() > 0;
                 switch (datatype) {
                 case Integer:
+                    boolean maxIntFound = false;
                     int maxInt = Integer.MIN_VALUE;
                     for (Object data : rawData) {
                         if (data != null) {
+                            maxIntFound = true;
                             maxInt = Math.max(maxInt, (Integer)data);
                         }
                     }
-                    return maxInt == Integer.MIN_VALUE
-                        ? null
-                        : maxInt;
+                    return maxIntFound ? maxInt : null;
                 case Numeric:
-                    double maxDouble = Double.MIN_VALUE;
+                    // Start from the most negative double, not
+                    // Double.MIN_VALUE, which is the smallest positive one.
+                    boolean maxDoubleFound = false;
+                    double maxDouble = -Double.MAX_VALUE;
                     for (Object data : rawData) {
                         if (data != null) {
+                            maxDoubleFound = true;
                             maxDouble =
                                 Math.max(
                                     maxDouble,
                                     ((Number)data).doubleValue());
                         }
                     }
-
-                    return maxDouble == Double.MIN_VALUE
-                        ? null
-                        : maxDouble;
+                    return maxDoubleFound ? maxDouble : null;
                 default:
                     throw new MondrianException(
                         "Aggregator " + this.name
@@ -5,7 +5,7 @@
 // You must accept the terms of that agreement to use this software.
 //
 // Copyright (C) 2005-2005 Julian Hyde
-// Copyright (C) 2005-2013 Pentaho
+// Copyright (C) 2005-2014 Pentaho
 // All Rights Reserved.
 */
 
@@ -121,17 +121,16 @@ public class RolapCell implements Cell {
         StarPredicate starPredicateSlicer =
             buildDrillthroughSlicerPredicate(
                 currentMembers,
-                result.getSlicerAxis());
+                getSlicerAxis());
         DrillThroughCellRequest cellRequest =
             RolapAggregationManager.makeDrillThroughRequest(
-                currentMembers, extendedContext, result.getCube(),
+                currentMembers, extendedContext, getCube(),
                 fields);
         if (cellRequest == null) {
             return null;
         }
         final RolapConnection connection =
-            result.getExecution().getMondrianStatement()
-                .getMondrianConnection();
+            getStatement().getMondrianConnection();
         final RolapAggregationManager aggMgr =
             connection.getServer().getAggregationManager();
         return aggMgr.getDrillThroughSql(
@@ -151,16 +150,15 @@ public class RolapCell implements Cell {
         StarPredicate starPredicateSlicer =
             buildDrillthroughSlicerPredicate(
                 currentMembers,
-                result.getSlicerAxis());
+                getSlicerAxis());
         DrillThroughCellRequest cellRequest =
             RolapAggregationManager.makeDrillThroughRequest(
-                currentMembers, false, result.getCube(), null);
+                currentMembers, false, getCube(), null);
         if (cellRequest == null) {
             return -1;
         }
         final RolapConnection connection =
-            result.getExecution().getMondrianStatement()
-                .getMondrianConnection();
+            getStatement().getMondrianConnection();
         final RolapAggregationManager aggMgr =
             connection.getServer().getAggregationManager();
         final String sql =
@@ -281,7 +279,7 @@ public class RolapCell implements Cell {
                                 (RolapCubeMember) memberWalk;
                             RolapStar.Column column =
                                 rolapCubeMember.getLevel()
-                                    .getBaseStarKeyColumn(result.getCube());
+                                    .getBaseStarKeyColumn(getCube());
                             // Add a predicate for the member at this level
                             listOfStarPredicatesForCurrentPosition.add(
                                 new MemberColumnPredicate(
@@ -325,7 +323,7 @@ public class RolapCell implements Cell {
         if (containsCalcMembers(currentMembers)) {
             return false;
         }
-        Cube x = chooseDrillThroughCube(currentMembers, result.getCube());
+        Cube x = chooseDrillThroughCube(currentMembers, getCube());
         return x != null;
     }
 
@@ -380,7 +378,7 @@ public class RolapCell implements Cell {
     }
 
     private Member[] getMembersForDrillThrough() {
-        final Member[] currentMembers = result.getCellMembers(pos);
+        final Member[] currentMembers = getCellMembers();
 
         // replace member if we're dealing with a trivial formula
         List<Member> memberList = Arrays.asList(currentMembers);
@@ -469,8 +467,7 @@ public class RolapCell implements Cell {
         // Choose the appropriate scrollability. If we need to start from an
         // offset row, it is useful that the cursor is scrollable, but not
         // essential.
-        final Statement statement =
-            result.getExecution().getMondrianStatement();
+        final Statement statement = getStatement();
         final Execution execution = new Execution(statement, 0);
         final Connection connection = statement.getMondrianConnection();
         int resultSetType = ResultSet.TYPE_SCROLL_INSENSITIVE;
@@ -510,7 +507,7 @@ public class RolapCell implements Cell {
         if (property != null) {
             switch (property.ordinal) {
             case Property.CELL_ORDINAL_ORDINAL:
-                return result.getCellOrdinal(pos);
+                return getCellOrdinal();
             case Property.VALUE_ORDINAL:
                 return getValue();
             case Property.FORMAT_STRING_ORDINAL:
@@ -541,6 +538,19 @@ public class RolapCell implements Cell {
                 // fall through
             }
         }
+        return getContextProperty(propertyName, defaultValue);
+    }
+
+    /**
+     * Returns the value of a property of the members that form the context
+     * of this cell. If several members have the property, the one with the
+     * highest solve order wins.
+     *
+     * @param propertyName Name of property
+     * @param defaultValue Value to return if no member has the property
+     * @return Value of property
+     */
+    Object getContextProperty(String propertyName, Object defaultValue) {
         final Evaluator evaluator = result.getRootEvaluator();
         final int savepoint = evaluator.savepoint();
         try {
@@ -566,7 +576,7 @@ public class RolapCell implements Cell {
             throw Util.newError(
                 "Allocation policy must not be null");
         }
-        final RolapMember[] members = result.getCellMembers(pos);
+        final RolapMember[] members = getCellMembers();
         for (int i = 0; i < members.length; i++) {
             Member member = members[i];
             if (ScenarioImpl.isScenario(member.getHierarchy())) {
@@ -600,8 +610,7 @@ public class RolapCell implements Cell {
         }
         double doubleNewValue = ((Number) newValue).doubleValue();
         ((ScenarioImpl) scenario).setCellValue(
-            result.getExecution().getMondrianStatement()
-                .getMondrianConnection(),
+            getStatement().getMondrianConnection(),
             Arrays.asList(members),
             doubleNewValue,
             doubleCurrentValue,
@@ -609,6 +618,44 @@ public class RolapCell implements Cell {
             allocationArgs);
     }
 
+    /**
+     * Returns the members which form the context of this cell.
+     *
+     * @return Members, indexed by hierarchy ordinal in cube
+     */
+    RolapMember[] getCellMembers() {
+        return result.getCellMembers(pos);
+    }
+
+    /**
+     * Returns the ordinal of this cell in its result.
+     */
+    int getCellOrdinal() {
+        return result.getCellOrdinal(pos);
+    }
+
+    /**
+     * Returns the cube of the result this cell belongs to.
+     */
+    RolapCube getCube() {
+        return result.getCube();
+    }
+
+    /**
+     * Returns the slicer axis of the result this cell belongs to.
+     */
+    Axis getSlicerAxis() {
+        return result.getSlicerAxis();
+    }
+
+    /**
+     * Returns the statement that is reading this cell. Drill-through and
+     * write-back use its connection.
+     */
+    Statement getStatement() {
+        return result.getExecution().getMondrianStatement();
+    }
+
     /**
      * Visitor that walks over a cell's expression and checks whether the
      * cell should allow drill-through. If not, throws the {@link #bomb}
@@ -0,0 +1,167 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.rolap;
+
+import mondrian.olap.MondrianProperties;
+import mondrian.olap.Property;
+
+/**
+ * Member of a very large level, which uses less memory than a
+ * {@link RolapMemberBase}.
+ *
+ * <p>Members of a level are compact if the level's
+ * <code>approxRowCount</code> attribute is at least
+ * {@link MondrianProperties#CompactMemberThreshold}. A compact member
+ * differs from a regular member as follows:</p>
+ *
+ * <ul>
+ * <li>It does not store its unique name. The unique name is computed from
+ *     the parent's unique name and the name whenever it is needed, and only
+ *     its hash code is remembered.</li>
+ * <li>It stores the values of the level's properties in an array, in the
+ *     order of {@link RolapLevel#getProperties()}, rather than in a map.
+ *     Values of other properties are stored in a map, as usual.</li>
+ * <li>If its order key is equal to its key, it shares the key object.</li>
+ * </ul>
+ *
+ * <p>Equality, hash code and ordering are the same as for a regular member,
+ * so compact and regular members can be mixed.</p>
+ */
+class RolapCompactMember extends RolapMemberBase {
+    // Note: These fields must not have initializers, because the base class
+    // constructor may call methods that assign them.
+
+    /**
+     * Values of the level's properties, followed by the value of the
+     * {@link Property#NAME} property; null if none has been set.
+     */
+    private Object[] propertyValues;
+
+    /** Hash code of the unique name; 0 if not computed yet. */
+    private int hash;
+
+    /**
+     * Creates a RolapCompactMember.
+     *
+     * @param parentMember Parent member
+     * @param level Level this member belongs to
+     * @param key Key to this member in the underlying RDBMS
+     */
+    RolapCompactMember(RolapMember parentMember, RolapLevel level, Object key) {
+        super(parentMember, level, key);
+    }
+
+    /**
+     * Returns whether members of a level should be compact.
+     *
+     * @param level Level
+     * @return Whether members of level should be created as compact members
+     */
+    static boolean isCompact(RolapLevel level) {
+        final int threshold =
+            MondrianProperties.instance().CompactMemberThreshold.get();
+        return threshold > 0
+            && !level.isParentChild()
+            && level.getApproxRowCount() >= threshold;
+    }
+
+    protected void setUniqueName(Object key) {
+        // Computed on demand. The name may have changed, so forget the hash.
+        hash = 0;
+    }
+
+    public String getUniqueName() {
+        if (uniqueName != null) {
+            // Set by makeUniqueName; only for root members.
+            return uniqueName;
+        }
+        final Object name = getPropertyFromMap(Property.NAME.name, true);
+        return computeUniqueName(name != null ? name : getKey());
+    }
+
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = getUniqueName().hashCode();
+            hash = h;
+        }
+        return h;
+    }
+
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (o instanceof RolapCompactMember && o.hashCode() != hashCode()) {
+            // Avoid computing two unique names.
+            return false;
+        }
+        return super.equals(o);
+    }
+
+    void setOrderKey(Comparable orderKey) {
+        if (orderKey != null && orderKey.equals(getKey())) {
+            // Share the key object.
+            orderKey = (Comparable) getKey();
+        }
+        super.setOrderKey(orderKey);
+    }
+
+    protected void putPropertyValue(String name, Object value) {
+        final int i = propertyIndex(name, true);
+        if (i < 0) {
+            super.putPropertyValue(name, value);
+            return;
+        }
+        if (propertyValues == null) {
+            propertyValues = new Object[getLevel().getProperties().length + 1];
+        }
+        propertyValues[i] = value;
+    }
+
+    protected Object getPropertyFromMap(
+        String propertyName,
+        boolean matchCase)
+    {
+        final int i = propertyIndex(propertyName, matchCase);
+        if (i < 0) {
+            return super.getPropertyFromMap(propertyName, matchCase);
+        }
+        synchronized (this) {
+            return propertyValues == null ? null : propertyValues[i];
+        }
+    }
+
+    /**
+     * Returns the position of a property in {@link #propertyValues}, or -1
+     * if it is not stored there.
+     */
+    private int propertyIndex(String name, boolean matchCase) {
+        final RolapProperty[] properties = getLevel().getProperties();
+        if (matchCase
+            ? name.equals(Property.NAME.name)
+            : name.equalsIgnoreCase(Property.NAME.name))
+        {
+            return properties.length;
+        }
+        for (int i = 0; i < properties.length; i++) {
+            final String propertyName = properties[i].getName();
+            if (matchCase
+                ? propertyName.equals(name)
+                : propertyName.equalsIgnoreCase(name))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
+
+// End RolapCompactMember.java
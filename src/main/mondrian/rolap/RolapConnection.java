@@ -5,7 +5,7 @@
 // You must accept the terms of that agreement to use this software.
 //
 // Copyright (C) 2001-2005 Julian Hyde
-// Copyright (C) 2005-2013 Pentaho and others
+// Copyright (C) 2005-2014 Pentaho and others
 // All Rights Reserved.
 */
 
@@ -69,6 +69,7 @@ public class RolapConnection extends ConnectionBase {
     protected Role role;
     private Locale locale = Locale.getDefault();
     private Scenario scenario;
+    private final QueryScheduler.Priority queryPriority;
     private boolean closed = false;
 
     private static DataSourceResolver dataSourceResolver;
@@ -123,6 +124,10 @@ public class RolapConnection extends ConnectionBase {
             RolapConnectionProperties.Provider.name(), "mondrian");
         Util.assertTrue(provider.equalsIgnoreCase("mondrian"));
         this.connectInfo = connectInfo;
+        this.queryPriority =
+            QueryScheduler.Priority.lookup(
+                connectInfo.get(
+                    RolapConnectionProperties.QueryPriority.name()));
         this.catalogUrl =
             connectInfo.get(RolapConnectionProperties.Catalog.name());
         final String jdbcUser =
@@ -555,6 +560,16 @@ public class RolapConnection extends ConnectionBase {
         return locale;
     }
 
+    /**
+     * Returns the priority of this connection's queries, per the
+     * {@link RolapConnectionProperties#QueryPriority} property.
+     *
+     * @return Query priority
+     */
+    QueryScheduler.Priority getQueryPriority() {
+        return queryPriority;
+    }
+
     public void setLocale(Locale locale) {
         if (locale == null) {
             throw new IllegalArgumentException("locale must not be null");
@@ -604,6 +619,9 @@ public class RolapConnection extends ConnectionBase {
     /**
      * Executes a statement.
      *
+     * <p>If the result cache is enabled, and holds the result of an
+     * identical query, returns that result; see {@link RolapResultCache}.
+     *
      * @param execution Execution context (includes statement, query)
      *
      * @throws ResourceLimitExceededException if some resource limit specified
@@ -668,14 +686,27 @@ public class RolapConnection extends ConnectionBase {
             Result result;
             try {
                 statement.start(execution);
-                ((RolapCube) query.getCube()).clearCachedAggregations(true);
-                result = new RolapResult(execution, true);
-                int i = 0;
-                for (QueryAxis axis : query.getAxes()) {
-                    if (axis.isNonEmpty()) {
-                        result = new NonEmptyResult(result, execution, i);
+                final RolapResultCache resultCache = server.getResultCache();
+                final RolapResultCache.Key key =
+                    resultCache.makeKey(this, execution);
+                result =
+                    key == null ? null : resultCache.get(key, execution);
+                if (result == null) {
+                    final long generation = resultCache.getGeneration();
+                    ((RolapCube) query.getCube())
+                        .clearCachedAggregations(true);
+                    result = new RolapResult(execution, true);
+                    int i = 0;
+                    for (QueryAxis axis : query.getAxes()) {
+                        if (axis.isNonEmpty()) {
+                            result = new NonEmptyResult(result, execution, i);
+                        }
+                        ++i;
+                    }
+                    if (key != null) {
+                        result =
+                            resultCache.put(key, execution, result, generation);
                     }
-                    ++i;
                 }
             } finally {
                 Locus.pop(locus);
@@ -203,7 +203,19 @@ public enum RolapConnectionProperties {
      *
      * <p>Defaults to "-1s".
      */
-    PinSchemaTimeout;
+    PinSchemaTimeout,
+
+    /**
+     * The "QueryPriority" property is the priority of the queries of the
+     * connection when they wait for a query thread. Either "Interactive"
+     * (the default) or "Batch". When all threads are busy, interactive
+     * queries are started four times as often as batch queries.
+     *
+     * <p>See also
+     * {@link mondrian.olap.MondrianProperties#RolapConnectionShepherdNbThreads}
+     * and {@link mondrian.olap.MondrianProperties#QueryQueueTimeout}.
+     */
+    QueryPriority;
 
     /**
      * Any property beginning with this value will be added to the
@@ -5,7 +5,7 @@
 // You must accept the terms of that agreement to use this software.
 //
 // Copyright (C) 2001-2005 Julian Hyde
-// Copyright (C) 2005-2012 Pentaho and others
+// Copyright (C) 2005-2014 Pentaho and others
 // All Rights Reserved.
 */
 
@@ -17,6 +17,7 @@ import mondrian.mdx.*;
 import mondrian.olap.*;
 import mondrian.olap.fun.FunDefBase;
 import mondrian.resource.MondrianResource;
+import mondrian.rolap.agg.SegmentWithData;
 import mondrian.rolap.aggmatcher.ExplicitRules;
 import mondrian.rolap.cache.SoftSmartCache;
 import mondrian.server.Locus;
@@ -1403,6 +1404,24 @@ public class RolapCube extends CubeBase {
         }
     }
 
+    /**
+     * Returns the segments in the current thread's cache of each star that
+     * this cube's cells may come from.
+     *
+     * @see RolapStar#getLocalSegments()
+     */
+    List<SegmentWithData> getLocalSegments() {
+        if (isVirtual()) {
+            final List<SegmentWithData> list = new ArrayList<SegmentWithData>();
+            for (RolapStar star1 : schema.getStars()) {
+                list.addAll(star1.getLocalSegments());
+            }
+            return list;
+        } else {
+            return star.getLocalSegments();
+        }
+    }
+
     /**
      * Returns this cube's underlying star schema.
      */
@@ -2819,6 +2838,23 @@ public class RolapCube extends CubeBase {
             return members;
         }
 
+        public List<Member> getLevelMembersByName(
+            Level level,
+            List<String> names)
+        {
+            final List<Member> calculatedMembers =
+                Util.addLevelCalculatedMembers(
+                    this, level, Collections.<Member>emptyList());
+            final List<Member> members =
+                super.getLevelMembersByName(level, names);
+            if (calculatedMembers.isEmpty()) {
+                return members;
+            }
+            final List<Member> list = new ArrayList<Member>(members);
+            list.addAll(filterByName(calculatedMembers, names));
+            return list;
+        }
+
         public Member getCalculatedMember(List<Id.Segment> nameParts) {
             final String uniqueName = Util.implode(nameParts);
             for (Formula formula : calculatedMemberList) {
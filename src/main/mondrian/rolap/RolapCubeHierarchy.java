@@ -5,7 +5,7 @@
 // You must accept the terms of that agreement to use this software.
 //
 // Copyright (C) 2001-2005 Julian Hyde
-// Copyright (C) 2005-2013 Pentaho and others
+// Copyright (C) 2005-2014 Pentaho and others
 // All Rights Reserved.
 */
 
@@ -20,6 +20,7 @@ import mondrian.util.UnsupportedList;
 
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.locks.Lock;
 
 /**
  * Hierarchy that is associated with a specific Cube.
@@ -514,8 +515,9 @@ public class RolapCubeHierarchy extends RolapHierarchy {
      *  but wraps and caches all intermediate members.
      *
      *  <p>Synchronization. Most synchronization takes place within
-     * SmartMemberReader.  All synchronization is done on the cacheHelper
-     * object.
+     * SmartMemberReader. Lookups take no lock; loads hold a load lock of
+     * the inherited cacheHelper, and creating a RolapCubeMember holds a
+     * load lock of rolapCubeCacheHelper.
       */
     public class CacheRolapCubeHierarchyMemberReader
         extends SmartMemberReader
@@ -652,51 +654,28 @@ public class RolapCubeHierarchy extends RolapHierarchy {
                 cacheList.add(child);
             }
 
-            synchronized (cacheHelper) {
-                for (Map.Entry<RolapMember, List<RolapMember>> entry
-                    : tempMap.entrySet())
+            for (Map.Entry<RolapMember, List<RolapMember>> entry
+                : tempMap.entrySet())
+            {
+                final RolapMember member = entry.getKey();
+                if (rolapCubeCacheHelper.getChildrenFromCache(
+                        member, constraint) == null)
                 {
-                    final RolapMember member = entry.getKey();
-                    if (rolapCubeCacheHelper.getChildrenFromCache(
-                            member, constraint) == null)
-                    {
-                        final List<RolapMember> cacheList = entry.getValue();
-                        if (enableCache) {
-                            rolapCubeCacheHelper.putChildren(
-                                member, constraint, cacheList);
-                        }
+                    final List<RolapMember> cacheList = entry.getValue();
+                    if (enableCache) {
+                        rolapCubeCacheHelper.putChildren(
+                            member, constraint, cacheList);
                     }
                 }
             }
         }
 
-        public Map<? extends Member, Access> getMemberChildren(
-            List<RolapMember> parentMembers,
-            List<RolapMember> children,
+        protected List<RolapMember> getChildrenFromCache(
+            RolapMember member,
             MemberChildrenConstraint constraint)
         {
-            synchronized (cacheHelper) {
-                checkCacheStatus();
-
-                List<RolapMember> missed = new ArrayList<RolapMember>();
-                for (RolapMember parentMember : parentMembers) {
-                    List<RolapMember> list =
-                        rolapCubeCacheHelper.getChildrenFromCache(
-                            parentMember, constraint);
-                    if (list == null) {
-                        // the null member has no children
-                        if (!parentMember.isNull()) {
-                            missed.add(parentMember);
-                        }
-                    } else {
-                        children.addAll(list);
-                    }
-                }
-                if (missed.size() > 0) {
-                    readMemberChildren(missed, children, constraint);
-                }
-            }
-            return Util.toNullValuesMap(children);
+            return rolapCubeCacheHelper.getChildrenFromCache(
+                member, constraint);
         }
 
 
@@ -704,10 +683,20 @@ public class RolapCubeHierarchy extends RolapHierarchy {
             RolapLevel level,
             TupleConstraint constraint)
         {
-            synchronized (cacheHelper) {
-                checkCacheStatus();
+            checkCacheStatus();
 
-                List<RolapMember> members =
+            List<RolapMember> members =
+                rolapCubeCacheHelper.getLevelMembersFromCache(
+                    level, constraint);
+            if (members != null) {
+                return members;
+            }
+
+            final Lock lock = cacheHelper.lockForLoad(level);
+            try {
+                // Another thread may have loaded the members while we
+                // waited.
+                members =
                     rolapCubeCacheHelper.getLevelMembersFromCache(
                         level, constraint);
                 if (members != null) {
@@ -751,6 +740,8 @@ public class RolapCubeHierarchy extends RolapHierarchy {
                     level, constraint, newlist);
 
                 return newlist;
+            } finally {
+                cacheHelper.unlockAfterLoad(lock);
             }
         }
 
@@ -781,12 +772,10 @@ public class RolapCubeHierarchy extends RolapHierarchy {
         public RolapMember getMemberByKey(
             RolapLevel level, List<Comparable> keyValues)
         {
-            synchronized (cacheHelper) {
-                final RolapMember member =
-                    super.getMemberByKey(level, keyValues);
-                return createAncestorMembers(
-                    this, (RolapCubeLevel) level, member);
-            }
+            final RolapMember member =
+                super.getMemberByKey(level, keyValues);
+            return createAncestorMembers(
+                this, (RolapCubeLevel) level, member);
         }
 
         public RolapCubeMember lookupCubeMember(
@@ -794,27 +783,35 @@ public class RolapCubeHierarchy extends RolapHierarchy {
             RolapMember member,
             RolapCubeLevel level)
         {
-            synchronized (cacheHelper) {
-                if (member.getKey() == RolapUtil.sqlNullValue) {
-                    if (member.isAll()) {
-                        return getAllMember();
-                    }
+            if (member.getKey() == RolapUtil.sqlNullValue) {
+                if (member.isAll()) {
+                    return getAllMember();
                 }
+            }
 
-                RolapCubeMember cubeMember;
-                if (enableCache) {
-                    Object key =
-                        rolapCubeCacheHelper.makeKey(parent, member.getKey());
-                    cubeMember = (RolapCubeMember)
-                        rolapCubeCacheHelper.getMember(key, false);
-                    if (cubeMember == null) {
-                        cubeMember = new RolapCubeMember(parent, member, level);
-                        rolapCubeCacheHelper.putMember(key, cubeMember);
-                    }
-                } else {
+            if (!enableCache) {
+                return new RolapCubeMember(parent, member, level);
+            }
+            final Object key =
+                rolapCubeCacheHelper.makeKey(parent, member.getKey());
+            RolapCubeMember cubeMember = (RolapCubeMember)
+                rolapCubeCacheHelper.getMember(key, false);
+            if (cubeMember != null) {
+                return cubeMember;
+            }
+            // Lock the key, so that there is never more than one
+            // RolapCubeMember for a member.
+            final Lock lock = rolapCubeCacheHelper.lockForLoad(key);
+            try {
+                cubeMember = (RolapCubeMember)
+                    rolapCubeCacheHelper.getMember(key, false);
+                if (cubeMember == null) {
                     cubeMember = new RolapCubeMember(parent, member, level);
+                    rolapCubeCacheHelper.putMember(key, cubeMember);
                 }
                 return cubeMember;
+            } finally {
+                rolapCubeCacheHelper.unlockAfterLoad(lock);
             }
         }
 
@@ -823,6 +820,9 @@ public class RolapCubeHierarchy extends RolapHierarchy {
         }
 
         protected void checkCacheStatus() {
+            if (cacheHelper.getChangeListener() == null) {
+                return;
+            }
             synchronized (cacheHelper) {
                 // if necessary, flush all caches:
                 //   - shared SmartMemberReader RolapMember cache
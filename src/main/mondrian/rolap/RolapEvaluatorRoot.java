@@ -28,14 +28,40 @@ import java.util.*;
  * @since Nov 11, 2008
  */
 class RolapEvaluatorRoot {
-    final Map<Object, Object> expResultCache = new HashMap<Object, Object>();
+    /**
+     * Whether evaluators that share this root may run in several threads at
+     * once; see {@link MondrianProperties#AxisEvaluationThreads} and
+     * {@link MondrianProperties#CellEvaluationThreads}. If so, the caches
+     * below are synchronized.
+     */
+    final boolean concurrent =
+        MondrianProperties.instance().AxisEvaluationThreads.get() > 0
+        || MondrianProperties.instance().CellEvaluationThreads.get() > 0;
+
+    /**
+     * Whether evaluators that share this root are running in several threads
+     * right now. While they are, results that are not valid are not cached:
+     * a result that is invalid because cells were missing from one thread's
+     * cell reader must not be seen by another thread, whose reader may
+     * already have loaded them.
+     */
+    volatile boolean parallel;
+
+    final Map<Object, Object> expResultCache =
+        newMap(concurrent, new HashMap<Object, Object>());
     final Map<Object, Object> tmpExpResultCache =
-        new HashMap<Object, Object>();
+        newMap(concurrent, new HashMap<Object, Object>());
     final RolapCube cube;
     final RolapConnection connection;
     final SchemaReader schemaReader;
-    final Map<CompiledExpKey, Calc> compiledExps =
-        new HashMap<CompiledExpKey, Calc>();
+
+    /**
+     * Expressions compiled by this root. Used only if the statement is being
+     * profiled; otherwise compiled expressions belong to the query, and are
+     * shared with other executions of it.
+     */
+    final Map<Object, Calc> compiledExps =
+        newMap(concurrent, new HashMap<Object, Calc>());
     final Statement statement;
     final Query query;
     private final Date queryStartTime;
@@ -56,7 +82,10 @@ class RolapEvaluatorRoot {
             MondrianProperties.instance().SolveOrderMode.get().toUpperCase(),
             SolveOrderMode.ABSOLUTE);
 
-    final Set<Exp> activeNativeExpansions = new HashSet<Exp>();
+    final Set<Exp> activeNativeExpansions =
+        concurrent
+            ? Collections.synchronizedSet(new HashSet<Exp>())
+            : new HashSet<Exp>();
 
     /**
      * The size of the command stack at which we will next check for recursion.
@@ -125,11 +154,21 @@ class RolapEvaluatorRoot {
         this.recursionCheckCommandCount = (defaultMembers.length << 4);
     }
 
+    /**
+     * Returns a map, synchronized if it is to be accessed by several threads.
+     */
+    static <K, V> Map<K, V> newMap(boolean concurrent, Map<K, V> map) {
+        return concurrent ? Collections.synchronizedMap(map) : map;
+    }
+
     /**
      * Implements a cheap-and-cheerful mapping from expressions to compiled
      * expressions.
      *
-     * <p>TODO: Save compiled expressions somewhere better.
+     * <p>Compiled expressions are kept in the query (see
+     * {@link Query#getCompiledExpressions()}), so that they survive this
+     * execution. Calcs compiled for profiling are wrapped in profiling calcs
+     * that report to this statement's handler, so they are kept here.
      *
      * @param exp Expression
      * @param scalar Whether expression is scalar
@@ -142,13 +181,16 @@ class RolapEvaluatorRoot {
         boolean scalar,
         ResultStyle resultStyle)
     {
+        final Query query = statement.getQuery();
+        final Map<Object, Calc> map =
+            statement.getProfileHandler() == null
+                ? query.getCompiledExpressions()
+                : compiledExps;
         CompiledExpKey key = new CompiledExpKey(exp, scalar, resultStyle);
-        Calc calc = compiledExps.get(key);
+        Calc calc = map.get(key);
         if (calc == null) {
-            calc =
-                statement.getQuery().compileExpression(
-                    exp, scalar, resultStyle);
-            compiledExps.put(key, calc);
+            calc = query.compileExpression(exp, scalar, resultStyle);
+            map.put(key, calc);
         }
         return calc;
     }
@@ -261,7 +303,7 @@ class RolapEvaluatorRoot {
     {
         if (isValidResult) {
             expResultCache.put(key, result);
-        } else {
+        } else if (!parallel) {
             tmpExpResultCache.put(key, result);
         }
     }
@@ -274,7 +316,7 @@ class RolapEvaluatorRoot {
      */
     public final Object getCacheResult(Object key) {
         Object result = expResultCache.get(key);
-        if (result == null) {
+        if (result == null && !parallel) {
             result = tmpExpResultCache.get(key);
         }
         return result;
@@ -5,7 +5,7 @@
 // You must accept the terms of that agreement to use this software.
 //
 // Copyright (C) 2001-2005 Julian Hyde
-// Copyright (C) 2005-2013 Pentaho and others
+// Copyright (C) 2005-2014 Pentaho and others
 // All Rights Reserved.
 */
 
@@ -210,6 +210,16 @@ public class RolapMemberBase
     }
 
     protected void setUniqueName(Object key) {
+        this.uniqueName = computeUniqueName(key);
+    }
+
+    /**
+     * Computes the unique name of this member, given its key or name.
+     *
+     * @param key Key or name of member
+     * @return Unique name
+     */
+    protected String computeUniqueName(Object key) {
         String name = keyToString(key);
 
         // Drop the '[All Xxxx]' segment in regular members.
@@ -235,21 +245,20 @@ public class RolapMemberBase
                 // [Measures].[Foo] not [Measures].[Measures].[Foo]. We can
                 // remove this code when we revisit the scheme to generate
                 // member unique names.
-                this.uniqueName = Util.makeFqName(dimension, name);
+                return Util.makeFqName(dimension, name);
             } else {
                 if (name.equals(level.getName())) {
-                    this.uniqueName =
+                    return Util.makeFqName(
                         Util.makeFqName(
-                            Util.makeFqName(
-                                hierarchy.getUniqueName(),
-                                level.getName()),
-                            name);
+                            hierarchy.getUniqueName(),
+                            level.getName()),
+                        name);
                 } else {
-                    this.uniqueName = Util.makeFqName(hierarchy, name);
+                    return Util.makeFqName(hierarchy, name);
                 }
             }
         } else {
-            this.uniqueName = Util.makeFqName(parentMember, name);
+            return Util.makeFqName(parentMember, name);
         }
     }
 
@@ -281,12 +290,6 @@ public class RolapMemberBase
             return;
         }
 
-        if (mapPropertyNameToValue.isEmpty()) {
-            // the empty map is shared and immutable; create our own
-            PropertyValueMapFactory factory =
-                PropertyValueMapFactoryFactory.getPropertyValueMapFactory();
-            mapPropertyNameToValue = factory.create(this);
-        }
         if (name.equals(Property.NAME.name)) {
             if (value == null) {
                 value = RolapUtil.mdxNullLiteral();
@@ -303,6 +306,23 @@ public class RolapMemberBase
             setOrdinal((int) d);
         }
 
+        putPropertyValue(name, value);
+    }
+
+    /**
+     * Stores the value of a property. Called by {@link #setProperty} while
+     * holding the lock on this member.
+     *
+     * @param name Property name
+     * @param value Property value
+     */
+    protected void putPropertyValue(String name, Object value) {
+        if (mapPropertyNameToValue.isEmpty()) {
+            // the empty map is shared and immutable; create our own
+            PropertyValueMapFactory factory =
+                PropertyValueMapFactoryFactory.getPropertyValueMapFactory();
+            mapPropertyNameToValue = factory.create(this);
+        }
         mapPropertyNameToValue.put(name, value);
     }
 
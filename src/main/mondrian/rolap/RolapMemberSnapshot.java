@@ -0,0 +1,382 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.rolap;
+
+import mondrian.olap.MondrianProperties;
+import mondrian.olap.Util;
+import mondrian.util.ByteString;
+
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Snapshot of the members of a shared hierarchy, saved in local files so
+ * that the members do not have to be read from the database again after a
+ * restart or a schema reload.
+ *
+ * <p>If {@link MondrianProperties#MemberSnapshotDirectory} is set,
+ * {@link SqlMemberSource} saves each level whose members it has read in full
+ * to a file in that directory, and reads the members from that file, instead
+ * of executing SQL, the next time an equivalent schema needs them. The names
+ * of the files are derived from the schema checksum, the key of the data
+ * source connection, the name of the hierarchy and the depth of the
+ * level.</p>
+ *
+ * <p>The snapshot does not know when the data changes. It is deleted when a
+ * {@link mondrian.spi.DataSourceChangeListener} reports that the hierarchy
+ * has changed, or when members of the hierarchy are flushed via
+ * <code>CacheControl.flush(MemberSet)</code>; members are then read from the
+ * database and saved again.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+class RolapMemberSnapshot {
+    private static final Logger LOGGER =
+        Logger.getLogger(RolapMemberSnapshot.class);
+
+    /**
+     * Version of the file format. Files of other versions are ignored.
+     */
+    private static final int VERSION = 1;
+
+    private final File directory;
+    private final String prefix;
+
+    /**
+     * Creates a RolapMemberSnapshot.
+     *
+     * @param directory Directory that contains the files
+     * @param prefix Prefix of the names of the files of this snapshot
+     */
+    RolapMemberSnapshot(File directory, String prefix) {
+        this.directory = directory;
+        this.prefix = prefix;
+    }
+
+    /**
+     * Creates the snapshot of a shared hierarchy, as configured by
+     * {@link MondrianProperties#MemberSnapshotDirectory}.
+     *
+     * @param schema Schema; its checksum must be known
+     * @param hierarchy Shared hierarchy
+     * @return Snapshot, or null if snapshots are disabled
+     */
+    static RolapMemberSnapshot create(
+        RolapSchema schema,
+        RolapHierarchy hierarchy)
+    {
+        final String directory =
+            MondrianProperties.instance().MemberSnapshotDirectory.get();
+        if (Util.isEmpty(directory)
+            || hierarchy.getSharedHierarchyName() == null)
+        {
+            return null;
+        }
+        final String digest =
+            new ByteString(
+                Util.digestMd5(
+                    schema.getChecksum() + ";" + schema.key.right + ";"
+                    + hierarchy.getUniqueName()))
+                .toString();
+        return new RolapMemberSnapshot(
+            new File(directory), "members-" + digest + "-");
+    }
+
+    /**
+     * Returns whether the members of a level can be held in a snapshot.
+     * Members of parent-child levels, and of levels below them, cannot.
+     *
+     * @param level Level
+     * @return Whether level can be held in a snapshot
+     */
+    static boolean isEligible(RolapLevel level) {
+        for (RolapLevel x = level;
+            x != null;
+            x = (RolapLevel) x.getParentLevel())
+        {
+            if (x.isParentChild()) {
+                return false;
+            }
+        }
+        return !level.isAll();
+    }
+
+    private File file(int depth) {
+        return new File(directory, prefix + depth + ".ser");
+    }
+
+    /**
+     * Returns whether this snapshot contains the members of a level.
+     *
+     * @param level Level
+     * @return Whether this snapshot contains the members of level
+     */
+    boolean contains(RolapLevel level) {
+        return file(level.getDepth()).exists();
+    }
+
+    /**
+     * Reads the members of a level.
+     *
+     * @param level Level
+     * @return Members of level, in order, or null if this snapshot does not
+     *   contain them
+     */
+    List<Row> read(RolapLevel level) {
+        return read(
+            level.getDepth(), level.getUniqueName(), propertyNames(level));
+    }
+
+    /**
+     * Reads the members of a level, given the attributes of the level that
+     * the file must match.
+     *
+     * @param depth Depth of level
+     * @param levelName Unique name of level
+     * @param propertyNames Names of the level's properties
+     * @return Members of level, in order, or null if this snapshot does not
+     *   contain them
+     */
+    List<Row> read(int depth, String levelName, String[] propertyNames) {
+        final File file = file(depth);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            final ObjectInputStream in =
+                new ObjectInputStream(
+                    new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != VERSION
+                    || !levelName.equals(in.readObject())
+                    || !Arrays.equals(
+                        propertyNames, (String[]) in.readObject()))
+                {
+                    LOGGER.warn(
+                        "Member snapshot " + file + " does not match level "
+                        + levelName + "; ignored");
+                    return null;
+                }
+                final int count = in.readInt();
+                final List<Row> rows = new ArrayList<Row>(count);
+                for (int i = 0; i < count; i++) {
+                    final Object[] keys = (Object[]) in.readObject();
+                    for (int j = 0; j < keys.length; j++) {
+                        keys[j] = fromStored(keys[j]);
+                    }
+                    rows.add(
+                        new Row(
+                            keys,
+                            (String) in.readObject(),
+                            (Comparable) fromStored(in.readObject()),
+                            (Object[]) in.readObject()));
+                }
+                return rows;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Error while reading member snapshot " + file, e);
+            return null;
+        } catch (ClassNotFoundException e) {
+            LOGGER.warn("Error while reading member snapshot " + file, e);
+            return null;
+        } catch (ClassCastException e) {
+            LOGGER.warn("Invalid member snapshot " + file + "; ignored", e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the members of a level.
+     *
+     * @param level Level
+     * @param members All members of level, in order; each must be a
+     *   {@link RolapMemberBase}
+     */
+    void write(RolapLevel level, List<RolapMember> members) {
+        final String[] propertyNames = propertyNames(level);
+        final List<Row> rows = new ArrayList<Row>(members.size());
+        for (RolapMember member : members) {
+            rows.add(toRow((RolapMemberBase) member, propertyNames));
+        }
+        write(level.getDepth(), level.getUniqueName(), propertyNames, rows);
+    }
+
+    /**
+     * Writes the members of a level. Writes to a temporary file and renames
+     * it, so that a schema being loaded in another process never reads a
+     * partial file.
+     *
+     * @param depth Depth of level
+     * @param levelName Unique name of level
+     * @param propertyNames Names of the level's properties
+     * @param rows Members of level, in order
+     */
+    void write(
+        int depth,
+        String levelName,
+        String[] propertyNames,
+        List<Row> rows)
+    {
+        final File file = file(depth);
+        File tempFile = null;
+        try {
+            directory.mkdirs();
+            tempFile = File.createTempFile(prefix, ".tmp", directory);
+            final ObjectOutputStream out =
+                new ObjectOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tempFile)));
+            try {
+                out.writeInt(VERSION);
+                out.writeObject(levelName);
+                out.writeObject(propertyNames);
+                out.writeInt(rows.size());
+                for (Row row : rows) {
+                    final Object[] keys = new Object[row.keys.length];
+                    for (int j = 0; j < keys.length; j++) {
+                        keys[j] = toStored(row.keys[j]);
+                    }
+                    out.writeObject(keys);
+                    out.writeObject(row.caption);
+                    out.writeObject(toStored(row.orderKey));
+                    out.writeObject(row.propertyValues);
+                }
+            } finally {
+                out.close();
+            }
+            if (!tempFile.renameTo(file)) {
+                // On some platforms, rename does not replace an existing
+                // file.
+                file.delete();
+                if (!tempFile.renameTo(file)) {
+                    throw new IOException("Could not rename " + tempFile);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Error while writing member snapshot " + file, e);
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Deletes the files of this snapshot, because the members in the
+     * database have changed.
+     */
+    void markStale() {
+        final File[] files =
+            directory.listFiles(
+                new FilenameFilter() {
+                    public boolean accept(File dir, String name) {
+                        return name.startsWith(prefix);
+                    }
+                });
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private static String[] propertyNames(RolapLevel level) {
+        final RolapProperty[] properties = level.getProperties();
+        final String[] names = new String[properties.length];
+        for (int i = 0; i < properties.length; i++) {
+            names[i] = properties[i].getName();
+        }
+        return names;
+    }
+
+    private static Row toRow(
+        RolapMemberBase member,
+        String[] propertyNames)
+    {
+        final RolapLevel level = member.getLevel();
+        final List<Object> keys = new ArrayList<Object>();
+        for (RolapMember m = member;
+            m != null && !m.isAll();
+            m = m.getParentMember())
+        {
+            keys.add(m.getKey());
+        }
+        Collections.reverse(keys);
+        final Object[] propertyValues = new Object[propertyNames.length];
+        for (int i = 0; i < propertyNames.length; i++) {
+            propertyValues[i] =
+                member.getPropertyFromMap(propertyNames[i], true);
+        }
+        return new Row(
+            keys.toArray(),
+            level.hasCaptionColumn() ? member.getCaption() : null,
+            level.getOrdinalExp().equals(level.getKeyExp())
+                ? null
+                : member.getOrderKey(),
+            propertyValues);
+    }
+
+    /**
+     * Converts a value to the form in which it is written to a file. The
+     * null value, {@link RolapUtil#sqlNullValue}, must be the same object
+     * after it is read back.
+     */
+    private static Object toStored(Object value) {
+        return value == RolapUtil.sqlNullValue ? SqlNull.INSTANCE : value;
+    }
+
+    private static Object fromStored(Object value) {
+        return value == SqlNull.INSTANCE ? RolapUtil.sqlNullValue : value;
+    }
+
+    /**
+     * Marker for {@link RolapUtil#sqlNullValue} in a file.
+     */
+    private enum SqlNull {
+        INSTANCE
+    }
+
+    /**
+     * The values from which a member is created.
+     */
+    static class Row {
+        /**
+         * Keys of the member's ancestors, starting at the first level below
+         * the 'all' level, followed by the member's own key.
+         */
+        final Object[] keys;
+        /** Caption, or null if the level has no caption column. */
+        final String caption;
+        /** Order key, or null if the level has no ordinal column. */
+        final Comparable orderKey;
+        /** Values of the level's properties, including its name. */
+        final Object[] propertyValues;
+
+        Row(
+            Object[] keys,
+            String caption,
+            Comparable orderKey,
+            Object[] propertyValues)
+        {
+            this.keys = keys;
+            this.caption = caption;
+            this.orderKey = orderKey;
+            this.propertyValues = propertyValues;
+        }
+
+        Object getKey() {
+            return keys[keys.length - 1];
+        }
+    }
+}
+
+// End RolapMemberSnapshot.java
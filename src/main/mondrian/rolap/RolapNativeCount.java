@@ -0,0 +1,302 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.rolap;
+
+import mondrian.calc.ResultStyle;
+import mondrian.mdx.MemberExpr;
+import mondrian.mdx.ResolvedFunCall;
+import mondrian.olap.*;
+import mondrian.rolap.cache.*;
+import mondrian.rolap.sql.*;
+
+import java.util.*;
+
+/**
+ * Computes Count(&lt;set&gt;) in SQL, for a set that is explicitly
+ * non-empty.
+ *
+ * <p>The set is constrained by the same SQL as a native cross join, and,
+ * instead of reading the tuples, a single statement counts them:</p>
+ *
+ * <blockquote><pre>SELECT count(*) FROM (SELECT DISTINCT ...) AS "countQuery"
+ * </pre></blockquote>
+ *
+ * <p>For example, the number of active customers,
+ * <code>Count(NonEmpty([Customers].[Name].Members,
+ * {[Measures].[Unit Sales]}))</code>, no longer reads 10,000 customers just
+ * to count them.</p>
+ *
+ * <p>The SQL joins to the fact table, so the set must be one that contains
+ * only tuples with fact rows:</p>
+ * <ul>
+ * <li><code>NonEmpty(&lt;set&gt;, &lt;measure&gt;)</code>, where the
+ *     measure is stored;</li>
+ * <li><code>NonEmpty(&lt;set&gt;)</code>,
+ *     <code>NonEmptyCrossJoin(&lt;set&gt;, &lt;set&gt;)</code> or
+ *     <code>Count(&lt;set&gt;, EXCLUDEEMPTY)</code>, where the current
+ *     measure is stored.</li>
+ * </ul>
+ *
+ * <p>The current measure may be calculated; typically it is the calculated
+ * member that contains the Count. The count is computed in the interpreter
+ * if the set contains calculated members or parent-child levels; if the
+ * context contains other calculated members that cannot be translated to
+ * SQL; if the cube is virtual; if the role restricts access to any
+ * hierarchy of the cube; or if a level of the set has members that are
+ * hidden. The interpreter would remove tuples, or change cell values, in
+ * these cases, and a count cannot be corrected afterwards.</p>
+ */
+public class RolapNativeCount extends RolapNativeSet {
+
+    private SmartCache<Object, Integer> countCache =
+        new SoftSmartCache<Object, Integer>();
+
+    public RolapNativeCount() {
+        super.setEnabled(
+            MondrianProperties.instance().EnableNativeCount.get());
+    }
+
+    static class CountConstraint extends SetConstraint {
+        public CountConstraint(
+            CrossJoinArg[] args,
+            RolapEvaluator evaluator)
+        {
+            super(args, evaluator, true);
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * <p>Count always needs to join the fact table, so that only
+         * non-empty tuples are counted.
+         */
+        protected boolean isJoinRequired() {
+            return true;
+        }
+
+        public Object getCacheKey() {
+            List<Object> key = new ArrayList<Object>();
+            key.add(super.getCacheKey());
+            if (this.getEvaluator() instanceof RolapEvaluator) {
+                key.add(
+                    ((RolapEvaluator)this.getEvaluator())
+                    .getSlicerMembers());
+            }
+            return key;
+        }
+    }
+
+    protected boolean restrictMemberTypes() {
+        return true;
+    }
+
+    NativeEvaluator createEvaluator(
+        RolapEvaluator evaluator,
+        FunDef fun,
+        Exp[] args)
+    {
+        if (!isEnabled()) {
+            return null;
+        }
+        if (!"Count".equalsIgnoreCase(fun.getName())) {
+            return null;
+        }
+        if (!CountConstraint.isValidContext(
+                evaluator, restrictMemberTypes()))
+        {
+            return null;
+        }
+        if (!evaluator.getDialect().allowsFromQuery()) {
+            return null;
+        }
+
+        // Find the set, and the measure that decides whether its tuples
+        // are empty.
+        final boolean excludeEmpty =
+            args.length == 2
+            && args[1] instanceof Literal
+            && "EXCLUDEEMPTY".equals(((Literal) args[1]).getValue());
+        if (args.length != 1 && !excludeEmpty) {
+            return null;
+        }
+        Exp setExp = null;
+        Member measure = evaluator.getMembers()[0];
+        if (excludeEmpty) {
+            setExp = args[0];
+        } else if (args[0] instanceof ResolvedFunCall) {
+            final ResolvedFunCall setCall = (ResolvedFunCall) args[0];
+            if ("NonEmpty".equalsIgnoreCase(setCall.getFunName())) {
+                setExp = setCall.getArg(0);
+                if (setCall.getArgCount() == 2) {
+                    measure = singleMember(setCall.getArg(1));
+                }
+            } else if ("NonEmptyCrossJoin".equalsIgnoreCase(
+                    setCall.getFunName()))
+            {
+                setExp = setCall;
+            }
+        }
+        if (setExp == null) {
+            return null;
+        }
+        if (!(measure instanceof RolapStoredMeasure)
+            || evaluator.getCube().isVirtual())
+        {
+            return null;
+        }
+
+        // extract the set expression
+        List<CrossJoinArg[]> allArgs =
+            crossJoinArgFactory().checkCrossJoinArg(evaluator, setExp);
+        if (allArgs == null || allArgs.isEmpty() || allArgs.get(0) == null) {
+            return null;
+        }
+        CrossJoinArg[] cjArgs = allArgs.get(0);
+        if (isPreferInterpreter(cjArgs, false)) {
+            return null;
+        }
+
+        // The interpreter would remove calculated members and hidden
+        // members of ragged levels from the set before counting it.
+        for (CrossJoinArg arg : cjArgs) {
+            if (arg instanceof MemberListCrossJoinArg
+                && ((MemberListCrossJoinArg) arg).hasCalcMembers())
+            {
+                return null;
+            }
+            final RolapLevel level = arg.getLevel();
+            if (level == null
+                || level.isParentChild()
+                || level.getHideMemberCondition()
+                   != RolapLevel.HideMemberCondition.Never)
+            {
+                return null;
+            }
+        }
+
+        // A role may hide members of the set, or of the hierarchies that
+        // decide whether a tuple is empty.
+        final Role role = evaluator.getSchemaReader().getRole();
+        for (Hierarchy hierarchy : evaluator.getCube().getHierarchies()) {
+            if (role.getAccess(hierarchy) != Access.ALL) {
+                return null;
+            }
+        }
+
+        LOGGER.debug("using native count");
+        final int savepoint = evaluator.savepoint();
+        try {
+            overrideContext(
+                evaluator, cjArgs, (RolapStoredMeasure) measure);
+
+            CrossJoinArg[] combinedArgs = cjArgs;
+            if (allArgs.size() == 2) {
+                CrossJoinArg[] predicateArgs = allArgs.get(1);
+                if (predicateArgs != null) {
+                    // Combined the CJ and the additional predicate args
+                    // to form the TupleConstraint.
+                    combinedArgs =
+                        Util.appendArrays(cjArgs, predicateArgs);
+                }
+            }
+            TupleConstraint constraint =
+                new CountConstraint(combinedArgs, evaluator);
+            return new CountEvaluator(
+                cjArgs, evaluator.getSchemaReader(), constraint);
+        } finally {
+            evaluator.restore(savepoint);
+        }
+    }
+
+    /**
+     * Returns the member of an expression that is a member or a set
+     * containing a single member, or null.
+     */
+    private static Member singleMember(Exp exp) {
+        if (exp instanceof ResolvedFunCall) {
+            final ResolvedFunCall call = (ResolvedFunCall) exp;
+            if (!"{}".equals(call.getFunName()) || call.getArgCount() != 1) {
+                return null;
+            }
+            exp = call.getArg(0);
+        }
+        if (exp instanceof MemberExpr) {
+            return ((MemberExpr) exp).getMember();
+        }
+        return null;
+    }
+
+    void useHardCache(boolean hard) {
+        super.useHardCache(hard);
+        if (hard) {
+            countCache = new HardSmartCache<Object, Integer>();
+        } else {
+            countCache = new SoftSmartCache<Object, Integer>();
+        }
+    }
+
+    /**
+     * Evaluates a count of tuples in SQL. Returns an {@link Integer}.
+     */
+    private class CountEvaluator implements NativeEvaluator {
+        private final CrossJoinArg[] args;
+        private final SchemaReaderWithMemberReaderAvailable schemaReader;
+        private final TupleConstraint constraint;
+
+        CountEvaluator(
+            CrossJoinArg[] args,
+            SchemaReader schemaReader,
+            TupleConstraint constraint)
+        {
+            this.args = args;
+            if (schemaReader instanceof SchemaReaderWithMemberReaderAvailable) {
+                this.schemaReader =
+                    (SchemaReaderWithMemberReaderAvailable) schemaReader;
+            } else {
+                this.schemaReader =
+                    new SchemaReaderWithMemberReaderCache(schemaReader);
+            }
+            this.constraint = constraint;
+        }
+
+        public Object execute(ResultStyle desiredResultStyle) {
+            final SqlTupleReader tr = new SqlTupleReader(constraint);
+            for (CrossJoinArg arg : args) {
+                final RolapLevel level = arg.getLevel();
+                tr.addLevelMembers(
+                    level,
+                    schemaReader.getMemberReader(level.getHierarchy())
+                        .getMemberBuilder(),
+                    null);
+            }
+
+            final List<Object> key = new ArrayList<Object>();
+            key.add(tr.getCacheKey());
+            key.addAll(Arrays.asList(args));
+            Integer count = countCache.get(key);
+            if (count != null) {
+                if (listener != null) {
+                    listener.foundInCache(new TupleEvent(this, tr));
+                }
+                return count;
+            }
+            if (listener != null) {
+                listener.executingSql(new TupleEvent(this, tr));
+            }
+            count = tr.countTuples(schemaReader.getDataSource());
+            if (!MondrianProperties.instance().DisableCaching.get()) {
+                countCache.put(key, count);
+            }
+            return count;
+        }
+    }
+}
+
+// End RolapNativeCount.java
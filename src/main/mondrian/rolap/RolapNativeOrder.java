@@ -0,0 +1,235 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2005-2014 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import mondrian.mdx.MemberExpr;
+import mondrian.olap.*;
+import mondrian.rolap.aggmatcher.AggStar;
+import mondrian.rolap.sql.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+/**
+ * Computes an Order(set, measure, BASC|BDESC) in SQL.
+ *
+ * <p>The set is read by the same tuple SQL as a native cross join, with the
+ * measure added to the SELECT clause and at the front of the ORDER BY
+ * clause; see {@link RolapNativeTopCount}, which works the same way but
+ * also limits the number of rows.</p>
+ *
+ * <p>Only the simplest form is evaluated natively: one sort key, which is a
+ * stored measure that is not distinct-count, and a direction that breaks the
+ * hierarchy. The SQL joins to the fact table, so it does not return members
+ * that have no fact rows; therefore the set must be evaluated in a non-empty
+ * context of a non-virtual cube, where such members would be removed
+ * anyway.</p>
+ */
+public class RolapNativeOrder extends RolapNativeSet {
+
+    public RolapNativeOrder() {
+        super.setEnabled(
+            MondrianProperties.instance().EnableNativeOrder.get());
+    }
+
+    static class OrderConstraint extends SetConstraint {
+        private final Exp orderByExpr;
+        private final boolean ascending;
+
+        public OrderConstraint(
+            CrossJoinArg[] args,
+            RolapEvaluator evaluator,
+            Exp orderByExpr,
+            boolean ascending)
+        {
+            super(args, evaluator, true);
+            this.orderByExpr = orderByExpr;
+            this.ascending = ascending;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * <p>Order always needs to join the fact table, to evaluate the
+         * measure.
+         */
+        protected boolean isJoinRequired() {
+            return true;
+        }
+
+        public void addConstraint(
+            SqlQuery sqlQuery,
+            RolapCube baseCube,
+            AggStar aggStar)
+        {
+            RolapNativeSql sql =
+                new RolapNativeSql(
+                    sqlQuery, aggStar, getEvaluator(), null);
+            final String orderBySql =
+                sql.generateTopCountOrderBy(orderByExpr);
+            final String orderByAlias =
+                sqlQuery.addSelect(orderBySql, null);
+            // Empty values sort before all other values, as in
+            // FunUtil.compareValues: first if ascending, last if descending.
+            sqlQuery.addOrderBy(
+                orderBySql,
+                orderByAlias,
+                ascending,
+                true,
+                true,
+                !ascending);
+            super.addConstraint(sqlQuery, baseCube, aggStar);
+        }
+
+        public Object getCacheKey() {
+            List<Object> key = new ArrayList<Object>();
+            key.add(super.getCacheKey());
+            // Note: need to use string in order for caching to work
+            key.add(orderByExpr.toString());
+            key.add(ascending);
+
+            if (this.getEvaluator() instanceof RolapEvaluator) {
+                key.add(
+                    ((RolapEvaluator)this.getEvaluator())
+                    .getSlicerMembers());
+            }
+            return key;
+        }
+    }
+
+    protected boolean restrictMemberTypes() {
+        return true;
+    }
+
+    NativeEvaluator createEvaluator(
+        RolapEvaluator evaluator,
+        FunDef fun,
+        Exp[] args)
+    {
+        if (!isEnabled()) {
+            return null;
+        }
+        if (!OrderConstraint.isValidContext(
+                evaluator, restrictMemberTypes()))
+        {
+            return null;
+        }
+
+        // is this "Order(<set>, <measure>, BASC|BDESC)"
+        if (!"Order".equalsIgnoreCase(fun.getName())) {
+            return null;
+        }
+        if (args.length != 3 || !(args[2] instanceof Literal)) {
+            return null;
+        }
+        final String flag = String.valueOf(((Literal) args[2]).getValue());
+        final boolean ascending;
+        if ("BASC".equalsIgnoreCase(flag)) {
+            ascending = true;
+        } else if ("BDESC".equalsIgnoreCase(flag)) {
+            ascending = false;
+        } else {
+            // ASC and DESC keep the hierarchy, which SQL cannot do.
+            return null;
+        }
+
+        // Members without fact rows are not in the SQL result, so they
+        // must be ones that the context would eliminate.
+        if (!evaluator.isNonEmpty() || evaluator.getCube().isVirtual()) {
+            return null;
+        }
+
+        // The sort key must be a stored measure. Distinct-count measures
+        // cannot be rolled up from an aggregate table.
+        final Exp orderByExpr = args[1];
+        if (!(orderByExpr instanceof MemberExpr)) {
+            return null;
+        }
+        final Member member = ((MemberExpr) orderByExpr).getMember();
+        if (!(member instanceof RolapStoredMeasure)
+            || ((RolapStoredMeasure) member).getAggregator().isDistinct())
+        {
+            return null;
+        }
+
+        // extract the set expression
+        List<CrossJoinArg[]> allArgs =
+            crossJoinArgFactory().checkCrossJoinArg(evaluator, args[0]);
+
+        // checkCrossJoinArg returns a list of CrossJoinArg arrays.  The first
+        // array is the CrossJoin dimensions.  The second array, if any,
+        // contains additional constraints on the dimensions. If either the
+        // list or the first array is null, then native cross join is not
+        // feasible.
+        if (allArgs == null || allArgs.isEmpty() || allArgs.get(0) == null) {
+            return null;
+        }
+
+        CrossJoinArg[] cjArgs = allArgs.get(0);
+        if (isPreferInterpreter(cjArgs, false)) {
+            return null;
+        }
+
+        // Calculated members would be appended to the SQL result, out of
+        // order.
+        for (CrossJoinArg arg : cjArgs) {
+            if (arg instanceof MemberListCrossJoinArg
+                && ((MemberListCrossJoinArg) arg).hasCalcMembers())
+            {
+                return null;
+            }
+        }
+        if (SqlConstraintUtils.containsCalculatedMember(
+                evaluator.getNonAllMembers(), true))
+        {
+            return null;
+        }
+
+        // Need to generate the ORDER BY clause to determine whether or not
+        // it can be created. The order could change to use an aggregate
+        // table later in evaluation.
+        SchemaReader schemaReader = evaluator.getSchemaReader();
+        DataSource ds = schemaReader.getDataSource();
+        SqlQuery sqlQuery = SqlQuery.newQuery(ds, "NativeOrder");
+        RolapNativeSql sql =
+            new RolapNativeSql(
+                sqlQuery, null, evaluator, null);
+        if (sql.generateTopCountOrderBy(orderByExpr) == null) {
+            return null;
+        }
+
+        LOGGER.debug("using native order");
+        final int savepoint = evaluator.savepoint();
+        try {
+            overrideContext(evaluator, cjArgs, sql.getStoredMeasure());
+
+            CrossJoinArg[] combinedArgs = cjArgs;
+            if (allArgs.size() == 2) {
+                CrossJoinArg[] predicateArgs = allArgs.get(1);
+                if (predicateArgs != null) {
+                    // Combined the CJ and the additional predicate args
+                    // to form the TupleConstraint.
+                    combinedArgs =
+                        Util.appendArrays(cjArgs, predicateArgs);
+                }
+            }
+            TupleConstraint constraint =
+                new OrderConstraint(
+                    combinedArgs, evaluator, orderByExpr, ascending);
+            return new SetEvaluator(cjArgs, schemaReader, constraint);
+        } finally {
+            evaluator.restore(savepoint);
+        }
+    }
+}
+
+// End RolapNativeOrder.java
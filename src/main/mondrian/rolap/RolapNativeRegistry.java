@@ -35,6 +35,10 @@ public class RolapNativeRegistry extends RolapNative {
         register("CrossJoin".toUpperCase(), new RolapNativeCrossJoin());
         register("TopCount".toUpperCase(), new RolapNativeTopCount());
         register("Filter".toUpperCase(), new RolapNativeFilter());
+        register("Order".toUpperCase(), new RolapNativeOrder());
+        register("Head".toUpperCase(), new RolapNativeSubset());
+        register("Subset".toUpperCase(), new RolapNativeSubset());
+        register("Count".toUpperCase(), new RolapNativeCount());
     }
 
     /**
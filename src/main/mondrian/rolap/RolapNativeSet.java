@@ -157,6 +157,7 @@ public abstract class RolapNativeSet extends RolapNative {
         private final SchemaReaderWithMemberReaderAvailable schemaReader;
         private final TupleConstraint constraint;
         private int maxRows = 0;
+        private int offset = 0;
 
         public SetEvaluator(
             CrossJoinArg[] args,
@@ -200,6 +201,7 @@ public abstract class RolapNativeSet extends RolapNative {
 
         protected TupleList executeList(final SqlTupleReader tr) {
             tr.setMaxRows(maxRows);
+            tr.setOffset(offset);
             for (CrossJoinArg arg : args) {
                 addLevel(tr, arg);
             }
@@ -219,6 +221,7 @@ public abstract class RolapNativeSet extends RolapNative {
             key.add(tr.getCacheKey());
             key.addAll(Arrays.asList(args));
             key.add(maxRows);
+            key.add(offset);
 
             TupleList result = cache.get(key);
             boolean hasEnumTargets = (tr.getEnumTargetCount() > 0);
@@ -389,6 +392,16 @@ public abstract class RolapNativeSet extends RolapNative {
         void setMaxRows(int maxRows) {
             this.maxRows = maxRows;
         }
+
+        /**
+         * Sets the number of leading rows to skip. Together with
+         * {@link #setMaxRows(int)}, defines a window on the result.
+         *
+         * @param offset Number of rows to skip
+         */
+        void setOffset(int offset) {
+            this.offset = offset;
+        }
     }
 
     /**
@@ -483,7 +496,7 @@ public abstract class RolapNativeSet extends RolapNative {
         MemberReader getMemberReader(Hierarchy hierarchy);
     }
 
-    private static class SchemaReaderWithMemberReaderCache
+    static class SchemaReaderWithMemberReaderCache
         extends DelegatingSchemaReader
         implements SchemaReaderWithMemberReaderAvailable
     {
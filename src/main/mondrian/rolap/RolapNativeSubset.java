@@ -0,0 +1,239 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2005-2014 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import mondrian.mdx.ResolvedFunCall;
+import mondrian.olap.*;
+import mondrian.rolap.sql.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Computes a Head(set, count) or Subset(set, start, count) in SQL.
+ *
+ * <p>The set is read by the same tuple SQL as a native cross join, and the
+ * window is pushed into the query: the count becomes the JDBC maximum number
+ * of rows, and the start becomes an OFFSET clause, if the dialect supports
+ * one (see {@link mondrian.spi.Dialect#supportsLimitAndOffset()}). So
+ * reading a page deep into a large level costs about the same as reading the
+ * first page. If the dialect cannot skip rows, {@link SqlTupleReader} skips
+ * them as it reads the result set, without creating members.</p>
+ *
+ * <p>The tuple SQL joins to the fact table, so it only returns tuples that
+ * have fact rows. The window would be in the wrong place if the set also
+ * contained empty tuples, so only a set that is explicitly non-empty is
+ * evaluated natively: <code>NonEmpty(&lt;set&gt;)</code> or
+ * <code>NonEmptyCrossJoin(&lt;set&gt;, &lt;set&gt;)</code>.</p>
+ */
+public class RolapNativeSubset extends RolapNativeSet {
+
+    public RolapNativeSubset() {
+        super.setEnabled(
+            MondrianProperties.instance().EnableNativeSubset.get());
+    }
+
+    static class SubsetConstraint extends SetConstraint {
+        public SubsetConstraint(
+            CrossJoinArg[] args,
+            RolapEvaluator evaluator)
+        {
+            super(args, evaluator, true);
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * <p>Subset always needs to join the fact table, so that the window
+         * is applied to non-empty tuples only.
+         */
+        protected boolean isJoinRequired() {
+            return true;
+        }
+
+        public Object getCacheKey() {
+            List<Object> key = new ArrayList<Object>();
+            key.add(super.getCacheKey());
+            if (this.getEvaluator() instanceof RolapEvaluator) {
+                key.add(
+                    ((RolapEvaluator)this.getEvaluator())
+                    .getSlicerMembers());
+            }
+            return key;
+        }
+    }
+
+    protected boolean restrictMemberTypes() {
+        return true;
+    }
+
+    NativeEvaluator createEvaluator(
+        RolapEvaluator evaluator,
+        FunDef fun,
+        Exp[] args)
+    {
+        if (!isEnabled()) {
+            return null;
+        }
+        if (!SubsetConstraint.isValidContext(
+                evaluator, restrictMemberTypes()))
+        {
+            return null;
+        }
+
+        // is this "Head(<set>[, <count>])" or
+        // "Subset(<set>, <start>[, <count>])", with literal arguments
+        final int start;
+        final int count;
+        if ("Head".equalsIgnoreCase(fun.getName())) {
+            start = 0;
+            if (args.length == 1) {
+                count = 1;
+            } else if (args.length == 2) {
+                count = intLiteral(args[1]);
+            } else {
+                return null;
+            }
+            if (count <= 0) {
+                return null;
+            }
+        } else if ("Subset".equalsIgnoreCase(fun.getName())) {
+            if (args.length < 2 || args.length > 3) {
+                return null;
+            }
+            start = intLiteral(args[1]);
+            if (start < 0) {
+                return null;
+            }
+            if (args.length == 3) {
+                count = intLiteral(args[2]);
+                if (count <= 0) {
+                    return null;
+                }
+            } else {
+                // no limit
+                count = 0;
+            }
+        } else {
+            return null;
+        }
+
+        // The set must be explicitly non-empty, so that it contains the
+        // same tuples as the SQL, which joins to the fact table.
+        if (!(args[0] instanceof ResolvedFunCall)) {
+            return null;
+        }
+        final ResolvedFunCall setCall = (ResolvedFunCall) args[0];
+        final Exp setExp;
+        if ("NonEmpty".equalsIgnoreCase(setCall.getFunName())
+            && setCall.getArgCount() == 1)
+        {
+            setExp = setCall.getArg(0);
+        } else if ("NonEmptyCrossJoin".equalsIgnoreCase(
+                setCall.getFunName()))
+        {
+            setExp = setCall;
+        } else {
+            return null;
+        }
+
+        // Emptiness is decided by the fact table of a single cube, for the
+        // current measure.
+        if (evaluator.getCube().isVirtual()) {
+            return null;
+        }
+        final Member measure = evaluator.getMembers()[0];
+        if (!(measure instanceof RolapStoredMeasure)) {
+            return null;
+        }
+
+        // extract the set expression
+        List<CrossJoinArg[]> allArgs =
+            crossJoinArgFactory().checkCrossJoinArg(evaluator, setExp);
+
+        // checkCrossJoinArg returns a list of CrossJoinArg arrays.  The first
+        // array is the CrossJoin dimensions.  The second array, if any,
+        // contains additional constraints on the dimensions. If either the
+        // list or the first array is null, then native cross join is not
+        // feasible.
+        if (allArgs == null || allArgs.isEmpty() || allArgs.get(0) == null) {
+            return null;
+        }
+
+        CrossJoinArg[] cjArgs = allArgs.get(0);
+        if (isPreferInterpreter(cjArgs, false)) {
+            return null;
+        }
+
+        // Calculated members would be appended to the SQL result, after the
+        // window. Parent-child levels are read in hierarchical order, which
+        // the SQL does not produce.
+        for (CrossJoinArg arg : cjArgs) {
+            if (arg instanceof MemberListCrossJoinArg
+                && ((MemberListCrossJoinArg) arg).hasCalcMembers())
+            {
+                return null;
+            }
+            if (arg.getLevel() != null && arg.getLevel().isParentChild()) {
+                return null;
+            }
+        }
+        if (SqlConstraintUtils.containsCalculatedMember(
+                evaluator.getNonAllMembers(), true))
+        {
+            return null;
+        }
+
+        LOGGER.debug("using native subset");
+        final int savepoint = evaluator.savepoint();
+        try {
+            overrideContext(
+                evaluator, cjArgs, (RolapStoredMeasure) measure);
+
+            CrossJoinArg[] combinedArgs = cjArgs;
+            if (allArgs.size() == 2) {
+                CrossJoinArg[] predicateArgs = allArgs.get(1);
+                if (predicateArgs != null) {
+                    // Combined the CJ and the additional predicate args
+                    // to form the TupleConstraint.
+                    combinedArgs =
+                        Util.appendArrays(cjArgs, predicateArgs);
+                }
+            }
+            TupleConstraint constraint =
+                new SubsetConstraint(combinedArgs, evaluator);
+            SetEvaluator sev =
+                new SetEvaluator(
+                    cjArgs, evaluator.getSchemaReader(), constraint);
+            sev.setMaxRows(count);
+            sev.setOffset(start);
+            return sev;
+        } finally {
+            evaluator.restore(savepoint);
+        }
+    }
+
+    /**
+     * Returns the value of an integer literal, or -1 if the expression is
+     * not a literal.
+     */
+    private static int intLiteral(Exp exp) {
+        if (!(exp instanceof Literal)) {
+            return -1;
+        }
+        final Object value = ((Literal) exp).getValue();
+        if (!(value instanceof Number)) {
+            return -1;
+        }
+        return ((Number) value).intValue();
+    }
+}
+
+// End RolapNativeSubset.java
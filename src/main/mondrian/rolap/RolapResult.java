@@ -22,6 +22,7 @@ import mondrian.olap.type.SetType;
 import mondrian.resource.MondrianResource;
 import mondrian.rolap.agg.AggregationManager;
 import mondrian.rolap.agg.CellRequestQuantumExceededException;
+import mondrian.rolap.agg.SegmentWithData;
 import mondrian.server.Execution;
 import mondrian.server.Locus;
 import mondrian.spi.CellFormatter;
@@ -30,6 +31,7 @@ import mondrian.util.*;
 import org.apache.log4j.Logger;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 
 /**
@@ -42,6 +44,18 @@ public class RolapResult extends ResultBase {
 
     static final Logger LOGGER = Logger.getLogger(ResultBase.class);
 
+    /**
+     * Pool of threads that evaluate axes in parallel. Created on first use;
+     * see {@link MondrianProperties#AxisEvaluationThreads}.
+     */
+    private static ExecutorService axisExecutor;
+
+    /**
+     * Pool of threads that evaluate cells in parallel. Created on first use;
+     * see {@link MondrianProperties#CellEvaluationThreads}.
+     */
+    private static ExecutorService cellExecutor;
+
     private RolapEvaluator evaluator;
     RolapEvaluator slicerEvaluator;
     private final CellKey point;
@@ -49,6 +63,7 @@ public class RolapResult extends ResultBase {
     private CellInfoContainer cellInfos;
     private FastBatchingCellReader batchingReader;
     private final CellReader aggregatingReader;
+    private final AggregationManager aggMgr;
     private Modulos modulos = null;
     private final int maxEvalDepth =
             MondrianProperties.instance().MaxEvalDepth.get();
@@ -79,6 +94,7 @@ public class RolapResult extends ResultBase {
             execution.getMondrianStatement()
                 .getMondrianConnection()
                 .getServer().getAggregationManager();
+        this.aggMgr = aggMgr;
         this.aggregatingReader = aggMgr.getCacheCellReader();
         final int expDeps =
             MondrianProperties.instance().TestExpDependencies.get();
@@ -99,8 +115,11 @@ public class RolapResult extends ResultBase {
 
         this.cellInfos =
             (query.axes.length > 4)
-                ? new CellInfoMap(point)
+                ? new CellInfoMap()
                 : new CellInfoPool(query.axes.length);
+        if (evaluator.root.concurrent) {
+            this.cellInfos = new SynchronizedCellInfoContainer(cellInfos);
+        }
 
         if (!execute) {
             return;
@@ -283,11 +302,16 @@ public class RolapResult extends ResultBase {
             // reset to total member count
             axisMembers.clearTotalCellCount();
 
-            for (int i = 0; i < axes.length; i++) {
-                final QueryAxis axis = query.axes[i];
-                final Calc calc = query.axisCalcs[i];
-                loadMembers(
-                    emptyNonAllMembers, evaluator, axis, calc, axisMembers);
+            final boolean parallelAxes = canEvaluateAxesInParallel();
+            if (parallelAxes) {
+                loadMembersInParallel(emptyNonAllMembers, axisMembers);
+            } else {
+                for (int i = 0; i < axes.length; i++) {
+                    final QueryAxis axis = query.axes[i];
+                    final Calc calc = query.axisCalcs[i];
+                    loadMembers(
+                        emptyNonAllMembers, evaluator, axis, calc, axisMembers);
+                }
             }
 
             if (!axisMembers.isEmpty()) {
@@ -410,56 +434,11 @@ public class RolapResult extends ResultBase {
             // Execute Axes
             //
             final int savepoint = evaluator.savepoint();
-            do {
-                try {
-                    boolean redo;
-                    do {
-                        evaluator.restore(savepoint);
-                        redo = false;
-                        for (int i = 0; i < axes.length; i++) {
-                            QueryAxis axis = query.axes[i];
-                            final Calc calc = query.axisCalcs[i];
-                            TupleIterable tupleIterable =
-                                evalExecute(
-                                    nonAllMembers,
-                                    nonAllMembers.size() - 1,
-                                    evaluator,
-                                    axis,
-                                    calc);
-
-                            if (!nonAllMembers.isEmpty()) {
-                                final TupleIterator tupleIterator =
-                                    tupleIterable.tupleIterator();
-                                if (tupleIterator.hasNext()) {
-                                    List<Member> tuple0 = tupleIterator.next();
-                                    // Only need to process the first tuple on
-                                    // the axis.
-                                    for (Member m : tuple0) {
-                                        if (m.isCalculated()) {
-                                            CalculatedMeasureVisitor visitor =
-                                                new CalculatedMeasureVisitor();
-                                            m.getExpression().accept(visitor);
-                                            Dimension dimension =
-                                                visitor.dimension;
-                                            if (removeDimension(
-                                                    dimension, nonAllMembers))
-                                            {
-                                                redo = true;
-                                            }
-                                        }
-                                    }
-                                }
-                            }
-                            this.axes[i] =
-                                new RolapAxis(
-                                    TupleCollections.materialize(
-                                        tupleIterable, false));
-                        }
-                    } while (redo);
-                } catch (CellRequestQuantumExceededException e) {
-                    // Safe to ignore. Need to call 'phase' and loop again.
-                }
-            } while (phase());
+            if (parallelAxes && nonAllMembers.isEmpty()) {
+                executeAxesInParallel();
+            } else {
+                executeAxes(nonAllMembers, savepoint);
+            }
 
             evaluator.restore(savepoint);
 
@@ -516,6 +495,373 @@ public class RolapResult extends ResultBase {
         }
     }
 
+    /**
+     * Evaluates each axis of the query, in the current thread, and builds
+     * its {@link RolapAxis}. Loops until all cells needed by the axes have
+     * been loaded.
+     */
+    private void executeAxes(List<List<Member>> nonAllMembers, int savepoint) {
+        do {
+            try {
+                boolean redo;
+                do {
+                    evaluator.restore(savepoint);
+                    redo = false;
+                    for (int i = 0; i < axes.length; i++) {
+                        QueryAxis axis = query.axes[i];
+                        final Calc calc = query.axisCalcs[i];
+                        TupleIterable tupleIterable =
+                            evalExecute(
+                                nonAllMembers,
+                                nonAllMembers.size() - 1,
+                                evaluator,
+                                axis,
+                                calc);
+
+                        if (!nonAllMembers.isEmpty()) {
+                            final TupleIterator tupleIterator =
+                                tupleIterable.tupleIterator();
+                            if (tupleIterator.hasNext()) {
+                                List<Member> tuple0 = tupleIterator.next();
+                                // Only need to process the first tuple on
+                                // the axis.
+                                for (Member m : tuple0) {
+                                    if (m.isCalculated()) {
+                                        CalculatedMeasureVisitor visitor =
+                                            new CalculatedMeasureVisitor();
+                                        m.getExpression().accept(visitor);
+                                        Dimension dimension =
+                                            visitor.dimension;
+                                        if (removeDimension(
+                                                dimension, nonAllMembers))
+                                        {
+                                            redo = true;
+                                        }
+                                    }
+                                }
+                            }
+                        }
+                        this.axes[i] =
+                            new RolapAxis(
+                                TupleCollections.materialize(
+                                    tupleIterable, false));
+                    }
+                } while (redo);
+            } catch (CellRequestQuantumExceededException e) {
+                // Safe to ignore. Need to call 'phase' and loop again.
+            }
+        } while (phase());
+    }
+
+    /**
+     * Returns whether the axes of the query can be evaluated in parallel.
+     *
+     * <p>Parallel evaluation must be enabled (see
+     * {@link MondrianProperties#AxisEvaluationThreads}), there must be more
+     * than one axis, and the axes must not depend on each other. Axes are
+     * assumed to depend on each other if the query uses named sets or
+     * parameters; these are evaluated on first use and the result is shared
+     * by all axes.</p>
+     */
+    private boolean canEvaluateAxesInParallel() {
+        if (axes.length < 2
+            || !evaluator.root.concurrent
+            || evaluator instanceof RolapProfilingEvaluator
+            || evaluator instanceof RolapDependencyTestingEvaluator
+            || query.getParameters().length > 0)
+        {
+            return false;
+        }
+        for (Formula formula : query.getFormulas()) {
+            if (!formula.isMember()) {
+                return false;
+            }
+        }
+        final AxisIndependenceVisitor visitor = new AxisIndependenceVisitor();
+        for (QueryAxis axis : query.axes) {
+            axis.getSet().accept(visitor);
+        }
+        if (query.getSlicerAxis() != null) {
+            query.getSlicerAxis().getSet().accept(visitor);
+        }
+        for (Member member : evaluator.root.defaultMembers) {
+            visitor.visitMember(member);
+        }
+        return visitor.independent;
+    }
+
+    /**
+     * Parallel version of the first pass of the "Determine Axes" step. Loads
+     * the members of each axis in a separate thread, then combines them, in
+     * axis order, into {@code axisMembers}.
+     */
+    private void loadMembersInParallel(
+        final List<List<Member>> nonAllMembers,
+        AxisMemberList axisMembers)
+    {
+        final List<Object> axisMemberLists =
+            evaluateAxesInParallel(
+                new AxisTask() {
+                    Object evaluate(
+                        int axisOrdinal,
+                        RolapEvaluator evaluator,
+                        FastBatchingCellReader reader)
+                    {
+                        final AxisMemberList list = new AxisMemberList();
+                        loadMembers(
+                            nonAllMembers,
+                            evaluator,
+                            query.axes[axisOrdinal],
+                            query.axisCalcs[axisOrdinal],
+                            list,
+                            reader);
+                        return list;
+                    }
+                });
+        for (Object list : axisMemberLists) {
+            axisMembers.merge((AxisMemberList) list);
+        }
+    }
+
+    /**
+     * Parallel version of {@link #executeAxes}. Only valid if there are no
+     * hierarchies without an 'all' member; otherwise axes may need to be
+     * re-evaluated.
+     */
+    private void executeAxesInParallel() {
+        final List<Object> tupleLists =
+            evaluateAxesInParallel(
+                new AxisTask() {
+                    Object evaluate(
+                        int axisOrdinal,
+                        RolapEvaluator evaluator,
+                        FastBatchingCellReader reader)
+                    {
+                        final QueryAxis axis = query.axes[axisOrdinal];
+                        final Calc calc = query.axisCalcs[axisOrdinal];
+                        TupleList tupleList = null;
+                        do {
+                            try {
+                                tupleList =
+                                    TupleCollections.materialize(
+                                        executeAxis(
+                                            evaluator, axis, calc, true, null),
+                                        false);
+                            } catch (CellRequestQuantumExceededException e) {
+                                // Safe to ignore. Need to call 'phase' and
+                                // loop again.
+                            }
+                        } while (phase(reader));
+                        return tupleList;
+                    }
+                });
+        for (int i = 0; i < axes.length; i++) {
+            final TupleList tupleList = (TupleList) tupleLists.get(i);
+            if (tupleList != null) {
+                this.axes[i] = new RolapAxis(tupleList);
+            }
+        }
+    }
+
+    /**
+     * Performs a task for each axis of the query, in parallel.
+     *
+     * <p>Each task has its own evaluator and its own cell reader, so it can
+     * load the cells it needs without waiting for the other axes.</p>
+     *
+     * @param task Task
+     * @return Result of the task for each axis, in axis order
+     */
+    private List<Object> evaluateAxesInParallel(AxisTask task) {
+        // Create the evaluators in this thread; push() reads the state of
+        // the parent evaluator.
+        final List<AxisCallable> callables = new ArrayList<AxisCallable>();
+        for (int i = 0; i < axes.length; i++) {
+            callables.add(new AxisCallable(i, evaluator.push(), task));
+        }
+        return runInParallel(getAxisExecutor(), callables, "Evaluating axes");
+    }
+
+    /**
+     * Returns whether the cells of the query can be evaluated in parallel,
+     * by {@link #executeStripesInParallel}.
+     *
+     * @param evaluator Evaluator
+     */
+    private boolean canEvaluateCellsInParallel(
+        RolapEvaluator evaluator,
+        Query query)
+    {
+        if (axes.length == 0
+            || MondrianProperties.instance().CellEvaluationThreads.get() <= 0
+            || !evaluator.root.concurrent
+            || evaluator instanceof RolapProfilingEvaluator
+            || evaluator instanceof RolapDependencyTestingEvaluator)
+        {
+            return false;
+        }
+        for (int i = 0; i < axes.length; i++) {
+            final TupleList tupleList = ((RolapAxis) axes[i]).getTupleList();
+            if (isAxisHighCardinality(i, tupleList)) {
+                return false;
+            }
+        }
+        if (((RolapAxis) axes[axes.length - 1]).getTupleList().size() < 2) {
+            return false;
+        }
+        // Distinct-count measures modify visual-total members as cells are
+        // evaluated; see processDistinctMeasureExpr.
+        for (Member measure : query.getMeasuresMembers()) {
+            if (measure instanceof RolapBaseCubeMeasure
+                && ((RolapBaseCubeMeasure) measure).getAggregator()
+                == RolapAggregator.DistinctCount)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parallel version of {@link #executeStripe} for the outermost axis.
+     *
+     * <p>Divides the positions of the outermost axis into stripes, and
+     * evaluates the cells of each stripe in a separate thread, with its own
+     * evaluator and cell reader. Then gives the cell requests of all stripes
+     * to {@link #batchingReader}, so that they are loaded in the next
+     * phase.</p>
+     *
+     * @param evaluator Evaluator
+     * @param pos Cell position
+     * @return Whether any stripe stopped early because it had requested
+     *     too many cells
+     */
+    private boolean executeStripesInParallel(
+        RolapEvaluator evaluator,
+        int[] pos)
+    {
+        final int axisOrdinal = axes.length - 1;
+        final TupleList tupleList =
+            ((RolapAxis) axes[axisOrdinal]).getTupleList();
+        final int tupleCount = tupleList.size();
+        final int stripeCount =
+            Math.min(
+                tupleCount,
+                MondrianProperties.instance().CellEvaluationThreads.get());
+        final List<CellStripe> stripes = new ArrayList<CellStripe>();
+        for (int i = 0; i < stripeCount; i++) {
+            stripes.add(
+                new CellStripe(
+                    tupleList,
+                    (int) ((long) tupleCount * i / stripeCount),
+                    (int) ((long) tupleCount * (i + 1) / stripeCount),
+                    evaluator.push(),
+                    pos));
+        }
+        runInParallel(getCellExecutor(), stripes, "Loading cells");
+        boolean quantumExceeded = false;
+        for (CellStripe stripe : stripes) {
+            batchingReader.merge(stripe.reader);
+            quantumExceeded |= stripe.quantumExceeded;
+        }
+        return quantumExceeded;
+    }
+
+    /**
+     * Runs tasks in parallel, on behalf of this result's execution, and
+     * returns their results.
+     *
+     * <p>The first task runs in the current thread. Each task runs with a
+     * {@link Locus} of this execution, checks for cancel and timeout before
+     * it starts, and starts with the segments that the current thread has
+     * loaded. While tasks are running, evaluators that share this result's
+     * root do not cache invalid results. If a task fails, the other tasks are
+     * canceled and the exception is rethrown.</p>
+     *
+     * @param executor Executor
+     * @param tasks Tasks
+     * @param message Message for the locus of each task
+     * @return Result of each task, in order
+     */
+    private List<Object> runInParallel(
+        ExecutorService executor,
+        List<? extends Callable<Object>> tasks,
+        String message)
+    {
+        final List<SegmentWithData> segments =
+            ((RolapCube) query.getCube()).getLocalSegments();
+        final List<Future<Object>> futures = new ArrayList<Future<Object>>();
+        final List<Object> results = new ArrayList<Object>();
+        evaluator.clearExpResultCache(false);
+        evaluator.root.parallel = true;
+        try {
+            final FutureTask<Object> first =
+                new FutureTask<Object>(
+                    new WorkerTask(tasks.get(0), segments, message));
+            futures.add(first);
+            for (Callable<Object> task : tasks.subList(1, tasks.size())) {
+                futures.add(
+                    executor.submit(new WorkerTask(task, segments, message)));
+            }
+            first.run();
+            for (Future<Object> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Util.newError(e, "Interrupted while " + message);
+        } catch (ExecutionException e) {
+            // If the statement was canceled or timed out, report that rather
+            // than the failure it caused in a worker.
+            execution.checkCancelOrTimeout();
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw Util.newError(cause, "Error while " + message);
+            }
+        } finally {
+            for (Future<Object> future : futures) {
+                future.cancel(true);
+            }
+            evaluator.root.parallel = false;
+        }
+    }
+
+    private static synchronized ExecutorService getAxisExecutor() {
+        if (axisExecutor == null) {
+            axisExecutor =
+                createExecutor(
+                    MondrianProperties.instance().AxisEvaluationThreads.get(),
+                    "mondrian.rolap.RolapResult$axisExecutor");
+        }
+        return axisExecutor;
+    }
+
+    private static synchronized ExecutorService getCellExecutor() {
+        if (cellExecutor == null) {
+            cellExecutor =
+                createExecutor(
+                    MondrianProperties.instance().CellEvaluationThreads.get(),
+                    "mondrian.rolap.RolapResult$cellExecutor");
+        }
+        return cellExecutor;
+    }
+
+    private static ExecutorService createExecutor(
+        int threadCount,
+        String name)
+    {
+        // If all threads are busy, the task runs in the query's thread. A
+        // query never waits for a thread.
+        return Util.getExecutorService(
+            threadCount, 0, 1, name,
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
     /**
      * Sets slicerAxis to a dummy placeholder RolapAxis containing
      * a single item TupleList with the null member of hierarchy.
@@ -555,13 +901,17 @@ public class RolapResult extends ResultBase {
     }
 
     private boolean phase() {
-        if (batchingReader.isDirty()) {
+        return phase(batchingReader);
+    }
+
+    private boolean phase(FastBatchingCellReader reader) {
+        if (reader.isDirty()) {
             execution.tracePhase(
-                batchingReader.getHitCount(),
-                batchingReader.getMissCount(),
-                batchingReader.getPendingCount());
+                reader.getHitCount(),
+                reader.getMissCount(),
+                reader.getPendingCount());
 
-            return batchingReader.loadAggregations();
+            return reader.loadAggregations();
         } else {
             return false;
         }
@@ -572,6 +922,17 @@ public class RolapResult extends ResultBase {
         super.close();
     }
 
+    /**
+     * Returns whether any axis is high-cardinality. The cells of such an
+     * axis are evaluated when they are accessed, not when the result is
+     * created.
+     *
+     * @return Whether any axis is high-cardinality
+     */
+    boolean hasHighCardinalityAxis() {
+        return positionsHighCardinality.containsValue(Boolean.TRUE);
+    }
+
     protected boolean removeDimension(
         Dimension dimension,
         List<List<Member>> memberLists)
@@ -616,6 +977,200 @@ public class RolapResult extends ResultBase {
         }
     }
 
+    /**
+     * Visitor that decides whether an axis can be evaluated at the same time
+     * as the other axes. It cannot if it references a named set or a
+     * parameter, or calls <code>StrToSet</code> (whose argument may
+     * reference a named set), directly or via a calculated member.
+     */
+    private static class AxisIndependenceVisitor extends MdxVisitorImpl {
+        private final Set<Member> visitedMembers = new HashSet<Member>();
+        boolean independent = true;
+
+        AxisIndependenceVisitor() {
+        }
+
+        public Object visit(ResolvedFunCall call) {
+            if (call.getFunName().equalsIgnoreCase("StrToSet")) {
+                independent = false;
+            }
+            return null;
+        }
+
+        public Object visit(ParameterExpr parameterExpr) {
+            independent = false;
+            return null;
+        }
+
+        public Object visit(NamedSetExpr namedSetExpr) {
+            independent = false;
+            return null;
+        }
+
+        public Object visit(MemberExpr memberExpr) {
+            visitMember(memberExpr.getMember());
+            return null;
+        }
+
+        void visitMember(Member member) {
+            if (independent
+                && member.isCalculated()
+                && visitedMembers.add(member))
+            {
+                final Exp exp = member.getExpression();
+                if (exp != null) {
+                    exp.accept(this);
+                }
+            }
+        }
+    }
+
+    /**
+     * Work to be done for one axis by {@link #evaluateAxesInParallel}.
+     */
+    private static abstract class AxisTask {
+        /**
+         * Performs the work for an axis.
+         *
+         * @param axisOrdinal Ordinal of axis
+         * @param evaluator Evaluator, private to this task
+         * @param reader Cell reader, private to this task; the evaluator
+         *     reads cells through it
+         * @return Result
+         */
+        abstract Object evaluate(
+            int axisOrdinal,
+            RolapEvaluator evaluator,
+            FastBatchingCellReader reader);
+    }
+
+    /**
+     * Performs an {@link AxisTask} with a cell reader of its own.
+     */
+    private class AxisCallable implements Callable<Object> {
+        private final int axisOrdinal;
+        private final RolapEvaluator evaluator;
+        private final AxisTask task;
+
+        AxisCallable(int axisOrdinal, RolapEvaluator evaluator, AxisTask task) {
+            this.axisOrdinal = axisOrdinal;
+            this.evaluator = evaluator;
+            this.task = task;
+        }
+
+        public Object call() {
+            final FastBatchingCellReader reader =
+                new FastBatchingCellReader(
+                    execution, (RolapCube) query.getCube(), aggMgr);
+            evaluator.setCellReader(reader);
+            return task.evaluate(axisOrdinal, evaluator, reader);
+        }
+    }
+
+    /**
+     * Evaluates the cells of a range of positions of the outermost axis,
+     * with an evaluator and a cell reader of its own.
+     */
+    private class CellStripe implements Callable<Object> {
+        private final TupleList tupleList;
+        private final int start;
+        private final int end;
+        private final RolapEvaluator evaluator;
+        private final int[] pos;
+        FastBatchingCellReader reader;
+        boolean quantumExceeded;
+
+        CellStripe(
+            TupleList tupleList,
+            int start,
+            int end,
+            RolapEvaluator evaluator,
+            int[] pos)
+        {
+            this.tupleList = tupleList;
+            this.start = start;
+            this.end = end;
+            this.evaluator = evaluator;
+            this.pos = pos;
+        }
+
+        public Object call() {
+            reader =
+                new FastBatchingCellReader(
+                    execution, (RolapCube) query.getCube(), aggMgr);
+            evaluator.setCellReader(reader);
+            final int axisOrdinal = axes.length - 1;
+            final CellKey point = CellKey.Generator.newCellKey(axes.length);
+            try {
+                for (int i = start; i < end; i++) {
+                    point.setAxis(axisOrdinal, i);
+                    final int savepoint = evaluator.savepoint();
+                    try {
+                        evaluator.setContext(tupleList.get(i));
+                        execution.checkCancelOrTimeout();
+                        executeStripe(axisOrdinal - 1, evaluator, pos, point);
+                    } finally {
+                        evaluator.restore(savepoint);
+                    }
+                }
+            } catch (CellRequestQuantumExceededException e) {
+                // Stop. The cells requested so far will be loaded before
+                // the next pass.
+                quantumExceeded = true;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Runs a task on behalf of this result's execution, possibly in a
+     * thread other than the query's thread.
+     *
+     * <p>Segments are registered in a thread-local cache (see
+     * {@link RolapStar#register}). In a thread other than the query's
+     * thread, the task starts with the segments that the query's thread had
+     * loaded, rather than whatever a previous query left in the thread's
+     * cache; and the cache is cleared when the task ends.</p>
+     */
+    private class WorkerTask implements Callable<Object> {
+        private final Callable<Object> task;
+        private final List<SegmentWithData> segments;
+        private final String message;
+        private final Thread queryThread = Thread.currentThread();
+
+        WorkerTask(
+            Callable<Object> task,
+            List<SegmentWithData> segments,
+            String message)
+        {
+            this.task = task;
+            this.segments = segments;
+            this.message = message;
+        }
+
+        public Object call() throws Exception {
+            final RolapCube cube = (RolapCube) query.getCube();
+            final boolean foreign = Thread.currentThread() != queryThread;
+            final Locus locus = new Locus(execution, null, message);
+            Locus.push(locus);
+            try {
+                if (foreign) {
+                    cube.clearCachedAggregations(true);
+                    for (SegmentWithData segment : segments) {
+                        segment.getStar().register(segment);
+                    }
+                }
+                execution.checkCancelOrTimeout();
+                return task.call();
+            } finally {
+                if (foreign) {
+                    cube.clearCachedAggregations(true);
+                }
+                Locus.pop(locus);
+            }
+        }
+    }
+
     protected boolean replaceNonAllMembers(
         List<List<Member>> nonAllMembers,
         AxisMemberList axisMembers)
@@ -647,9 +1202,21 @@ public class RolapResult extends ResultBase {
         QueryAxis axis,
         Calc calc,
         AxisMemberList axisMembers)
+    {
+        loadMembers(
+            nonAllMembers, evaluator, axis, calc, axisMembers, batchingReader);
+    }
+
+    private void loadMembers(
+        List<List<Member>> nonAllMembers,
+        RolapEvaluator evaluator,
+        QueryAxis axis,
+        Calc calc,
+        AxisMemberList axisMembers,
+        FastBatchingCellReader reader)
     {
         int attempt = 0;
-        evaluator.setCellReader(batchingReader);
+        evaluator.setCellReader(reader);
         while (true) {
             axisMembers.clearAxisCount();
             final int savepoint = evaluator.savepoint();
@@ -670,7 +1237,7 @@ public class RolapResult extends ResultBase {
                 evaluator.restore(savepoint);
             }
 
-            if (!phase()) {
+            if (!phase(reader)) {
                 break;
             } else {
                 // Clear invalid expression result so that the next evaluation
@@ -907,10 +1474,18 @@ public class RolapResult extends ResultBase {
         // evaluator which collects requests.
         int count = 0;
         final int savepoint = evaluator.savepoint();
+        final boolean parallel = canEvaluateCellsInParallel(evaluator, query);
         while (true) {
             evaluator.setCellReader(batchingReader);
             try {
-                executeStripe(query.axes.length - 1, evaluator, pos);
+                if (parallel) {
+                    if (executeStripesInParallel(evaluator, pos)) {
+                        --count;
+                    }
+                } else {
+                    executeStripe(
+                        query.axes.length - 1, evaluator, pos, point);
+                }
             } catch (CellRequestQuantumExceededException e) {
                 // Safe to ignore. Need to call 'phase' and loop again.
                 // Decrement count because it wasn't a recursive formula that
@@ -1035,7 +1610,8 @@ public class RolapResult extends ResultBase {
     private void executeStripe(
         int axisOrdinal,
         RolapEvaluator revaluator,
-        final int[] pos)
+        final int[] pos,
+        CellKey point)
     {
         if (axisOrdinal < 0) {
             RolapAxis axis = (RolapAxis) slicerAxis;
@@ -1166,7 +1742,7 @@ public class RolapResult extends ResultBase {
                     try {
                         revaluator.setContext(tuple);
                         execution.checkCancelOrTimeout();
-                        executeStripe(axisOrdinal - 1, revaluator, pos);
+                        executeStripe(axisOrdinal - 1, revaluator, pos, point);
                     } finally {
                         revaluator.restore(savepoint);
                     }
@@ -1198,7 +1774,7 @@ public class RolapResult extends ResultBase {
                     try {
                         revaluator.setContext(tuple);
                         execution.checkCancelOrTimeout();
-                        executeStripe(axisOrdinal - 1, revaluator, pos);
+                        executeStripe(axisOrdinal - 1, revaluator, pos, point);
                     } finally {
                         revaluator.restore(savepoint);
                     }
@@ -1468,6 +2044,21 @@ public class RolapResult extends ResultBase {
             this.totalCellCount = 1;
         }
 
+        /**
+         * Adds the members collected by another list, and takes its count of
+         * members on the current axis. Lists that were populated for
+         * separate axes are combined in axis order, giving the same result
+         * as if the axes had been loaded into one list.
+         */
+        void merge(AxisMemberList list) {
+            for (Member member : list.members) {
+                if (!members.contains(member)) {
+                    members.add(member);
+                }
+            }
+            this.axisCount = list.axisCount;
+        }
+
         void mergeTupleList(TupleList list) {
             mergeTupleIter(list.tupleCursor());
         }
@@ -1538,9 +2129,9 @@ public class RolapResult extends ResultBase {
          * Maps the names of sets to their values. Populated on demand.
          */
         private final Map<String, RolapSetEvaluator> setEvaluators =
-            new HashMap<String, RolapSetEvaluator>();
+            newMap(concurrent, new HashMap<String, RolapSetEvaluator>());
         private final Map<String, RolapNamedSetEvaluator> namedSetEvaluators =
-            new HashMap<String, RolapNamedSetEvaluator>();
+            newMap(concurrent, new HashMap<String, RolapNamedSetEvaluator>());
 
         final RolapResult result;
         private static final Object CycleSentinel = new Object();
@@ -1877,23 +2468,14 @@ public class RolapResult extends ResultBase {
     /**
      * Implementation of {@link CellInfoContainer} which uses a {@link Map} to
      * store CellInfo Objects.
-     *
-     * <p>Note that the CellKey point instance variable is the same
-     * Object (NOT a copy) that is used and modified during
-     * the recursive calls to executeStripe - the
-     * <code>create</code> method relies on this fact.
      */
     static class CellInfoMap implements CellInfoContainer {
         private final Map<CellKey, CellInfo> cellInfoMap;
-        private final CellKey point;
 
         /**
          * Creates a CellInfoMap
-         *
-         * @param point Cell position
          */
-        CellInfoMap(CellKey point) {
-            this.point = point;
+        CellInfoMap() {
             this.cellInfoMap = new HashMap<CellKey, CellInfo>();
         }
         public int size() {
@@ -1906,7 +2488,7 @@ public class RolapResult extends ResultBase {
             this.cellInfoMap.clear();
         }
         public CellInfo create(int[] pos) {
-            CellKey key = this.point.copy();
+            CellKey key = CellKey.Generator.newCellKey(pos);
             CellInfo ci = this.cellInfoMap.get(key);
             if (ci == null) {
                 ci = new CellInfo(0);
@@ -1920,6 +2502,39 @@ public class RolapResult extends ResultBase {
         }
     }
 
+    /**
+     * Implementation of {@link CellInfoContainer} that wraps another
+     * container and synchronizes access to it, so that cells can be
+     * evaluated in several threads.
+     */
+    static class SynchronizedCellInfoContainer implements CellInfoContainer {
+        private final CellInfoContainer container;
+
+        SynchronizedCellInfoContainer(CellInfoContainer container) {
+            this.container = container;
+        }
+
+        public synchronized int size() {
+            return container.size();
+        }
+
+        public synchronized void trimToSize() {
+            container.trimToSize();
+        }
+
+        public synchronized void clear() {
+            container.clear();
+        }
+
+        public synchronized CellInfo create(int[] pos) {
+            return container.create(pos);
+        }
+
+        public synchronized CellInfo lookup(int[] pos) {
+            return container.lookup(pos);
+        }
+    }
+
     /**
      * Implementation of {@link CellInfoContainer} which uses an
      * {@link ObjectPool} to store {@link CellInfo} Objects.
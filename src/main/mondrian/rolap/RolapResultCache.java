@@ -0,0 +1,658 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.rolap;
+
+import mondrian.olap.*;
+import mondrian.server.Execution;
+import mondrian.server.Statement;
+
+import org.apache.log4j.Logger;
+
+import java.util.*;
+
+/**
+ * Cache of the results of MDX queries, shared by all connections to a
+ * {@link MondrianServer}.
+ *
+ * <p>A result is keyed on the text of the query, unparsed so that
+ * differences in white space and formatting do not matter, and on the
+ * schema checksum, role, locale and parameter values.</p>
+ *
+ * <p>A {@link RolapResult} is not safe for concurrent readers, and it holds
+ * its evaluator, statement and connection. So the cache holds a copy,
+ * {@link Contents}, made when the result is cached: the axes, and the value,
+ * format string, formatted value and standard cell properties of each
+ * cell. Each execution that finds the copy in the cache reads it through
+ * its own {@link CachedResult}; drill-through and write-back use that
+ * execution's statement.</p>
+ *
+ * <p>A cached result is returned until it is flushed, even if the query
+ * calls a function whose value changes over time, such as <code>Now()</code>
+ * or <code>Rnd()</code>. Disable the cache, or flush it, if such queries
+ * must be re-evaluated.</p>
+ *
+ * <p>The cache holds at most
+ * {@link MondrianProperties#ResultCacheMaxMegabytes} of results, estimated
+ * from the size of their copies, and evicts the least recently
+ * used results first. {@link CacheControlImpl} discards the results of a
+ * schema when cells, members or the schema are flushed.</p>
+ *
+ * <p>Some results are never cached: those of a connection that has a
+ * {@link mondrian.olap.Scenario}; those of a statement that is being
+ * profiled; those with high-cardinality axes, whose cells are evaluated
+ * lazily; and those of a schema with a
+ * {@link mondrian.spi.DataSourceChangeListener}. Such a listener is polled
+ * while cells and members are read, so a cached result would hide a
+ * change in the data source.</p>
+ */
+public class RolapResultCache {
+    private static final Logger LOGGER =
+        Logger.getLogger(RolapResultCache.class);
+
+    /**
+     * Estimated size of a cached cell, excluding its formatted value and
+     * properties.
+     */
+    private static final int BYTES_PER_CELL = 64;
+
+    /** Estimated size of a character of a formatted value. */
+    private static final int BYTES_PER_CHAR = 2;
+
+    /** Estimated size of a member reference on an axis. */
+    private static final int BYTES_PER_MEMBER = 16;
+
+    /** Estimated size of a cell property. */
+    private static final int BYTES_PER_PROPERTY = 16;
+
+    /** Estimated fixed size of a result. */
+    private static final int BYTES_PER_RESULT = 2048;
+
+    /**
+     * Standard cell properties whose value comes from the members that
+     * form the context of a cell. They are copied when a result is cached.
+     */
+    private static final List<Property> CONTEXT_PROPERTIES =
+        Arrays.asList(
+            Property.BACK_COLOR,
+            Property.CELL_EVALUATION_LIST,
+            Property.DATATYPE,
+            Property.FONT_FLAGS,
+            Property.FONT_NAME,
+            Property.FONT_SIZE,
+            Property.FORE_COLOR,
+            Property.NON_EMPTY_BEHAVIOR,
+            Property.SOLVE_ORDER);
+
+    // The following fields are guarded by "this".
+    private final LinkedHashMap<Key, Entry> map =
+        new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+    private long byteCount;
+    private long generation;
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * Creates a RolapResultCache.
+     */
+    public RolapResultCache() {
+    }
+
+    /**
+     * Returns whether the result cache is enabled.
+     */
+    private static boolean isEnabled() {
+        return MondrianProperties.instance().ResultCacheMaxMegabytes.get() > 0
+            && !MondrianProperties.instance().DisableCaching.get();
+    }
+
+    /**
+     * Creates the key for an execution, or returns null if its result must
+     * not be cached.
+     *
+     * @param connection Connection
+     * @param execution Execution
+     * @return Key, or null
+     */
+    Key makeKey(RolapConnection connection, Execution execution) {
+        if (!isEnabled()) {
+            return null;
+        }
+        final Statement statement = execution.getMondrianStatement();
+        final Query query = statement.getQuery();
+        final RolapSchema schema = connection.getSchema();
+        if (query == null
+            || connection.getScenario() != null
+            || statement.getProfileHandler() != null
+            || schema.getDataSourceChangeListener() != null)
+        {
+            return null;
+        }
+        final List<Object> parameterValues = new ArrayList<Object>();
+        for (Parameter parameter : query.getParameters()) {
+            parameterValues.add(parameter.getName());
+            parameterValues.add(parameter.getValue());
+        }
+        return new Key(
+            Util.unparse(query),
+            schema,
+            connection.getRole(),
+            connection.getLocale(),
+            parameterValues);
+    }
+
+    /**
+     * Returns the cached result for a key, or null.
+     *
+     * @param key Key
+     * @param execution Execution that will read the result
+     * @return Cached result, or null
+     */
+    Result get(Key key, Execution execution) {
+        final Entry entry;
+        synchronized (this) {
+            entry = map.get(key);
+            if (entry == null) {
+                ++missCount;
+                return null;
+            }
+            ++hitCount;
+        }
+        return new CachedResult(execution, entry.contents);
+    }
+
+    /**
+     * Returns the current generation. The generation changes whenever
+     * results are discarded. Read it before executing a query, and pass it to
+     * {@link #put}.
+     *
+     * @return Generation
+     */
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Adds a result to the cache, unless results have been discarded since
+     * the query started executing, or the result is too large.
+     *
+     * <p>Must be called by the thread executing the query, because it
+     * evaluates the format string and properties of each cell. The caller
+     * should return the returned result instead of the original.</p>
+     *
+     * @param key Key
+     * @param execution Execution that created the result
+     * @param result Result
+     * @param generation Generation when the query started executing
+     * @return Result to return to the caller; a {@link CachedResult} if the
+     *   result was cacheable, otherwise the original result
+     */
+    Result put(
+        Key key,
+        Execution execution,
+        Result result,
+        long generation)
+    {
+        if (!isCacheable(result)) {
+            return result;
+        }
+        final long maxBytes =
+            MondrianProperties.instance().ResultCacheMaxMegabytes.get()
+            * 1024L * 1024L;
+        if (estimateBytes(result) > maxBytes / 2) {
+            LOGGER.debug("Result is too large for result cache");
+            return result;
+        }
+        final Contents contents = new Contents(result);
+        final CachedResult cachedResult = new CachedResult(execution, contents);
+        final long bytes = contents.byteCount;
+        if (bytes > maxBytes / 2) {
+            LOGGER.debug(
+                "Result of " + bytes + " bytes is too large for result cache");
+            return cachedResult;
+        }
+        synchronized (this) {
+            if (generation != this.generation) {
+                return cachedResult;
+            }
+            final Entry previous = map.put(key, new Entry(contents, bytes));
+            if (previous != null) {
+                byteCount -= previous.bytes;
+            }
+            byteCount += bytes;
+            final Iterator<Entry> iterator = map.values().iterator();
+            while (byteCount > maxBytes && iterator.hasNext()) {
+                byteCount -= iterator.next().bytes;
+                iterator.remove();
+            }
+        }
+        return cachedResult;
+    }
+
+    /**
+     * Discards the cached results of a schema.
+     *
+     * @param schema Schema
+     */
+    public synchronized void flush(RolapSchema schema) {
+        ++generation;
+        final Iterator<Map.Entry<Key, Entry>> iterator =
+            map.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<Key, Entry> entry = iterator.next();
+            if (entry.getKey().schema == schema) {
+                byteCount -= entry.getValue().bytes;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Discards all cached results.
+     */
+    public synchronized void flushAll() {
+        ++generation;
+        map.clear();
+        byteCount = 0;
+    }
+
+    /**
+     * Returns the number of cached results.
+     */
+    public synchronized int getResultCount() {
+        return map.size();
+    }
+
+    /**
+     * Returns the estimated size of the cached results, in bytes.
+     */
+    public synchronized long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * Returns the number of lookups that found a result.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of lookups that did not find a result.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    private static RolapResult unwrap(Result result) {
+        while (result instanceof RolapConnection.NonEmptyResult) {
+            result = ((RolapConnection.NonEmptyResult) result).underlying;
+        }
+        return result instanceof RolapResult ? (RolapResult) result : null;
+    }
+
+    private static boolean isCacheable(Result result) {
+        final RolapResult rolapResult = unwrap(result);
+        return rolapResult != null && !rolapResult.hasHighCardinalityAxis();
+    }
+
+    /**
+     * Estimates the size of the copy of a result from its number of cells
+     * and axis members, before the copy is made. The copy is at least this
+     * large.
+     */
+    private static long estimateBytes(Result result) {
+        long cellCount = 1;
+        for (Axis axis : result.getAxes()) {
+            cellCount *= axis.getPositions().size();
+        }
+        return BYTES_PER_RESULT
+            + cellCount * BYTES_PER_CELL
+            + memberCount(result.getAxes()) * BYTES_PER_MEMBER;
+    }
+
+    private static long memberCount(Axis... axes) {
+        long memberCount = 0;
+        for (Axis axis : axes) {
+            final List<Position> positions = axis.getPositions();
+            if (!positions.isEmpty()) {
+                memberCount +=
+                    (long) positions.size() * positions.get(0).size();
+            }
+        }
+        return memberCount;
+    }
+
+    /**
+     * Key of a cached result.
+     */
+    static class Key {
+        private final String queryString;
+        private final RolapSchema schema;
+        private final Object schemaChecksum;
+        private final Role role;
+        private final Locale locale;
+        private final List<Object> parameterValues;
+        private final int hashCode;
+
+        Key(
+            String queryString,
+            RolapSchema schema,
+            Role role,
+            Locale locale,
+            List<Object> parameterValues)
+        {
+            this.queryString = queryString;
+            this.schema = schema;
+            this.schemaChecksum = schema.getChecksum();
+            this.role = role;
+            this.locale = locale;
+            this.parameterValues = parameterValues;
+            int h = queryString.hashCode();
+            h = Util.hash(h, schemaChecksum);
+            h = Util.hash(h, role);
+            h = Util.hash(h, locale);
+            h = Util.hash(h, parameterValues);
+            this.hashCode = h;
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key that = (Key) obj;
+            // Compare schemas by identity. If a schema is flushed and
+            // loaded again, its checksum is the same but its members are
+            // new objects.
+            return hashCode == that.hashCode
+                && schema == that.schema
+                && queryString.equals(that.queryString)
+                && Util.equals(schemaChecksum, that.schemaChecksum)
+                && role.equals(that.role)
+                && Util.equals(locale, that.locale)
+                && parameterValues.equals(that.parameterValues);
+        }
+    }
+
+    /**
+     * Copy of a result, made when it is cached.
+     *
+     * <p>It holds everything that its cells need, and no reference to the
+     * original result, its evaluator or its statement. It is not modified
+     * after it has been created, so several statements can read it at
+     * once.</p>
+     */
+    static class Contents {
+        private final Axis[] axes;
+        private final Axis slicerAxis;
+        private final int[] positionCounts;
+        private final RolapCube cube;
+        private final RolapMember[] rootMembers;
+        private final CachedCellInfo[] cells;
+        private final long byteCount;
+
+        /**
+         * Creates a Contents.
+         *
+         * @param source Result to copy
+         */
+        Contents(Result source) {
+            final RolapResult rolapResult = unwrap(source);
+            this.axes = source.getAxes().clone();
+            this.slicerAxis = source.getSlicerAxis();
+            this.cube = rolapResult.getCube();
+            this.rootMembers =
+                (RolapMember[])
+                    rolapResult.getRootEvaluator().getMembers().clone();
+            this.positionCounts = new int[axes.length];
+            int cellCount = 1;
+            for (int i = 0; i < axes.length; i++) {
+                positionCounts[i] = axes[i].getPositions().size();
+                cellCount *= positionCounts[i];
+            }
+            long bytes = BYTES_PER_RESULT
+                + (memberCount(axes) + memberCount(slicerAxis)
+                   + rootMembers.length) * BYTES_PER_MEMBER;
+            this.cells = new CachedCellInfo[cellCount];
+            final int[] pos = new int[axes.length];
+            for (int ordinal = 0; ordinal < cellCount; ordinal++) {
+                int k = ordinal;
+                for (int i = 0; i < pos.length; i++) {
+                    pos[i] = k % positionCounts[i];
+                    k /= positionCounts[i];
+                }
+                final CachedCellInfo ci =
+                    new CachedCellInfo(
+                        ordinal, (RolapCell) source.getCell(pos));
+                cells[ordinal] = ci;
+                bytes += ci.getByteCount();
+            }
+            this.byteCount = bytes;
+        }
+
+        /**
+         * Converts the coordinates of a cell to its ordinal. Axis 0 varies
+         * fastest, as in {@link RolapResult}.
+         */
+        int getCellOrdinal(int[] pos) {
+            if (pos.length != positionCounts.length) {
+                throw Util.newError(
+                    "coordinates should have dimension "
+                    + positionCounts.length);
+            }
+            int ordinal = 0;
+            for (int i = pos.length - 1; i >= 0; i--) {
+                if (pos[i] < 0 || pos[i] >= positionCounts[i]) {
+                    throw Util.newError("coordinates out of range");
+                }
+                ordinal = ordinal * positionCounts[i] + pos[i];
+            }
+            return ordinal;
+        }
+    }
+
+    /**
+     * Cell information of a {@link Contents}: value, format string,
+     * formatted value, and the standard properties that come from the
+     * context members.
+     */
+    static class CachedCellInfo extends RolapResult.CellInfo {
+        private final String formattedValue;
+        private final Object[] contextProperties;
+
+        /**
+         * Creates a CachedCellInfo.
+         *
+         * @param ordinal Ordinal of cell
+         * @param cell Cell of the original result
+         */
+        CachedCellInfo(long ordinal, RolapCell cell) {
+            super(ordinal, cell.ci.value, null, null);
+            this.formattedValue = cell.getFormattedValue();
+            this.formatString =
+                (String) cell.getPropertyValue(Property.FORMAT_STRING.name);
+            Object[] values = null;
+            for (int i = 0; i < CONTEXT_PROPERTIES.size(); i++) {
+                final Object value =
+                    cell.getContextProperty(
+                        CONTEXT_PROPERTIES.get(i).name, null);
+                if (value != null) {
+                    if (values == null) {
+                        values = new Object[CONTEXT_PROPERTIES.size()];
+                    }
+                    values[i] = value;
+                }
+            }
+            this.contextProperties = values;
+        }
+
+        String getFormatValue() {
+            return formattedValue;
+        }
+
+        long getByteCount() {
+            long bytes = BYTES_PER_CELL;
+            if (formattedValue != null) {
+                bytes += formattedValue.length() * BYTES_PER_CHAR;
+            }
+            if (contextProperties != null) {
+                bytes += contextProperties.length * BYTES_PER_PROPERTY;
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Result that reads the {@link Contents} of a cached result for one
+     * execution.
+     */
+    static class CachedResult extends ResultBase {
+        private final Contents contents;
+
+        /**
+         * Creates a CachedResult.
+         *
+         * @param execution Execution that reads the result
+         * @param contents Copy of result
+         */
+        CachedResult(Execution execution, Contents contents) {
+            super(execution, contents.axes.clone());
+            this.contents = contents;
+            this.slicerAxis = contents.slicerAxis;
+        }
+
+        protected Logger getLogger() {
+            return LOGGER;
+        }
+
+        public Cell getCell(int[] pos) {
+            final int ordinal = contents.getCellOrdinal(pos);
+            return new CachedCell(this, pos.clone(), contents.cells[ordinal]);
+        }
+
+        Statement getStatement() {
+            return statement;
+        }
+
+        public void close() {
+            // The contents are shared, and hold no resources.
+        }
+    }
+
+    /**
+     * Cell of a {@link CachedResult}.
+     *
+     * <p>It reads its value, format string, formatted value and standard
+     * properties from a {@link CachedCellInfo}, and its context members from
+     * the axes of the result. Drill-through and write-back use the statement
+     * of the {@link CachedResult}.</p>
+     */
+    static class CachedCell extends RolapCell {
+        private final CachedResult result;
+
+        /**
+         * Creates a CachedCell.
+         *
+         * @param result Result cell belongs to
+         * @param pos Coordinates of cell
+         * @param ci Cell information
+         */
+        CachedCell(CachedResult result, int[] pos, CachedCellInfo ci) {
+            super(null, pos, ci);
+            this.result = result;
+        }
+
+        public Member getContextMember(Hierarchy hierarchy) {
+            return result.getMember(pos, hierarchy);
+        }
+
+        Object getContextProperty(String propertyName, Object defaultValue) {
+            final Property property =
+                Property.lookup(
+                    propertyName,
+                    MondrianProperties.instance().CaseSensitive.get());
+            final int i = CONTEXT_PROPERTIES.indexOf(property);
+            if (i >= 0) {
+                final Object[] values = ((CachedCellInfo) ci).contextProperties;
+                final Object value = values == null ? null : values[i];
+                return value == null ? defaultValue : value;
+            }
+            // Not a standard property, so it was not copied when the result
+            // was cached. Read it from the context members, the way
+            // RolapEvaluator.getProperty does.
+            Object o = defaultValue;
+            int maxSolve = Integer.MIN_VALUE;
+            for (RolapMember member : getCellMembers()) {
+                if (member.isAll()) {
+                    continue;
+                }
+                final int solve = member.getSolveOrder();
+                if (solve > maxSolve) {
+                    final Object p = member.getPropertyValue(propertyName);
+                    if (p != null) {
+                        o = p;
+                        maxSolve = solve;
+                    }
+                }
+            }
+            return o;
+        }
+
+        RolapMember[] getCellMembers() {
+            final RolapMember[] members = result.contents.rootMembers.clone();
+            final Axis[] axes = result.getAxes();
+            for (int i = 0; i < pos.length; i++) {
+                final Position position = axes[i].getPositions().get(pos[i]);
+                for (Member member : position) {
+                    final RolapMember m = (RolapMember) member;
+                    members[m.getHierarchy().getOrdinalInCube()] = m;
+                }
+            }
+            return members;
+        }
+
+        int getCellOrdinal() {
+            return result.contents.getCellOrdinal(pos);
+        }
+
+        RolapCube getCube() {
+            return result.contents.cube;
+        }
+
+        Axis getSlicerAxis() {
+            return result.getSlicerAxis();
+        }
+
+        Statement getStatement() {
+            return result.getStatement();
+        }
+    }
+
+    /**
+     * A cached result and its estimated size.
+     */
+    private static class Entry {
+        final Contents contents;
+        final long bytes;
+
+        Entry(Contents contents, long bytes) {
+            this.contents = contents;
+            this.bytes = bytes;
+        }
+    }
+}
+
+// End RolapResultCache.java
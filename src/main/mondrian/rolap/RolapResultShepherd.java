@@ -4,13 +4,12 @@
 * http://www.eclipse.org/legal/epl-v10.html.
 * You must accept the terms of that agreement to use this software.
 *
-* Copyright (c) 2002-2013 Pentaho Corporation..  All rights reserved.
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
 */
 
 package mondrian.rolap;
 
 import mondrian.olap.*;
-import mondrian.resource.MondrianResource;
 import mondrian.server.Execution;
 import mondrian.util.Pair;
 
@@ -32,6 +31,12 @@ import java.util.concurrent.*;
  * <li>Gracefully cancel all SQL statements and cleanup in the background.</li>
  * </ul>
  *
+ * <p>At most {@link MondrianProperties#RolapConnectionShepherdNbThreads}
+ * queries run at a time. When all threads are busy, a query waits its turn
+ * for at most {@link MondrianProperties#QueryQueueTimeout}; see
+ * {@link QueryScheduler} for how waiting queries are ordered. The state of
+ * the queues is reported to the server's monitor.</p>
+ *
  * @author LBoudreau
  */
 public class RolapResultShepherd {
@@ -51,25 +56,33 @@ public class RolapResultShepherd {
     private final Timer timer =
         Util.newTimer("mondrian.rolap.RolapResultShepherd#timer", true);
 
-    public RolapResultShepherd() {
+    /**
+     * Admits queries to the executor.
+     */
+    private final QueryScheduler scheduler;
+
+    private final MondrianServer server;
+
+    /**
+     * Creates a RolapResultShepherd.
+     *
+     * @param server Server whose monitor receives the state of the queues
+     */
+    public RolapResultShepherd(MondrianServer server) {
+        this.server = server;
         final IntegerProperty property =
             MondrianProperties.instance().RolapConnectionShepherdNbThreads;
-        final int maximumPoolSize = property.get();
+        scheduler = new QueryScheduler(property.get(), property.getPath());
+
+        // The scheduler limits the number of tasks, so the pool does not
+        // need to. A thread may still be returning to the pool when the
+        // scheduler admits the next task.
         executor =
             Util.getExecutorService(
-                maximumPoolSize,
+                0,
                 0, 1,
                 "mondrian.rolap.RolapResultShepherd$executor",
-                new RejectedExecutionHandler() {
-                    public void rejectedExecution(
-                        Runnable r,
-                        ThreadPoolExecutor executor)
-                    {
-                        throw MondrianResource.instance().QueryLimitReached.ex(
-                            maximumPoolSize,
-                            property.getPath());
-                    }
-                });
+                null);
         final Pair<Long, TimeUnit> interval =
             Util.parseInterval(
                 String.valueOf(
@@ -131,7 +144,7 @@ public class RolapResultShepherd {
     {
         // We must wrap this execution into a task that so that we are able
         // to monitor, cancel and detach from it.
-        FutureTask<Result> task = new FutureTask<Result>(callable);
+        final FutureTask<Result> task = new FutureTask<Result>(callable);
 
         // Register this task with the shepherd thread
         final Pair<FutureTask<Result>, Execution> pair =
@@ -141,8 +154,25 @@ public class RolapResultShepherd {
         tasks.add(pair);
 
         try {
-            // Now run it.
-            executor.execute(task);
+            // Wait for our turn, then run it. Release the thread when the
+            // task finishes, even if the user thread has stopped waiting
+            // for it.
+            final QueryScheduler.Ticket ticket = acquire(execution);
+            try {
+                executor.execute(
+                    new Runnable() {
+                        public void run() {
+                            try {
+                                task.run();
+                            } finally {
+                                release(ticket);
+                            }
+                        }
+                    });
+            } catch (RuntimeException e) {
+                release(ticket);
+                throw e;
+            }
             return task.get();
         } catch (Throwable e) {
             // Make sure to clean up pending SQL queries.
@@ -199,6 +229,42 @@ public class RolapResultShepherd {
         }
     }
 
+    private QueryScheduler.Ticket acquire(Execution execution)
+        throws InterruptedException
+    {
+        final RolapConnection connection =
+            execution.getMondrianStatement().getMondrianConnection();
+        final String role =
+            connection.getConnectInfo().get(
+                RolapConnectionProperties.Role.name());
+        final String tenant =
+            Util.quoteMdxIdentifier(connection.getSchema().getName())
+            + (role == null ? "" : "/" + role);
+        final Pair<Long, TimeUnit> timeout =
+            Util.parseInterval(
+                MondrianProperties.instance().QueryQueueTimeout.get(),
+                TimeUnit.MILLISECONDS);
+        try {
+            return scheduler.acquire(
+                tenant,
+                connection.getQueryPriority(),
+                execution,
+                timeout.right.toMillis(timeout.left));
+        } finally {
+            sendQueueEvent();
+        }
+    }
+
+    private void release(QueryScheduler.Ticket ticket) {
+        scheduler.release(ticket);
+        sendQueueEvent();
+    }
+
+    private void sendQueueEvent() {
+        server.getMonitor().sendEvent(
+            scheduler.createEvent(System.currentTimeMillis(), server.getId()));
+    }
+
     public void shutdown() {
         this.timer.cancel();
         this.executor.shutdown();
@@ -110,6 +110,19 @@ public class RolapSchema implements Schema {
      */
     private AggTableManager aggTableManager;
 
+    /**
+     * Statistics of the data source; created on first use.
+     */
+    private RolapStatisticsStore statisticsStore;
+
+    /**
+     * Snapshots of the members of shared hierarchies, keyed by hierarchy
+     * unique name. Empty unless
+     * {@link MondrianProperties#MemberSnapshotDirectory} is set.
+     */
+    private final Map<String, RolapMemberSnapshot> mapHierarchyToSnapshot =
+        new HashMap<String, RolapMemberSnapshot>();
+
     /**
      * This is basically a unique identifier for this RolapSchema instance
      * used it its equals and hashCode methods.
@@ -354,6 +367,14 @@ public class RolapSchema implements Schema {
 
         // Cleanup the agg JDBC cache
         flushJdbcSchema();
+
+        // Stop refreshing statistics
+        synchronized (this) {
+            if (statisticsStore != null) {
+                statisticsStore.shutdown();
+                statisticsStore = null;
+            }
+        }
     }
 
     protected void finalize() throws Throwable {
@@ -941,6 +962,31 @@ public class RolapSchema implements Schema {
         return RolapSchemaPool.instance().contains(rolapSchema);
     }
 
+    /**
+     * Returns whether a schema is the one held by the schema pool for its
+     * key. A schema created without the pool, for example because
+     * {@link RolapConnectionProperties#UseSchemaPool} is false, is not, even
+     * if the pool holds a schema with the same key.
+     *
+     * @param rolapSchema Schema
+     * @return Whether schema is pooled
+     */
+    public static boolean isPooled(RolapSchema rolapSchema) {
+        return RolapSchemaPool.instance().isPooled(rolapSchema);
+    }
+
+    /**
+     * Returns the version of the schema pool, which changes whenever a schema
+     * is added to or removed from the pool. Callers that cache information
+     * derived from schemas can use it to detect that a schema has been
+     * reloaded or removed.
+     *
+     * @return Version of the schema pool
+     */
+    public static long getPoolVersion() {
+        return RolapSchemaPool.instance().getVersion();
+    }
+
     public Cube lookupCube(final String cube, final boolean failIfNotFound) {
         RolapCube mdxCube = lookupCube(cube);
         if (mdxCube == null && failIfNotFound) {
@@ -1294,6 +1340,7 @@ System.out.println("RolapSchema.createMemberReader: CONTAINS NAME");
                     // depending on the functions used and all.
                     return new NoCacheMemberReader(source);
                 } else {
+                    source.setSnapshot(getMemberSnapshot(hierarchy));
                     return new SmartMemberReader(source);
                 }
             }
@@ -1341,6 +1388,62 @@ System.out.println("RolapSchema.createMemberReader: CONTAINS NAME");
         return changeListener;
     }
 
+    /**
+     * Returns the statistics of this schema's data source.
+     *
+     * @return Statistics store
+     */
+    synchronized RolapStatisticsStore getStatisticsStore() {
+        if (statisticsStore == null) {
+            statisticsStore = RolapStatisticsStore.create(this);
+        }
+        return statisticsStore;
+    }
+
+    /**
+     * Returns the snapshot of the members of a shared hierarchy, creating it
+     * if necessary.
+     *
+     * @param hierarchy Hierarchy
+     * @return Member snapshot, or null if the hierarchy is not shared or
+     *   snapshots are disabled
+     */
+    synchronized RolapMemberSnapshot getMemberSnapshot(
+        RolapHierarchy hierarchy)
+    {
+        if (hierarchy.getSharedHierarchyName() == null) {
+            return null;
+        }
+        RolapMemberSnapshot snapshot =
+            mapHierarchyToSnapshot.get(hierarchy.getUniqueName());
+        if (snapshot == null) {
+            snapshot = RolapMemberSnapshot.create(this, hierarchy);
+            if (snapshot != null) {
+                mapHierarchyToSnapshot.put(hierarchy.getUniqueName(), snapshot);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Discards the snapshot of the members of a hierarchy, if there is one,
+     * because the members in the database have changed.
+     *
+     * @param hierarchy Hierarchy, or a cube's usage of it
+     */
+    void flushMemberSnapshot(RolapHierarchy hierarchy) {
+        if (hierarchy instanceof RolapCubeHierarchy) {
+            hierarchy = ((RolapCubeHierarchy) hierarchy).getRolapHierarchy();
+        }
+        final RolapMemberSnapshot snapshot;
+        synchronized (this) {
+            snapshot = mapHierarchyToSnapshot.get(hierarchy.getUniqueName());
+        }
+        if (snapshot != null) {
+            snapshot.markStale();
+        }
+    }
+
     /**
      * Returns the checksum of this schema. Returns
      * <code>null</code> if {@link RolapConnectionProperties#UseContentChecksum}
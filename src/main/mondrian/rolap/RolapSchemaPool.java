@@ -5,7 +5,7 @@
 // You must accept the terms of that agreement to use this software.
 //
 // Copyright (C) 2001-2005 Julian Hyde and others
-// Copyright (C) 2005-2012 Pentaho and others
+// Copyright (C) 2005-2014 Pentaho and others
 // All Rights Reserved.
 */
 
@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.lang.ref.*;
 import java.lang.reflect.Constructor;
 import java.util.*;
+import java.util.concurrent.*;
 
 import javax.sql.DataSource;
 
@@ -32,6 +33,10 @@ import javax.sql.DataSource;
  *
  * <p>To lookup a schema, call
  * <code>RolapSchemaPool.{@link #instance}().{@link #get}</code>.</p>
+ *
+ * <p>Schemas are loaded outside the pool's lock. If several threads ask for
+ * the same schema at the same time, one loads it and the others wait;
+ * threads that ask for other schemas are not blocked.</p>
  */
 class RolapSchemaPool {
     static final Logger LOGGER = Logger.getLogger(RolapSchemaPool.class);
@@ -50,6 +55,31 @@ class RolapSchemaPool {
         mapMd5ToSchema =
             new HashMap<ByteString, ExpiringReference<RolapSchema>>();
 
+    /**
+     * Schemas that are being loaded, keyed by {@link SchemaKey} (or by
+     * checksum, if the connection uses content checksums). A thread that
+     * wants a schema that is being loaded waits for the load rather than
+     * loading it again. Guarded by this pool's lock, which is held only
+     * while looking up and updating maps, never while a schema loads.
+     */
+    private final Map<Object, FutureTask<RolapSchema>> pendingLoads =
+        new HashMap<Object, FutureTask<RolapSchema>>();
+
+    /**
+     * Key in {@link #pendingLoads} of the load that each {@link SchemaKey}
+     * is waiting for. With content checksums, several schema keys may wait
+     * for the same load. Removing any of those keys cancels the load.
+     * Guarded by this pool's lock.
+     */
+    private final Map<SchemaKey, Object> pendingLoadKeys =
+        new HashMap<SchemaKey, Object>();
+
+    /**
+     * Incremented whenever a schema is added to or removed from this pool.
+     * Written only while holding this pool's lock.
+     */
+    private volatile long version;
+
     private RolapSchemaPool() {
     }
 
@@ -57,7 +87,7 @@ class RolapSchemaPool {
         return INSTANCE;
     }
 
-    synchronized RolapSchema get(
+    RolapSchema get(
         final String catalogUrl,
         final String connectionKey,
         final String jdbcUser,
@@ -73,7 +103,7 @@ class RolapSchemaPool {
             connectInfo);
     }
 
-    synchronized RolapSchema get(
+    RolapSchema get(
         final String catalogUrl,
         final DataSource dataSource,
         final Util.PropertyList connectInfo)
@@ -141,9 +171,8 @@ class RolapSchemaPool {
                 connectionKey1);
 
         // Use the schema pool unless "UseSchemaPool" is explicitly false.
-        RolapSchema schema = null;
         if (!useSchemaPool) {
-            schema =
+            final RolapSchema schema =
                 new RolapSchema(
                     key,
                     null,
@@ -160,9 +189,85 @@ class RolapSchemaPool {
             return schema;
         }
 
-        if (useContentChecksum) {
-            final ByteString md5Bytes =
-                new ByteString(Util.digestMd5(catalogStr));
+        final ByteString md5Bytes =
+            useContentChecksum
+                ? new ByteString(Util.digestMd5(catalogStr))
+                : null;
+        final Object loadKey = md5Bytes != null ? md5Bytes : key;
+        final FutureTask<RolapSchema> task;
+        final boolean owner;
+        synchronized (this) {
+            final RolapSchema existing =
+                lookup(key, md5Bytes, pinSchemaTimeout);
+            if (existing != null) {
+                return existing;
+            }
+            final FutureTask<RolapSchema> pendingTask =
+                pendingLoads.get(loadKey);
+            pendingLoadKeys.put(key, loadKey);
+            if (pendingTask != null) {
+                task = pendingTask;
+                owner = false;
+            } else {
+                task = new FutureTask<RolapSchema>(
+                    new Callable<RolapSchema>() {
+                        public RolapSchema call() {
+                            final RolapSchema schema =
+                                new RolapSchema(
+                                    key,
+                                    md5Bytes,
+                                    catalogUrl,
+                                    catalogStr,
+                                    connectInfo,
+                                    dataSource);
+                            if (LOGGER.isDebugEnabled()) {
+                                LOGGER.debug(
+                                    "create: schema-name=" + schema.getName()
+                                    + ", schema-id="
+                                    + System.identityHashCode(schema));
+                            }
+                            return schema;
+                        }
+                    });
+                pendingLoads.put(loadKey, task);
+                owner = true;
+            }
+        }
+
+        if (owner) {
+            // Load the schema without holding the lock, so that connections
+            // to other schemas are not blocked. Threads that want the same
+            // schema wait for this task.
+            task.run();
+            synchronized (this) {
+                // If the pool was cleared while the schema was loading, the
+                // schema may be stale; give it to the threads that asked for
+                // it, but do not pool it.
+                if (pendingLoads.get(loadKey) == task) {
+                    removePendingLoad(loadKey);
+                    final RolapSchema schema = getIfLoaded(task);
+                    if (schema != null) {
+                        putSchema(schema, md5Bytes, pinSchemaTimeout);
+                    }
+                }
+            }
+        } else if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("waiting for load of schema: key=" + key);
+        }
+        return Util.safeGet(task, "Error while loading schema " + catalogUrl);
+    }
+
+    /**
+     * Looks up a schema in the pool, removing the entry if the schema has
+     * been garbage-collected. Caller must hold the lock.
+     */
+    private RolapSchema lookup(
+        SchemaKey key,
+        ByteString md5Bytes,
+        String pinSchemaTimeout)
+    {
+        assert Thread.holdsLock(this);
+        if (md5Bytes != null) {
             final ExpiringReference<RolapSchema> ref =
                 mapMd5ToSchema.get(md5Bytes);
             if (LOGGER.isDebugEnabled()) {
@@ -170,64 +275,54 @@ class RolapSchemaPool {
                     "get(key=" + key
                     + ") returned " + toString(ref));
             }
-
-            if (ref != null) {
-                schema = ref.get(pinSchemaTimeout);
-                if (schema == null) {
-                    // clear out the reference since schema is null
-                    mapKeyToSchema.remove(key);
-                    mapMd5ToSchema.remove(md5Bytes);
-                }
+            if (ref == null) {
+                return null;
             }
-
+            final RolapSchema schema = ref.get(pinSchemaTimeout);
             if (schema == null) {
-                schema = new RolapSchema(
-                    key,
-                    md5Bytes,
-                    catalogUrl,
-                    catalogStr,
-                    connectInfo,
-                    dataSource);
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug(
-                        "create: schema-name=" + schema.getName()
-                        + ", schema-id=" + System.identityHashCode(schema));
-                }
-                putSchema(schema, md5Bytes, pinSchemaTimeout);
+                // clear out the reference since schema is null
+                mapKeyToSchema.remove(key);
+                mapMd5ToSchema.remove(md5Bytes);
+                ++version;
             }
             return schema;
         }
 
-        ExpiringReference<RolapSchema> ref = mapKeyToSchema.get(key);
+        final ExpiringReference<RolapSchema> ref = mapKeyToSchema.get(key);
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug(
                 "get(key=" + key
                 + ") returned " + toString(ref));
         }
-        if (ref != null) {
-            schema = ref.get(pinSchemaTimeout);
-            if (schema == null) {
-                mapKeyToSchema.remove(key);
-            }
+        if (ref == null) {
+            return null;
         }
-
+        final RolapSchema schema = ref.get(pinSchemaTimeout);
         if (schema == null) {
-            schema = new RolapSchema(
-                key,
-                null,
-                catalogUrl,
-                catalogStr,
-                connectInfo,
-                dataSource);
-            if (LOGGER.isDebugEnabled()) {
-                LOGGER.debug("create: " + schema);
-            }
-            putSchema(schema, null, pinSchemaTimeout);
+            mapKeyToSchema.remove(key);
+            ++version;
         }
-
         return schema;
     }
 
+    /**
+     * Returns the schema loaded by a task that has completed, or null if
+     * the load failed. (The failure is reported to each caller by
+     * {@link Util#safeGet}.)
+     */
+    private static RolapSchema getIfLoaded(FutureTask<RolapSchema> task) {
+        assert task.isDone();
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        } catch (CancellationException e) {
+            return null;
+        }
+    }
+
     private void putSchema(
         final RolapSchema schema,
         final ByteString md5Bytes,
@@ -240,6 +335,7 @@ class RolapSchemaPool {
             mapMd5ToSchema.put(md5Bytes, reference);
         }
         mapKeyToSchema.put(schema.key, reference);
+        ++version;
 
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug(
@@ -392,6 +488,23 @@ class RolapSchemaPool {
             }
         }
         mapKeyToSchema.remove(key);
+        // Cancel any load that this key is waiting for, even if the load is
+        // keyed by checksum, so that it does not pool a stale schema.
+        final Object loadKey = pendingLoadKeys.get(key);
+        if (loadKey != null) {
+            removePendingLoad(loadKey);
+        }
+        ++version;
+    }
+
+    /**
+     * Removes a pending load, and the schema keys that are waiting for it.
+     * Caller must hold the lock.
+     */
+    private void removePendingLoad(Object loadKey) {
+        assert Thread.holdsLock(this);
+        pendingLoads.remove(loadKey);
+        pendingLoadKeys.values().removeAll(Collections.singleton(loadKey));
     }
 
     synchronized void clear() {
@@ -409,9 +522,23 @@ class RolapSchemaPool {
         }
         mapKeyToSchema.clear();
         mapMd5ToSchema.clear();
+        pendingLoads.clear();
+        pendingLoadKeys.clear();
+        ++version;
         JdbcSchema.clearAllDBs();
     }
 
+    /**
+     * Returns the version of this pool, which changes whenever a schema is
+     * added to or removed from the pool, for example when a schema is
+     * flushed and loaded again.
+     *
+     * @return Version of this pool
+     */
+    long getVersion() {
+        return version;
+    }
+
     /**
      * Returns a list of schemas in this pool.
      *
@@ -431,6 +558,12 @@ class RolapSchemaPool {
         return mapKeyToSchema.containsKey(rolapSchema.key);
     }
 
+    synchronized boolean isPooled(RolapSchema rolapSchema) {
+        final Reference<RolapSchema> ref =
+            mapKeyToSchema.get(rolapSchema.key);
+        return ref != null && ref.get() == rolapSchema;
+    }
+
     private static <T> String toString(Reference<T> ref) {
         if (ref == null) {
             return "null";
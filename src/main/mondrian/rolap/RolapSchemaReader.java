@@ -5,7 +5,7 @@
 // You must accept the terms of that agreement to use this software.
 //
 // Copyright (C) 2003-2005 Julian Hyde
-// Copyright (C) 2005-2013 Pentaho
+// Copyright (C) 2005-2014 Pentaho
 // All Rights Reserved.
 */
 
@@ -570,6 +570,54 @@ public class RolapSchemaReader
         return Util.cast(membersInLevel);
     }
 
+    public List<Member> getLevelMembersByName(
+        Level level,
+        List<String> names)
+    {
+        final RolapLevel rolapLevel = (RolapLevel) level;
+        final List<Member> members;
+        if (names.isEmpty()) {
+            return Collections.emptyList();
+        } else if (rolapLevel.isAll()
+            || rolapLevel.isParentChild()
+            || rolapLevel.isMeasure())
+        {
+            members = getLevelMembers(level, (Evaluator) null);
+        } else {
+            final MemberReader memberReader =
+                getMemberReader(level.getHierarchy());
+            members =
+                Util.cast(
+                    memberReader.getMembersInLevel(
+                        rolapLevel,
+                        new MemberNameConstraint(rolapLevel, names)));
+        }
+        return filterByName(members, names);
+    }
+
+    /**
+     * Returns the members of a list whose names are in a given list.
+     *
+     * @param members Members
+     * @param names Names
+     * @return Members whose names are in the list, in the original order
+     */
+    static List<Member> filterByName(
+        List<Member> members,
+        List<String> names)
+    {
+        final List<Member> list = new ArrayList<Member>();
+        for (Member member : members) {
+            for (String name : names) {
+                if (Util.equalName(member.getName(), name)) {
+                    list.add(member);
+                    break;
+                }
+            }
+        }
+        return list;
+    }
+
     public List<Dimension> getCubeDimensions(Cube cube) {
         assert cube != null;
         final List<Dimension> dimensions = new ArrayList<Dimension>();
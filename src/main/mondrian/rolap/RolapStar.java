@@ -192,6 +192,25 @@ public class RolapStar {
             new SoftReference<SegmentWithData>(segment));
     }
 
+    /**
+     * Returns the segments in the current thread's cache.
+     *
+     * <p>A thread that evaluates part of a query on behalf of the query's
+     * thread uses this method, and {@link #register}, to start with the
+     * segments that the query's thread has already loaded.</p>
+     *
+     * @return Segments registered in the current thread
+     */
+    public List<SegmentWithData> getLocalSegments() {
+        final List<SegmentWithData> list = new ArrayList<SegmentWithData>();
+        for (SegmentWithData segment
+            : Util.GcIterator.over(localBars.get().segmentRefs))
+        {
+            list.add(segment);
+        }
+        return list;
+    }
+
     public RolapStatisticsCache getStatisticsCache() {
         return statisticsCache;
     }
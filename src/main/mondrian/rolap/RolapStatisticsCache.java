@@ -4,7 +4,7 @@
 * http://www.eclipse.org/legal/epl-v10.html.
 * You must accept the terms of that agreement to use this software.
 *
-* Copyright (c) 2002-2013 Pentaho Corporation..  All rights reserved.
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
 */
 
 package mondrian.rolap;
@@ -22,14 +22,12 @@ import javax.sql.DataSource;
  * Provides and caches statistics.
  *
  * <p>Wrapper around a chain of {@link mondrian.spi.StatisticsProvider}s,
- * followed by a cache to store the results.</p>
+ * followed by a cache to store the results. The cache is the schema's
+ * {@link RolapStatisticsStore}, which may persist statistics between
+ * restarts and refresh them in the background.</p>
  */
 public class RolapStatisticsCache {
     private final RolapStar star;
-    private final Map<List, Integer> columnMap = new HashMap<List, Integer>();
-    private final Map<List, Integer> tableMap = new HashMap<List, Integer>();
-    private final Map<String, Integer> queryMap =
-        new HashMap<String, Integer>();
 
     public RolapStatisticsCache(RolapStar star) {
         this.star = star;
@@ -56,69 +54,57 @@ public class RolapStatisticsCache {
     }
 
     private int getTableCardinality(
-        String catalog,
-        String schema,
-        String table)
+        final String catalog,
+        final String schema,
+        final String table)
     {
         final List<String> key = Arrays.asList(catalog, schema, table);
-        int rowCount = -1;
-        if (tableMap.containsKey(key)) {
-            rowCount = tableMap.get(key);
-        } else {
-            final Dialect dialect = star.getSqlQueryDialect();
-            final List<StatisticsProvider> statisticsProviders =
-                dialect.getStatisticsProviders();
-            final Execution execution =
-                new Execution(
-                    star.getSchema().getInternalConnection()
-                        .getInternalStatement(),
-                    0);
-            for (StatisticsProvider statisticsProvider : statisticsProviders) {
-                rowCount = statisticsProvider.getTableCardinality(
-                    dialect,
-                    star.getDataSource(),
-                    catalog,
-                    schema,
-                    table,
-                    execution);
-                if (rowCount >= 0) {
-                    break;
+        return getStore().get(
+            "table:" + key,
+            new RolapStatisticsStore.Probe() {
+                public int compute() {
+                    final Dialect dialect = star.getSqlQueryDialect();
+                    final Execution execution = createExecution();
+                    for (StatisticsProvider statisticsProvider
+                        : dialect.getStatisticsProviders())
+                    {
+                        final int rowCount =
+                            statisticsProvider.getTableCardinality(
+                                dialect,
+                                star.getDataSource(),
+                                catalog,
+                                schema,
+                                table,
+                                execution);
+                        if (rowCount >= 0) {
+                            return rowCount;
+                        }
+                    }
+                    return -1;
                 }
-            }
-
-            // Note: If all providers fail, we put -1 into the cache, to ensure
-            // that we won't try again.
-            tableMap.put(key, rowCount);
-        }
-        return rowCount;
+            });
     }
 
-    private int getQueryCardinality(String sql) {
-        int rowCount = -1;
-        if (queryMap.containsKey(sql)) {
-            rowCount = queryMap.get(sql);
-        } else {
-            final Dialect dialect = star.getSqlQueryDialect();
-            final List<StatisticsProvider> statisticsProviders =
-                dialect.getStatisticsProviders();
-            final Execution execution =
-                new Execution(
-                    star.getSchema().getInternalConnection()
-                        .getInternalStatement(),
-                    0);
-            for (StatisticsProvider statisticsProvider : statisticsProviders) {
-                rowCount = statisticsProvider.getQueryCardinality(
-                    dialect, star.getDataSource(), sql, execution);
-                if (rowCount >= 0) {
-                    break;
+    private int getQueryCardinality(final String sql) {
+        return getStore().get(
+            "query:" + sql,
+            new RolapStatisticsStore.Probe() {
+                public int compute() {
+                    final Dialect dialect = star.getSqlQueryDialect();
+                    final Execution execution = createExecution();
+                    for (StatisticsProvider statisticsProvider
+                        : dialect.getStatisticsProviders())
+                    {
+                        final int rowCount =
+                            statisticsProvider.getQueryCardinality(
+                                dialect, star.getDataSource(), sql, execution);
+                        if (rowCount >= 0) {
+                            return rowCount;
+                        }
+                    }
+                    return -1;
                 }
-            }
-
-            // Note: If all providers fail, we put -1 into the cache, to ensure
-            // that we won't try again.
-            queryMap.put(sql, rowCount);
-        }
-        return rowCount;
+            });
     }
 
     public int getColumnCardinality(
@@ -149,43 +135,47 @@ public class RolapStatisticsCache {
     }
 
     private int getColumnCardinality(
-        String catalog,
-        String schema,
-        String table,
-        String column)
+        final String catalog,
+        final String schema,
+        final String table,
+        final String column)
     {
         final List<String> key = Arrays.asList(catalog, schema, table, column);
-        int rowCount = -1;
-        if (columnMap.containsKey(key)) {
-            rowCount = columnMap.get(key);
-        } else {
-            final Dialect dialect = star.getSqlQueryDialect();
-            final List<StatisticsProvider> statisticsProviders =
-                dialect.getStatisticsProviders();
-            final Execution execution =
-                new Execution(
-                    star.getSchema().getInternalConnection()
-                        .getInternalStatement(),
-                    0);
-            for (StatisticsProvider statisticsProvider : statisticsProviders) {
-                rowCount = statisticsProvider.getColumnCardinality(
-                    dialect,
-                    star.getDataSource(),
-                    catalog,
-                    schema,
-                    table,
-                    column,
-                    execution);
-                if (rowCount >= 0) {
-                    break;
+        return getStore().get(
+            "column:" + key,
+            new RolapStatisticsStore.Probe() {
+                public int compute() {
+                    final Dialect dialect = star.getSqlQueryDialect();
+                    final Execution execution = createExecution();
+                    for (StatisticsProvider statisticsProvider
+                        : dialect.getStatisticsProviders())
+                    {
+                        final int rowCount =
+                            statisticsProvider.getColumnCardinality(
+                                dialect,
+                                star.getDataSource(),
+                                catalog,
+                                schema,
+                                table,
+                                column,
+                                execution);
+                        if (rowCount >= 0) {
+                            return rowCount;
+                        }
+                    }
+                    return -1;
                 }
-            }
+            });
+    }
 
-            // Note: If all providers fail, we put -1 into the cache, to ensure
-            // that we won't try again.
-            columnMap.put(key, rowCount);
-        }
-        return rowCount;
+    private RolapStatisticsStore getStore() {
+        return star.getSchema().getStatisticsStore();
+    }
+
+    private Execution createExecution() {
+        return new Execution(
+            star.getSchema().getInternalConnection().getInternalStatement(),
+            0);
     }
 
     public int getColumnCardinality2(
@@ -0,0 +1,279 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.rolap;
+
+import mondrian.olap.MondrianProperties;
+import mondrian.olap.Util;
+import mondrian.util.ByteString;
+import mondrian.util.Pair;
+
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Statistics (table, column and query cardinalities) of a schema's data
+ * source, shared by the {@link RolapStatisticsCache} of each of the
+ * schema's stars.
+ *
+ * <p>If {@link MondrianProperties#StatisticsCacheDirectory} is set, the
+ * statistics are saved to a file in that directory, and are read from it when
+ * an equivalent schema is next loaded, so that queries after a restart do
+ * not have to compute them again. The name of the file is derived from the
+ * schema checksum and the key of the data source connection; if the
+ * connection is made from a {@link javax.sql.DataSource} object, set
+ * {@link RolapConnectionProperties#JdbcConnectionUuid} so that the key is
+ * the same after a restart.</p>
+ *
+ * <p>If {@link MondrianProperties#StatisticsRefreshInterval} is set, a
+ * background thread periodically computes again the statistics that have
+ * been used since the schema was loaded, so that they follow changes in the
+ * data without queries having to wait.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+class RolapStatisticsStore {
+    private static final Logger LOGGER =
+        Logger.getLogger(RolapStatisticsStore.class);
+
+    /**
+     * Executor that saves and refreshes the statistics of all schemas.
+     */
+    private static final ScheduledExecutorService executor =
+        Util.getScheduledExecutorService(
+            1,
+            "mondrian.rolap.RolapStatisticsStore$executor");
+
+    private final ConcurrentMap<String, Integer> values =
+        new ConcurrentHashMap<String, Integer>();
+    private final ConcurrentMap<String, Probe> probes =
+        new ConcurrentHashMap<String, Probe>();
+    private final AtomicBoolean savePending = new AtomicBoolean();
+    private final File file;
+    private final ScheduledFuture<?> refreshFuture;
+
+    /**
+     * Creates a RolapStatisticsStore.
+     *
+     * @param file File to load statistics from and save them to, or null
+     * @param refreshMillis Interval between refreshes, or 0 to never refresh
+     */
+    RolapStatisticsStore(File file, long refreshMillis) {
+        this.file = file;
+        if (file != null) {
+            load();
+        }
+        if (refreshMillis > 0) {
+            final RefreshTask task = new RefreshTask(this);
+            refreshFuture =
+                executor.scheduleWithFixedDelay(
+                    task, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+            task.future = refreshFuture;
+        } else {
+            refreshFuture = null;
+        }
+    }
+
+    /**
+     * Creates the statistics store of a schema, as configured by
+     * {@link MondrianProperties#StatisticsCacheDirectory} and
+     * {@link MondrianProperties#StatisticsRefreshInterval}.
+     *
+     * @param schema Schema; its checksum must be known
+     * @return Statistics store
+     */
+    static RolapStatisticsStore create(RolapSchema schema) {
+        final MondrianProperties properties = MondrianProperties.instance();
+        final String directory = properties.StatisticsCacheDirectory.get();
+        File file = null;
+        if (!Util.isEmpty(directory)) {
+            final String digest =
+                new ByteString(
+                    Util.digestMd5(
+                        schema.getChecksum() + ";" + schema.key.right))
+                    .toString();
+            file = new File(directory, "statistics-" + digest + ".properties");
+        }
+        final Pair<Long, TimeUnit> interval =
+            Util.parseInterval(
+                properties.StatisticsRefreshInterval.get(),
+                TimeUnit.MILLISECONDS);
+        return new RolapStatisticsStore(
+            file, interval.right.toMillis(interval.left));
+    }
+
+    /**
+     * Returns a statistic, computing it if it is not known.
+     *
+     * <p>The probe is remembered, and used to refresh the statistic, even if
+     * the statistic was read from the file.</p>
+     *
+     * @param key Key of statistic
+     * @param probe Computes the statistic
+     * @return Value of statistic, or -1 if it could not be computed
+     */
+    int get(String key, Probe probe) {
+        probes.putIfAbsent(key, probe);
+        Integer value = values.get(key);
+        if (value == null) {
+            // Note: If all providers fail, the probe returns -1, and we put
+            // it into the cache, to ensure that we won't try again until the
+            // next refresh.
+            value = probe.compute();
+            values.put(key, value);
+            scheduleSave();
+        }
+        return value;
+    }
+
+    /**
+     * Computes again all statistics that have been used, and saves them.
+     */
+    void refresh() {
+        for (Map.Entry<String, Probe> entry : probes.entrySet()) {
+            try {
+                values.put(entry.getKey(), entry.getValue().compute());
+            } catch (RuntimeException e) {
+                LOGGER.warn(
+                    "Error while refreshing statistic " + entry.getKey(), e);
+            }
+        }
+        save();
+    }
+
+    /**
+     * Stops refreshing the statistics, and saves them if a save is pending.
+     */
+    void shutdown() {
+        if (refreshFuture != null) {
+            refreshFuture.cancel(false);
+        }
+        if (savePending.getAndSet(false)) {
+            save();
+        }
+    }
+
+    private void scheduleSave() {
+        if (file != null && savePending.compareAndSet(false, true)) {
+            executor.execute(
+                new Runnable() {
+                    public void run() {
+                        if (savePending.getAndSet(false)) {
+                            save();
+                        }
+                    }
+                });
+        }
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        final Properties properties = new Properties();
+        try {
+            final InputStream in = new FileInputStream(file);
+            try {
+                properties.load(in);
+            } finally {
+                in.close();
+            }
+            for (Map.Entry<Object, Object> entry : properties.entrySet()) {
+                values.put(
+                    (String) entry.getKey(),
+                    Integer.valueOf((String) entry.getValue()));
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Error while reading statistics from " + file, e);
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Invalid statistics file " + file + "; ignored", e);
+            values.clear();
+        }
+    }
+
+    /**
+     * Writes the statistics to the file. Writes to a temporary file and
+     * renames it, so that a schema being loaded in another process never
+     * reads a partial file.
+     */
+    private synchronized void save() {
+        if (file == null) {
+            return;
+        }
+        final Properties properties = new Properties();
+        for (Map.Entry<String, Integer> entry : values.entrySet()) {
+            properties.setProperty(
+                entry.getKey(), entry.getValue().toString());
+        }
+        final File tempFile = new File(file.getPath() + ".tmp");
+        try {
+            file.getParentFile().mkdirs();
+            final OutputStream out = new FileOutputStream(tempFile);
+            try {
+                properties.store(out, "Mondrian statistics");
+            } finally {
+                out.close();
+            }
+            if (!tempFile.renameTo(file)) {
+                // On some platforms, rename does not replace an existing
+                // file.
+                file.delete();
+                if (!tempFile.renameTo(file)) {
+                    throw new IOException("Could not rename " + tempFile);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Error while writing statistics to " + file, e);
+        }
+    }
+
+    /**
+     * Computes a statistic.
+     */
+    interface Probe {
+        /**
+         * Computes the statistic.
+         *
+         * @return Value of statistic, or -1 if it could not be computed
+         */
+        int compute();
+    }
+
+    /**
+     * Task that refreshes a store. Holds the store via a weak reference, so
+     * that a schema that is garbage-collected without being cleaned up does
+     * not stay in memory; the task then cancels itself.
+     */
+    private static class RefreshTask implements Runnable {
+        private final WeakReference<RolapStatisticsStore> storeRef;
+        volatile Future<?> future;
+
+        RefreshTask(RolapStatisticsStore store) {
+            this.storeRef = new WeakReference<RolapStatisticsStore>(store);
+        }
+
+        public void run() {
+            final RolapStatisticsStore store = storeRef.get();
+            if (store == null) {
+                if (future != null) {
+                    future.cancel(false);
+                }
+                return;
+            }
+            store.refresh();
+        }
+    }
+}
+
+// End RolapStatisticsStore.java
@@ -19,8 +19,7 @@ import mondrian.olap.type.ScalarType;
 import org.olap4j.AllocationPolicy;
 import org.olap4j.Scenario;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 
 /**
  * Implementation of {@link org.olap4j.Scenario}.
@@ -35,6 +34,12 @@ public final class ScenarioImpl implements Scenario {
     private final List<WritebackCell> writebackCells =
         new ArrayList<WritebackCell>();
 
+    /**
+     * Index over {@link #writebackCells}, or null if it has not been built
+     * since the last writeback.
+     */
+    private volatile WritebackIndex<WritebackCell> index;
+
     private RolapMember member;
 
     private static int nextId;
@@ -148,9 +153,7 @@ public final class ScenarioImpl implements Scenario {
         // Record the override.
         //
         // TODO: add a mechanism for persisting the overrides to a file.
-        //
-        // FIXME: make thread-safe
-        writebackCells.add(
+        final WritebackCell writebackCell =
             new WritebackCell(
                 baseCube,
                 new ArrayList<RolapMember>(members),
@@ -158,7 +161,41 @@ public final class ScenarioImpl implements Scenario {
                 compactKeyValues,
                 newValue,
                 currentValue,
-                allocationPolicy));
+                allocationPolicy);
+        synchronized (writebackCells) {
+            writebackCells.add(writebackCell);
+            index = null;
+        }
+    }
+
+    /**
+     * Returns the index over the writeback cells, building it if cells have
+     * been written since it was last built. Planners typically write several
+     * cells and then read many, so the index is built lazily rather than on
+     * every write.
+     *
+     * @return Index
+     */
+    private WritebackIndex<WritebackCell> getIndex() {
+        WritebackIndex<WritebackCell> index = this.index;
+        if (index == null) {
+            synchronized (writebackCells) {
+                index = this.index;
+                if (index == null) {
+                    final List<Member[]> memberArrays =
+                        new ArrayList<Member[]>(writebackCells.size());
+                    for (WritebackCell writebackCell : writebackCells) {
+                        memberArrays.add(writebackCell.membersByOrdinal);
+                    }
+                    index =
+                        new WritebackIndex<WritebackCell>(
+                            memberArrays,
+                            new ArrayList<WritebackCell>(writebackCells));
+                    this.index = index;
+                }
+            }
+        }
+        return index;
     }
 
     public String getId() {
@@ -328,7 +365,7 @@ public final class ScenarioImpl implements Scenario {
         private final double newValue;
         private final double currentValue;
         private final AllocationPolicy allocationPolicy;
-        private Member[] membersByOrdinal;
+        private final Member[] membersByOrdinal;
         private final double atomicCellCount;
 
         /**
@@ -403,40 +440,188 @@ public final class ScenarioImpl implements Scenario {
          * null
          */
         CellRelation getRelationTo(Member[] members) {
-            int aboveCount = 0;
-            int belowCount = 0;
-            for (int i = 0; i < members.length; i++) {
-                Member thatMember = members[i];
-                Member thisMember = membersByOrdinal[i];
-                // FIXME: isChildOrEqualTo is very inefficient. It should use
-                // level depth as a guideline, at least.
-                if (thatMember.isChildOrEqualTo(thisMember)) {
-                    if (thatMember.equals(thisMember)) {
-                        // thisMember equals member
-                    } else {
-                        // thisMember is ancestor of member
-                        ++aboveCount;
-                        if (belowCount > 0) {
-                            return CellRelation.NONE;
-                        }
-                    }
-                } else if (thisMember.isChildOrEqualTo(thatMember)) {
-                    // thisMember is descendant of member
-                    ++belowCount;
-                    if (aboveCount > 0) {
+            return ScenarioImpl.getRelation(membersByOrdinal, members);
+        }
+    }
+
+    /**
+     * Returns the position of a cell relative to another cell.
+     *
+     * <p>Assumes that both arrays contain an entry for each dimension
+     * in the cube.
+     *
+     * @param membersByOrdinal Co-ordinates of a cell
+     * @param members Co-ordinates of another cell
+     * @return Relation of the first cell to the other cell, never null
+     */
+    static CellRelation getRelation(
+        Member[] membersByOrdinal,
+        Member[] members)
+    {
+        int aboveCount = 0;
+        int belowCount = 0;
+        for (int i = 0; i < members.length; i++) {
+            Member thatMember = members[i];
+            Member thisMember = membersByOrdinal[i];
+            // FIXME: isChildOrEqualTo is very inefficient. It should use
+            // level depth as a guideline, at least.
+            if (thatMember.isChildOrEqualTo(thisMember)) {
+                if (thatMember.equals(thisMember)) {
+                    // thisMember equals member
+                } else {
+                    // thisMember is ancestor of member
+                    ++aboveCount;
+                    if (belowCount > 0) {
                         return CellRelation.NONE;
                     }
-                } else {
+                }
+            } else if (thisMember.isChildOrEqualTo(thatMember)) {
+                // thisMember is descendant of member
+                ++belowCount;
+                if (aboveCount > 0) {
                     return CellRelation.NONE;
                 }
-            }
-            assert aboveCount == 0 || belowCount == 0;
-            if (aboveCount > 0) {
-                return CellRelation.ABOVE;
-            } else if (belowCount > 0) {
-                return CellRelation.BELOW;
             } else {
-                return CellRelation.EQUAL;
+                return CellRelation.NONE;
+            }
+        }
+        assert aboveCount == 0 || belowCount == 0;
+        if (aboveCount > 0) {
+            return CellRelation.ABOVE;
+        } else if (belowCount > 0) {
+            return CellRelation.BELOW;
+        } else {
+            return CellRelation.EQUAL;
+        }
+    }
+
+    /**
+     * Index over the co-ordinates of a list of cells, that finds the cells
+     * that are related to (above, equal to or below) a given cell.
+     *
+     * <p>A cell is above or equal to another if, in every hierarchy, its
+     * member is an ancestor of, or equal to, the other cell's member; and
+     * below or equal if, in every hierarchy, its member is a descendant of,
+     * or equal to, the other's. For each hierarchy, the index maps each
+     * member to the cells that have that member, and each ancestor of a
+     * member to the cells that have one of its descendants. Finding the
+     * related cells requires a few lookups and bitmap intersections per
+     * hierarchy, rather than a comparison with every cell.
+     *
+     * <p>Members are identified by unique name and ancestors are found by
+     * walking up parents, as in {@link Member#isChildOrEqualTo(Member)}, so
+     * the index returns exactly the cells for which
+     * {@link ScenarioImpl#getRelation} does not return
+     * {@link CellRelation#NONE}.
+     *
+     * @param <E> Element type
+     */
+    static class WritebackIndex<E> {
+        private final List<E> elements;
+        private final int cellCount;
+        private final List<Map<String, BitSet>> equalMaps =
+            new ArrayList<Map<String, BitSet>>();
+        private final List<Map<String, BitSet>> ancestorMaps =
+            new ArrayList<Map<String, BitSet>>();
+
+        /**
+         * Creates a WritebackIndex.
+         *
+         * @param memberArrays Co-ordinates of each cell, by hierarchy ordinal
+         * @param elements Element for each cell
+         */
+        WritebackIndex(List<Member[]> memberArrays, List<E> elements) {
+            assert memberArrays.size() == elements.size();
+            this.elements = elements;
+            this.cellCount = memberArrays.size();
+            if (cellCount == 0) {
+                return;
+            }
+            final int hierarchyCount = memberArrays.get(0).length;
+            for (int i = 0; i < hierarchyCount; i++) {
+                final Map<String, BitSet> equalMap =
+                    new HashMap<String, BitSet>();
+                final Map<String, BitSet> ancestorMap =
+                    new HashMap<String, BitSet>();
+                for (int cell = 0; cell < cellCount; cell++) {
+                    final Member member = memberArrays.get(cell)[i];
+                    bits(equalMap, member.getUniqueName()).set(cell);
+                    for (Member ancestor = member.getParentMember();
+                        ancestor != null;
+                        ancestor = ancestor.getParentMember())
+                    {
+                        bits(ancestorMap, ancestor.getUniqueName()).set(cell);
+                    }
+                }
+                equalMaps.add(equalMap);
+                ancestorMaps.add(ancestorMap);
+            }
+        }
+
+        private static BitSet bits(Map<String, BitSet> map, String key) {
+            BitSet bitSet = map.get(key);
+            if (bitSet == null) {
+                bitSet = new BitSet();
+                map.put(key, bitSet);
+            }
+            return bitSet;
+        }
+
+        /**
+         * Returns the elements of the cells that are related to a given
+         * cell, in the order they were added.
+         *
+         * @param members Co-ordinates of a cell, by hierarchy ordinal
+         * @return Elements of related cells
+         */
+        List<E> candidates(Member[] members) {
+            if (cellCount == 0) {
+                return Collections.emptyList();
+            }
+            // Cells that are above or equal to, and below or equal to, the
+            // given cell in every hierarchy seen so far.
+            final BitSet above = new BitSet(cellCount);
+            above.set(0, cellCount);
+            final BitSet below = (BitSet) above.clone();
+            final BitSet bits = new BitSet(cellCount);
+            for (int i = 0; i < equalMaps.size(); i++) {
+                final Member member = members[i];
+                final Map<String, BitSet> equalMap = equalMaps.get(i);
+                if (!above.isEmpty()) {
+                    bits.clear();
+                    for (Member m = member;
+                        m != null;
+                        m = m.getParentMember())
+                    {
+                        or(bits, equalMap.get(m.getUniqueName()));
+                    }
+                    above.and(bits);
+                }
+                if (!below.isEmpty()) {
+                    bits.clear();
+                    final String uniqueName = member.getUniqueName();
+                    or(bits, equalMap.get(uniqueName));
+                    or(bits, ancestorMaps.get(i).get(uniqueName));
+                    below.and(bits);
+                }
+                if (above.isEmpty() && below.isEmpty()) {
+                    return Collections.emptyList();
+                }
+            }
+            above.or(below);
+            final List<E> list = new ArrayList<E>(above.cardinality());
+            for (int cell = above.nextSetBit(0);
+                cell >= 0;
+                cell = above.nextSetBit(cell + 1))
+            {
+                list.add(elements.get(cell));
+            }
+            return list;
+        }
+
+        private static void or(BitSet bits, BitSet bits2) {
+            if (bits2 != null) {
+                bits.or(bits2);
             }
         }
     }
@@ -501,16 +686,20 @@ public final class ScenarioImpl implements Scenario {
 
                 // Look for writeback cells which are equal to, ancestors of,
                 // or descendants of, the current cell. Modify the value
-                // accordingly.
+                // accordingly. The index finds the related cells without
+                // comparing the current cell with every writeback cell.
                 //
                 // It is possible that the value is modified by several
                 // writebacks. If so, order is important.
                 int changeCount = 0;
+                final Member[] members = evaluator.getMembers();
+                final List<WritebackCell> writebackCells =
+                    scenario.getIndex().candidates(members);
                 for (ScenarioImpl.WritebackCell writebackCell
-                    : scenario.writebackCells)
+                    : writebackCells)
                 {
                     CellRelation relation =
-                        writebackCell.getRelationTo(evaluator.getMembers());
+                        writebackCell.getRelationTo(members);
                     switch (relation) {
                     case ABOVE:
                         // This cell is below the writeback cell. Value is
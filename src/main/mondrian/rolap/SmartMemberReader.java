@@ -6,7 +6,7 @@
 //
 // Copyright (C) 2001-2005 Julian Hyde
 // Copyright (C) 2004-2005 TONBELLER AG
-// Copyright (C) 2005-2012 Pentaho and others
+// Copyright (C) 2005-2014 Pentaho and others
 // All Rights Reserved.
 */
 
@@ -22,15 +22,18 @@ import mondrian.rolap.sql.TupleConstraint;
 import mondrian.util.ConcatenableList;
 
 import java.util.*;
+import java.util.concurrent.locks.Lock;
 
 /**
  * <code>SmartMemberReader</code> implements {@link MemberReader} by keeping a
  * cache of members and their children. If a member is 'in cache', there is a
  * list of its children. It also caches the members of levels.
  *
- * <p>Synchronization: the MemberReader <code>source</code> must be called
- * from synchronized(this) context - it does not synchronize itself (probably
- * it should).</p>
+ * <p>Synchronization: lookups in the cache take no lock. A thread that misses
+ * the cache calls the MemberReader <code>source</code> while holding the
+ * {@link MemberCacheHelper#lockForLoad load lock} of the level or parent
+ * member, so that concurrent misses of the same key load it only once. The
+ * source must therefore allow concurrent calls for different keys.</p>
  *
  * <p>Constraints: Member.Children and Level.Members may be constrained by a
  * SqlConstraint object. In this case a subset of all members is returned.
@@ -47,7 +50,8 @@ public class SmartMemberReader implements MemberReader {
     private final SqlConstraintFactory sqlConstraintFactory =
         SqlConstraintFactory.instance();
 
-    /** access to <code>source</code> must be synchronized(this) */
+    /** access to <code>source</code> must hold a load lock of
+     * <code>cacheHelper</code> */
     protected final MemberReader source;
 
     protected final MemberCacheHelper cacheHelper;
@@ -135,20 +139,28 @@ public class SmartMemberReader implements MemberReader {
     public List<RolapMember> getMembersInLevel(
         RolapLevel level, TupleConstraint constraint)
     {
-        synchronized (cacheHelper) {
-            checkCacheStatus();
+        checkCacheStatus();
 
-            List<RolapMember> members =
-                cacheHelper.getLevelMembersFromCache(level, constraint);
+        List<RolapMember> members =
+            cacheHelper.getLevelMembersFromCache(level, constraint);
+        if (members != null) {
+            return members;
+        }
+
+        final Lock lock = cacheHelper.lockForLoad(level);
+        try {
+            // Another thread may have loaded the members while we waited.
+            members = cacheHelper.getLevelMembersFromCache(level, constraint);
             if (members != null) {
                 return members;
             }
-
             members =
                 source.getMembersInLevel(
                     level, constraint);
             cacheHelper.putLevelMembersInCache(level, constraint, members);
             return members;
+        } finally {
+            cacheHelper.unlockAfterLoad(lock);
         }
     }
 
@@ -191,27 +203,76 @@ public class SmartMemberReader implements MemberReader {
         List<RolapMember> children,
         MemberChildrenConstraint constraint)
     {
-        synchronized (cacheHelper) {
-            checkCacheStatus();
+        checkCacheStatus();
 
-            List<RolapMember> missed = new ArrayList<RolapMember>();
-            for (RolapMember parentMember : parentMembers) {
+        List<RolapMember> missed = new ArrayList<RolapMember>();
+        for (RolapMember parentMember : parentMembers) {
+            List<RolapMember> list =
+                getChildrenFromCache(parentMember, constraint);
+            if (list == null) {
+                // the null member has no children
+                if (!parentMember.isNull()) {
+                    missed.add(parentMember);
+                }
+            } else {
+                children.addAll(list);
+            }
+        }
+        if (missed.size() > 0) {
+            readMissedMemberChildren(missed, children, constraint);
+        }
+        return Util.toNullValuesMap(children);
+    }
+
+    /**
+     * Reads the children of members that were not in the cache, holding the
+     * load lock of the member or, if there are several, of their level.
+     *
+     * <p>The children of all the missed members are read in one call, under
+     * one lock. Members whose children were loaded by another thread while
+     * this thread waited for the lock are not read again.</p>
+     *
+     * @param missed Members whose children were not in the cache
+     * @param children Children are written here
+     * @param constraint Constraint
+     */
+    protected void readMissedMemberChildren(
+        List<RolapMember> missed,
+        List<RolapMember> children,
+        MemberChildrenConstraint constraint)
+    {
+        final Object lockKey =
+            missed.size() == 1
+                ? missed.get(0)
+                : missed.get(0).getLevel();
+        final Lock lock = cacheHelper.lockForLoad(lockKey);
+        try {
+            final List<RolapMember> stillMissed = new ArrayList<RolapMember>();
+            for (RolapMember parentMember : missed) {
                 List<RolapMember> list =
-                    cacheHelper.getChildrenFromCache(parentMember, constraint);
+                    getChildrenFromCache(parentMember, constraint);
                 if (list == null) {
-                    // the null member has no children
-                    if (!parentMember.isNull()) {
-                        missed.add(parentMember);
-                    }
+                    stillMissed.add(parentMember);
                 } else {
                     children.addAll(list);
                 }
             }
-            if (missed.size() > 0) {
-                readMemberChildren(missed, children, constraint);
+            if (stillMissed.size() > 0) {
+                readMemberChildren(stillMissed, children, constraint);
             }
+        } finally {
+            cacheHelper.unlockAfterLoad(lock);
         }
-        return Util.toNullValuesMap(children);
+    }
+
+    /**
+     * Returns the cached children of a member, or null.
+     */
+    protected List<RolapMember> getChildrenFromCache(
+        RolapMember member,
+        MemberChildrenConstraint constraint)
+    {
+        return cacheHelper.getChildrenFromCache(member, constraint);
     }
 
     public RolapMember lookupMember(
@@ -278,17 +339,15 @@ public class SmartMemberReader implements MemberReader {
             ((List)list).add(child);
             ((List)result).add(child);
         }
-        synchronized (cacheHelper) {
-            for (Map.Entry<RolapMember, List<RolapMember>> entry
-                : tempMap.entrySet())
+        for (Map.Entry<RolapMember, List<RolapMember>> entry
+            : tempMap.entrySet())
+        {
+            final RolapMember member = entry.getKey();
+            if (cacheHelper.getChildrenFromCache(member, constraint)
+                == null)
             {
-                final RolapMember member = entry.getKey();
-                if (cacheHelper.getChildrenFromCache(member, constraint)
-                    == null)
-                {
-                    final List<RolapMember> list = entry.getValue();
-                    cacheHelper.putChildren(member, constraint, list);
-                }
+                final List<RolapMember> list = entry.getValue();
+                cacheHelper.putChildren(member, constraint, list);
             }
         }
     }
@@ -318,34 +377,33 @@ public class SmartMemberReader implements MemberReader {
     }
 
     public RolapMember getLeadMember(RolapMember member, int n) {
-        // uncertain if this method needs to be synchronized
-        synchronized (cacheHelper) {
-            if (n == 0 || member.isNull()) {
-                return member;
-            } else {
-                SiblingIterator iter = new SiblingIterator(this, member);
-                if (n > 0) {
-                    RolapMember sibling = null;
-                    while (n-- > 0) {
-                        if (!iter.hasNext()) {
-                            return (RolapMember)
-                                member.getHierarchy().getNullMember();
-                        }
-                        sibling = iter.nextMember();
+        // No need to synchronize: the iterator reads children via
+        // getMemberChildren, which is thread-safe.
+        if (n == 0 || member.isNull()) {
+            return member;
+        } else {
+            SiblingIterator iter = new SiblingIterator(this, member);
+            if (n > 0) {
+                RolapMember sibling = null;
+                while (n-- > 0) {
+                    if (!iter.hasNext()) {
+                        return (RolapMember)
+                            member.getHierarchy().getNullMember();
                     }
-                    return sibling;
-                } else {
-                    n = -n;
-                    RolapMember sibling = null;
-                    while (n-- > 0) {
-                        if (!iter.hasPrevious()) {
-                            return (RolapMember)
-                                member.getHierarchy().getNullMember();
-                        }
-                        sibling = iter.previousMember();
+                    sibling = iter.nextMember();
+                }
+                return sibling;
+            } else {
+                n = -n;
+                RolapMember sibling = null;
+                while (n-- > 0) {
+                    if (!iter.hasPrevious()) {
+                        return (RolapMember)
+                            member.getHierarchy().getNullMember();
                     }
-                    return sibling;
+                    sibling = iter.previousMember();
                 }
+                return sibling;
             }
         }
     }
@@ -5,7 +5,7 @@
 // You must accept the terms of that agreement to use this software.
 //
 // Copyright (C) 2001-2005 Julian Hyde
-// Copyright (C) 2005-2013 Pentaho and others
+// Copyright (C) 2005-2014 Pentaho and others
 // All Rights Reserved.
 */
 package mondrian.rolap;
@@ -27,6 +27,7 @@ import org.eigenbase.util.property.StringProperty;
 
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.sql.DataSource;
 
@@ -46,9 +47,14 @@ class SqlMemberSource
     private final RolapHierarchy hierarchy;
     private final DataSource dataSource;
     private MemberCache cache;
-    private int lastOrdinal = 0;
+    /** Ordinal of the next member created; member readers may call this
+     * source from several threads at once. */
+    private final AtomicInteger lastOrdinal = new AtomicInteger();
     private boolean assignOrderKeys;
     private Map<Object, Object> valuePool;
+    /** Snapshot from which to read members instead of executing SQL, or
+     * null. */
+    private RolapMemberSnapshot snapshot;
 
     SqlMemberSource(RolapHierarchy hierarchy) {
         this.hierarchy = hierarchy;
@@ -59,6 +65,17 @@ class SqlMemberSource
         valuePool = ValuePoolFactoryFactory.getValuePoolFactory().create(this);
     }
 
+    /**
+     * Sets the snapshot from which this source reads all members of a level,
+     * if it can, instead of executing SQL, and to which it saves all members
+     * of a level after reading them via SQL.
+     *
+     * @param snapshot Snapshot, or null
+     */
+    void setSnapshot(RolapMemberSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
     // implement MemberSource
     public RolapHierarchy getHierarchy() {
         return hierarchy;
@@ -366,13 +383,13 @@ class SqlMemberSource
                     member = map.get(key);
                     if (member == null) {
                         RolapMemberBase memberBase =
-                            new RolapMemberBase(parent, level, value);
-                        memberBase.setOrdinal(lastOrdinal++);
+                            makeRegularMember(parent, level, value);
+                        memberBase.setOrdinal(lastOrdinal.getAndIncrement());
                         member = memberBase;
 /*
 RME is this right
                         if (level.getOrdinalExp() != level.getKeyExp()) {
-                            member.setOrdinal(lastOrdinal++);
+                            member.setOrdinal(lastOrdinal.getAndIncrement());
                         }
 */
                         if (value == RolapUtil.sqlNullValue) {
@@ -519,6 +536,24 @@ RME is this right
         if (level.isAll()) {
             return Collections.singletonList(hierarchy.getAllMember());
         }
+        if (snapshot != null
+            && constraint == DefaultTupleConstraint.instance()
+            && RolapMemberSnapshot.isEligible(level))
+        {
+            List<RolapMember> members = readSnapshot(level);
+            if (members == null) {
+                members = readMembersInLevel(level, constraint);
+                writeSnapshot(level, members);
+            }
+            return members;
+        }
+        return readMembersInLevel(level, constraint);
+    }
+
+    private List<RolapMember> readMembersInLevel(
+        RolapLevel level,
+        TupleConstraint constraint)
+    {
         final TupleReader tupleReader =
             level.getDimension().isHighCardinality()
                 ? new HighCardSqlTupleReader(constraint)
@@ -831,6 +866,13 @@ RME is this right
         List<RolapMember> children,
         MemberChildrenConstraint mcc)
     {
+        if (snapshot != null
+            && mcc == DefaultMemberChildrenConstraint.instance()
+            && readChildrenFromSnapshot(parentMembers, children))
+        {
+            return Util.toNullValuesMap(children);
+        }
+
         // try to fetch all children at once
         RolapLevel childLevel =
             getCommonChildLevelForDescendants(parentMembers);
@@ -873,10 +915,223 @@ RME is this right
         {
             return Util.toNullValuesMap((List)Collections.emptyList());
         }
+        if (snapshot != null
+            && constraint == DefaultMemberChildrenConstraint.instance()
+            && readChildrenFromSnapshot(
+                Collections.singletonList(parentMember), children))
+        {
+            return Util.toNullValuesMap(children);
+        }
         getMemberChildren2(parentMember, children, constraint);
         return Util.toNullValuesMap(children);
     }
 
+    /**
+     * Reads the children of members from the snapshot, if the snapshot
+     * contains all members of their child level. Reads the whole level, and
+     * puts the level and the children of each of its parents into the cache,
+     * so that the snapshot is read only once.
+     *
+     * @param parentMembers Parent members, all of the same level
+     * @param children List to which to add children
+     * @return Whether children were read from the snapshot
+     */
+    private boolean readChildrenFromSnapshot(
+        List<RolapMember> parentMembers,
+        List<RolapMember> children)
+    {
+        if (parentMembers.isEmpty()) {
+            return false;
+        }
+        final RolapLevel parentLevel = parentMembers.get(0).getLevel();
+        final RolapLevel childLevel = (RolapLevel) parentLevel.getChildLevel();
+        if (childLevel == null
+            || !RolapMemberSnapshot.isEligible(childLevel)
+            || !snapshot.contains(childLevel))
+        {
+            return false;
+        }
+        for (RolapMember parentMember : parentMembers) {
+            if (parentMember.isCalculated()
+                || parentMember.getLevel() != parentLevel)
+            {
+                return false;
+            }
+        }
+        final TupleConstraint levelConstraint =
+            DefaultTupleConstraint.instance();
+        List<RolapMember> members =
+            cache.getLevelMembersFromCache(childLevel, levelConstraint);
+        if (members == null) {
+            members = readSnapshot(childLevel);
+            if (members == null) {
+                return false;
+            }
+            cache.putChildren(childLevel, levelConstraint, members);
+        }
+        final Map<RolapMember, List<RolapMember>> childrenMap =
+            new HashMap<RolapMember, List<RolapMember>>();
+        for (RolapMember member : members) {
+            List<RolapMember> list =
+                childrenMap.get(member.getParentMember());
+            if (list == null) {
+                list = new ArrayList<RolapMember>();
+                childrenMap.put(member.getParentMember(), list);
+            }
+            list.add(member);
+        }
+        // A requested parent that has no children gets an empty list, so
+        // that the next request for its children finds them in the cache,
+        // rather than scanning the level again.
+        for (RolapMember parentMember : parentMembers) {
+            final RolapMember parent = RolapUtil.strip(parentMember);
+            if (!childrenMap.containsKey(parent)) {
+                childrenMap.put(parent, new ArrayList<RolapMember>());
+            }
+        }
+        final MemberChildrenConstraint constraint =
+            DefaultMemberChildrenConstraint.instance();
+        for (Map.Entry<RolapMember, List<RolapMember>> entry
+            : childrenMap.entrySet())
+        {
+            cache.putChildren(entry.getKey(), constraint, entry.getValue());
+        }
+        for (RolapMember parentMember : parentMembers) {
+            children.addAll(childrenMap.get(RolapUtil.strip(parentMember)));
+        }
+        return true;
+    }
+
+    /**
+     * Creates the members of a level from the snapshot. The members of
+     * their parent level must be in the cache or in the snapshot.
+     *
+     * @param level Level
+     * @return Members of level, or null if the snapshot does not contain
+     *   them
+     */
+    private List<RolapMember> readSnapshot(RolapLevel level) {
+        final List<RolapMemberSnapshot.Row> rows = snapshot.read(level);
+        if (rows == null) {
+            return null;
+        }
+
+        // Find the parents, by the keys of their ancestors.
+        final RolapLevel parentLevel = (RolapLevel) level.getParentLevel();
+        final Map<List<Object>, RolapMember> parentMap =
+            new HashMap<List<Object>, RolapMember>();
+        if (parentLevel == null) {
+            parentMap.put(Collections.emptyList(), null);
+        } else if (parentLevel.isAll()) {
+            parentMap.put(Collections.emptyList(), allMember());
+        } else {
+            List<RolapMember> parents =
+                cache.getLevelMembersFromCache(
+                    parentLevel, DefaultTupleConstraint.instance());
+            if (parents == null) {
+                parents = readSnapshot(parentLevel);
+                if (parents == null) {
+                    return null;
+                }
+                cache.putChildren(
+                    parentLevel, DefaultTupleConstraint.instance(), parents);
+            }
+            for (RolapMember parent : parents) {
+                parentMap.put(keyPath(parent), parent);
+            }
+        }
+
+        final Property[] properties = level.getProperties();
+        final boolean hasOrdinal =
+            !level.getOrdinalExp().equals(level.getKeyExp());
+        final List<RolapMember> members =
+            new ArrayList<RolapMember>(rows.size());
+        for (RolapMemberSnapshot.Row row : rows) {
+            final List<Object> parentPath =
+                Arrays.asList(row.keys).subList(0, row.keys.length - 1);
+            if (!parentMap.containsKey(parentPath)) {
+                // The snapshot of the parent level is not consistent with
+                // this one. Read from the database.
+                return null;
+            }
+            final RolapMember parent = parentMap.get(parentPath);
+            final Object value = row.getKey();
+            final Object key = cache.makeKey(parent, value);
+            RolapMember member = cache.getMember(key, false);
+            if (member == null) {
+                final RolapMemberBase newMember =
+                    makeRegularMember(parent, level, value);
+                if (hasOrdinal) {
+                    newMember.setOrdinal(lastOrdinal.getAndIncrement());
+                    if (assignOrderKeys) {
+                        setOrderKey(newMember, row.orderKey);
+                    }
+                }
+                if (row.caption != null) {
+                    newMember.setCaption(row.caption);
+                }
+                for (int j = 0; j < properties.length; j++) {
+                    newMember.setProperty(
+                        properties[j].getName(),
+                        getPooledValue(row.propertyValues[j]));
+                }
+                member = cache.putMemberIfAbsent(key, newMember);
+            }
+            members.add(member);
+        }
+        return members;
+    }
+
+    /**
+     * Saves all members of a level to the snapshot. Reads and saves their
+     * ancestor levels first, if the snapshot does not contain them, so that
+     * the members can be read back.
+     *
+     * @param level Level
+     * @param members All members of level
+     */
+    private void writeSnapshot(RolapLevel level, List<RolapMember> members) {
+        for (RolapMember member : members) {
+            if (!(member instanceof RolapMemberBase)
+                || member.isCalculated())
+            {
+                return;
+            }
+        }
+        final RolapLevel parentLevel = (RolapLevel) level.getParentLevel();
+        if (parentLevel != null
+            && !parentLevel.isAll()
+            && !snapshot.contains(parentLevel))
+        {
+            final TupleConstraint constraint =
+                DefaultTupleConstraint.instance();
+            List<RolapMember> parents =
+                cache.getLevelMembersFromCache(parentLevel, constraint);
+            if (parents == null) {
+                parents = readMembersInLevel(parentLevel, constraint);
+                cache.putChildren(parentLevel, constraint, parents);
+            }
+            writeSnapshot(parentLevel, parents);
+        }
+        snapshot.write(level, members);
+    }
+
+    /**
+     * Returns the keys of a member and its ancestors, starting at the first
+     * level below the 'all' level.
+     */
+    private static List<Object> keyPath(RolapMember member) {
+        final List<Object> keys = new ArrayList<Object>();
+        for (RolapMember m = member;
+            m != null && !m.isAll();
+            m = m.getParentMember())
+        {
+            keys.add(m.getKey());
+        }
+        Collections.reverse(keys);
+        return keys;
+    }
+
     /**
      * If all parents belong to the same level and no parent/child is involved,
      * returns that level; this indicates that all member children can be
@@ -1024,9 +1279,9 @@ RME is this right
             rolapChildLevel = childLevel;
         }
         RolapMemberBase member =
-            new RolapMemberBase(parentMember, rolapChildLevel, value);
+            makeRegularMember(parentMember, rolapChildLevel, value);
         if (!childLevel.getOrdinalExp().equals(childLevel.getKeyExp())) {
-            member.setOrdinal(lastOrdinal++);
+            member.setOrdinal(lastOrdinal.getAndIncrement());
         }
         if (captionValue != null) {
             member.setCaption(captionValue.toString());
@@ -1059,8 +1314,28 @@ RME is this right
                 property.getName(),
                 getPooledValue(accessors.get(columnOffset + j).get()));
         }
-        cache.putMember(key, member);
-        return member;
+        // Another thread, reading the level or the children of another
+        // parent, may have created the same member; use its instance.
+        return cache.putMemberIfAbsent(key, member);
+    }
+
+    /**
+     * Creates a member that is not calculated. If the level is very large,
+     * creates a {@link RolapCompactMember}.
+     *
+     * @param parentMember Parent member
+     * @param level Level
+     * @param value Key
+     * @return Member
+     */
+    private static RolapMemberBase makeRegularMember(
+        RolapMember parentMember,
+        RolapLevel level,
+        Object value)
+    {
+        return RolapCompactMember.isCompact(level)
+            ? new RolapCompactMember(parentMember, level, value)
+            : new RolapMemberBase(parentMember, level, value);
     }
 
     public RolapMember allMember() {
@@ -1094,12 +1369,14 @@ RME is this right
         if (valuePool == null) {
             return incoming;
         } else {
-            Object ret = this.valuePool.get(incoming);
-            if (ret != null) {
-                return ret;
-            } else {
-                this.valuePool.put(incoming, incoming);
-                return incoming;
+            synchronized (valuePool) {
+                Object ret = this.valuePool.get(incoming);
+                if (ret != null) {
+                    return ret;
+                } else {
+                    this.valuePool.put(incoming, incoming);
+                    return incoming;
+                }
             }
         }
     }
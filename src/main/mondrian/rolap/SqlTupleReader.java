@@ -80,6 +80,17 @@ public class SqlTupleReader implements TupleReader {
     List<TargetBase> targets = new ArrayList<TargetBase>();
     int maxRows = 0;
 
+    /**
+     * Number of rows to skip before the first row that is returned. If the
+     * dialect supports it, the rows are skipped in SQL; otherwise they are
+     * read and discarded, without creating members.
+     */
+    int offset = 0;
+
+    /** Whether the last SQL statement generated skips {@link #offset} rows
+     * itself. */
+    private boolean offsetInSql;
+
     /**
      * How many members could not be instantiated in this iteration. This
      * phenomenon occurs in a parent-child hierarchy, where a member cannot be
@@ -398,8 +409,11 @@ public class SqlTupleReader implements TupleReader {
                 String sql = pair.left;
                 List<SqlStatement.Type> types = pair.right;
                 assert sql != null && !sql.equals("");
+                final int rowsToSkip = offsetInSql ? 0 : offset;
                 stmt = RolapUtil.executeQuery(
-                    dataSource, sql, types, maxRows, 0,
+                    dataSource, sql, types,
+                    maxRows > 0 ? maxRows + rowsToSkip : 0,
+                    0,
                     new SqlStatement.StatementLocus(
                         Locus.peek().execution,
                         "SqlTupleReader.readTuples " + partialTargets,
@@ -407,6 +421,9 @@ public class SqlTupleReader implements TupleReader {
                         SqlStatementEvent.Purpose.TUPLES, 0),
                     -1, -1, null);
                 resultSet = stmt.getResultSet();
+                for (int i = 0; i < rowsToSkip && resultSet.next(); i++) {
+                    ++stmt.rowCount;
+                }
             } else {
                 resultSet = null;
             }
@@ -710,6 +727,7 @@ public class SqlTupleReader implements TupleReader {
         // through the list of measures referenced in the query.  And then
         // we generate one sub-select per fact table, joining against each
         // underlying fact table, unioning the sub-selects.
+        offsetInSql = false;
         RolapCube cube = null;
         boolean virtualCube = false;
         if (constraint instanceof SqlContextConstraint) {
@@ -900,6 +918,34 @@ public class SqlTupleReader implements TupleReader {
         DataSource dataSource,
         RolapCube baseCube,
         WhichSelect whichSelect)
+    {
+        final SqlQuery sqlQuery =
+            makeSelectForLevels(dataSource, baseCube, whichSelect);
+
+        offsetInSql = offset > 0
+            && whichSelect == WhichSelect.ONLY
+            && sqlQuery.getDialect().supportsLimitAndOffset();
+        if (offsetInSql) {
+            sqlQuery.setLimitAndOffset(maxRows, offset);
+        }
+
+        return sqlQuery.toSqlAndTypes();
+    }
+
+    /**
+     * Creates the query that retrieves the members of the levels referenced,
+     * subject to the constraint.
+     *
+     * @param dataSource jdbc connection that they query will execute against
+     * @param baseCube this is the cube object for regular cubes, and the
+     *   underlying base cube for virtual cubes
+     * @param whichSelect Position of this select statement in a union
+     * @return SQL query
+     */
+    private SqlQuery makeSelectForLevels(
+        DataSource dataSource,
+        RolapCube baseCube,
+        WhichSelect whichSelect)
     {
         String s =
             "while generating query to retrieve members of level(s) " + targets;
@@ -927,8 +973,62 @@ public class SqlTupleReader implements TupleReader {
         }
 
         constraint.addConstraint(sqlQuery, baseCube, aggStar);
+        return sqlQuery;
+    }
 
-        return sqlQuery.toSqlAndTypes();
+    /**
+     * Counts the distinct tuples of the levels referenced, subject to the
+     * constraint, without reading them. Generates a statement such as
+     *
+     * <blockquote><pre>SELECT count(*) FROM (
+     *   SELECT DISTINCT "customer"."customer_id", ...
+     *   FROM "customer", "sales_fact_1997"
+     *   WHERE ...
+     *   GROUP BY "customer"."customer_id", ...) AS "countQuery"</pre>
+     * </blockquote>
+     *
+     * <p>The targets must all be read by SQL (there must be no enumerated
+     * targets), the cube must not be virtual, and the dialect must allow a
+     * query in the FROM clause.</p>
+     *
+     * @param dataSource Data source
+     * @return Number of tuples
+     */
+    int countTuples(DataSource dataSource) {
+        assert getEnumTargetCount() == 0;
+        assert emptySets == 0;
+        final RolapCube cube =
+            (RolapCube) constraint.getEvaluator().getQuery().getCube();
+        assert !cube.isVirtual();
+        final String message = "while counting tuples of level(s) " + targets;
+
+        // The inner query has no ORDER BY; some databases do not allow one
+        // in a sub-query.
+        final SqlQuery innerQuery =
+            makeSelectForLevels(dataSource, cube, WhichSelect.NOT_LAST);
+        innerQuery.setDistinct(true);
+        final SqlQuery countQuery = SqlQuery.newQuery(dataSource, message);
+        countQuery.addSelect("count(*)", null);
+        countQuery.addFrom(innerQuery, "countQuery", true);
+
+        final SqlStatement stmt =
+            RolapUtil.executeQuery(
+                dataSource,
+                countQuery.toString(),
+                new Locus(
+                    Locus.peek().execution,
+                    "SqlTupleReader.countTuples " + targets,
+                    message));
+        try {
+            final ResultSet resultSet = stmt.getResultSet();
+            Util.assertTrue(resultSet.next());
+            ++stmt.rowCount;
+            return resultSet.getInt(1);
+        } catch (SQLException e) {
+            throw stmt.handle(e);
+        } finally {
+            stmt.close();
+        }
     }
 
     boolean targetIsOnBaseCube(TargetBase target, RolapCube baseCube) {
@@ -1363,6 +1463,17 @@ public class SqlTupleReader implements TupleReader {
         this.maxRows = maxRows;
     }
 
+    /**
+     * Sets the number of rows to skip. Together with
+     * {@link #setMaxRows(int)}, reads a window of rows, for example a page
+     * of a large set.
+     *
+     * @param offset Number of rows to skip
+     */
+    void setOffset(int offset) {
+        this.offset = offset;
+    }
+
     /**
      * Description of the position of a SELECT statement in a UNION. Queries
      * on virtual cubes tend to generate unions.
@@ -0,0 +1,273 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.rolap.agg;
+
+import mondrian.olap.Util;
+import mondrian.rolap.SqlStatement;
+import mondrian.util.ArraySortedSet;
+
+import java.util.Arrays;
+import java.util.SortedSet;
+
+/**
+ * Collects the distinct values of a column of native type (int, long or
+ * double) without boxing each value.
+ *
+ * <p>Values are appended to a growable array of the primitive type. When the
+ * array is full, it is sorted and duplicates are removed in place; the array
+ * only grows if that does not free up enough room. So the array stays
+ * proportional to the number of distinct values, not the number of rows, and
+ * each distinct value is boxed only once, by {@link #addTo}.</p>
+ *
+ * <p>{@link SegmentLoader} uses accumulators to build the axis value sets of
+ * a segment while it reads rows from JDBC. Loading a segment from a large
+ * aggregate query would otherwise box every value of every row and insert
+ * it into a {@link java.util.TreeSet}.</p>
+ */
+public abstract class AxisValueAccumulator {
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** Number of values in the array. */
+    protected int count;
+
+    /** Number of values, at the start of the array, that are known to be
+     * sorted and distinct. */
+    protected int sortedCount;
+
+    /**
+     * Creates an accumulator for a column of a given type, or returns null
+     * if the type is not native.
+     *
+     * @param type Column type
+     * @return Accumulator, or null
+     */
+    public static AxisValueAccumulator forType(SqlStatement.Type type) {
+        switch (type) {
+        case INT:
+            return new IntAccumulator();
+        case LONG:
+            return new LongAccumulator();
+        case DOUBLE:
+            return new DoubleAccumulator();
+        default:
+            return null;
+        }
+    }
+
+    public void add(int value) {
+        throw new UnsupportedOperationException();
+    }
+
+    public void add(long value) {
+        throw new UnsupportedOperationException();
+    }
+
+    public void add(double value) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Returns the number of distinct values.
+     *
+     * @return Number of distinct values
+     */
+    public int size() {
+        compact();
+        return count;
+    }
+
+    /**
+     * Adds the distinct values collected so far, boxed, to a sorted set.
+     *
+     * <p>If the target set is an empty {@link java.util.TreeSet} in natural
+     * order, it is built in linear time.</p>
+     *
+     * @param set Set to add values to
+     */
+    @SuppressWarnings({"unchecked"})
+    public void addTo(SortedSet<Comparable> set) {
+        compact();
+        set.addAll(new ArraySortedSet(toArray()));
+    }
+
+    /**
+     * Sorts the values and removes duplicates.
+     */
+    protected void compact() {
+        if (sortedCount < count) {
+            sort();
+            count = dedup();
+            sortedCount = count;
+        }
+    }
+
+    /**
+     * Makes room for one more value, compacting or growing the array if it is
+     * full.
+     */
+    protected final void ensureRoom() {
+        final int capacity = capacity();
+        if (count < capacity) {
+            return;
+        }
+        compact();
+        if (count > capacity / 2) {
+            grow(capacity * 2);
+        }
+    }
+
+    protected abstract int capacity();
+
+    protected abstract void grow(int newCapacity);
+
+    protected abstract void sort();
+
+    /**
+     * Removes adjacent duplicates from the sorted array, and returns the
+     * number of values that remain.
+     */
+    protected abstract int dedup();
+
+    protected abstract Comparable[] toArray();
+
+    /**
+     * Accumulator for int values.
+     */
+    static class IntAccumulator extends AxisValueAccumulator {
+        private int[] values = new int[INITIAL_CAPACITY];
+
+        public void add(int value) {
+            ensureRoom();
+            values[count++] = value;
+        }
+
+        protected int capacity() {
+            return values.length;
+        }
+
+        protected void grow(int newCapacity) {
+            values = Util.copyOf(values, newCapacity);
+        }
+
+        protected void sort() {
+            Arrays.sort(values, 0, count);
+        }
+
+        protected int dedup() {
+            int n = count == 0 ? 0 : 1;
+            for (int i = 1; i < count; i++) {
+                if (values[i] != values[n - 1]) {
+                    values[n++] = values[i];
+                }
+            }
+            return n;
+        }
+
+        protected Comparable[] toArray() {
+            final Comparable[] array = new Comparable[count];
+            for (int i = 0; i < count; i++) {
+                array[i] = values[i];
+            }
+            return array;
+        }
+    }
+
+    /**
+     * Accumulator for long values.
+     */
+    static class LongAccumulator extends AxisValueAccumulator {
+        private long[] values = new long[INITIAL_CAPACITY];
+
+        public void add(long value) {
+            ensureRoom();
+            values[count++] = value;
+        }
+
+        protected int capacity() {
+            return values.length;
+        }
+
+        protected void grow(int newCapacity) {
+            values = Util.copyOf(values, newCapacity);
+        }
+
+        protected void sort() {
+            Arrays.sort(values, 0, count);
+        }
+
+        protected int dedup() {
+            int n = count == 0 ? 0 : 1;
+            for (int i = 1; i < count; i++) {
+                if (values[i] != values[n - 1]) {
+                    values[n++] = values[i];
+                }
+            }
+            return n;
+        }
+
+        protected Comparable[] toArray() {
+            final Comparable[] array = new Comparable[count];
+            for (int i = 0; i < count; i++) {
+                array[i] = values[i];
+            }
+            return array;
+        }
+    }
+
+    /**
+     * Accumulator for double values.
+     *
+     * <p>Values are sorted and compared as {@link Double#compareTo} does, so
+     * that -0.0 and 0.0 are distinct values, and NaN equals itself; this is
+     * consistent with a {@link java.util.TreeSet} of {@link Double}.</p>
+     */
+    static class DoubleAccumulator extends AxisValueAccumulator {
+        private double[] values = new double[INITIAL_CAPACITY];
+
+        public void add(double value) {
+            ensureRoom();
+            values[count++] = value;
+        }
+
+        protected int capacity() {
+            return values.length;
+        }
+
+        protected void grow(int newCapacity) {
+            values = Util.copyOf(values, newCapacity);
+        }
+
+        protected void sort() {
+            Arrays.sort(values, 0, count);
+        }
+
+        protected int dedup() {
+            int n = count == 0 ? 0 : 1;
+            for (int i = 1; i < count; i++) {
+                if (Double.doubleToLongBits(values[i])
+                    != Double.doubleToLongBits(values[n - 1]))
+                {
+                    values[n++] = values[i];
+                }
+            }
+            return n;
+        }
+
+        protected Comparable[] toArray() {
+            final Comparable[] array = new Comparable[count];
+            for (int i = 0; i < count; i++) {
+                array[i] = values[i];
+            }
+            return array;
+        }
+    }
+}
+
+// End AxisValueAccumulator.java
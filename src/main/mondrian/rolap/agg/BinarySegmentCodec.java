@@ -0,0 +1,1157 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.rolap.agg;
+
+import mondrian.olap.Util;
+import mondrian.rolap.*;
+import mondrian.spi.*;
+import mondrian.util.*;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * Implementation of {@link SegmentCodec} that writes a compact, versioned
+ * binary format.
+ *
+ * <p>Every message starts with two magic bytes, the version of the format,
+ * and the kind of message (header, or one of the kinds of body). Counts,
+ * lengths and ordinals are written as variable-length integers.</p>
+ *
+ * <p>The values of the columns of a header, and of the axes of a body, are
+ * written once each into a dictionary; value sets refer to them by index.
+ * Consecutive strings in a dictionary share their common prefix, which is
+ * effective because value sets are sorted.</p>
+ *
+ * <p>Cell ordinals of sparse bodies are bit-packed, each axis using as many
+ * bits as its largest ordinal needs. Arrays of doubles that are all whole
+ * numbers are written as integers. Null indicators of dense bodies are
+ * written as runs or as a plain bitmap, whichever is shorter. Value arrays
+ * and packed ordinals are optionally compressed with {@link Deflater}.</p>
+ *
+ * <p>Values of the usual SQL types, and {@link RolapUtil#sqlNullValue}, have
+ * a dedicated encoding; any other value is written using Java
+ * serialization.</p>
+ */
+public class BinarySegmentCodec implements SegmentCodec {
+    /**
+     * Version of the format. Increment it when the format changes; older
+     * versions cannot be decoded, so a cache should treat such segments as
+     * missing.
+     */
+    public static final int VERSION = 1;
+
+    private static final int MAGIC0 = 'M';
+    private static final int MAGIC1 = 'S';
+
+    // Kinds of message.
+    private static final int HEADER = 0;
+    private static final int DENSE_DOUBLE = 1;
+    private static final int DENSE_INT = 2;
+    private static final int DENSE_OBJECT = 3;
+    private static final int SPARSE = 4;
+
+    // Value tags.
+    private static final int NULL = 0;
+    private static final int SQL_NULL = 1;
+    private static final int STRING = 2;
+    private static final int PREFIXED_STRING = 3;
+    private static final int INTEGER = 4;
+    private static final int LONG = 5;
+    private static final int DOUBLE = 6;
+    private static final int FLOAT = 7;
+    private static final int SHORT = 8;
+    private static final int BYTE = 9;
+    private static final int FALSE = 10;
+    private static final int TRUE = 11;
+    private static final int BIG_DECIMAL = 12;
+    private static final int BIG_INTEGER = 13;
+    private static final int DATE = 14;
+    private static final int SQL_DATE = 15;
+    private static final int SQL_TIME = 16;
+    private static final int SQL_TIMESTAMP = 17;
+    private static final int SERIALIZED = 18;
+
+    // Encodings of sections.
+    private static final int RAW = 0;
+    private static final int DEFLATE = 1;
+
+    // Encodings of arrays of doubles.
+    private static final int RAW_DOUBLES = 0;
+    private static final int INTEGRAL_DOUBLES = 1;
+
+    // Encodings of bitmaps.
+    private static final int BITMAP_BITS = 0;
+    private static final int BITMAP_RUNS = 1;
+
+    /**
+     * Sections shorter than this are never compressed; the saving would be
+     * smaller than the cost of the deflater.
+     */
+    private static final int MIN_COMPRESS_SIZE = 64;
+
+    private final boolean compressValues;
+
+    /**
+     * Creates a BinarySegmentCodec.
+     *
+     * @param compressValues Whether to compress value arrays
+     */
+    public BinarySegmentCodec(boolean compressValues) {
+        this.compressValues = compressValues;
+    }
+
+    public byte[] encodeHeader(SegmentHeader header) {
+        final Encoder out = new Encoder(256);
+        writePreamble(out, HEADER);
+        out.writeString(header.schemaName);
+        final byte[] checksum = new byte[header.schemaChecksum.length()];
+        for (int i = 0; i < checksum.length; i++) {
+            checksum[i] = header.schemaChecksum.byteAt(i);
+        }
+        out.writeByteArray(checksum);
+        out.writeString(header.cubeName);
+        out.writeString(header.measureName);
+        out.writeString(header.rolapStarFactTableName);
+        writeBitKey(out, header.constrainedColsBitKey);
+
+        final Dictionary dictionary = new Dictionary();
+        for (SegmentColumn column : header.getConstrainedColumns()) {
+            dictionary.addAll(column.values);
+        }
+        for (SegmentColumn column : header.getExcludedRegions()) {
+            dictionary.addAll(column.values);
+        }
+        dictionary.write(out);
+        writeColumns(out, dictionary, header.getConstrainedColumns());
+        writeColumns(out, dictionary, header.getExcludedRegions());
+
+        out.writeVarInt(header.compoundPredicates.size());
+        for (String predicate : header.compoundPredicates) {
+            out.writeString(predicate);
+        }
+        return out.toByteArray();
+    }
+
+    public SegmentHeader decodeHeader(byte[] bytes) {
+        final Decoder in = new Decoder(bytes, 0, bytes.length);
+        final int kind = readPreamble(in);
+        if (kind != HEADER) {
+            throw Util.newError(
+                "Encoded segment is a body, not a header (kind " + kind
+                + ")");
+        }
+        final String schemaName = in.readString();
+        final ByteString schemaChecksum = new ByteString(in.readByteArray());
+        final String cubeName = in.readString();
+        final String measureName = in.readString();
+        final String factTableName = in.readString();
+        final BitKey constrainedColsBitKey = readBitKey(in);
+        final Comparable[] dictionary = readDictionary(in);
+        final List<SegmentColumn> constrainedColumns =
+            readColumns(in, dictionary);
+        final List<SegmentColumn> excludedRegions =
+            readColumns(in, dictionary);
+        final int predicateCount = in.readVarInt();
+        final List<String> compoundPredicates =
+            new ArrayList<String>(predicateCount);
+        for (int i = 0; i < predicateCount; i++) {
+            compoundPredicates.add(in.readString());
+        }
+        in.checkEnd();
+        return new SegmentHeader(
+            schemaName,
+            schemaChecksum,
+            cubeName,
+            measureName,
+            constrainedColumns,
+            compoundPredicates,
+            factTableName,
+            constrainedColsBitKey,
+            excludedRegions);
+    }
+
+    public byte[] encodeBody(SegmentBody body) {
+        final int kind;
+        if (body instanceof DenseDoubleSegmentBody) {
+            kind = DENSE_DOUBLE;
+        } else if (body instanceof DenseIntSegmentBody) {
+            kind = DENSE_INT;
+        } else if (body instanceof DenseObjectSegmentBody) {
+            kind = DENSE_OBJECT;
+        } else if (body instanceof SparseSegmentBody) {
+            kind = SPARSE;
+        } else {
+            throw Util.newInternal(
+                "Cannot encode segment body of " + body.getClass());
+        }
+        final Encoder out = new Encoder(1024);
+        writePreamble(out, kind);
+
+        final SortedSet<Comparable>[] axisValueSets = body.getAxisValueSets();
+        final boolean[] nullAxisFlags = body.getNullAxisFlags();
+        out.writeVarInt(axisValueSets.length);
+        final Dictionary dictionary = new Dictionary();
+        for (SortedSet<Comparable> axisValueSet : axisValueSets) {
+            dictionary.addAll(axisValueSet);
+        }
+        dictionary.write(out);
+        for (int i = 0; i < axisValueSets.length; i++) {
+            writeSet(out, dictionary, axisValueSets[i]);
+            out.write(nullAxisFlags[i] ? 1 : 0);
+        }
+
+        switch (kind) {
+        case DENSE_DOUBLE: {
+            final double[] values = (double[]) body.getValueArray();
+            out.writeVarInt(values.length);
+            writeBitmap(out, body.getNullValueIndicators(), values.length);
+            // Sums of integer columns are whole numbers, which are shorter
+            // as variable-length integers.
+            boolean integral = true;
+            for (double value : values) {
+                if (Double.doubleToRawLongBits(value)
+                    != Double.doubleToRawLongBits((long) value))
+                {
+                    integral = false;
+                    break;
+                }
+            }
+            out.write(integral ? INTEGRAL_DOUBLES : RAW_DOUBLES);
+            final Encoder section = new Encoder(values.length * 8);
+            for (double value : values) {
+                if (integral) {
+                    section.writeSignedVarLong((long) value);
+                } else {
+                    section.writeLong(Double.doubleToRawLongBits(value));
+                }
+            }
+            writeSection(out, section);
+            break;
+        }
+        case DENSE_INT: {
+            final int[] values = (int[]) body.getValueArray();
+            out.writeVarInt(values.length);
+            writeBitmap(out, body.getNullValueIndicators(), values.length);
+            final Encoder section = new Encoder(values.length * 2);
+            for (int value : values) {
+                section.writeSignedVarInt(value);
+            }
+            writeSection(out, section);
+            break;
+        }
+        case DENSE_OBJECT: {
+            final Object[] values = (Object[]) body.getValueArray();
+            out.writeVarInt(values.length);
+            final Encoder section = new Encoder(values.length * 4);
+            for (Object value : values) {
+                writeValue(section, value);
+            }
+            writeSection(out, section);
+            break;
+        }
+        case SPARSE: {
+            final SparseSegmentBody sparseBody = (SparseSegmentBody) body;
+            final int axisCount = axisValueSets.length;
+            final int[][] ordinals = new int[sparseBody.keys.length][];
+            final int[] maxOrdinals = new int[axisCount];
+            for (int i = 0; i < ordinals.length; i++) {
+                ordinals[i] = sparseBody.keys[i].getOrdinals();
+                for (int j = 0; j < axisCount; j++) {
+                    maxOrdinals[j] = Math.max(maxOrdinals[j], ordinals[i][j]);
+                }
+            }
+            out.writeVarInt(ordinals.length);
+            final int[] widths = new int[axisCount];
+            for (int j = 0; j < axisCount; j++) {
+                widths[j] = 32 - Integer.numberOfLeadingZeros(maxOrdinals[j]);
+                out.write(widths[j]);
+            }
+            final Encoder keySection = new Encoder(ordinals.length * 4);
+            final BitPacker packer = new BitPacker(keySection);
+            for (int[] cellOrdinals : ordinals) {
+                for (int j = 0; j < axisCount; j++) {
+                    packer.write(cellOrdinals[j], widths[j]);
+                }
+            }
+            packer.flush();
+            writeSection(out, keySection);
+            final Encoder section = new Encoder(ordinals.length * 4);
+            for (Object value : sparseBody.data) {
+                writeValue(section, value);
+            }
+            writeSection(out, section);
+            break;
+        }
+        }
+        return out.toByteArray();
+    }
+
+    public SegmentBody decodeBody(byte[] bytes) {
+        final Decoder in = new Decoder(bytes, 0, bytes.length);
+        final int kind = readPreamble(in);
+        final int axisCount = in.readVarInt();
+        final Comparable[] dictionary = readDictionary(in);
+        final List<Pair<SortedSet<Comparable>, Boolean>> axes =
+            new ArrayList<Pair<SortedSet<Comparable>, Boolean>>(axisCount);
+        for (int i = 0; i < axisCount; i++) {
+            final SortedSet<Comparable> axisValueSet =
+                readSet(in, dictionary);
+            axes.add(Pair.of(axisValueSet, in.read() != 0));
+        }
+
+        final SegmentBody body;
+        switch (kind) {
+        case DENSE_DOUBLE: {
+            final int length = in.readVarInt();
+            final BitSet nullValues = readBitmap(in, length);
+            final int encoding = in.read();
+            if (encoding != INTEGRAL_DOUBLES && encoding != RAW_DOUBLES) {
+                throw Util.newError(
+                    "Invalid value encoding " + encoding
+                    + " in encoded segment");
+            }
+            final Decoder section = readSection(in);
+            final double[] values = new double[length];
+            for (int i = 0; i < length; i++) {
+                values[i] =
+                    encoding == INTEGRAL_DOUBLES
+                        ? (double) section.readSignedVarLong()
+                        : Double.longBitsToDouble(section.readLong());
+            }
+            section.checkEnd();
+            body = new DenseDoubleSegmentBody(nullValues, values, axes);
+            break;
+        }
+        case DENSE_INT: {
+            final int length = in.readVarInt();
+            final BitSet nullValues = readBitmap(in, length);
+            final Decoder section = readSection(in);
+            final int[] values = new int[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = section.readSignedVarInt();
+            }
+            section.checkEnd();
+            body = new DenseIntSegmentBody(nullValues, values, axes);
+            break;
+        }
+        case DENSE_OBJECT: {
+            final int length = in.readVarInt();
+            final Decoder section = readSection(in);
+            final Object[] values = new Object[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = readValue(section);
+            }
+            section.checkEnd();
+            body = new DenseObjectSegmentBody(values, axes);
+            break;
+        }
+        case SPARSE: {
+            final int cellCount = in.readVarInt();
+            final int[] widths = new int[axisCount];
+            for (int j = 0; j < axisCount; j++) {
+                widths[j] = in.read();
+                if (widths[j] > 31) {
+                    throw Util.newError(
+                        "Invalid ordinal width " + widths[j]
+                        + " in encoded segment");
+                }
+            }
+            final Decoder keySection = readSection(in);
+            final BitUnpacker unpacker = new BitUnpacker(keySection);
+            final CellKey[] keys = new CellKey[cellCount];
+            for (int i = 0; i < cellCount; i++) {
+                final int[] ordinals = new int[axisCount];
+                for (int j = 0; j < axisCount; j++) {
+                    ordinals[j] = unpacker.read(widths[j]);
+                }
+                keys[i] = CellKey.Generator.newCellKey(ordinals);
+            }
+            keySection.checkEnd();
+            final Decoder section = readSection(in);
+            final Map<CellKey, Object> data =
+                new LinkedHashMap<CellKey, Object>(cellCount * 4 / 3 + 1);
+            for (int i = 0; i < cellCount; i++) {
+                data.put(keys[i], readValue(section));
+            }
+            section.checkEnd();
+            body = new SparseSegmentBody(data, axes);
+            break;
+        }
+        default:
+            throw Util.newError(
+                "Encoded segment is not a body (kind " + kind + ")");
+        }
+        in.checkEnd();
+        return body;
+    }
+
+    private static void writePreamble(Encoder out, int kind) {
+        out.write(MAGIC0);
+        out.write(MAGIC1);
+        out.write(VERSION);
+        out.write(kind);
+    }
+
+    private static int readPreamble(Decoder in) {
+        if (in.read() != MAGIC0 || in.read() != MAGIC1) {
+            throw Util.newError("Bytes are not an encoded segment");
+        }
+        final int version = in.read();
+        if (version != VERSION) {
+            throw Util.newError(
+                "Unsupported version " + version + " of encoded segment; "
+                + "expected version " + VERSION);
+        }
+        return in.read();
+    }
+
+    /**
+     * Writes a section, compressing it if compression is enabled and
+     * makes it shorter.
+     */
+    private void writeSection(Encoder out, Encoder section) {
+        if (compressValues && section.size() >= MIN_COMPRESS_SIZE) {
+            final byte[] compressed = section.deflate();
+            if (compressed.length < section.size()) {
+                out.write(DEFLATE);
+                out.writeVarInt(section.size());
+                out.writeByteArray(compressed);
+                return;
+            }
+        }
+        out.write(RAW);
+        out.writeVarInt(section.size());
+        out.append(section);
+    }
+
+    private static Decoder readSection(Decoder in) {
+        final int encoding = in.read();
+        switch (encoding) {
+        case RAW:
+            return in.readSlice(in.readVarInt());
+        case DEFLATE:
+            final int length = in.readVarInt();
+            final byte[] compressed = in.readByteArray();
+            final byte[] bytes = new byte[length];
+            final Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressed);
+                int n = 0;
+                while (n < length) {
+                    final int k = inflater.inflate(bytes, n, length - n);
+                    if (k == 0
+                        && (inflater.finished() || inflater.needsInput()))
+                    {
+                        break;
+                    }
+                    n += k;
+                }
+                if (n != length || !inflater.finished()) {
+                    throw Util.newError(
+                        "Compressed section of encoded segment is corrupt");
+                }
+            } catch (DataFormatException e) {
+                throw Util.newError(
+                    e, "Compressed section of encoded segment is corrupt");
+            } finally {
+                inflater.end();
+            }
+            return new Decoder(bytes, 0, length);
+        default:
+            throw Util.newError(
+                "Invalid section encoding " + encoding
+                + " in encoded segment");
+        }
+    }
+
+    private static void writeBitKey(Encoder out, BitKey bitKey) {
+        if (bitKey == null) {
+            out.writeVarInt(0);
+            return;
+        }
+        // Preserve the implementation class, so that the decoded key has
+        // the same capacity.
+        final BitSet bitSet = bitKey.toBitSet();
+        final int size =
+            bitKey instanceof BitKey.Small
+                ? 0
+                : bitKey instanceof BitKey.Mid128
+                    ? 64
+                    : Math.max(128, bitSet.length());
+        out.writeVarInt(size + 1);
+        out.writeVarInt(bitSet.cardinality());
+        int previous = 0;
+        for (int i = bitSet.nextSetBit(0); i >= 0; i = bitSet.nextSetBit(i + 1))
+        {
+            out.writeVarInt(i - previous);
+            previous = i;
+        }
+    }
+
+    private static BitKey readBitKey(Decoder in) {
+        final int size = in.readVarInt() - 1;
+        if (size < 0) {
+            return null;
+        }
+        final BitKey bitKey = BitKey.Factory.makeBitKey(size);
+        final int cardinality = in.readVarInt();
+        int position = 0;
+        for (int i = 0; i < cardinality; i++) {
+            position += in.readVarInt();
+            bitKey.set(position);
+        }
+        return bitKey;
+    }
+
+    /**
+     * Writes the first {@code length} bits of a bit set, as alternating runs
+     * of clear and set bits or as plain bits, whichever is shorter.
+     */
+    private static void writeBitmap(Encoder out, BitSet bitSet, int length) {
+        final Encoder runs = new Encoder(16);
+        int position = 0;
+        while (position < length) {
+            int set = bitSet.nextSetBit(position);
+            if (set < 0 || set > length) {
+                set = length;
+            }
+            int clear = set < length ? bitSet.nextClearBit(set) : length;
+            if (clear > length) {
+                clear = length;
+            }
+            runs.writeVarInt(set - position);
+            runs.writeVarInt(clear - set);
+            position = clear;
+        }
+        final int byteCount = (length + 7) / 8;
+        if (runs.size() <= byteCount) {
+            out.write(BITMAP_RUNS);
+            out.append(runs);
+        } else {
+            out.write(BITMAP_BITS);
+            for (int i = 0; i < byteCount; i++) {
+                int b = 0;
+                for (int j = 0; j < 8; j++) {
+                    if (bitSet.get(i * 8 + j)) {
+                        b |= 1 << j;
+                    }
+                }
+                out.write(b);
+            }
+        }
+    }
+
+    private static BitSet readBitmap(Decoder in, int length) {
+        final BitSet bitSet = new BitSet(length);
+        final int encoding = in.read();
+        switch (encoding) {
+        case BITMAP_RUNS:
+            int position = 0;
+            while (position < length) {
+                final int clearCount = in.readVarInt();
+                final int setCount = in.readVarInt();
+                if (clearCount + setCount > length - position
+                    || clearCount < 0 || setCount < 0)
+                {
+                    throw Util.newError(
+                        "Invalid bitmap in encoded segment");
+                }
+                position += clearCount;
+                bitSet.set(position, position + setCount);
+                position += setCount;
+            }
+            return bitSet;
+        case BITMAP_BITS:
+            final int byteCount = (length + 7) / 8;
+            for (int i = 0; i < byteCount; i++) {
+                final int b = in.read();
+                for (int j = 0; j < 8; j++) {
+                    if ((b & (1 << j)) != 0) {
+                        bitSet.set(i * 8 + j);
+                    }
+                }
+            }
+            return bitSet;
+        default:
+            throw Util.newError(
+                "Invalid bitmap encoding " + encoding
+                + " in encoded segment");
+        }
+    }
+
+    private static void writeColumns(
+        Encoder out,
+        Dictionary dictionary,
+        List<SegmentColumn> columns)
+    {
+        out.writeVarInt(columns.size());
+        for (SegmentColumn column : columns) {
+            out.writeString(column.columnExpression);
+            out.writeSignedVarInt(column.valueCount);
+            writeSet(out, dictionary, column.values);
+        }
+    }
+
+    private static List<SegmentColumn> readColumns(
+        Decoder in,
+        Comparable[] dictionary)
+    {
+        final int columnCount = in.readVarInt();
+        final List<SegmentColumn> columns =
+            new ArrayList<SegmentColumn>(columnCount);
+        for (int i = 0; i < columnCount; i++) {
+            final String columnExpression = in.readString();
+            final int valueCount = in.readSignedVarInt();
+            columns.add(
+                new SegmentColumn(
+                    columnExpression,
+                    valueCount,
+                    readSet(in, dictionary)));
+        }
+        return columns;
+    }
+
+    private static void writeSet(
+        Encoder out,
+        Dictionary dictionary,
+        SortedSet<Comparable> values)
+    {
+        if (values == null) {
+            out.writeVarInt(0);
+            return;
+        }
+        out.writeVarInt(values.size() + 1);
+        for (Comparable value : values) {
+            out.writeVarInt(dictionary.indexOf(value));
+        }
+    }
+
+    private static SortedSet<Comparable> readSet(
+        Decoder in,
+        Comparable[] dictionary)
+    {
+        final int size = in.readVarInt() - 1;
+        if (size < 0) {
+            return null;
+        }
+        final Comparable[] values = new Comparable[size];
+        for (int i = 0; i < size; i++) {
+            final int index = in.readVarInt();
+            if (index >= dictionary.length) {
+                throw Util.newError(
+                    "Invalid dictionary index " + index
+                    + " in encoded segment");
+            }
+            values[i] = dictionary[index];
+        }
+        //noinspection unchecked
+        return new ArraySortedSet(values);
+    }
+
+    private static Comparable[] readDictionary(Decoder in) {
+        final Comparable[] values = new Comparable[in.readVarInt()];
+        String previous = "";
+        for (int i = 0; i < values.length; i++) {
+            final int tag = in.read();
+            if (tag == PREFIXED_STRING) {
+                final int prefixLength = in.readVarInt();
+                if (prefixLength > previous.length()) {
+                    throw Util.newError(
+                        "Invalid string prefix in encoded segment");
+                }
+                final String s =
+                    previous.substring(0, prefixLength) + in.readString();
+                values[i] = s;
+                previous = s;
+            } else {
+                values[i] = (Comparable) readValue(in, tag);
+            }
+        }
+        return values;
+    }
+
+    private static void writeValue(Encoder out, Object value) {
+        if (value == null) {
+            out.write(NULL);
+            return;
+        }
+        if (value == RolapUtil.sqlNullValue) {
+            out.write(SQL_NULL);
+            return;
+        }
+        // Match on the exact class. Subclasses may carry extra state, so
+        // they are serialized.
+        final Class<?> clazz = value.getClass();
+        if (clazz == String.class) {
+            out.write(STRING);
+            out.writeString((String) value);
+        } else if (clazz == Integer.class) {
+            out.write(INTEGER);
+            out.writeSignedVarInt((Integer) value);
+        } else if (clazz == Long.class) {
+            out.write(LONG);
+            out.writeSignedVarLong((Long) value);
+        } else if (clazz == Double.class) {
+            out.write(DOUBLE);
+            out.writeLong(Double.doubleToRawLongBits((Double) value));
+        } else if (clazz == Float.class) {
+            out.write(FLOAT);
+            out.writeSignedVarInt(Float.floatToRawIntBits((Float) value));
+        } else if (clazz == Short.class) {
+            out.write(SHORT);
+            out.writeSignedVarInt((Short) value);
+        } else if (clazz == Byte.class) {
+            out.write(BYTE);
+            out.write((Byte) value);
+        } else if (clazz == Boolean.class) {
+            out.write((Boolean) value ? TRUE : FALSE);
+        } else if (clazz == BigDecimal.class) {
+            final BigDecimal bigDecimal = (BigDecimal) value;
+            out.write(BIG_DECIMAL);
+            out.writeByteArray(bigDecimal.unscaledValue().toByteArray());
+            out.writeSignedVarInt(bigDecimal.scale());
+        } else if (clazz == BigInteger.class) {
+            out.write(BIG_INTEGER);
+            out.writeByteArray(((BigInteger) value).toByteArray());
+        } else if (clazz == Date.class) {
+            out.write(DATE);
+            out.writeSignedVarLong(((Date) value).getTime());
+        } else if (clazz == java.sql.Date.class) {
+            out.write(SQL_DATE);
+            out.writeSignedVarLong(((Date) value).getTime());
+        } else if (clazz == java.sql.Time.class) {
+            out.write(SQL_TIME);
+            out.writeSignedVarLong(((Date) value).getTime());
+        } else if (clazz == java.sql.Timestamp.class) {
+            final java.sql.Timestamp timestamp = (java.sql.Timestamp) value;
+            out.write(SQL_TIMESTAMP);
+            out.writeSignedVarLong(timestamp.getTime());
+            out.writeVarInt(timestamp.getNanos());
+        } else {
+            out.write(SERIALIZED);
+            try {
+                final ByteArrayOutputStream bytes =
+                    new ByteArrayOutputStream();
+                final ObjectOutputStream oos = new ObjectOutputStream(bytes);
+                oos.writeObject(value);
+                oos.close();
+                out.writeByteArray(bytes.toByteArray());
+            } catch (IOException e) {
+                throw Util.newInternal(
+                    e, "Cannot encode segment value of " + clazz);
+            }
+        }
+    }
+
+    private static Object readValue(Decoder in) {
+        return readValue(in, in.read());
+    }
+
+    private static Object readValue(Decoder in, int tag) {
+        switch (tag) {
+        case NULL:
+            return null;
+        case SQL_NULL:
+            return RolapUtil.sqlNullValue;
+        case STRING:
+            return in.readString();
+        case INTEGER:
+            return in.readSignedVarInt();
+        case LONG:
+            return in.readSignedVarLong();
+        case DOUBLE:
+            return Double.longBitsToDouble(in.readLong());
+        case FLOAT:
+            return Float.intBitsToFloat(in.readSignedVarInt());
+        case SHORT:
+            return (short) in.readSignedVarInt();
+        case BYTE:
+            return (byte) in.read();
+        case FALSE:
+            return Boolean.FALSE;
+        case TRUE:
+            return Boolean.TRUE;
+        case BIG_DECIMAL:
+            final BigInteger unscaledValue =
+                new BigInteger(in.readByteArray());
+            return new BigDecimal(unscaledValue, in.readSignedVarInt());
+        case BIG_INTEGER:
+            return new BigInteger(in.readByteArray());
+        case DATE:
+            return new Date(in.readSignedVarLong());
+        case SQL_DATE:
+            return new java.sql.Date(in.readSignedVarLong());
+        case SQL_TIME:
+            return new java.sql.Time(in.readSignedVarLong());
+        case SQL_TIMESTAMP:
+            final java.sql.Timestamp timestamp =
+                new java.sql.Timestamp(in.readSignedVarLong());
+            timestamp.setNanos(in.readVarInt());
+            return timestamp;
+        case SERIALIZED:
+            try {
+                final ObjectInputStream ois =
+                    new ObjectInputStream(
+                        new ByteArrayInputStream(in.readByteArray()));
+                return ois.readObject();
+            } catch (IOException e) {
+                throw Util.newError(e, "Cannot decode segment value");
+            } catch (ClassNotFoundException e) {
+                throw Util.newError(e, "Cannot decode segment value");
+            }
+        default:
+            throw Util.newError(
+                "Invalid value tag " + tag + " in encoded segment");
+        }
+    }
+
+    /**
+     * Assigns an index to each distinct value, in the order that values are
+     * first added.
+     */
+    private static class Dictionary {
+        // Keyed by class and value, because values of different classes
+        // may be equal; for example, a java.util.Date and a
+        // java.sql.Timestamp.
+        private final Map<Pair<Class, Comparable>, Integer> map =
+            new HashMap<Pair<Class, Comparable>, Integer>();
+        private final List<Comparable> values = new ArrayList<Comparable>();
+
+        void addAll(Collection<Comparable> values) {
+            if (values == null) {
+                return;
+            }
+            for (Comparable value : values) {
+                final Pair<Class, Comparable> key =
+                    Pair.<Class, Comparable>of(value.getClass(), value);
+                if (!map.containsKey(key)) {
+                    map.put(key, this.values.size());
+                    this.values.add(value);
+                }
+            }
+        }
+
+        int indexOf(Comparable value) {
+            return map.get(
+                Pair.<Class, Comparable>of(value.getClass(), value));
+        }
+
+        void write(Encoder out) {
+            out.writeVarInt(values.size());
+            String previous = "";
+            for (Comparable value : values) {
+                if (value instanceof String) {
+                    final String s = (String) value;
+                    final int prefixLength = commonPrefixLength(previous, s);
+                    out.write(PREFIXED_STRING);
+                    out.writeVarInt(prefixLength);
+                    out.writeString(s.substring(prefixLength));
+                    previous = s;
+                } else {
+                    writeValue(out, value);
+                }
+            }
+        }
+
+        private static int commonPrefixLength(String s0, String s1) {
+            final int n = Math.min(s0.length(), s1.length());
+            int i = 0;
+            while (i < n && s0.charAt(i) == s1.charAt(i)) {
+                ++i;
+            }
+            // Do not split a surrogate pair.
+            if (i > 0 && Character.isHighSurrogate(s1.charAt(i - 1))) {
+                --i;
+            }
+            return i;
+        }
+    }
+
+    /**
+     * Output buffer with methods to write variable-length integers and
+     * strings. Unlike {@link ByteArrayOutputStream}, it is not synchronized.
+     */
+    private static class Encoder {
+        private byte[] buf;
+        private int count;
+
+        Encoder(int size) {
+            buf = new byte[Math.max(size, 16)];
+        }
+
+        int size() {
+            return count;
+        }
+
+        byte[] toByteArray() {
+            final byte[] bytes = new byte[count];
+            System.arraycopy(buf, 0, bytes, 0, count);
+            return bytes;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (count + extra > buf.length) {
+                final byte[] newBuf =
+                    new byte[Math.max(buf.length * 2, count + extra)];
+                System.arraycopy(buf, 0, newBuf, 0, count);
+                buf = newBuf;
+            }
+        }
+
+        void write(int b) {
+            if (count == buf.length) {
+                ensureCapacity(1);
+            }
+            buf[count++] = (byte) b;
+        }
+
+        void write(byte[] bytes, int offset, int length) {
+            ensureCapacity(length);
+            System.arraycopy(bytes, offset, buf, count, length);
+            count += length;
+        }
+
+        void append(Encoder encoder) {
+            write(encoder.buf, 0, encoder.count);
+        }
+
+        void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write(((int) value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeSignedVarInt(int value) {
+            writeVarInt((value << 1) ^ (value >> 31));
+        }
+
+        void writeSignedVarLong(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        void writeLong(long value) {
+            for (int i = 56; i >= 0; i -= 8) {
+                write((int) (value >>> i));
+            }
+        }
+
+        void writeByteArray(byte[] bytes) {
+            writeVarInt(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        /** Writes a string, which may be null, as UTF-8. */
+        void writeString(String s) {
+            if (s == null) {
+                writeVarInt(0);
+                return;
+            }
+            final byte[] bytes;
+            try {
+                bytes = s.getBytes("UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw Util.newInternal(e, "UTF-8 is not supported");
+            }
+            writeVarInt(bytes.length + 1);
+            write(bytes, 0, bytes.length);
+        }
+
+        byte[] deflate() {
+            final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(buf, 0, count);
+                deflater.finish();
+                final ByteArrayOutputStream out =
+                    new ByteArrayOutputStream(count / 2 + 16);
+                final byte[] chunk = new byte[4096];
+                while (!deflater.finished()) {
+                    final int n = deflater.deflate(chunk);
+                    out.write(chunk, 0, n);
+                }
+                return out.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Reads what {@link Encoder} wrote, from a range of a byte array.
+     */
+    private static class Decoder {
+        private final byte[] buf;
+        private int position;
+        private final int end;
+
+        Decoder(byte[] buf, int position, int end) {
+            this.buf = buf;
+            this.position = position;
+            this.end = end;
+        }
+
+        int read() {
+            if (position >= end) {
+                throw Util.newError("Encoded segment is truncated");
+            }
+            return buf[position++] & 0xFF;
+        }
+
+        void checkEnd() {
+            if (position != end) {
+                throw Util.newError(
+                    "Encoded segment has " + (end - position)
+                    + " unexpected trailing bytes");
+            }
+        }
+
+        Decoder readSlice(int length) {
+            if (length < 0 || length > end - position) {
+                throw Util.newError("Encoded segment is truncated");
+            }
+            final Decoder slice = new Decoder(buf, position, position + length);
+            position += length;
+            return slice;
+        }
+
+        int readVarInt() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                final int b = read();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw Util.newError("Invalid integer in encoded segment");
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                final int b = read();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw Util.newError("Invalid integer in encoded segment");
+        }
+
+        int readSignedVarInt() {
+            final int value = readVarInt();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        long readSignedVarLong() {
+            final long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        long readLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | read();
+            }
+            return value;
+        }
+
+        byte[] readByteArray() {
+            final Decoder slice = readSlice(readVarInt());
+            final byte[] bytes = new byte[slice.end - slice.position];
+            System.arraycopy(buf, slice.position, bytes, 0, bytes.length);
+            return bytes;
+        }
+
+        String readString() {
+            final int length = readVarInt() - 1;
+            if (length < 0) {
+                return null;
+            }
+            final Decoder slice = readSlice(length);
+            try {
+                return new String(buf, slice.position, length, "UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw Util.newInternal(e, "UTF-8 is not supported");
+            }
+        }
+    }
+
+    /**
+     * Writes integers of a given number of bits, least significant bit
+     * first, without padding between them.
+     */
+    private static class BitPacker {
+        private final Encoder out;
+        private long buffer;
+        private int bitCount;
+
+        BitPacker(Encoder out) {
+            this.out = out;
+        }
+
+        void write(int value, int width) {
+            buffer |= ((long) value & ((1L << width) - 1)) << bitCount;
+            bitCount += width;
+            while (bitCount >= 8) {
+                out.write((int) buffer & 0xFF);
+                buffer >>>= 8;
+                bitCount -= 8;
+            }
+        }
+
+        void flush() {
+            if (bitCount > 0) {
+                out.write((int) buffer & 0xFF);
+                buffer = 0;
+                bitCount = 0;
+            }
+        }
+    }
+
+    /**
+     * Reads what {@link BitPacker} wrote.
+     */
+    private static class BitUnpacker {
+        private final Decoder in;
+        private long buffer;
+        private int bitCount;
+
+        BitUnpacker(Decoder in) {
+            this.in = in;
+        }
+
+        int read(int width) {
+            while (bitCount < width) {
+                buffer |= (long) in.read() << bitCount;
+                bitCount += 8;
+            }
+            final int value = (int) (buffer & ((1L << width) - 1));
+            buffer >>>= width;
+            bitCount -= width;
+            return value;
+        }
+    }
+}
+
+// End BinarySegmentCodec.java
@@ -181,15 +181,6 @@ public class SegmentBuilder {
         Aggregator rollupAggregator,
         Datatype datatype)
     {
-        class AxisInfo {
-            SegmentColumn column;
-            SortedSet<Comparable> requestedValues;
-            SortedSet<Comparable> valueSet;
-            Comparable[] values;
-            boolean hasNull;
-            int src;
-            boolean lostPredicate;
-        }
         assert allHeadersHaveSameDimensionality(map.keySet());
 
         // store the map values in a list to assure the first header
@@ -269,18 +260,307 @@ public class SegmentBuilder {
                 axis.valueSet.toArray(new Comparable[axis.valueSet.size()]);
         }
 
+        // Build the axis list.
+        final List<Pair<SortedSet<Comparable>, Boolean>> axisList =
+            new ArrayList<Pair<SortedSet<Comparable>, Boolean>>();
+        BigInteger bigValueCount = BigInteger.ONE;
+        for (AxisInfo axis : axes) {
+            axisList.add(Pair.of(axis.valueSet, axis.hasNull));
+            int size = axis.values.length;
+            if (axis.hasNull) {
+                ++size;
+            }
+            bigValueCount = bigValueCount.multiply(
+                BigInteger.valueOf(axis.hasNull ? size + 1 : size));
+        }
+
+        // Dense segments of primitive values with a simple aggregator can be
+        // rolled up without boxing; otherwise use the general algorithm.
+        SegmentBody body =
+            rollupPrimitive(
+                segments, axes, axisList, rollupAggregator, datatype);
+        if (body == null) {
+            body =
+                rollupObjects(
+                    map, firstHeader, keepColumns, axes, axisList,
+                    bigValueCount, rollupAggregator, datatype);
+        }
+
+        // Create header.
+        final List<SegmentColumn> constrainedColumns =
+            new ArrayList<SegmentColumn>();
+        for (int i = 0; i < axes.length; i++) {
+            AxisInfo axisInfo = axes[i];
+            constrainedColumns.add(
+                new SegmentColumn(
+                    axisInfo.column.getColumnExpression(),
+                    axisInfo.column.getValueCount(),
+                    axisInfo.lostPredicate
+                        ? axisList.get(i).left
+                        : axisInfo.column.values));
+        }
+        final SegmentHeader header =
+            new SegmentHeader(
+                firstHeader.schemaName,
+                firstHeader.schemaChecksum,
+                firstHeader.cubeName,
+                firstHeader.measureName,
+                constrainedColumns,
+                firstHeader.compoundPredicates,
+                firstHeader.rolapStarFactTableName,
+                targetBitkey,
+                Collections.<SegmentColumn>emptyList());
+
+        return Pair.of(header, body);
+    }
+
+    /**
+     * Rolls up dense segments of {@code int} or {@code double} values using
+     * their value arrays and null indicators directly. Each source ordinal
+     * is mapped to a target offset through a precomputed table, and values
+     * are accumulated in place, so no cell keys or boxed values are created.
+     *
+     * <p>Applies only if the aggregator is {@link RolapAggregator#Sum},
+     * {@link RolapAggregator#Min} or {@link RolapAggregator#Max} and
+     * {@link Aggregator#supportsFastAggregates supports fast aggregates} for
+     * the datatype, and if no source or target axis has a null value.
+     * Otherwise returns null, and the caller should use
+     * {@link #rollupObjects}.</p>
+     */
+    private static SegmentBody rollupPrimitive(
+        List<Map.Entry<SegmentHeader, SegmentBody>> segments,
+        AxisInfo[] axes,
+        List<Pair<SortedSet<Comparable>, Boolean>> axisList,
+        Aggregator rollupAggregator,
+        Datatype datatype)
+    {
+        if (rollupAggregator != RolapAggregator.Sum
+            && rollupAggregator != RolapAggregator.Min
+            && rollupAggregator != RolapAggregator.Max)
+        {
+            return null;
+        }
+        if (!rollupAggregator.supportsFastAggregates(datatype)) {
+            return null;
+        }
+        final boolean intTarget;
+        switch (datatype) {
+        case Integer:
+            intTarget = true;
+            break;
+        case Numeric:
+            intTarget = false;
+            break;
+        default:
+            return null;
+        }
+        long targetCount = 1;
+        for (AxisInfo axis : axes) {
+            if (axis.hasNull) {
+                return null;
+            }
+            targetCount *= axis.values.length;
+            if (targetCount > Integer.MAX_VALUE) {
+                return null;
+            }
+        }
+        for (Map.Entry<SegmentHeader, SegmentBody> entry : segments) {
+            final SegmentBody body = entry.getValue();
+            // An int target can only be computed exactly from int values.
+            if (!(body instanceof DenseIntSegmentBody
+                  || body instanceof DenseDoubleSegmentBody && !intTarget))
+            {
+                return null;
+            }
+            long sourceCount = 1;
+            for (int i = 0; i < body.getAxisValueSets().length; i++) {
+                if (body.getNullAxisFlags()[i]) {
+                    return null;
+                }
+                sourceCount *= body.getAxisValueSets()[i].size();
+            }
+            final int length =
+                body instanceof DenseIntSegmentBody
+                    ? ((int[]) body.getValueArray()).length
+                    : ((double[]) body.getValueArray()).length;
+            if (body.getAxisValueSets().length == 0
+                || sourceCount != length)
+            {
+                return null;
+            }
+        }
+
+        final boolean sum = rollupAggregator == RolapAggregator.Sum;
+        final boolean min = rollupAggregator == RolapAggregator.Min;
+        final int valueCount = (int) targetCount;
+        final int[] axisMultipliers = computeAxisMultipliers(axisList);
+        final int[] ints = intTarget ? new int[valueCount] : null;
+        final double[] doubles = intTarget ? null : new double[valueCount];
+        final BitSet seen = new BitSet(valueCount);
+        for (Map.Entry<SegmentHeader, SegmentBody> entry : segments) {
+            final SegmentBody body = entry.getValue();
+            final SortedSet<Comparable>[] axisValueSets =
+                body.getAxisValueSets();
+            final int axisCount = axisValueSets.length;
+
+            // For each source axis, map each ordinal to the contribution it
+            // makes to the target offset, or -1 if the value is not in the
+            // target. Axes that are projected away contribute 0.
+            final int[][] remaps = new int[axisCount][];
+            for (int i = 0; i < axisCount; i++) {
+                remaps[i] = new int[axisValueSets[i].size()];
+            }
+            for (int k = 0; k < axes.length; k++) {
+                final AxisInfo axis = axes[k];
+                final int[] remap = remaps[axis.src];
+                int ordinal = 0;
+                for (Comparable value : axisValueSets[axis.src]) {
+                    final int targetOrdinal =
+                        Util.binarySearch(
+                            axis.values, 0, axis.values.length, value);
+                    remap[ordinal++] =
+                        targetOrdinal < 0
+                            ? -1
+                            : targetOrdinal * axisMultipliers[k];
+                }
+            }
+
+            final BitSet nullValues = body.getNullValueIndicators();
+            final int[] sourceInts =
+                body instanceof DenseIntSegmentBody
+                    ? (int[]) body.getValueArray()
+                    : null;
+            final double[] sourceDoubles =
+                sourceInts == null
+                    ? (double[]) body.getValueArray()
+                    : null;
+            final int length =
+                sourceInts != null ? sourceInts.length : sourceDoubles.length;
+
+            // Walk the source in stripes along its last axis. The other axes
+            // contribute the same offset to every cell in a stripe.
+            final int[] lastRemap = remaps[axisCount - 1];
+            final int stripe = lastRemap.length;
+            final int[] ordinals = new int[axisCount];
+            for (int offset = 0; offset < length; offset += stripe) {
+                int base = 0;
+                for (int k = 0; k < axisCount - 1; k++) {
+                    final int r = remaps[k][ordinals[k]];
+                    if (r < 0) {
+                        base = -1;
+                        break;
+                    }
+                    base += r;
+                }
+                if (base >= 0) {
+                    for (int m = 0; m < stripe; m++) {
+                        if (lastRemap[m] < 0) {
+                            continue;
+                        }
+                        final int source = offset + m;
+                        final int target = base + lastRemap[m];
+                        if (intTarget) {
+                            final int value = sourceInts[source];
+                            if (value == 0 && nullValues.get(source)) {
+                                continue;
+                            }
+                            if (!seen.get(target)) {
+                                seen.set(target);
+                                ints[target] = value;
+                            } else if (sum) {
+                                ints[target] += value;
+                            } else if (min) {
+                                ints[target] = Math.min(ints[target], value);
+                            } else {
+                                ints[target] = Math.max(ints[target], value);
+                            }
+                        } else {
+                            final double value =
+                                sourceInts != null
+                                    ? sourceInts[source]
+                                    : sourceDoubles[source];
+                            if (value == 0d && nullValues.get(source)) {
+                                continue;
+                            }
+                            if (!seen.get(target)) {
+                                seen.set(target);
+                                doubles[target] = value;
+                            } else if (sum) {
+                                doubles[target] += value;
+                            } else if (min) {
+                                doubles[target] =
+                                    Math.min(doubles[target], value);
+                            } else {
+                                doubles[target] =
+                                    Math.max(doubles[target], value);
+                            }
+                        }
+                    }
+                }
+                // Advance to the next stripe.
+                for (int k = axisCount - 2; k >= 0; k--) {
+                    if (++ordinals[k] < remaps[k].length) {
+                        break;
+                    }
+                    ordinals[k] = 0;
+                }
+            }
+        }
+
+        final int cellCount = seen.cardinality();
+        if (cellCount == 0) {
+            return new DenseObjectSegmentBody(new Object[0], axisList);
+        }
+        if (SegmentLoader.useSparse(valueCount, cellCount)) {
+            final Map<CellKey, Object> data = new HashMap<CellKey, Object>();
+            final int[] pos = new int[axes.length];
+            for (int offset = seen.nextSetBit(0);
+                offset >= 0;
+                offset = seen.nextSetBit(offset + 1))
+            {
+                int remainder = offset;
+                for (int k = 0; k < axes.length; k++) {
+                    pos[k] = remainder / axisMultipliers[k];
+                    remainder %= axisMultipliers[k];
+                }
+                data.put(
+                    CellKey.Generator.newCellKey(pos),
+                    intTarget
+                        ? (Object) ints[offset]
+                        : (Object) doubles[offset]);
+            }
+            return new SparseSegmentBody(data, axisList);
+        }
+        final BitSet nullValues = Util.bitSetBetween(0, valueCount);
+        nullValues.andNot(seen);
+        return intTarget
+            ? new DenseIntSegmentBody(nullValues, ints, axisList)
+            : new DenseDoubleSegmentBody(nullValues, doubles, axisList);
+    }
+
+    /**
+     * Rolls up segments by reading each cell of each source body as an
+     * object and collecting the values of each target cell into a list.
+     * Works for any kind of body and aggregator.
+     */
+    private static SegmentBody rollupObjects(
+        Map<SegmentHeader, SegmentBody> map,
+        SegmentHeader firstHeader,
+        Set<String> keepColumns,
+        AxisInfo[] axes,
+        List<Pair<SortedSet<Comparable>, Boolean>> axisList,
+        BigInteger bigValueCount,
+        Aggregator rollupAggregator,
+        Datatype datatype)
+    {
         // Populate cells.
         //
         // (This is a rough implementation, very inefficient. It makes all
         // segment types pretend to be sparse, for purposes of reading. It
         // maps all axis ordinals to a value, then back to an axis ordinal,
         // even if this translation were not necessary, say if the source and
-        // target axes had the same set of values. And it always creates a
-        // sparse segment.
-        //
-        // We should do really efficient rollup if the source is an array: we
-        // should box values (e.g double to Double and back), and we should read
-        // a stripe of values from the and add them up into a single cell.
+        // target axes had the same set of values. Dense segments of
+        // primitive values are handled by rollupPrimitive instead.)
         final Map<CellKey, List<Object>> cellValues =
             new HashMap<CellKey, List<Object>>();
         for (Map.Entry<SegmentHeader, SegmentBody> entry : map.entrySet()) {
@@ -291,7 +571,7 @@ public class SegmentBuilder {
 
             // Copy source value sets into arrays. For axes that are being
             // projected away, store null.
-            z = 0;
+            int z = 0;
             for (SortedSet<Comparable> set : body.getAxisValueSets()) {
                 valueArrays[z] = keepColumns.contains(
                     firstHeader.getConstrainedColumns().get(z).columnExpression)
@@ -340,20 +620,6 @@ public class SegmentBuilder {
             }
         }
 
-        // Build the axis list.
-        final List<Pair<SortedSet<Comparable>, Boolean>> axisList =
-            new ArrayList<Pair<SortedSet<Comparable>, Boolean>>();
-        BigInteger bigValueCount = BigInteger.ONE;
-        for (AxisInfo axis : axes) {
-            axisList.add(Pair.of(axis.valueSet, axis.hasNull));
-            int size = axis.values.length;
-            if (axis.hasNull) {
-                ++size;
-            }
-            bigValueCount = bigValueCount.multiply(
-                BigInteger.valueOf(axis.hasNull ? size + 1 : size));
-        }
-
         // The logic used here for the sparse check follows
         // SegmentLoader.setAxisDataAndDecideSparseUse.
         // The two methods use different data structures (AxisInfo/SegmentAxis)
@@ -466,32 +732,7 @@ public class SegmentBuilder {
             }
         }
 
-        // Create header.
-        final List<SegmentColumn> constrainedColumns =
-            new ArrayList<SegmentColumn>();
-        for (int i = 0; i < axes.length; i++) {
-            AxisInfo axisInfo = axes[i];
-            constrainedColumns.add(
-                new SegmentColumn(
-                    axisInfo.column.getColumnExpression(),
-                    axisInfo.column.getValueCount(),
-                    axisInfo.lostPredicate
-                        ? axisList.get(i).left
-                        : axisInfo.column.values));
-        }
-        final SegmentHeader header =
-            new SegmentHeader(
-                firstHeader.schemaName,
-                firstHeader.schemaChecksum,
-                firstHeader.cubeName,
-                firstHeader.measureName,
-                constrainedColumns,
-                firstHeader.compoundPredicates,
-                firstHeader.rolapStarFactTableName,
-                targetBitkey,
-                Collections.<SegmentColumn>emptyList());
-
-        return Pair.of(header, body);
+        return body;
     }
 
     private static boolean allHeadersHaveSameDimensionality(
@@ -521,6 +762,20 @@ public class SegmentBuilder {
         return axisMultipliers;
     }
 
+    /**
+     * Information about an axis of the segment being created by
+     * {@link #rollup}.
+     */
+    private static class AxisInfo {
+        SegmentColumn column;
+        SortedSet<Comparable> requestedValues;
+        SortedSet<Comparable> valueSet;
+        Comparable[] values;
+        boolean hasNull;
+        int src;
+        boolean lostPredicate;
+    }
+
     private static class ExcludedRegionList
         extends AbstractList<Segment.ExcludedRegion>
         implements Segment.ExcludedRegion
@@ -39,6 +39,19 @@ import java.util.concurrent.*;
  *     <tr><td>Local</td><td>Initial state of a segment</td></tr>
  * </table>
  *
+ * <p>Shards</p>
+ *
+ * <p>The actor is partitioned into one or more shards (see
+ * {@link MondrianProperties#SegmentCacheManagerNumberShards}). Each shard
+ * has its own thread and queue, and owns the {@link SegmentCacheIndex} of
+ * every {@link RolapStar} that hashes to it. A command or event that
+ * concerns one star is sent to that star's shard, so that work on
+ * independent stars proceeds in parallel. A command that concerns several
+ * stars either is split per shard by the caller (as is done for batches
+ * of cell requests), or is sent to every shard via
+ * {@link #executeAll} and processes only the stars for which
+ * {@link #isLocal(RolapStar)} holds.</p>
+ *
  * <h2>Decisions to be reviewed</h2>
  *
  * <p>1. Create variant of actor that processes all requests synchronously,
@@ -209,8 +222,12 @@ import java.util.concurrent.*;
  */
 public class SegmentCacheManager {
     private final Handler handler = new Handler();
-    private final Actor ACTOR;
-    public final Thread thread;
+
+    /**
+     * Shards of the actor. Each star's index is owned by exactly one of
+     * them; see {@link #getShard(RolapStar)}.
+     */
+    private final Actor[] actors;
 
     /**
      * Executor with which to send requests to external caches.
@@ -253,6 +270,24 @@ public class SegmentCacheManager {
                 }
             });
 
+    /**
+     * Executor with which to roll up cached segments in memory.
+     *
+     * <p>Rollups are CPU-bound, so the pool is bounded (by default, to the
+     * number of processors). If all threads are busy, the caller performs
+     * the rollup itself.</p>
+     */
+    public final ExecutorService rollupExecutor =
+        Util.getExecutorService(
+            MondrianProperties.instance()
+                .SegmentCacheManagerNumberRollupThreads.get() > 0
+                ? MondrianProperties.instance()
+                    .SegmentCacheManagerNumberRollupThreads.get()
+                : Runtime.getRuntime().availableProcessors(),
+            0, 1,
+            "mondrian.rolap.agg.SegmentCacheManager$rollupExecutor",
+            new ThreadPoolExecutor.CallerRunsPolicy());
+
     // NOTE: This list is only mutable for testing purposes. Would rather it
     // were immutable.
     public final List<SegmentCacheWorker> segmentCacheWorkers =
@@ -267,11 +302,21 @@ public class SegmentCacheManager {
 
     public SegmentCacheManager(MondrianServer server) {
         this.server = server;
-        ACTOR = new Actor();
-        thread = new Thread(
-            ACTOR, "mondrian.rolap.agg.SegmentCacheManager$ACTOR");
-        thread.setDaemon(true);
-        thread.start();
+        final int shardCount =
+            Math.max(
+                1,
+                MondrianProperties.instance()
+                    .SegmentCacheManagerNumberShards.get());
+        actors = new Actor[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            actors[i] = new Actor(
+                server,
+                i,
+                shardCount == 1
+                    ? "mondrian.rolap.agg.SegmentCacheManager$ACTOR"
+                    : "mondrian.rolap.agg.SegmentCacheManager$ACTOR-" + i);
+            actors[i].thread.start();
+        }
 
         // Create the index registry.
         this.indexRegistry = new SegmentCacheIndexRegistry();
@@ -280,9 +325,20 @@ public class SegmentCacheManager {
         if (!MondrianProperties.instance().DisableLocalSegmentCache.get()
             && !MondrianProperties.instance().DisableCaching.get())
         {
-            final MemorySegmentCache cache = new MemorySegmentCache();
+            final SegmentCache cache;
+            if (MondrianProperties.instance().MemorySegmentCacheMaxMegabytes
+                .get() > 0)
+            {
+                cache = new BoundedMemorySegmentCache();
+                // The cache evicts segments of its own accord. Listen, so
+                // that evicted segments are removed from the index.
+                cache.addListener(
+                    new AsyncCacheListener(this, server));
+            } else {
+                cache = new MemorySegmentCache();
+            }
             segmentCacheWorkers.add(
-                new SegmentCacheWorker(cache, thread));
+                new SegmentCacheWorker(cache, this));
         }
 
         // Add an external cache, if configured.
@@ -290,7 +346,7 @@ public class SegmentCacheManager {
         for (SegmentCache cache : externalCache) {
             // Create a worker for this external cache
             segmentCacheWorkers.add(
-                new SegmentCacheWorker(cache, thread));
+                new SegmentCacheWorker(cache, this));
             // Hook up a listener so it can update
             // the segment index.
             cache.addListener(
@@ -300,8 +356,94 @@ public class SegmentCacheManager {
         compositeCache = new CompositeSegmentCache(segmentCacheWorkers);
     }
 
+    /**
+     * Executes a command that does not concern any particular star, on the
+     * first shard.
+     */
     public <T> T execute(Command<T> command) {
-        return ACTOR.execute(handler, command);
+        return actors[0].execute(handler, command);
+    }
+
+    /**
+     * Executes a command on the shard that owns a given star's index.
+     */
+    public <T> T execute(RolapStar star, Command<T> command) {
+        return actors[getShard(star)].execute(handler, command);
+    }
+
+    /**
+     * Executes a command on a given shard.
+     */
+    public <T> T execute(int shard, Command<T> command) {
+        return actors[shard].execute(handler, command);
+    }
+
+    /**
+     * Executes a command on every shard in turn, and returns the results.
+     *
+     * <p>The command must only touch the indexes of stars for which
+     * {@link #isLocal(RolapStar)} is true when it runs.</p>
+     */
+    public <T> List<T> executeAll(Command<T> command) {
+        final List<T> results = new ArrayList<T>(actors.length);
+        for (Actor actor : actors) {
+            results.add(actor.execute(handler, command));
+        }
+        return results;
+    }
+
+    /**
+     * Returns the number of shards.
+     */
+    public int getShardCount() {
+        return actors.length;
+    }
+
+    /**
+     * Returns the ordinal of the shard that owns a given star's index.
+     */
+    public int getShard(RolapStar star) {
+        if (actors.length == 1) {
+            return 0;
+        }
+        return (star.hashCode() & Integer.MAX_VALUE) % actors.length;
+    }
+
+    /**
+     * Returns whether the current thread is the thread of the shard that owns
+     * a given star's index. Commands sent via {@link #executeAll} use this
+     * to decide which stars to process.
+     */
+    public boolean isLocal(RolapStar star) {
+        return actors[getShard(star)].thread == Thread.currentThread();
+    }
+
+    /**
+     * Returns whether a thread is the thread of one of the shards. Such a
+     * thread must not make potentially slow calls to an external cache.
+     */
+    public boolean isActorThread(Thread thread) {
+        for (Actor actor : actors) {
+            if (actor.thread == thread) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a snapshot of the queue depth and latency of each shard.
+     *
+     * <p>Each shard also reports its statistics to the server's monitor, as
+     * a {@link CellCacheShardEvent}.</p>
+     */
+    public List<ShardStatistics> getShardStatistics() {
+        final List<ShardStatistics> list =
+            new ArrayList<ShardStatistics>(actors.length);
+        for (Actor actor : actors) {
+            list.add(actor.getStatistics());
+        }
+        return list;
     }
 
     public SegmentCacheIndexRegistry getIndexRegistry() {
@@ -325,7 +467,7 @@ public class SegmentCacheManager {
         SegmentBody body)
     {
         final Locus locus = Locus.peek();
-        ACTOR.event(
+        actors[getShard(star)].event(
             handler,
             new SegmentLoadSucceededEvent(
                 System.currentTimeMillis(),
@@ -355,7 +497,7 @@ public class SegmentCacheManager {
         Throwable throwable)
     {
         final Locus locus = Locus.peek();
-        ACTOR.event(
+        actors[getShard(star)].event(
             handler,
             new SegmentLoadFailedEvent(
                 System.currentTimeMillis(),
@@ -384,7 +526,7 @@ public class SegmentCacheManager {
         SegmentHeader header)
     {
         final Locus locus = Locus.peek();
-        ACTOR.event(
+        actors[getShard(star)].event(
             handler,
             new SegmentRemoveEvent(
                 System.currentTimeMillis(),
@@ -410,7 +552,11 @@ public class SegmentCacheManager {
             // Ignore cache requests.
             return;
         }
-        ACTOR.event(
+        // Resolve the star here, so that the event can be sent to the shard
+        // that owns its index. If the star is unknown, any shard will do;
+        // the handler will ignore the event.
+        final RolapStar star = indexRegistry.findStar(header);
+        actors[star == null ? 0 : getShard(star)].event(
             handler,
             new ExternalSegmentCreatedEvent(
                 System.currentTimeMillis(),
@@ -420,6 +566,7 @@ public class SegmentCacheManager {
                 0,
                 0,
                 this,
+                star,
                 header));
     }
 
@@ -435,7 +582,11 @@ public class SegmentCacheManager {
             // Ignore cache requests.
             return;
         }
-        ACTOR.event(
+        // Resolve the star here, so that the event can be sent to the shard
+        // that owns its index. If the star is unknown, any shard will do;
+        // the handler will ignore the event.
+        final RolapStar star = indexRegistry.findStar(header);
+        actors[star == null ? 0 : getShard(star)].event(
             handler,
             new ExternalSegmentDeletedEvent(
                 System.currentTimeMillis(),
@@ -445,6 +596,7 @@ public class SegmentCacheManager {
                 0,
                 0,
                 this,
+                star,
                 header));
     }
 
@@ -453,18 +605,30 @@ public class SegmentCacheManager {
         PrintWriter pw,
         Locus locus)
     {
-        ACTOR.execute(
-            handler,
-            new PrintCacheStateCommand(region, pw, locus));
+        // Print one star at a time, in order, each on the shard that owns
+        // its index.
+        final List<RolapStar> starList = CacheControlImpl.getStarList(region);
+        Collections.sort(
+            starList,
+            new Comparator<RolapStar>() {
+                public int compare(RolapStar o1, RolapStar o2) {
+                    return o1.getFactTable().getAlias().compareTo(
+                        o2.getFactTable().getAlias());
+                }
+            });
+        for (RolapStar star : starList) {
+            execute(star, new PrintCacheStateCommand(star, pw, locus));
+        }
     }
 
     /**
      * Shuts down this cache manager and all active threads and indexes.
      */
     public void shutdown() {
-        execute(new ShutdownCommand());
+        executeAll(new ShutdownCommand());
         cacheExecutor.shutdown();
         sqlExecutor.shutdown();
+        rollupExecutor.shutdown();
     }
 
     public SegmentBuilder.SegmentConverter getConverter(
@@ -504,6 +668,7 @@ public class SegmentCacheManager {
     public SegmentWithData peek(final CellRequest request) {
         final SegmentCacheManager.PeekResponse response =
             execute(
+                request.getMeasure().getStar(),
                 new PeekCommand(request, Locus.peek()));
         for (SegmentHeader header : response.headerMap.keySet()) {
             final SegmentBody body = compositeCache.get(header);
@@ -567,6 +732,7 @@ public class SegmentCacheManager {
                         ? 0
                         : event.body.getValueMap().size(),
                     CellCacheSegmentCreateEvent.Source.SQL));
+            sendOccupancyEvents(event.monitor, event.timestamp);
         }
 
         public void visit(SegmentLoadFailedEvent event) {
@@ -610,25 +776,23 @@ public class SegmentCacheManager {
                 }
             );
             Util.safeGet(future, "SegmentCacheManager.segmentremoved");
+            sendOccupancyEvents(event.monitor, event.timestamp);
         }
 
         public void visit(ExternalSegmentCreatedEvent event) {
-            final SegmentCacheIndex index =
-                event.cacheMgr.indexRegistry.getIndex(event.header);
-            if (index == null) {
-                LOGGER.debug(
-                    "SegmentCacheManager.Handler.visitExternalCreated:"
-                    + "No index found for external SegmentHeader:"
-                    + event.header);
-                return;
-            }
-            final RolapStar star = getStar(event.header);
+            final RolapStar star = event.star;
             if (star == null) {
                 // TODO FIXME this happens when a cache event comes
                 // in but the rolap schema pool was cleared.
                 // we should find a way to trigger the init remotely.
+                LOGGER.debug(
+                    "SegmentCacheManager.Handler.visitExternalCreated:"
+                    + "No index found for external SegmentHeader:"
+                    + event.header);
                 return;
             }
+            final SegmentCacheIndex index =
+                event.cacheMgr.indexRegistry.getIndex(star);
 
             // Index the new segment
             index.add(
@@ -647,19 +811,19 @@ public class SegmentCacheManager {
                     event.header.getConstrainedColumns().size(),
                     0,
                     CellCacheEvent.Source.EXTERNAL));
+            sendOccupancyEvents(event.monitor, event.timestamp);
         }
 
         public void visit(ExternalSegmentDeletedEvent event) {
-            final SegmentCacheIndex index =
-                event.cacheMgr.indexRegistry.getIndex(event.header);
-            if (index == null) {
+            if (event.star == null) {
                 LOGGER.debug(
                     "SegmentCacheManager.Handler.visitExternalDeleted:"
                     + "No index found for external SegmentHeader:"
                     + event.header);
                 return;
             }
-            index.remove(event.header);
+            event.cacheMgr.indexRegistry.getIndex(event.star)
+                .remove(event.header);
             event.monitor.sendEvent(
                 new CellCacheSegmentDeleteEvent(
                     event.timestamp,
@@ -669,6 +833,33 @@ public class SegmentCacheManager {
                     event.executionId,
                     event.header.getConstrainedColumns().size(),
                     CellCacheEvent.Source.EXTERNAL));
+            sendOccupancyEvents(event.monitor, event.timestamp);
+        }
+
+        /**
+         * Reports the occupancy of each bounded cache to the monitor.
+         *
+         * <p>Bounded caches publish their statistics without taking locks,
+         * so this is cheap enough to call from the actor thread.</p>
+         */
+        private void sendOccupancyEvents(Monitor monitor, long timestamp) {
+            for (SegmentCacheWorker worker : segmentCacheWorkers) {
+                if (!(worker.cache instanceof BoundedSegmentCache)) {
+                    continue;
+                }
+                final BoundedSegmentCache cache =
+                    (BoundedSegmentCache) worker.cache;
+                monitor.sendEvent(
+                    new CellCacheOccupancyEvent(
+                        timestamp,
+                        server.getId(),
+                        cache.getClass().getName() + '@'
+                        + System.identityHashCode(cache),
+                        cache.getSegmentCount(),
+                        cache.getByteCount(),
+                        cache.getMaxByteCount(),
+                        cache.getEvictionCount()));
+            }
         }
     }
 
@@ -681,6 +872,9 @@ public class SegmentCacheManager {
 
     /**
      * Command to flush a particular region from cache.
+     *
+     * <p>Send it to every shard using {@link #executeAll}; each shard flushes
+     * the stars it owns.</p>
      */
     public static final class FlushCommand implements Command<FlushResult> {
         private final CellRegion region;
@@ -723,6 +917,10 @@ public class SegmentCacheManager {
                 final RolapStoredMeasure storedMeasure =
                     (RolapStoredMeasure) member;
                 final RolapStar star = storedMeasure.getCube().getStar();
+                if (!cacheMgr.isLocal(star)) {
+                    // Another shard owns this star, and will flush it.
+                    continue;
+                }
                 final SegmentCacheIndex index =
                     cacheMgr.indexRegistry.getIndex(star);
                 headers.addAll(
@@ -755,7 +953,10 @@ public class SegmentCacheManager {
             if (flushRegion.length == 0) {
                 for (final SegmentHeader header : headers) {
                     for (RolapStar star : starList) {
-                        cacheMgr.indexRegistry.getIndex(star).remove(header);
+                        if (cacheMgr.isLocal(star)) {
+                            cacheMgr.indexRegistry.getIndex(star)
+                                .remove(header);
+                        }
                     }
                     // Remove the segment from external caches. Use an
                     // executor, because it may take some time. We discard
@@ -800,7 +1001,10 @@ public class SegmentCacheManager {
                         "discard segment - it cannot be constrained and maintain consistency:\n"
                         + header.getDescription());
                     for (RolapStar star : starList) {
-                        cacheMgr.indexRegistry.getIndex(star).remove(header);
+                        if (cacheMgr.isLocal(star)) {
+                            cacheMgr.indexRegistry.getIndex(star)
+                                .remove(header);
+                        }
                     }
                     continue;
                 }
@@ -811,9 +1015,10 @@ public class SegmentCacheManager {
 
                 // Update the segment index.
                 for (RolapStar star : starList) {
-                    SegmentCacheIndex index =
-                        cacheMgr.indexRegistry.getIndex(star);
-                    index.update(header, newHeader);
+                    if (cacheMgr.isLocal(star)) {
+                        cacheMgr.indexRegistry.getIndex(star)
+                            .update(header, newHeader);
+                    }
                 }
 
                 // Update all of the cache workers.
@@ -851,33 +1056,21 @@ public class SegmentCacheManager {
     {
         private final PrintWriter pw;
         private final Locus locus;
-        private final CellRegion region;
+        private final RolapStar star;
 
         public PrintCacheStateCommand(
-            CellRegion region,
+            RolapStar star,
             PrintWriter pw,
             Locus locus)
         {
-            this.region = region;
+            this.star = star;
             this.pw = pw;
             this.locus = locus;
         }
 
         public Void call() {
-            final List<RolapStar> starList =
-                CacheControlImpl.getStarList(region);
-            Collections.sort(
-                starList,
-                new Comparator<RolapStar>() {
-                    public int compare(RolapStar o1, RolapStar o2) {
-                        return o1.getFactTable().getAlias().compareTo(
-                            o2.getFactTable().getAlias());
-                    }
-                });
-            for (RolapStar star : starList) {
-                indexRegistry.getIndex(star)
-                    .printCacheState(pw);
-            }
+            indexRegistry.getIndex(star)
+                .printCacheState(pw);
             return null;
         }
 
@@ -936,59 +1129,60 @@ public class SegmentCacheManager {
      * abstracting common code.
      */
     private static class Actor implements Runnable {
+        /**
+         * Minimum interval between reports of a shard's statistics to the
+         * monitor.
+         */
+        private static final long REPORT_INTERVAL_NANOS =
+            TimeUnit.SECONDS.toNanos(1);
 
-        private final BlockingQueue<Pair<Handler, Message>> eventQueue =
-            new ArrayBlockingQueue<Pair<Handler, Message>>(1000);
+        private final MondrianServer server;
+
+        private final int ordinal;
+
+        /** Thread that processes this actor's queue. */
+        final Thread thread;
+
+        private final BlockingQueue<Envelope> eventQueue =
+            new ArrayBlockingQueue<Envelope>(1000);
 
         private final BlockingHashMap<Command<?>, Pair<Object, Throwable>>
             responseMap =
             new BlockingHashMap<Command<?>, Pair<Object, Throwable>>(1000);
 
+        // Statistics. Written only by this actor's thread.
+        private volatile long messageCount;
+        private volatile long totalLatencyNanos;
+        private volatile long maxLatencyNanos;
+        private long lastReportNanos =
+            System.nanoTime() - REPORT_INTERVAL_NANOS;
+        private int lastReportQueueDepth;
+
+        Actor(MondrianServer server, int ordinal, String threadName) {
+            this.server = server;
+            this.ordinal = ordinal;
+            this.thread = new Thread(this, threadName);
+            this.thread.setDaemon(true);
+        }
+
         public void run() {
             try {
                 for (;;) {
-                    final Pair<Handler, Message> entry = eventQueue.take();
-                    final Handler handler = entry.left;
-                    final Message message = entry.right;
+                    final Envelope entry = eventQueue.take();
                     try {
-                        // A message is either a command or an event.
-                        // A command returns a value that must be read by
-                        // the caller.
-                        if (message instanceof Command<?>) {
-                            Command<?> command = (Command<?>) message;
-                            try {
-                                Locus.push(command.getLocus());
-                                Object result = command.call();
-                                responseMap.put(
-                                    command,
-                                    Pair.of(result, (Throwable) null));
-                            } catch (AbortException e) {
-                                responseMap.put(
-                                    command,
-                                    Pair.of(null, (Throwable) e));
-                            } catch (PleaseShutdownException e) {
-                                responseMap.put(
-                                    command,
-                                    Pair.of(null, (Throwable) null));
-                                return; // exit event loop
-                            } catch (Throwable e) {
-                                responseMap.put(
-                                    command,
-                                    Pair.of(null, e));
-                            } finally {
-                                Locus.pop(command.getLocus());
-                            }
-                        } else {
-                            Event event = (Event) message;
-                            event.acceptWithoutResponse(handler);
-
-                            // Broadcast the event to anyone who is interested.
-                            RolapUtil.MONITOR_LOGGER.debug(message);
+                        if (process(entry.handler, entry.message)) {
+                            return; // exit event loop
                         }
-                    } catch (Throwable e) {
-                        // REVIEW: Somewhere better to send it?
-                        e.printStackTrace();
+                    } finally {
+                        final long latency =
+                            System.nanoTime() - entry.enqueueNanos;
+                        totalLatencyNanos += latency;
+                        if (latency > maxLatencyNanos) {
+                            maxLatencyNanos = latency;
+                        }
+                        ++messageCount;
                     }
+                    report();
                 }
             } catch (InterruptedException e) {
                 // REVIEW: Somewhere better to send it?
@@ -998,9 +1192,92 @@ public class SegmentCacheManager {
             }
         }
 
+        /**
+         * Processes a message. Returns true if the actor has been asked to
+         * shut down.
+         */
+        private boolean process(Handler handler, Message message) {
+            try {
+                // A message is either a command or an event.
+                // A command returns a value that must be read by
+                // the caller.
+                if (message instanceof Command<?>) {
+                    Command<?> command = (Command<?>) message;
+                    try {
+                        Locus.push(command.getLocus());
+                        Object result = command.call();
+                        responseMap.put(
+                            command,
+                            Pair.of(result, (Throwable) null));
+                    } catch (AbortException e) {
+                        responseMap.put(
+                            command,
+                            Pair.of(null, (Throwable) e));
+                    } catch (PleaseShutdownException e) {
+                        responseMap.put(
+                            command,
+                            Pair.of(null, (Throwable) null));
+                        return true;
+                    } catch (Throwable e) {
+                        responseMap.put(
+                            command,
+                            Pair.of(null, e));
+                    } finally {
+                        Locus.pop(command.getLocus());
+                    }
+                } else {
+                    Event event = (Event) message;
+                    event.acceptWithoutResponse(handler);
+
+                    // Broadcast the event to anyone who is interested.
+                    RolapUtil.MONITOR_LOGGER.debug(message);
+                }
+            } catch (Throwable e) {
+                // REVIEW: Somewhere better to send it?
+                e.printStackTrace();
+            }
+            return false;
+        }
+
+        /**
+         * Sends this shard's statistics to the server's monitor, unless they
+         * were sent recently. Always sends them when the queue has just
+         * drained, so that the monitor does not keep showing a backlog.
+         */
+        private void report() {
+            final long nanos = System.nanoTime();
+            final int queueDepth = eventQueue.size();
+            if (nanos - lastReportNanos < REPORT_INTERVAL_NANOS
+                && (queueDepth > 0 || lastReportQueueDepth == 0))
+            {
+                return;
+            }
+            lastReportNanos = nanos;
+            lastReportQueueDepth = queueDepth;
+            server.getMonitor().sendEvent(
+                new CellCacheShardEvent(
+                    System.currentTimeMillis(),
+                    server.getId(),
+                    thread.getName(),
+                    queueDepth,
+                    messageCount,
+                    totalLatencyNanos,
+                    maxLatencyNanos));
+        }
+
+        ShardStatistics getStatistics() {
+            return new ShardStatistics(
+                ordinal,
+                thread.getName(),
+                eventQueue.size(),
+                messageCount,
+                totalLatencyNanos,
+                maxLatencyNanos);
+        }
+
         <T> T execute(Handler handler, Command<T> command) {
             try {
-                eventQueue.put(Pair.<Handler, Message>of(handler, command));
+                eventQueue.put(new Envelope(handler, command));
             } catch (InterruptedException e) {
                 throw Util.newError(e, "Exception while executing " + command);
             }
@@ -1025,13 +1302,83 @@ public class SegmentCacheManager {
 
         public void event(Handler handler, Event event) {
             try {
-                eventQueue.put(Pair.<Handler, Message>of(handler, event));
+                eventQueue.put(new Envelope(handler, event));
             } catch (InterruptedException e) {
                 throw Util.newError(e, "Exception while executing " + event);
             }
         }
     }
 
+    /**
+     * Entry in an actor's queue.
+     */
+    private static class Envelope {
+        final Handler handler;
+        final Message message;
+        final long enqueueNanos = System.nanoTime();
+
+        Envelope(Handler handler, Message message) {
+            this.handler = handler;
+            this.message = message;
+        }
+    }
+
+    /**
+     * Snapshot of the statistics of a shard of the cache manager's actor.
+     * See {@link SegmentCacheManager#getShardStatistics()}.
+     */
+    public static class ShardStatistics {
+        /** Ordinal of the shard. */
+        public final int shard;
+        /** Name of the shard's thread. */
+        public final String threadName;
+        /** Number of messages waiting in the shard's queue. */
+        public final int queueDepth;
+        /** Number of messages processed since the shard started. */
+        public final long messageCount;
+        /**
+         * Total time, in nanoseconds, between each processed message being
+         * queued and its processing completing.
+         */
+        public final long totalLatencyNanos;
+        /** Longest latency, in nanoseconds, of any processed message. */
+        public final long maxLatencyNanos;
+
+        public ShardStatistics(
+            int shard,
+            String threadName,
+            int queueDepth,
+            long messageCount,
+            long totalLatencyNanos,
+            long maxLatencyNanos)
+        {
+            this.shard = shard;
+            this.threadName = threadName;
+            this.queueDepth = queueDepth;
+            this.messageCount = messageCount;
+            this.totalLatencyNanos = totalLatencyNanos;
+            this.maxLatencyNanos = maxLatencyNanos;
+        }
+
+        /**
+         * Returns the mean latency, in nanoseconds, of processed messages,
+         * or 0 if none have been processed.
+         */
+        public long getAverageLatencyNanos() {
+            return messageCount == 0 ? 0 : totalLatencyNanos / messageCount;
+        }
+
+        public String toString() {
+            return "ShardStatistics{shard=" + shard
+                + ", thread=" + threadName
+                + ", queueDepth=" + queueDepth
+                + ", messageCount=" + messageCount
+                + ", averageLatencyNanos=" + getAverageLatencyNanos()
+                + ", maxLatencyNanos=" + maxLatencyNanos
+                + "}";
+        }
+    }
+
     private static class SegmentLoadSucceededEvent extends Event {
         private final SegmentHeader header;
         private final SegmentBody body;
@@ -1152,6 +1499,7 @@ public class SegmentCacheManager {
 
     private static class ExternalSegmentCreatedEvent extends Event {
         private final SegmentCacheManager cacheMgr;
+        private final RolapStar star;
         private final SegmentHeader header;
         private final long timestamp;
         private final Monitor monitor;
@@ -1168,6 +1516,7 @@ public class SegmentCacheManager {
             long statementId,
             long executionId,
             SegmentCacheManager cacheMgr,
+            RolapStar star,
             SegmentHeader header)
         {
             this.timestamp = timestamp;
@@ -1179,6 +1528,7 @@ public class SegmentCacheManager {
             assert header != null;
             assert cacheMgr != null;
             this.cacheMgr = cacheMgr;
+            this.star = star;
             this.header = header;
         }
 
@@ -1189,6 +1539,7 @@ public class SegmentCacheManager {
 
     private static class ExternalSegmentDeletedEvent extends Event {
         private final SegmentCacheManager cacheMgr;
+        private final RolapStar star;
         private final SegmentHeader header;
         private final long timestamp;
         private final Monitor monitor;
@@ -1205,6 +1556,7 @@ public class SegmentCacheManager {
             long statementId,
             long executionId,
             SegmentCacheManager cacheMgr,
+            RolapStar star,
             SegmentHeader header)
         {
             this.timestamp = timestamp;
@@ -1216,6 +1568,7 @@ public class SegmentCacheManager {
             assert header != null;
             assert cacheMgr != null;
             this.cacheMgr = cacheMgr;
+            this.star = star;
             this.header = header;
         }
 
@@ -1348,11 +1701,29 @@ public class SegmentCacheManager {
         }
 
         public boolean put(SegmentHeader header, SegmentBody body) {
+            return put(header, body, 0L);
+        }
+
+        /**
+         * Places a segment in every cache, with a hint of how long it took
+         * to load.
+         *
+         * @param header Segment header
+         * @param body Segment body
+         * @param loadNanos Time taken to load the segment, in nanoseconds,
+         *     or 0 if not known
+         * @return Whether the segment was stored
+         */
+        public boolean put(
+            SegmentHeader header,
+            SegmentBody body,
+            long loadNanos)
+        {
             if (MondrianProperties.instance().DisableCaching.get()) {
                 return true;
             }
             for (SegmentCacheWorker worker : workers) {
-                worker.put(header, body);
+                worker.put(header, body, loadNanos);
             }
             return true;
         }
@@ -1515,6 +1886,10 @@ public class SegmentCacheManager {
     /**
      * Registry of all the indexes that were created for this
      * cache manager, per {@link RolapStar}.
+     *
+     * <p>The registry is shared by all shards, so its methods are
+     * synchronized; but each index must only be used by the thread of the
+     * shard that owns its star.</p>
      */
     public class SegmentCacheIndexRegistry {
         private final Map<RolapStar, SegmentCacheIndex> indexes =
@@ -1522,7 +1897,7 @@ public class SegmentCacheManager {
         /**
          * Removes a star from the registry.
          */
-        public void clearIndex(RolapStar star) {
+        public synchronized void clearIndex(RolapStar star) {
             indexes.remove(star);
         }
 
@@ -1530,50 +1905,60 @@ public class SegmentCacheManager {
          * Returns the {@link SegmentCacheIndex} for a given
          * {@link RolapStar}.
          */
-        public SegmentCacheIndex getIndex(RolapStar star) {
-            if (!indexes.containsKey(star)) {
-                indexes.put(star, new SegmentCacheIndexImpl(thread));
+        public synchronized SegmentCacheIndex getIndex(RolapStar star) {
+            SegmentCacheIndex index = indexes.get(star);
+            if (index == null) {
+                index =
+                    new SegmentCacheIndexImpl(actors[getShard(star)].thread);
+                indexes.put(star, index);
             }
-            return indexes.get(star);
+            return index;
         }
 
         /**
-         * Returns the {@link SegmentCacheIndex} for a given
-         * {@link SegmentHeader}.
+         * Returns the {@link RolapStar} that a given {@link SegmentHeader}
+         * belongs to, or null if its schema is no longer loaded.
          */
-        private SegmentCacheIndex getIndex(
-            SegmentHeader header)
-        {
+        private RolapStar findStar(SegmentHeader header) {
             // First we check the indexes that already exist.
             // This is fast.
-            for (Entry<RolapStar, SegmentCacheIndex> entry
-                : indexes.entrySet())
-            {
-                final String factTableName =
-                    entry.getKey().getFactTable().getTableName();
-                final ByteString schemaChecksum =
-                    entry.getKey().getSchema().getChecksum();
-                if (!factTableName.equals(header.rolapStarFactTableName)) {
-                    continue;
-                }
-                if (!schemaChecksum.equals(header.schemaChecksum)) {
-                    continue;
+            synchronized (this) {
+                for (RolapStar star : indexes.keySet()) {
+                    final String factTableName =
+                        star.getFactTable().getTableName();
+                    final ByteString schemaChecksum =
+                        star.getSchema().getChecksum();
+                    if (!factTableName.equals(header.rolapStarFactTableName)) {
+                        continue;
+                    }
+                    if (!schemaChecksum.equals(header.schemaChecksum)) {
+                        continue;
+                    }
+                    return star;
                 }
-                return entry.getValue();
-            }
-            // The index doesn't exist. Let's create it.
-            final RolapStar star = getStar(header);
-            if (star == null) {
-                // TODO FIXME this happens when a cache event comes
-                // in but the rolap schema pool was cleared.
-                // we should find a way to trigger the init remotely.
-                return null;
-            } else {
-                return getIndex(star);
             }
+            // The index doesn't exist yet; look for the star in the schema
+            // pool. Its index will be created when the event is handled.
+            return getStar(header);
         }
+
+        /**
+         * Cancels the segment registrations of an execution in the indexes
+         * owned by the current shard. Must be sent to every shard.
+         */
         public void cancelExecutionSegments(Execution exec) {
-            for (SegmentCacheIndex index : indexes.values()) {
+            final List<SegmentCacheIndex> localIndexes =
+                new ArrayList<SegmentCacheIndex>();
+            synchronized (this) {
+                for (Entry<RolapStar, SegmentCacheIndex> entry
+                    : indexes.entrySet())
+                {
+                    if (isLocal(entry.getKey())) {
+                        localIndexes.add(entry.getValue());
+                    }
+                }
+            }
+            for (SegmentCacheIndex index : localIndexes) {
                 index.cancel(exec);
             }
         }
@@ -4,13 +4,14 @@
 * http://www.eclipse.org/legal/epl-v10.html.
 * You must accept the terms of that agreement to use this software.
 *
-* Copyright (c) 2002-2013 Pentaho Corporation..  All rights reserved.
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
 */
 
 package mondrian.rolap.agg;
 
 import mondrian.olap.MondrianProperties;
 import mondrian.resource.MondrianResource;
+import mondrian.rolap.cache.BoundedSegmentCache;
 import mondrian.spi.*;
 import mondrian.util.ClassResolver;
 import mondrian.util.ServiceDiscovery;
@@ -31,21 +32,23 @@ public final class SegmentCacheWorker {
         Logger.getLogger(SegmentCacheWorker.class);
 
     final SegmentCache cache;
-    private final Thread cacheMgrThread;
+    private final SegmentCacheManager cacheMgr;
     private final boolean supportsRichIndex;
 
     /**
      * Creates a worker.
      *
      * @param cache Cache managed by this worker
-     * @param cacheMgrThread Thread that the cache manager actor is running on,
-     *                       and which therefore should not be used for
-     *                       potentially long-running calls this this cache.
-     *                       Pass null if methods can be called from any thread.
+     * @param cacheMgr Cache manager whose actor threads should not be used
+     *                 for potentially long-running calls to this cache.
+     *                 Pass null if methods can be called from any thread.
      */
-    public SegmentCacheWorker(SegmentCache cache, Thread cacheMgrThread) {
+    public SegmentCacheWorker(
+        SegmentCache cache,
+        SegmentCacheManager cacheMgr)
+    {
         this.cache = cache;
-        this.cacheMgrThread = cacheMgrThread;
+        this.cacheMgr = cacheMgr;
 
         // no need to call checkThread(): supportsRichIndex is a fast call
         this.supportsRichIndex = cache.supportsRichIndex();
@@ -150,10 +153,34 @@ public final class SegmentCacheWorker {
      * @param body The segment body to cache.
      */
     public void put(SegmentHeader header, SegmentBody body) {
+        put(header, body, 0L);
+    }
+
+    /**
+     * Places a segment in the cache, with a hint of how long it took to
+     * load. If the cache is a {@link BoundedSegmentCache}, its eviction
+     * policy uses the hint; otherwise the hint is ignored.
+     *
+     * <p>A bounded cache may decline a segment that is larger than its
+     * budget; that is not an error.</p>
+     *
+     * @param header A header to search for in the segment cache.
+     * @param body The segment body to cache.
+     * @param loadNanos Time taken to load the segment, in nanoseconds, or 0
+     *     if not known
+     */
+    public void put(SegmentHeader header, SegmentBody body, long loadNanos) {
         checkThread();
         try {
-            final boolean result = cache.put(header, body);
-            if (!result) {
+            if (cache instanceof BoundedSegmentCache) {
+                final BoundedSegmentCache boundedCache =
+                    (BoundedSegmentCache) cache;
+                if (!boundedCache.put(header, body, loadNanos)) {
+                    LOGGER.debug("Segment not stored in cache: " + header);
+                }
+                return;
+            }
+            if (!cache.put(header, body)) {
                 LOGGER.error(
                     MondrianResource.instance()
                         .SegmentCacheFailedToSaveSegment
@@ -219,9 +246,10 @@ public final class SegmentCacheWorker {
     }
 
     private void checkThread() {
-        assert cacheMgrThread != Thread.currentThread()
+        assert cacheMgr == null
+            || !cacheMgr.isActorThread(Thread.currentThread())
             : "this method is potentially slow; you should not call it from "
-            + "the cache manager thread, " + cacheMgrThread;
+            + "a cache manager thread, " + Thread.currentThread();
     }
 }
 
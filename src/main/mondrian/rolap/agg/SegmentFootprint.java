@@ -0,0 +1,114 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.rolap.agg;
+
+import mondrian.spi.SegmentBody;
+
+import java.util.BitSet;
+import java.util.SortedSet;
+
+/**
+ * Estimates the number of bytes of heap occupied by a {@link SegmentBody}.
+ *
+ * <p>The estimate assumes a 64-bit JVM and counts the axis key sets, the
+ * value array and the null indicators. It is not exact, but it is cheap to
+ * compute and proportional to the true size, which is what an eviction
+ * policy needs.</p>
+ */
+public final class SegmentFootprint {
+    private static final int OBJECT = 16;
+    private static final int REFERENCE = 8;
+    private static final int ARRAY = 16;
+
+    /**
+     * Size of an entry in a {@link java.util.TreeMap} (which backs
+     * {@link java.util.TreeSet}), excluding the key.
+     */
+    private static final int TREE_ENTRY = 40;
+
+    /**
+     * Size of a {@link mondrian.rolap.CellKey} of modest arity.
+     */
+    private static final int CELL_KEY = 32;
+
+    private SegmentFootprint() {
+    }
+
+    /**
+     * Returns an estimate of the number of bytes used by a segment body.
+     *
+     * @param body Segment body
+     * @return Estimated size in bytes
+     */
+    public static long estimate(SegmentBody body) {
+        long size = OBJECT;
+        for (SortedSet<Comparable> axisValueSet : body.getAxisValueSets()) {
+            size += OBJECT + REFERENCE;
+            for (Comparable value : axisValueSet) {
+                size += TREE_ENTRY + estimateValue(value);
+            }
+        }
+        size += ARRAY + body.getNullAxisFlags().length;
+
+        if (body instanceof SparseSegmentBody) {
+            final SparseSegmentBody sparseBody = (SparseSegmentBody) body;
+            size += 2 * ARRAY;
+            for (int i = 0; i < sparseBody.keys.length; i++) {
+                size += 2 * REFERENCE
+                    + CELL_KEY
+                    + estimateValue(sparseBody.data[i]);
+            }
+            return size;
+        }
+
+        final Object values;
+        try {
+            values = body.getValueArray();
+        } catch (UnsupportedOperationException e) {
+            // Unknown sparse implementation.
+            final long cellCount = body.getValueMap().size();
+            return size + cellCount * (2 * REFERENCE + CELL_KEY + OBJECT);
+        }
+        if (values instanceof double[]) {
+            size += ARRAY + 8L * ((double[]) values).length
+                + estimateBitSet(body.getNullValueIndicators());
+        } else if (values instanceof int[]) {
+            size += ARRAY + 4L * ((int[]) values).length
+                + estimateBitSet(body.getNullValueIndicators());
+        } else if (values instanceof Object[]) {
+            final Object[] objects = (Object[]) values;
+            size += ARRAY + (long) REFERENCE * objects.length;
+            for (Object o : objects) {
+                if (o != null) {
+                    size += estimateValue(o);
+                }
+            }
+        }
+        return size;
+    }
+
+    private static long estimateBitSet(BitSet bitSet) {
+        return bitSet == null
+            ? 0
+            : OBJECT + ARRAY + bitSet.size() / 8;
+    }
+
+    private static long estimateValue(Object value) {
+        if (value instanceof String) {
+            return OBJECT + 8 + ARRAY + 2L * ((String) value).length();
+        } else if (value instanceof Long || value instanceof Double) {
+            return OBJECT + 8;
+        } else {
+            return OBJECT;
+        }
+    }
+}
+
+// End SegmentFootprint.java
@@ -192,6 +192,7 @@ public class SegmentLoader {
             SortedSet<Comparable>[] axisValueSets =
                 getDistinctValueWorkspace(arity);
 
+            final long startNanos = System.nanoTime();
             stmt = createExecuteSql(
                 cellRequestCount,
                 groupingSetsList,
@@ -231,7 +232,8 @@ public class SegmentLoader {
             setDataToSegments(
                 groupingSetsList,
                 groupingDataSetsMap,
-                segmentMap);
+                segmentMap,
+                System.nanoTime() - startNanos);
 
             return segmentMap;
         } catch (Throwable e) {
@@ -255,11 +257,14 @@ public class SegmentLoader {
      *
      * @param header Segment header
      * @param body Segment body
+     * @param loadNanos Time taken to execute the SQL statement and read its
+     *     results, in nanoseconds; a hint to the cache's eviction policy
      */
     private void cacheSegment(
         RolapStar star,
         SegmentHeader header,
-        SegmentBody body)
+        SegmentBody body,
+        long loadNanos)
     {
         // Write the segment into external cache.
         //
@@ -271,7 +276,13 @@ public class SegmentLoader {
         // called cacheMgr.loadSucceeded. That call will allow the current
         // query to proceed.
         if (!MondrianProperties.instance().DisableCaching.get()) {
-            cacheMgr.compositeCache.put(header, body);
+            final SegmentCache cache = cacheMgr.compositeCache;
+            if (cache instanceof SegmentCacheManager.CompositeSegmentCache) {
+                ((SegmentCacheManager.CompositeSegmentCache) cache).put(
+                    header, body, loadNanos);
+            } else {
+                cache.put(header, body);
+            }
             cacheMgr.loadSucceeded(star, header, body);
         }
     }
@@ -414,7 +425,8 @@ public class SegmentLoader {
     private void setDataToSegments(
         GroupingSetsList groupingSetsList,
         Map<BitKey, GroupingSetsList.Cohort> datasetsMap,
-        Map<Segment, SegmentWithData> segmentSlotMap)
+        Map<Segment, SegmentWithData> segmentSlotMap,
+        long loadNanos)
     {
         List<GroupingSet> groupingSets = groupingSetsList.getGroupingSets();
         for (int i = 0; i < groupingSets.size(); i++) {
@@ -454,7 +466,7 @@ public class SegmentLoader {
 
                 // Send a message to the agg manager. It will place the segment
                 // in the index.
-                cacheSegment(segment.star, header, body);
+                cacheSegment(segment.star, header, body, loadNanos);
             }
         }
     }
@@ -576,6 +588,7 @@ public class SegmentLoader {
             new Util.Functor1<Void, Statement>() {
                 public Void apply(final Statement stmt) {
                     cacheMgr.execute(
+                        groupingSetsList.getStar(),
                         new SegmentCacheManager.Command<Void>() {
                             public Void call() throws Exception {
                                 boolean atLeastOneActive = false;
@@ -675,6 +688,22 @@ public class SegmentLoader {
         }
         final RowList processedRows = new RowList(processedTypes, 100);
 
+        // Collect the values of native axis columns into primitive arrays,
+        // rather than boxing each value and adding it to a TreeSet. Each
+        // distinct value is boxed once, after the last row.
+        final AxisValueAccumulator[] accumulators =
+            new AxisValueAccumulator[arity];
+        for (int i = 0; i < arity; i++) {
+            accumulators[i] = AxisValueAccumulator.forType(types.get(i));
+        }
+
+        // pre-compute which measures are numeric
+        final boolean[] numeric = new boolean[measureCount];
+        int k = 0;
+        for (Segment segment : segments) {
+            numeric[k++] = segment.measure.getDatatype().isNumeric();
+        }
+
         while (rawRows.next()) {
             checkResultLimit(++stmt.rowCount);
             processedRows.createRow();
@@ -720,7 +749,7 @@ public class SegmentLoader {
                         }
                         processedRows.setNull(columnIndex, true);
                     } else {
-                        axisValueSets[axisIndex].add(intValue);
+                        accumulators[axisIndex].add(intValue);
                         processedRows.setInt(columnIndex, intValue);
                     }
                     break;
@@ -738,7 +767,7 @@ public class SegmentLoader {
                         }
                         processedRows.setNull(columnIndex, true);
                     } else {
-                        axisValueSets[axisIndex].add(longValue);
+                        accumulators[axisIndex].add(longValue);
                         processedRows.setLong(columnIndex, longValue);
                     }
                     break;
@@ -755,7 +784,7 @@ public class SegmentLoader {
                             axisContainsNull[axisIndex] = true;
                         }
                     }
-                    axisValueSets[axisIndex].add(doubleValue);
+                    accumulators[axisIndex].add(doubleValue);
                     processedRows.setDouble(columnIndex, doubleValue);
                     break;
                 default:
@@ -763,13 +792,6 @@ public class SegmentLoader {
                 }
             }
 
-            // pre-compute which measures are numeric
-            final boolean[] numeric = new boolean[measureCount];
-            int k = 0;
-            for (Segment segment : segments) {
-                numeric[k++] = segment.measure.getDatatype().isNumeric();
-            }
-
             // get the measure
             for (int i = 0; i < measureCount; i++, columnIndex++) {
                 final SqlStatement.Type type =
@@ -830,6 +852,12 @@ public class SegmentLoader {
                         rawRows, columnIndex));
             }
         }
+
+        for (int i = 0; i < arity; i++) {
+            if (accumulators[i] != null) {
+                accumulators[i].addTo(axisValueSets[i]);
+            }
+        }
         return processedRows;
     }
 
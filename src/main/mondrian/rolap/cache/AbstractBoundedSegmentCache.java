@@ -0,0 +1,294 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.rolap.cache;
+
+import mondrian.spi.*;
+
+import org.apache.log4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Skeleton of a {@link BoundedSegmentCache}.
+ *
+ * <p>This class keeps the index of segments, the byte budget, the
+ * {@link CostAwareEvictionPolicy}, the statistics and the listeners.
+ * A subclass decides how a segment body is stored, by implementing
+ * {@link #prepare}, {@link #store}, {@link #read}, {@link #decode} and
+ * {@link #release}.</p>
+ *
+ * <p>All access to the index and to the storage happens while holding the
+ * lock on "this". Subclass methods other than {@link #prepare} and
+ * {@link #decode} are called while holding that lock. Expensive work, such
+ * as encoding and decoding, belongs in those two methods, so that it does
+ * not hold up other readers and writers.</p>
+ *
+ * @param <E> Type of the entry that describes a stored segment
+ * @param <C> Type of the copy of a stored segment that is read while
+ *     holding the lock
+ */
+abstract class AbstractBoundedSegmentCache<E, C>
+    implements BoundedSegmentCache
+{
+    private static final Logger LOGGER =
+        Logger.getLogger(AbstractBoundedSegmentCache.class);
+
+    private final long maxByteCount;
+
+    // The following fields are guarded by "this".
+    private final Map<SegmentHeader, E> map = new HashMap<SegmentHeader, E>();
+    private final CostAwareEvictionPolicy<SegmentHeader> policy =
+        new CostAwareEvictionPolicy<SegmentHeader>();
+    private long usedByteCount;
+
+    // Statistics. Written while holding the lock, but read without it, so
+    // that the cache manager never waits on a cache operation.
+    private volatile int segmentCount;
+    private volatile long byteCount;
+    private volatile long evictionCount;
+
+    private final List<SegmentCacheListener> listeners =
+        new CopyOnWriteArrayList<SegmentCacheListener>();
+
+    /**
+     * Creates an AbstractBoundedSegmentCache.
+     *
+     * @param maxByteCount Maximum number of bytes to use
+     */
+    protected AbstractBoundedSegmentCache(long maxByteCount) {
+        this.maxByteCount = maxByteCount;
+    }
+
+    /**
+     * Creates an entry for a segment body, without storing it. Called
+     * without holding the lock, so this is the place to do expensive work
+     * such as encoding.
+     *
+     * @param body Segment body
+     * @return Entry, not yet stored
+     */
+    protected abstract E prepare(SegmentBody body);
+
+    /**
+     * Returns the number of bytes of the budget that an entry uses.
+     *
+     * @param entry Entry
+     * @return Number of bytes
+     */
+    protected abstract long byteCount(E entry);
+
+    /**
+     * Stores an entry. Caller must hold the lock, and must have ensured
+     * that the entry fits within the budget.
+     *
+     * @param entry Entry created by {@link #prepare}
+     */
+    protected abstract void store(E entry);
+
+    /**
+     * Copies a stored entry out of the storage. Caller must hold the lock.
+     *
+     * @param entry Entry
+     * @return Copy, to be passed to {@link #decode}
+     */
+    protected abstract C read(E entry);
+
+    /**
+     * Converts a copy of a stored entry into a segment body. Called without
+     * holding the lock.
+     *
+     * @param copy Copy made by {@link #read}
+     * @return Segment body
+     */
+    protected abstract SegmentBody decode(C copy);
+
+    /**
+     * Frees the storage of an entry that has been removed or evicted.
+     * Caller must hold the lock.
+     *
+     * @param entry Entry
+     */
+    protected abstract void release(E entry);
+
+    /**
+     * Frees all storage, after every entry has been removed. Caller must
+     * hold the lock.
+     */
+    protected abstract void releaseAll();
+
+    public SegmentBody get(SegmentHeader header) {
+        final C copy;
+        synchronized (this) {
+            final E entry = map.get(header);
+            if (entry == null) {
+                return null;
+            }
+            policy.touch(header);
+            copy = read(entry);
+        }
+        return decode(copy);
+    }
+
+    public boolean contains(SegmentHeader header) {
+        synchronized (this) {
+            return map.containsKey(header);
+        }
+    }
+
+    public List<SegmentHeader> getSegmentHeaders() {
+        synchronized (this) {
+            return new ArrayList<SegmentHeader>(map.keySet());
+        }
+    }
+
+    public boolean put(SegmentHeader header, SegmentBody body) {
+        return put(header, body, 0L);
+    }
+
+    public boolean put(
+        final SegmentHeader header,
+        SegmentBody body,
+        long loadNanos)
+    {
+        assert header != null;
+        assert body != null;
+        final E entry = prepare(body);
+        final long size = byteCount(entry);
+        if (size > maxByteCount) {
+            // Too large for this cache. Drop any previous copy, and report
+            // that the segment was not stored.
+            LOGGER.debug(
+                "Segment of " + size + " bytes exceeds cache budget of "
+                + maxByteCount + " bytes; not cached: " + header);
+            remove(header);
+            return false;
+        }
+        final List<SegmentHeader> evicted = new ArrayList<SegmentHeader>();
+        synchronized (this) {
+            final E old = map.remove(header);
+            if (old != null) {
+                policy.remove(header);
+                discard(old);
+            }
+            while (usedByteCount + size > maxByteCount) {
+                final SegmentHeader victim = policy.evict();
+                discard(map.remove(victim));
+                evicted.add(victim);
+                ++evictionCount;
+            }
+            store(entry);
+            map.put(header, entry);
+            policy.add(header, size, loadNanos);
+            usedByteCount += size;
+            updateStatistics();
+        }
+        fireSegmentCacheEvent(
+            new CacheEvent(
+                header,
+                SegmentCacheListener.SegmentCacheEvent.EventType.ENTRY_CREATED,
+                true));
+        for (SegmentHeader evictedHeader : evicted) {
+            // Mondrian did not ask for this segment to be removed, so the
+            // event is not local. Listeners will remove it from the index.
+            fireSegmentCacheEvent(
+                new CacheEvent(
+                    evictedHeader,
+                    SegmentCacheListener.SegmentCacheEvent.EventType
+                        .ENTRY_DELETED,
+                    false));
+        }
+        return true;
+    }
+
+    public boolean remove(final SegmentHeader header) {
+        synchronized (this) {
+            final E entry = map.remove(header);
+            if (entry == null) {
+                return false;
+            }
+            policy.remove(header);
+            discard(entry);
+            updateStatistics();
+        }
+        fireSegmentCacheEvent(
+            new CacheEvent(
+                header,
+                SegmentCacheListener.SegmentCacheEvent.EventType.ENTRY_DELETED,
+                true));
+        return true;
+    }
+
+    public void tearDown() {
+        synchronized (this) {
+            map.clear();
+            policy.clear();
+            usedByteCount = 0;
+            releaseAll();
+            updateStatistics();
+        }
+        listeners.clear();
+    }
+
+    public void addListener(SegmentCacheListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(SegmentCacheListener listener) {
+        listeners.remove(listener);
+    }
+
+    public boolean supportsRichIndex() {
+        return true;
+    }
+
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    public long getMaxByteCount() {
+        return maxByteCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Releases an entry that has been removed from the index, and returns
+     * its bytes to the budget. Caller must hold the lock.
+     */
+    private void discard(E entry) {
+        release(entry);
+        usedByteCount -= byteCount(entry);
+    }
+
+    /**
+     * Publishes statistics after a change. Caller must hold the lock.
+     */
+    private void updateStatistics() {
+        segmentCount = map.size();
+        byteCount = usedByteCount;
+    }
+
+    private void fireSegmentCacheEvent(
+        SegmentCacheListener.SegmentCacheEvent evt)
+    {
+        for (SegmentCacheListener listener : listeners) {
+            listener.handle(evt);
+        }
+    }
+}
+
+// End AbstractBoundedSegmentCache.java
@@ -0,0 +1,96 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.rolap.cache;
+
+import mondrian.olap.MondrianProperties;
+import mondrian.rolap.agg.SegmentFootprint;
+import mondrian.spi.*;
+
+/**
+ * Implementation of {@link mondrian.spi.SegmentCache} that stores segments
+ * in memory, within a fixed budget of bytes.
+ *
+ * <p>Unlike {@link MemorySegmentCache}, segments are held via hard
+ * references, so the garbage collector cannot remove them. Instead, the size
+ * of each segment is estimated using {@link SegmentFootprint}, and when the
+ * budget is exhausted, segments are evicted by a
+ * {@link CostAwareEvictionPolicy}. A segment that was expensive to load
+ * therefore outlives a cheap segment of the same size.</p>
+ *
+ * <p>Mondrian uses this cache as its local cache if
+ * {@link MondrianProperties#MemorySegmentCacheMaxMegabytes} is positive.</p>
+ */
+public class BoundedMemorySegmentCache
+    extends AbstractBoundedSegmentCache<
+        BoundedMemorySegmentCache.Entry, SegmentBody>
+{
+    /**
+     * Creates a BoundedMemorySegmentCache using the budget in the Mondrian
+     * properties.
+     */
+    public BoundedMemorySegmentCache() {
+        this(
+            MondrianProperties.instance().MemorySegmentCacheMaxMegabytes.get()
+                * 1024L * 1024L);
+    }
+
+    /**
+     * Creates a BoundedMemorySegmentCache.
+     *
+     * @param maxByteCount Maximum number of bytes to use
+     */
+    public BoundedMemorySegmentCache(long maxByteCount) {
+        super(maxByteCount);
+        assert maxByteCount > 0;
+    }
+
+    protected Entry prepare(SegmentBody body) {
+        return new Entry(body, SegmentFootprint.estimate(body));
+    }
+
+    protected long byteCount(Entry entry) {
+        return entry.byteCount;
+    }
+
+    protected void store(Entry entry) {
+        // The entry holds the body; nothing else to do.
+    }
+
+    protected SegmentBody read(Entry entry) {
+        return entry.body;
+    }
+
+    protected SegmentBody decode(SegmentBody body) {
+        return body;
+    }
+
+    protected void release(Entry entry) {
+        // The garbage collector reclaims the body.
+    }
+
+    protected void releaseAll() {
+        // No storage other than the entries.
+    }
+
+    /**
+     * A segment body and its estimated size.
+     */
+    static class Entry {
+        final SegmentBody body;
+        final long byteCount;
+
+        Entry(SegmentBody body, long byteCount) {
+            this.body = body;
+            this.byteCount = byteCount;
+        }
+    }
+}
+
+// End BoundedMemorySegmentCache.java
@@ -0,0 +1,75 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.rolap.cache;
+
+import mondrian.spi.*;
+
+/**
+ * Segment cache that holds its segments within a fixed budget of bytes,
+ * and evicts segments by policy when the budget is exhausted.
+ *
+ * <p>Segments evicted to make room are reported to listeners as non-local
+ * {@link SegmentCacheListener.SegmentCacheEvent.EventType#ENTRY_DELETED}
+ * events, so that Mondrian removes them from its index.</p>
+ *
+ * <p>The {@link mondrian.rolap.agg.SegmentCacheManager} reports the
+ * occupancy of each bounded cache to the server's monitor.</p>
+ *
+ * @see mondrian.server.monitor.ServerInfo#cellCacheByteCount
+ */
+public interface BoundedSegmentCache extends SegmentCache {
+    /**
+     * Stores a segment in the cache, with a hint of how expensive it was
+     * to load. The eviction policy will prefer to keep segments that are
+     * expensive to load, relative to their size.
+     *
+     * <p>A segment that is larger than the whole budget is not stored, and
+     * this method returns false. That is not an error; the segment is
+     * simply not cached.</p>
+     *
+     * @param header The header of the segment
+     * @param body The segment body to cache
+     * @param loadNanos Time taken to load the segment, in nanoseconds, or 0 if
+     *     not known
+     * @return Whether the segment was stored
+     */
+    boolean put(SegmentHeader header, SegmentBody body, long loadNanos);
+
+    /**
+     * Returns the number of segments currently in this cache.
+     *
+     * @return Number of segments
+     */
+    int getSegmentCount();
+
+    /**
+     * Returns the number of bytes currently used by segments in this cache.
+     *
+     * @return Number of bytes used
+     */
+    long getByteCount();
+
+    /**
+     * Returns the maximum number of bytes that this cache may use.
+     *
+     * @return Byte budget
+     */
+    long getMaxByteCount();
+
+    /**
+     * Returns the number of segments that have been evicted from this cache
+     * since it was created.
+     *
+     * @return Number of evictions
+     */
+    long getEvictionCount();
+}
+
+// End BoundedSegmentCache.java
@@ -0,0 +1,44 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.rolap.cache;
+
+import mondrian.spi.SegmentCache;
+import mondrian.spi.SegmentHeader;
+
+/**
+ * Event fired by a segment cache in this package to its listeners.
+ */
+class CacheEvent
+    implements SegmentCache.SegmentCacheListener.SegmentCacheEvent
+{
+    private final SegmentHeader header;
+    private final EventType eventType;
+    private final boolean local;
+
+    CacheEvent(SegmentHeader header, EventType eventType, boolean local) {
+        this.header = header;
+        this.eventType = eventType;
+        this.local = local;
+    }
+
+    public boolean isLocal() {
+        return local;
+    }
+
+    public SegmentHeader getSource() {
+        return header;
+    }
+
+    public EventType getEventType() {
+        return eventType;
+    }
+}
+
+// End CacheEvent.java
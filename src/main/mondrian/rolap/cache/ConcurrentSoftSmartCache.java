@@ -0,0 +1,210 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.rolap.cache;
+
+import java.lang.ref.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An implementation of {@link SmartCache} whose values are soft references,
+ * and which can be read without locking.
+ *
+ * <p>Unlike {@link SoftSmartCache}, which takes a lock for every call, this
+ * cache is backed by a {@link ConcurrentHashMap}. {@link #get} takes no lock,
+ * and {@link #put} and {@link #remove} share a lock that is only exclusive
+ * while a task is {@link #execute executing}, so that tasks still have
+ * exclusive write access to the contents of the cache.</p>
+ *
+ * <p>Keys are held by hard references until their value is garbage-collected;
+ * the entry is then removed on the next write.</p>
+ */
+public class ConcurrentSoftSmartCache<K, V> implements SmartCache<K, V> {
+    private final ConcurrentMap<K, ValueRef<K, V>> map =
+        new ConcurrentHashMap<K, ValueRef<K, V>>();
+    private final ReferenceQueue<V> queue = new ReferenceQueue<V>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public V put(K key, V value) {
+        lock.readLock().lock();
+        try {
+            purge();
+            // Null values are the same as a 'remove'.
+            final ValueRef<K, V> previous =
+                value == null
+                    ? map.remove(key)
+                    : map.put(key, new ValueRef<K, V>(key, value, queue));
+            return previous == null ? null : previous.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public V putIfAbsent(K key, V value) {
+        lock.readLock().lock();
+        try {
+            purge();
+            final ValueRef<K, V> ref = new ValueRef<K, V>(key, value, queue);
+            for (;;) {
+                final ValueRef<K, V> previous = map.putIfAbsent(key, ref);
+                if (previous == null) {
+                    return null;
+                }
+                final V previousValue = previous.get();
+                if (previousValue != null) {
+                    return previousValue;
+                }
+                // The previous value has been garbage-collected but its
+                // entry has not been purged yet. Replace it.
+                if (map.replace(key, previous, ref)) {
+                    return null;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public V get(K key) {
+        final ValueRef<K, V> ref = map.get(key);
+        return ref == null ? null : ref.get();
+    }
+
+    public V remove(K key) {
+        lock.readLock().lock();
+        try {
+            purge();
+            final ValueRef<K, V> previous = map.remove(key);
+            return previous == null ? null : previous.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.readLock().lock();
+        try {
+            map.clear();
+            purge();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        purge();
+        return map.size();
+    }
+
+    public void execute(SmartCacheTask<K, V> task) {
+        lock.writeLock().lock();
+        try {
+            purge();
+            task.execute(new EntryIterator());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the entries whose values have been garbage-collected.
+     */
+    @SuppressWarnings("unchecked")
+    private void purge() {
+        Reference<? extends V> ref;
+        while ((ref = queue.poll()) != null) {
+            final ValueRef<K, V> valueRef = (ValueRef<K, V>) ref;
+            // Remove only if the entry has not been replaced.
+            map.remove(valueRef.key, valueRef);
+        }
+    }
+
+    /**
+     * Soft reference to a value, which remembers its key, so that its entry
+     * can be removed after the value has been garbage-collected.
+     */
+    private static class ValueRef<K, V> extends SoftReference<V> {
+        private final K key;
+
+        ValueRef(K key, V value, ReferenceQueue<V> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+    }
+
+    /**
+     * Iterator over the entries of the cache whose values have not been
+     * garbage-collected.
+     */
+    private class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        private final Iterator<Map.Entry<K, ValueRef<K, V>>> iterator =
+            map.entrySet().iterator();
+        private Map.Entry<K, V> next;
+
+        public boolean hasNext() {
+            while (next == null && iterator.hasNext()) {
+                final Map.Entry<K, ValueRef<K, V>> entry = iterator.next();
+                final V value = entry.getValue().get();
+                if (value != null) {
+                    next = new Entry(entry.getKey(), value);
+                }
+            }
+            return next != null;
+        }
+
+        public Map.Entry<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Map.Entry<K, V> entry = next;
+            next = null;
+            return entry;
+        }
+
+        public void remove() {
+            // Valid only immediately after next(), when the underlying
+            // iterator is positioned on the entry that was returned.
+            if (next != null) {
+                throw new IllegalStateException();
+            }
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Entry of the cache. Immutable.
+     */
+    private class Entry implements Map.Entry<K, V> {
+        private final K key;
+        private final V value;
+
+        Entry(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public V setValue(V value) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
+
+// End ConcurrentSoftSmartCache.java
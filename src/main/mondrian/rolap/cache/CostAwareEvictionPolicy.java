@@ -0,0 +1,144 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.rolap.cache;
+
+import java.util.*;
+
+/**
+ * Eviction policy that weighs the cost of re-creating each entry against the
+ * space it occupies, how often it is used, and how recently.
+ *
+ * <p>This is the "Greedy-Dual-Size-Frequency" algorithm. Each entry has a
+ * priority</p>
+ *
+ * <blockquote>priority = inflation + frequency &times; cost / size</blockquote>
+ *
+ * <p>and the entry with the lowest priority is evicted first. The inflation
+ * value is set to the priority of the most recently evicted entry, so that
+ * entries which have not been used for a while age relative to newly used
+ * ones. Thus a segment whose SQL took minutes stays in cache longer than a
+ * cheap segment of the same size, but not forever if nobody reads it. Ties
+ * are broken in least-recently-used order.</p>
+ *
+ * <p>Not thread-safe. The caller must hold a lock.</p>
+ *
+ * @param <K> Key type
+ */
+class CostAwareEvictionPolicy<K> {
+    private final Map<K, Node<K>> nodes = new HashMap<K, Node<K>>();
+    private final SortedSet<Node<K>> queue = new TreeSet<Node<K>>();
+    private double inflation;
+    private long sequence;
+
+    /**
+     * Adds an entry, replacing any existing entry with the same key.
+     *
+     * @param key Key
+     * @param byteCount Size of entry in bytes
+     * @param loadNanos Time taken to load the entry, in nanoseconds, or 0 if
+     *     not known
+     */
+    void add(K key, long byteCount, long loadNanos) {
+        remove(key);
+        final Node<K> node = new Node<K>(key, byteCount, loadNanos);
+        prioritize(node);
+        nodes.put(key, node);
+        queue.add(node);
+    }
+
+    /**
+     * Records a use of an entry.
+     *
+     * @param key Key
+     */
+    void touch(K key) {
+        final Node<K> node = nodes.get(key);
+        if (node == null) {
+            return;
+        }
+        queue.remove(node);
+        ++node.frequency;
+        prioritize(node);
+        queue.add(node);
+    }
+
+    /**
+     * Removes an entry.
+     *
+     * @param key Key
+     * @return Whether the entry existed
+     */
+    boolean remove(K key) {
+        final Node<K> node = nodes.remove(key);
+        if (node == null) {
+            return false;
+        }
+        queue.remove(node);
+        return true;
+    }
+
+    /**
+     * Removes the entry of lowest priority and returns its key, or returns
+     * null if there are no entries.
+     *
+     * @return Key of evicted entry, or null
+     */
+    K evict() {
+        if (queue.isEmpty()) {
+            return null;
+        }
+        final Node<K> node = queue.first();
+        queue.remove(node);
+        nodes.remove(node.key);
+        inflation = node.priority;
+        return node.key;
+    }
+
+    void clear() {
+        nodes.clear();
+        queue.clear();
+        inflation = 0d;
+    }
+
+    private void prioritize(Node<K> node) {
+        node.priority =
+            inflation + node.frequency * node.cost / node.byteCount;
+        node.sequence = sequence++;
+    }
+
+    private static class Node<K> implements Comparable<Node<K>> {
+        final K key;
+        final long byteCount;
+        final double cost;
+        int frequency = 1;
+        double priority;
+        long sequence;
+
+        Node(K key, long byteCount, long loadNanos) {
+            this.key = key;
+            this.byteCount = Math.max(byteCount, 1L);
+            // Cost is measured in milliseconds. Entries of unknown cost are
+            // deemed to have taken 1 millisecond, so that they still compete
+            // on size, frequency and recency.
+            this.cost = 1d + Math.max(loadNanos, 0L) / 1000000d;
+        }
+
+        public int compareTo(Node<K> o) {
+            if (priority != o.priority) {
+                return priority < o.priority ? -1 : 1;
+            }
+            return sequence < o.sequence
+                ? -1
+                : sequence == o.sequence ? 0 : 1;
+        }
+    }
+}
+
+// End CostAwareEvictionPolicy.java
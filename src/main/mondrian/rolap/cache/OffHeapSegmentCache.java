@@ -0,0 +1,266 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.rolap.cache;
+
+import mondrian.olap.MondrianProperties;
+import mondrian.olap.Util;
+import mondrian.spi.*;
+
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * Implementation of {@link mondrian.spi.SegmentCache} that stores segments
+ * outside of the Java heap.
+ *
+ * <p>Each segment body is encoded by a {@link SegmentCodec} and copied into
+ * fixed-size blocks carved out of large slabs. Slabs are either direct
+ * buffers or, if {@link MondrianProperties#OffHeapSegmentCacheDirectory} is
+ * set, memory-mapped files. Because the cell data is not on the heap, it
+ * does not add to the cost of garbage collection, and the garbage collector
+ * cannot throw it away.</p>
+ *
+ * <p>The cache holds at most
+ * {@link MondrianProperties#OffHeapSegmentCacheMaxMegabytes} of segments.
+ * When a new segment does not fit, segments are evicted by a
+ * {@link CostAwareEvictionPolicy}, which prefers to keep segments that are
+ * small, often used, recently used, or were expensive to load. Evictions
+ * are reported to listeners as non-local
+ * {@link SegmentCacheListener.SegmentCacheEvent.EventType#ENTRY_DELETED}
+ * events, so that Mondrian removes the segments from its index.</p>
+ *
+ * <p>To use this cache, set {@link MondrianProperties#SegmentCache} to
+ * <code>mondrian.rolap.cache.OffHeapSegmentCache</code>, and (usually)
+ * set {@link MondrianProperties#DisableLocalSegmentCache} to true.</p>
+ */
+public class OffHeapSegmentCache
+    extends AbstractBoundedSegmentCache<OffHeapSegmentCache.Entry, byte[]>
+{
+    private static final Logger LOGGER =
+        Logger.getLogger(OffHeapSegmentCache.class);
+
+    /**
+     * Default size of an allocation block. Each segment occupies a whole
+     * number of blocks.
+     */
+    static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * Maximum size of a slab.
+     */
+    private static final int MAX_SLAB_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Codec for segment bodies. Values are not compressed; the cost would
+     * be paid on every read.
+     */
+    private static final SegmentCodec CODEC =
+        SegmentCodec.Factory.create(false);
+
+    private final int blockSize;
+    private final int blockCount;
+    private final int blocksPerSlab;
+    private final File directory;
+
+    // The following fields are guarded by "this".
+    private final ByteBuffer[] slabs;
+    private final List<File> files = new ArrayList<File>();
+    private final int[] freeBlocks;
+    private int freeBlockCount;
+    private int nextFreshBlock;
+
+    /**
+     * Creates an OffHeapSegmentCache using the budget and storage location
+     * in the Mondrian properties.
+     */
+    public OffHeapSegmentCache() {
+        this(
+            MondrianProperties.instance().OffHeapSegmentCacheMaxMegabytes.get()
+                * 1024L * 1024L,
+            MondrianProperties.instance().OffHeapSegmentCacheDirectory.get(),
+            DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Creates an OffHeapSegmentCache.
+     *
+     * @param maxByteCount Maximum number of bytes to use
+     * @param directory Directory for memory-mapped files, or null to use
+     *     direct buffers
+     * @param blockSize Size of allocation block
+     */
+    public OffHeapSegmentCache(
+        long maxByteCount,
+        String directory,
+        int blockSize)
+    {
+        super((long) blockCount(maxByteCount, blockSize) * blockSize);
+        this.blockSize = blockSize;
+        this.blockCount = blockCount(maxByteCount, blockSize);
+        this.blocksPerSlab = Math.max(1, MAX_SLAB_SIZE / blockSize);
+        this.slabs =
+            new ByteBuffer[(blockCount + blocksPerSlab - 1) / blocksPerSlab];
+        this.freeBlocks = new int[blockCount];
+        this.directory =
+            directory == null || directory.length() == 0
+                ? null
+                : new File(directory);
+        LOGGER.debug(
+            "Off-heap segment cache: " + blockCount + " blocks of "
+            + blockSize + " bytes in "
+            + (this.directory == null
+                ? "direct buffers"
+                : "files in " + this.directory));
+    }
+
+    private static int blockCount(long maxByteCount, int blockSize) {
+        assert blockSize > 0;
+        return (int) Math.min(maxByteCount / blockSize, Integer.MAX_VALUE);
+    }
+
+    protected Entry prepare(SegmentBody body) {
+        final byte[] bytes = CODEC.encodeBody(body);
+        return new Entry(bytes, (bytes.length + blockSize - 1) / blockSize);
+    }
+
+    protected long byteCount(Entry entry) {
+        return (long) entry.blocks.length * blockSize;
+    }
+
+    /**
+     * Copies an encoded segment out of its blocks. Caller must hold the
+     * lock.
+     */
+    protected byte[] read(Entry entry) {
+        final byte[] bytes = new byte[entry.length];
+        for (int i = 0; i < entry.blocks.length; i++) {
+            final int offset = i * blockSize;
+            final ByteBuffer buffer = blockBuffer(entry.blocks[i]);
+            buffer.get(
+                bytes, offset, Math.min(blockSize, bytes.length - offset));
+        }
+        return bytes;
+    }
+
+    protected SegmentBody decode(byte[] bytes) {
+        return CODEC.decodeBody(bytes);
+    }
+
+    protected void releaseAll() {
+        Arrays.fill(slabs, null);
+        freeBlockCount = 0;
+        nextFreshBlock = 0;
+        for (File file : files) {
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+        files.clear();
+    }
+
+    /**
+     * Allocates blocks and copies an encoded segment into them. Caller must
+     * hold the lock, and must have ensured that enough blocks are available.
+     */
+    protected void store(Entry entry) {
+        final byte[] bytes = entry.bytes;
+        for (int i = 0; i < entry.blocks.length; i++) {
+            final int block;
+            if (freeBlockCount > 0) {
+                block = freeBlocks[--freeBlockCount];
+            } else {
+                block = nextFreshBlock++;
+            }
+            entry.blocks[i] = block;
+            final int offset = i * blockSize;
+            final ByteBuffer buffer = blockBuffer(block);
+            buffer.put(
+                bytes, offset, Math.min(blockSize, bytes.length - offset));
+        }
+        entry.bytes = null;
+    }
+
+    /**
+     * Returns the blocks of a segment to the free list. Caller must hold the
+     * lock.
+     */
+    protected void release(Entry entry) {
+        for (int block : entry.blocks) {
+            freeBlocks[freeBlockCount++] = block;
+        }
+    }
+
+    /**
+     * Returns a buffer positioned at the start of a block, allocating the
+     * slab that contains the block if necessary. Caller must hold the lock.
+     */
+    private ByteBuffer blockBuffer(int block) {
+        final int slabOrdinal = block / blocksPerSlab;
+        ByteBuffer slab = slabs[slabOrdinal];
+        if (slab == null) {
+            final int slabBlockCount =
+                Math.min(
+                    blocksPerSlab,
+                    blockCount - slabOrdinal * blocksPerSlab);
+            slab = allocateSlab(slabBlockCount * blockSize);
+            slabs[slabOrdinal] = slab;
+        }
+        final ByteBuffer buffer = slab.duplicate();
+        buffer.position((block % blocksPerSlab) * blockSize);
+        return buffer;
+    }
+
+    private ByteBuffer allocateSlab(int size) {
+        if (directory == null) {
+            return ByteBuffer.allocateDirect(size);
+        }
+        try {
+            final File file =
+                File.createTempFile("mondrian-segments", ".slab", directory);
+            file.deleteOnExit();
+            files.add(file);
+            final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(size);
+                // The mapping remains valid after the channel is closed.
+                return raf.getChannel().map(
+                    FileChannel.MapMode.READ_WRITE, 0, size);
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            throw Util.newError(
+                e, "Error while allocating off-heap segment slab in "
+                + directory);
+        }
+    }
+
+    /**
+     * Location of an encoded segment body. Until the entry is stored, it
+     * holds the encoded bytes, and its blocks are not yet allocated.
+     */
+    static class Entry {
+        byte[] bytes;
+        final int[] blocks;
+        final int length;
+
+        Entry(byte[] bytes, int blockCount) {
+            this.bytes = bytes;
+            this.blocks = new int[blockCount];
+            this.length = bytes.length;
+        }
+    }
+}
+
+// End OffHeapSegmentCache.java
@@ -5,7 +5,7 @@
 // You must accept the terms of that agreement to use this software.
 //
 // Copyright (C) 2004-2005 TONBELLER AG
-// Copyright (C) 2006-2012 Pentaho and others
+// Copyright (C) 2006-2014 Pentaho and others
 // All Rights Reserved.
 */
 
@@ -35,6 +35,17 @@ public interface SmartCache <K, V> {
      */
     V put(K key, V value);
 
+    /**
+     * Places a key/value pair into the cache, unless the cache already
+     * contains a value for the key.
+     *
+     * @param key Key
+     * @param value Value
+     * @return the value already in the cache for <code>key</code>, or null
+     * if <code>value</code> was added
+     */
+    V putIfAbsent(K key, V value);
+
     /**
      * Looks up and returns a cache value according to a given key.
      * If the cache does not correspond an entry corresponding to the key,
@@ -4,7 +4,7 @@
 * http://www.eclipse.org/legal/epl-v10.html.
 * You must accept the terms of that agreement to use this software.
 *
-* Copyright (c) 2002-2013 Pentaho Corporation..  All rights reserved.
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
 */
 
 package mondrian.rolap.cache;
@@ -44,6 +44,20 @@ public abstract class SmartCacheImpl<K, V>
         }
     }
 
+    public V putIfAbsent(K key, V value) {
+        lock.writeLock().lock();
+        try {
+            final V previous = getImpl(key);
+            if (previous != null) {
+                return previous;
+            }
+            putImpl(key, value);
+            return null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
     public V get(K key) {
         lock.readLock().lock();
         try {
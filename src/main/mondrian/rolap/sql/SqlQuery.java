@@ -90,6 +90,13 @@ public class SqlQuery {
     /** Controls whether table optimization hints are used */
     private boolean allowHints;
 
+    /** Maximum number of rows to return, or 0; see {@link #setLimitAndOffset}.
+     */
+    private int limit;
+
+    /** Number of rows to skip, or 0; see {@link #setLimitAndOffset}. */
+    private int offset;
+
     /**
      * This list is used to keep track of what aliases have been  used in the
      * FROM clause. One might think that a java.util.Set would be a more
@@ -189,6 +196,23 @@ public class SqlQuery {
         this.allowHints = t;
     }
 
+    /**
+     * Restricts the query to a window of rows: skips the first
+     * <code>offset</code> rows, and returns at most <code>limit</code> rows.
+     *
+     * <p>The dialect must support it; see
+     * {@link Dialect#supportsLimitAndOffset()}.</p>
+     *
+     * @param limit Maximum number of rows to return, or 0 for no limit
+     * @param offset Number of rows to skip
+     */
+    public void setLimitAndOffset(int limit, int offset) {
+        assert dialect.supportsLimitAndOffset();
+        assert limit >= 0 && offset >= 0;
+        this.limit = limit;
+        this.offset = offset;
+    }
+
     /**
      * Adds a subquery to the FROM clause of this Query with a given alias.
      * If the query already exists it either, depending on
@@ -676,6 +700,14 @@ public class SqlQuery {
             buf, generateFormattedSql, prefix, " having ", " and ", "", "");
         orderBy.toBuffer(
             buf, generateFormattedSql, prefix, " order by ", ", ", "", "");
+        if (limit > 0 || offset > 0) {
+            if (generateFormattedSql) {
+                buf.append(Util.nl).append(prefix);
+            } else {
+                buf.append(' ');
+            }
+            buf.append(dialect.generateLimitAndOffset(limit, offset));
+        }
     }
 
     private void groupingFunctionsToBuffer(StringBuilder buf, String prefix) {
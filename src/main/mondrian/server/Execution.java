@@ -397,7 +397,7 @@ public class Execution {
         final SegmentCacheManager mgr =
             locus.getServer()
                 .getAggregationManager().cacheMgr;
-        mgr.execute(
+        mgr.executeAll(
             new SegmentCacheManager.Command<Void>() {
                 public Void call() throws Exception {
                     mgr.getIndexRegistry()
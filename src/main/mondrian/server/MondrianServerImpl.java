@@ -15,6 +15,7 @@ import mondrian.olap.Util;
 import mondrian.olap4j.*;
 import mondrian.resource.MondrianResource;
 import mondrian.rolap.RolapConnection;
+import mondrian.rolap.RolapResultCache;
 import mondrian.rolap.RolapResultShepherd;
 import mondrian.rolap.RolapSchema;
 import mondrian.rolap.agg.AggregationManager;
@@ -94,6 +95,8 @@ class MondrianServerImpl
 
     private final AggregationManager aggMgr;
 
+    private final RolapResultCache resultCache = new RolapResultCache();
+
     private boolean shutdown = false;
 
     private static final Logger LOGGER =
@@ -187,7 +190,7 @@ class MondrianServerImpl
 
         this.aggMgr = new AggregationManager(this);
 
-        this.shepherd = new RolapResultShepherd();
+        this.shepherd = new RolapResultShepherd(this);
 
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("new MondrianServer: id=" + id);
@@ -235,6 +238,13 @@ class MondrianServerImpl
         return aggMgr;
     }
 
+    public RolapResultCache getResultCache() {
+        if (shutdown) {
+            throw new MondrianException("Server already shutdown.");
+        }
+        return resultCache;
+    }
+
     @Override
     public OlapConnection getConnection(
         String databaseName,
@@ -314,6 +324,7 @@ class MondrianServerImpl
         }
         this.shutdown  = true;
         aggMgr.shutdown();
+        resultCache.flushAll();
         monitor.shutdown();
         repository.shutdown();
         shepherd.shutdown();
@@ -200,6 +200,14 @@ class MonitorImpl
             new MutableStatementInfo(null, -1, null);
         private final MutableConnectionInfo aggConn =
             new MutableConnectionInfo(null);
+        private final Map<Pair<Integer, String>, CellCacheOccupancyEvent>
+            cacheOccupancyMap =
+            new HashMap<Pair<Integer, String>, CellCacheOccupancyEvent>();
+        private final Map<Integer, QueryQueueEvent> queryQueueMap =
+            new HashMap<Integer, QueryQueueEvent>();
+        private final Map<Pair<Integer, String>, CellCacheShardEvent>
+            cacheShardMap =
+            new HashMap<Pair<Integer, String>, CellCacheShardEvent>();
         private final String stack;
 
         public MutableServerInfo(String stack) {
@@ -208,6 +216,53 @@ class MonitorImpl
 
         public ServerInfo fix() {
             Util.MemoryInfo.Usage memoryUsage = MEMORY_INFO.get();
+            long cacheByteCount = 0;
+            long cacheMaxByteCount = 0;
+            long cacheEvictionCount = 0;
+            for (CellCacheOccupancyEvent event : cacheOccupancyMap.values()) {
+                cacheByteCount += event.byteCount;
+                cacheMaxByteCount += event.maxByteCount;
+                cacheEvictionCount += event.evictionCount;
+            }
+            int queryRunningCount = 0;
+            int queryQueuedCount = 0;
+            final Map<String, Integer> queryQueueLengths =
+                new TreeMap<String, Integer>();
+            long queryAdmitCount = 0;
+            long queryQueueWaitCount = 0;
+            long queryQueueWaitNanos = 0;
+            long queryQueueTimeoutCount = 0;
+            for (QueryQueueEvent event : queryQueueMap.values()) {
+                queryRunningCount += event.runningCount;
+                queryQueuedCount += event.queuedCount;
+                for (Map.Entry<String, Integer> entry
+                    : event.queueLengths.entrySet())
+                {
+                    final Integer length =
+                        queryQueueLengths.get(entry.getKey());
+                    queryQueueLengths.put(
+                        entry.getKey(),
+                        entry.getValue() + (length == null ? 0 : length));
+                }
+                queryAdmitCount += event.admitCount;
+                queryQueueWaitCount += event.waitCount;
+                queryQueueWaitNanos += event.waitNanos;
+                queryQueueTimeoutCount += event.timeoutCount;
+            }
+            final Map<String, Integer> cacheShardQueueDepths =
+                new TreeMap<String, Integer>();
+            long cacheShardMessageCount = 0;
+            long cacheShardLatencyNanos = 0;
+            long cacheShardMaxLatencyNanos = 0;
+            for (CellCacheShardEvent event : cacheShardMap.values()) {
+                cacheShardQueueDepths.put(
+                    event.serverId + ":" + event.threadName,
+                    event.queueDepth);
+                cacheShardMessageCount += event.messageCount;
+                cacheShardLatencyNanos += event.totalLatencyNanos;
+                cacheShardMaxLatencyNanos =
+                    Math.max(cacheShardMaxLatencyNanos, event.maxLatencyNanos);
+            }
             return new ServerInfo(
                 stack,
                 aggConn.startCount,
@@ -237,7 +292,21 @@ class MonitorImpl
                 aggExec.cellCacheSegmentCreateViaRollupCount,
                 aggExec.cellCacheSegmentCreateViaSqlCount,
                 aggExec.cellCacheSegmentCellCount,
-                aggExec.cellCacheSegmentCoordinateSum);
+                aggExec.cellCacheSegmentCoordinateSum,
+                cacheByteCount,
+                cacheMaxByteCount,
+                cacheEvictionCount,
+                queryRunningCount,
+                queryQueuedCount,
+                Collections.unmodifiableMap(queryQueueLengths),
+                queryAdmitCount,
+                queryQueueWaitCount,
+                queryQueueWaitNanos,
+                queryQueueTimeoutCount,
+                Collections.unmodifiableMap(cacheShardQueueDepths),
+                cacheShardMessageCount,
+                cacheShardLatencyNanos,
+                cacheShardMaxLatencyNanos);
         }
     }
 
@@ -842,6 +911,23 @@ class MonitorImpl
             }
         }
 
+        public Object visit(CellCacheOccupancyEvent event) {
+            server.cacheOccupancyMap.put(
+                Pair.of(event.serverId, event.cacheName), event);
+            return null;
+        }
+
+        public Object visit(QueryQueueEvent event) {
+            server.queryQueueMap.put(event.serverId, event);
+            return null;
+        }
+
+        public Object visit(CellCacheShardEvent event) {
+            server.cacheShardMap.put(
+                Pair.of(event.serverId, event.threadName), event);
+            return null;
+        }
+
         public Object visit(SqlStatementStartEvent event) {
             final MutableStatementInfo stmt =
                 statementMap.get(
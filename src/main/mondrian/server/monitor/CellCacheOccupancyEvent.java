@@ -0,0 +1,71 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.server.monitor;
+
+/**
+ * Snapshot of the occupancy of a bounded segment cache.
+ *
+ * <p>Each event supersedes the previous event for the same cache.</p>
+ *
+ * @see mondrian.rolap.cache.BoundedSegmentCache
+ */
+public class CellCacheOccupancyEvent extends Event {
+    /**
+     * Server identifier; corresponds to
+     * {@link mondrian.olap.MondrianServer#getId()}.
+     */
+    public final int serverId;
+
+    /**
+     * Name of the cache, unique within the server.
+     */
+    public final String cacheName;
+
+    public final int segmentCount;
+    public final long byteCount;
+    public final long maxByteCount;
+    public final long evictionCount;
+
+    /**
+     * Creates a CellCacheOccupancyEvent.
+     *
+     * @param timestamp Timestamp
+     * @param serverId ID of the server from which the event originates.
+     * @param cacheName Name of the cache
+     * @param segmentCount Number of segments in the cache
+     * @param byteCount Number of bytes used by the cache
+     * @param maxByteCount Maximum number of bytes the cache may use
+     * @param evictionCount Number of segments evicted since the cache was
+     *     created
+     */
+    public CellCacheOccupancyEvent(
+        long timestamp,
+        int serverId,
+        String cacheName,
+        int segmentCount,
+        long byteCount,
+        long maxByteCount,
+        long evictionCount)
+    {
+        super(timestamp);
+        this.serverId = serverId;
+        this.cacheName = cacheName;
+        this.segmentCount = segmentCount;
+        this.byteCount = byteCount;
+        this.maxByteCount = maxByteCount;
+        this.evictionCount = evictionCount;
+    }
+
+    public <T> T accept(Visitor<T> visitor) {
+        return visitor.visit(this);
+    }
+}
+
+// End CellCacheOccupancyEvent.java
@@ -0,0 +1,73 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.server.monitor;
+
+/**
+ * Snapshot of the queue depth and latency of a shard of a segment cache
+ * manager.
+ *
+ * <p>Each event supersedes the previous event for the same shard.</p>
+ *
+ * @see mondrian.rolap.agg.SegmentCacheManager
+ */
+public class CellCacheShardEvent extends Event {
+    /**
+     * Server identifier; corresponds to
+     * {@link mondrian.olap.MondrianServer#getId()}.
+     */
+    public final int serverId;
+
+    /**
+     * Name of the shard's thread, unique within the server.
+     */
+    public final String threadName;
+
+    public final int queueDepth;
+    public final long messageCount;
+    public final long totalLatencyNanos;
+    public final long maxLatencyNanos;
+
+    /**
+     * Creates a CellCacheShardEvent.
+     *
+     * @param timestamp Timestamp
+     * @param serverId ID of the server from which the event originates.
+     * @param threadName Name of the shard's thread
+     * @param queueDepth Number of messages waiting in the shard's queue
+     * @param messageCount Number of messages processed since the shard
+     *     started
+     * @param totalLatencyNanos Total time between each processed message
+     *     being queued and its processing completing
+     * @param maxLatencyNanos Longest latency of any processed message
+     */
+    public CellCacheShardEvent(
+        long timestamp,
+        int serverId,
+        String threadName,
+        int queueDepth,
+        long messageCount,
+        long totalLatencyNanos,
+        long maxLatencyNanos)
+    {
+        super(timestamp);
+        this.serverId = serverId;
+        this.threadName = threadName;
+        this.queueDepth = queueDepth;
+        this.messageCount = messageCount;
+        this.totalLatencyNanos = totalLatencyNanos;
+        this.maxLatencyNanos = maxLatencyNanos;
+    }
+
+    public <T> T accept(Visitor<T> visitor) {
+        return visitor.visit(this);
+    }
+}
+
+// End CellCacheShardEvent.java
@@ -0,0 +1,83 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.server.monitor;
+
+import java.util.Map;
+
+/**
+ * Snapshot of the queues of queries waiting for a query thread.
+ *
+ * <p>Each event supersedes the previous event for the same server.</p>
+ *
+ * @see mondrian.rolap.RolapResultShepherd
+ */
+public class QueryQueueEvent extends Event {
+    /**
+     * Server identifier; corresponds to
+     * {@link mondrian.olap.MondrianServer#getId()}.
+     */
+    public final int serverId;
+
+    public final int runningCount;
+    public final int queuedCount;
+
+    /**
+     * Number of queries waiting in each non-empty queue. The key is the
+     * priority and tenant of the queue, for example
+     * "INTERACTIVE:[FoodMart]/California manager".
+     */
+    public final Map<String, Integer> queueLengths;
+
+    public final long admitCount;
+    public final long waitCount;
+    public final long waitNanos;
+    public final long timeoutCount;
+
+    /**
+     * Creates a QueryQueueEvent.
+     *
+     * @param timestamp Timestamp
+     * @param serverId ID of the server from which the event originates.
+     * @param runningCount Number of queries running
+     * @param queuedCount Number of queries waiting to be admitted
+     * @param queueLengths Number of queries waiting in each queue
+     * @param admitCount Number of queries admitted since the server started
+     * @param waitCount Number of admitted queries that had to wait
+     * @param waitNanos Total time that admitted queries have waited
+     * @param timeoutCount Number of queries that gave up waiting
+     */
+    public QueryQueueEvent(
+        long timestamp,
+        int serverId,
+        int runningCount,
+        int queuedCount,
+        Map<String, Integer> queueLengths,
+        long admitCount,
+        long waitCount,
+        long waitNanos,
+        long timeoutCount)
+    {
+        super(timestamp);
+        this.serverId = serverId;
+        this.runningCount = runningCount;
+        this.queuedCount = queuedCount;
+        this.queueLengths = queueLengths;
+        this.admitCount = admitCount;
+        this.waitCount = waitCount;
+        this.waitNanos = waitNanos;
+        this.timeoutCount = timeoutCount;
+    }
+
+    public <T> T accept(Visitor<T> visitor) {
+        return visitor.visit(this);
+    }
+}
+
+// End QueryQueueEvent.java
@@ -9,6 +9,8 @@
 */
 package mondrian.server.monitor;
 
+import java.util.Map;
+
 /**
  * Information about a Mondrian server.
  */
@@ -102,6 +104,85 @@ public class ServerInfo extends Info {
      */
     public final int cellCoordinateCount;
 
+    /**
+     * The number of bytes currently used by bounded segment caches, such as
+     * {@link mondrian.rolap.cache.OffHeapSegmentCache}.
+     */
+    public final long cellCacheByteCount;
+
+    /**
+     * The maximum number of bytes that bounded segment caches may use.
+     */
+    public final long cellCacheMaxByteCount;
+
+    /**
+     * The number of segments that bounded segment caches have evicted to
+     * stay within their budget.
+     */
+    public final long cellCacheEvictionCount;
+
+    /**
+     * The number of queries that hold a query thread.
+     */
+    public final int queryRunningCount;
+
+    /**
+     * The number of queries waiting for a query thread.
+     */
+    public final int queryQueuedCount;
+
+    /**
+     * The number of queries waiting in each non-empty queue, keyed by the
+     * priority and tenant of the queue.
+     */
+    public final Map<String, Integer> queryQueueLengths;
+
+    /**
+     * The number of queries that have been admitted to a query thread.
+     */
+    public final long queryAdmitCount;
+
+    /**
+     * The number of admitted queries that had to wait for a query thread.
+     */
+    public final long queryQueueWaitCount;
+
+    /**
+     * Cumulative time that admitted queries have waited for a query thread.
+     */
+    public final long queryQueueWaitNanos;
+
+    /**
+     * The number of queries that gave up waiting for a query thread.
+     */
+    public final long queryQueueTimeoutCount;
+
+    /**
+     * The number of messages waiting in the queue of each shard of the
+     * segment cache manager, keyed by the server ID and the name of the
+     * shard's thread, for example
+     * "0:mondrian.rolap.agg.SegmentCacheManager$ACTOR".
+     */
+    public final Map<String, Integer> cellCacheShardQueueDepths;
+
+    /**
+     * The number of messages that segment cache manager shards have
+     * processed.
+     */
+    public final long cellCacheShardMessageCount;
+
+    /**
+     * Cumulative time between messages to segment cache manager shards being
+     * queued and their processing completing.
+     */
+    public final long cellCacheShardLatencyNanos;
+
+    /**
+     * The longest time that a segment cache manager shard has taken to
+     * process a message, including the time it waited in the queue.
+     */
+    public final long cellCacheShardMaxLatencyNanos;
+
     public ServerInfo(
         String stack,
         int connectionStartCount,
@@ -130,7 +211,21 @@ public class ServerInfo extends Info {
         int segmentCreateViaRollupCount,
         int segmentCreateViaSqlCount,
         int cellCount,
-        int cellCoordinateCount)
+        int cellCoordinateCount,
+        long cellCacheByteCount,
+        long cellCacheMaxByteCount,
+        long cellCacheEvictionCount,
+        int queryRunningCount,
+        int queryQueuedCount,
+        Map<String, Integer> queryQueueLengths,
+        long queryAdmitCount,
+        long queryQueueWaitCount,
+        long queryQueueWaitNanos,
+        long queryQueueTimeoutCount,
+        Map<String, Integer> cellCacheShardQueueDepths,
+        long cellCacheShardMessageCount,
+        long cellCacheShardLatencyNanos,
+        long cellCacheShardMaxLatencyNanos)
     {
         super(stack);
         this.connectionStartCount = connectionStartCount;
@@ -160,6 +255,20 @@ public class ServerInfo extends Info {
         this.segmentCreateViaSqlCount = segmentCreateViaSqlCount;
         this.cellCount = cellCount;
         this.cellCoordinateCount = cellCoordinateCount;
+        this.cellCacheByteCount = cellCacheByteCount;
+        this.cellCacheMaxByteCount = cellCacheMaxByteCount;
+        this.cellCacheEvictionCount = cellCacheEvictionCount;
+        this.queryRunningCount = queryRunningCount;
+        this.queryQueuedCount = queryQueuedCount;
+        this.queryQueueLengths = queryQueueLengths;
+        this.queryAdmitCount = queryAdmitCount;
+        this.queryQueueWaitCount = queryQueueWaitCount;
+        this.queryQueueWaitNanos = queryQueueWaitNanos;
+        this.queryQueueTimeoutCount = queryQueueTimeoutCount;
+        this.cellCacheShardQueueDepths = cellCacheShardQueueDepths;
+        this.cellCacheShardMessageCount = cellCacheShardMessageCount;
+        this.cellCacheShardLatencyNanos = cellCacheShardLatencyNanos;
+        this.cellCacheShardMaxLatencyNanos = cellCacheShardMaxLatencyNanos;
     }
 
     public int getCellCacheMissCount() {
@@ -297,6 +406,62 @@ public class ServerInfo extends Info {
     public int getCellCoordinateCount() {
         return cellCoordinateCount;
     }
+
+    public long getCellCacheByteCount() {
+        return cellCacheByteCount;
+    }
+
+    public long getCellCacheMaxByteCount() {
+        return cellCacheMaxByteCount;
+    }
+
+    public long getCellCacheEvictionCount() {
+        return cellCacheEvictionCount;
+    }
+
+    public int getQueryRunningCount() {
+        return queryRunningCount;
+    }
+
+    public int getQueryQueuedCount() {
+        return queryQueuedCount;
+    }
+
+    public Map<String, Integer> getQueryQueueLengths() {
+        return queryQueueLengths;
+    }
+
+    public long getQueryAdmitCount() {
+        return queryAdmitCount;
+    }
+
+    public long getQueryQueueWaitCount() {
+        return queryQueueWaitCount;
+    }
+
+    public long getQueryQueueWaitNanos() {
+        return queryQueueWaitNanos;
+    }
+
+    public long getQueryQueueTimeoutCount() {
+        return queryQueueTimeoutCount;
+    }
+
+    public Map<String, Integer> getCellCacheShardQueueDepths() {
+        return cellCacheShardQueueDepths;
+    }
+
+    public long getCellCacheShardMessageCount() {
+        return cellCacheShardMessageCount;
+    }
+
+    public long getCellCacheShardLatencyNanos() {
+        return cellCacheShardLatencyNanos;
+    }
+
+    public long getCellCacheShardMaxLatencyNanos() {
+        return cellCacheShardMaxLatencyNanos;
+    }
 }
 
 // End ServerInfo.java
@@ -763,6 +763,36 @@ public interface Dialect {
         String source,
         String javaRegExp);
 
+    /**
+     * Returns whether this dialect can skip rows at the start of a query's
+     * result and limit the number of rows returned, using the clause
+     * generated by {@link #generateLimitAndOffset(int, int)}.
+     *
+     * <p>If not, a query that wants a window of rows must read and discard
+     * the rows before the window.</p>
+     *
+     * @return Whether this dialect supports LIMIT and OFFSET (or equivalent)
+     */
+    boolean supportsLimitAndOffset();
+
+    /**
+     * Generates a clause that, appended to a query after its ORDER BY
+     * clause, skips the first <code>offset</code> rows and returns at most
+     * <code>limit</code> rows.
+     *
+     * <p>For example, MySQL and PostgreSQL generate
+     * "<code>limit 100 offset 5000</code>", and the SQL:2008 standard form,
+     * used by Oracle 12c and later, SQL Server 2012 and later, and Derby, is
+     * "<code>offset 5000 rows fetch next 100 rows only</code>".</p>
+     *
+     * <p>Only called if {@link #supportsLimitAndOffset()} returns true.</p>
+     *
+     * @param limit Maximum number of rows to return, or 0 for no limit
+     * @param offset Number of rows to skip
+     * @return Clause
+     */
+    String generateLimitAndOffset(int limit, int offset);
+
     /**
      * Returns a list of statistics providers for this dialect.
      *
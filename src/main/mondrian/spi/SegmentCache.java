@@ -56,6 +56,10 @@ import java.util.List;
  * an exception. Then Mondrian can get on with its life, and get the segment
  * some other way.</p>
  *
+ * <p>Implementations that store segments outside of the JVM, or send them
+ * over the network, should use a {@link SegmentCodec} rather than Java
+ * serialization. Its encoding is several times smaller.</p>
+ *
  * <p>Implementations must provide a default empty constructor.
  * Mondrian creates one segment cache instance per Mondrian server.
  * There could be more than one Mondrian server running in the same JVM.
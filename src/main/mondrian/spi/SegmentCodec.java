@@ -0,0 +1,90 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.spi;
+
+import mondrian.rolap.agg.BinarySegmentCodec;
+
+/**
+ * Converts {@link SegmentHeader}s and {@link SegmentBody}s to and from
+ * bytes.
+ *
+ * <p>An external {@link SegmentCache} can use a codec instead of Java
+ * serialization to store segments or to send them over the network. The
+ * codec obtained from {@link Factory#create} writes a compact, versioned
+ * binary format: axis values are dictionary-encoded, cell ordinals are
+ * bit-packed, null indicators are stored as compressed bitmaps, and value
+ * arrays may be compressed.
+ *
+ * <p>Implementations must be thread-safe. Every object returned from a
+ * decode method must be equal to the object that was encoded.
+ */
+public interface SegmentCodec {
+    /**
+     * Encodes a segment header.
+     *
+     * @param header Segment header
+     * @return Encoded header
+     */
+    byte[] encodeHeader(SegmentHeader header);
+
+    /**
+     * Decodes a segment header that was encoded by
+     * {@link #encodeHeader(SegmentHeader)}.
+     *
+     * @param bytes Encoded header
+     * @return Segment header
+     * @throws RuntimeException if the bytes are not a valid encoded header,
+     *   or were written by an unsupported version of the format
+     */
+    SegmentHeader decodeHeader(byte[] bytes);
+
+    /**
+     * Encodes a segment body.
+     *
+     * @param body Segment body
+     * @return Encoded body
+     */
+    byte[] encodeBody(SegmentBody body);
+
+    /**
+     * Decodes a segment body that was encoded by
+     * {@link #encodeBody(SegmentBody)}.
+     *
+     * @param bytes Encoded body
+     * @return Segment body
+     * @throws RuntimeException if the bytes are not a valid encoded body,
+     *   or were written by an unsupported version of the format
+     */
+    SegmentBody decodeBody(byte[] bytes);
+
+    /**
+     * Creates instances of {@link SegmentCodec}.
+     */
+    public static final class Factory {
+        private Factory() {
+        }
+
+        /**
+         * Creates a codec that writes the binary format.
+         *
+         * <p>Compressing value arrays makes large segments smaller, at the
+         * cost of some CPU time. Either codec can decode what either codec
+         * wrote.
+         *
+         * @param compressValues Whether to compress value arrays
+         * @return Codec
+         */
+        public static SegmentCodec create(boolean compressValues) {
+            return new BinarySegmentCodec(compressValues);
+        }
+    }
+}
+
+// End SegmentCodec.java
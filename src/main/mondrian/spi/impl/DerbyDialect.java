@@ -65,6 +65,11 @@ public class DerbyDialect extends JdbcDialectImpl {
             "t", columnNames, columnTypes, valueList, true);
     }
 
+    public boolean supportsLimitAndOffset() {
+        // OFFSET and FETCH since Derby 10.5
+        return true;
+    }
+
     public boolean supportsGroupByExpressions() {
         return false;
     }
@@ -916,6 +916,50 @@ public class JdbcDialectImpl implements Dialect {
         return null;
     }
 
+    public boolean supportsLimitAndOffset() {
+        return false;
+    }
+
+    public String generateLimitAndOffset(int limit, int offset) {
+        return generateLimitAndOffsetAnsi(limit, offset);
+    }
+
+    /**
+     * Generates a clause that skips and limits rows using the SQL:2008
+     * standard syntax, "<code>OFFSET n ROWS FETCH NEXT m ROWS ONLY</code>".
+     *
+     * @param limit Maximum number of rows to return, or 0 for no limit
+     * @param offset Number of rows to skip
+     * @return Clause
+     */
+    protected final String generateLimitAndOffsetAnsi(int limit, int offset) {
+        final StringBuilder buf = new StringBuilder();
+        buf.append("offset ").append(offset).append(" rows");
+        if (limit > 0) {
+            buf.append(" fetch next ").append(limit).append(" rows only");
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Generates a clause that skips and limits rows using the syntax
+     * "<code>LIMIT m OFFSET n</code>", supported by MySQL, PostgreSQL and
+     * several others.
+     *
+     * @param limit Maximum number of rows to return, or 0 for no limit
+     * @param offset Number of rows to skip
+     * @return Clause
+     */
+    protected final String generateLimitAndOffsetPostgres(
+        int limit,
+        int offset)
+    {
+        if (limit > 0) {
+            return "limit " + limit + " offset " + offset;
+        }
+        return "offset " + offset;
+    }
+
     public List<StatisticsProvider> getStatisticsProviders() {
         return statisticsProviders;
     }
@@ -29,6 +29,10 @@ public class MicrosoftSqlServerDialect extends JdbcDialectImpl {
     private final DateFormat df =
         new SimpleDateFormat("yyyyMMdd");
 
+    /** Whether the database supports "OFFSET ... FETCH", as SQL Server 2012
+     * (version 11) and later do. */
+    private final boolean supportsOffsetFetch;
+
     public static final JdbcDialectFactory FACTORY =
         new JdbcDialectFactory(
             MicrosoftSqlServerDialect.class,
@@ -42,6 +46,8 @@ public class MicrosoftSqlServerDialect extends JdbcDialectImpl {
     public MicrosoftSqlServerDialect(Connection connection) throws SQLException
     {
         super(connection);
+        this.supportsOffsetFetch =
+            connection.getMetaData().getDatabaseMajorVersion() >= 11;
     }
 
     public String generateInline(
@@ -61,6 +67,10 @@ public class MicrosoftSqlServerDialect extends JdbcDialectImpl {
         return false;
     }
 
+    public boolean supportsLimitAndOffset() {
+        return supportsOffsetFetch;
+    }
+
     protected void quoteDateLiteral(StringBuilder buf, String value, Date date)
     {
         buf.append("CONVERT(DATE, '");
@@ -65,6 +65,16 @@ public class MonetDbDialect extends JdbcDialectImpl {
         return false;
     }
 
+    @Override
+    public boolean supportsLimitAndOffset() {
+        return true;
+    }
+
+    @Override
+    public String generateLimitAndOffset(int limit, int offset) {
+        return generateLimitAndOffsetPostgres(limit, offset);
+    }
+
     @Override
     public boolean supportsGroupByExpressions() {
         return false;
@@ -255,6 +255,18 @@ public class MySqlDialect extends JdbcDialectImpl {
         return true;
     }
 
+    public boolean supportsLimitAndOffset() {
+        return true;
+    }
+
+    public String generateLimitAndOffset(int limit, int offset) {
+        // MySQL does not allow OFFSET without LIMIT; the manual suggests
+        // the largest unsigned BIGINT.
+        return "limit "
+            + (limit > 0 ? String.valueOf(limit) : "18446744073709551615")
+            + " offset " + offset;
+    }
+
     private enum Scope {
         SESSION,
         GLOBAL
@@ -27,6 +27,10 @@ public class OracleDialect extends JdbcDialectImpl {
     private final String escapeRegexp = "(\\\\Q([^\\\\Q]+)\\\\E)";
     private final Pattern escapePattern = Pattern.compile(escapeRegexp);
 
+    /** Whether the database supports "OFFSET ... FETCH", as Oracle 12c and
+     * later do. */
+    private final boolean supportsOffsetFetch;
+
     public static final JdbcDialectFactory FACTORY =
         new JdbcDialectFactory(
             OracleDialect.class,
@@ -39,9 +43,12 @@ public class OracleDialect extends JdbcDialectImpl {
      */
     public OracleDialect(Connection connection) throws SQLException {
         super(connection);
+        this.supportsOffsetFetch =
+            connection.getMetaData().getDatabaseMajorVersion() >= 12;
     }
 
     public OracleDialect() {
+        this.supportsOffsetFetch = false;
     }
 
     public boolean allowsAs() {
@@ -62,6 +69,11 @@ public class OracleDialect extends JdbcDialectImpl {
         return true;
     }
 
+    @Override
+    public boolean supportsLimitAndOffset() {
+        return supportsOffsetFetch;
+    }
+
     @Override
     public String generateOrderByNulls(
         String expr,
@@ -76,6 +76,16 @@ public class PostgreSqlDialect extends JdbcDialectImpl {
         return DatabaseProduct.POSTGRESQL;
     }
 
+    @Override
+    public boolean supportsLimitAndOffset() {
+        return true;
+    }
+
+    @Override
+    public String generateLimitAndOffset(int limit, int offset) {
+        return generateLimitAndOffsetPostgres(limit, offset);
+    }
+
     @Override
     public boolean allowsRegularExpressionInWhereClause() {
         return true;
@@ -48,6 +48,16 @@ public class VerticaDialect extends JdbcDialectImpl {
         return DatabaseProduct.VERTICA;
     }
 
+    @Override
+    public boolean supportsLimitAndOffset() {
+        return true;
+    }
+
+    @Override
+    public String generateLimitAndOffset(int limit, int offset) {
+        return generateLimitAndOffsetPostgres(limit, offset);
+    }
+
     @Override
     public boolean supportsResultSetConcurrency(int type, int concurrency) {
         return false;
@@ -5,7 +5,7 @@
 // You must accept the terms of that agreement to use this software.
 //
 // Copyright (C) 2003-2005 Julian Hyde
-// Copyright (C) 2005-2012 Pentaho
+// Copyright (C) 2005-2014 Pentaho
 // All Rights Reserved.
 */
 
@@ -190,11 +190,24 @@ abstract class Rowset implements XmlaConstants {
     public final void unparse(XmlaResponse response)
         throws XmlaException, SQLException
     {
-        final List<Row> rows = new ArrayList<Row>();
-        populate(response, null, rows);
-        final Comparator<Row> comparator = rowsetDefinition.getComparator();
-        if (comparator != null) {
-            Collections.sort(rows, comparator);
+        if (isSorted()) {
+            // Rows are generated in the required order, so write each row as
+            // soon as it is generated, rather than collecting and sorting.
+            final SaxWriter writer = response.getWriter();
+            writer.startSequence(null, "row");
+            populate(
+                response,
+                null,
+                new StreamingRowSink(
+                    response, rowsetDefinition.getComparator()));
+            writer.endSequence();
+            return;
+        }
+        final List<Row> rows;
+        if (isCacheable()) {
+            rows = populateCached(response);
+        } else {
+            rows = populateSorted(response, null);
         }
         final SaxWriter writer = response.getWriter();
         writer.startSequence(null, "row");
@@ -204,13 +217,93 @@ abstract class Rowset implements XmlaConstants {
         writer.endSequence();
     }
 
+    /**
+     * Gathers the rows of this rowset, sorted by the rowset definition's
+     * comparator.
+     */
+    private List<Row> populateSorted(
+        XmlaResponse response,
+        OlapConnection connection)
+        throws XmlaException
+    {
+        final List<Row> rows = new ArrayList<Row>();
+        populate(response, connection, new BufferingRowSink(rows));
+        final Comparator<Row> comparator = rowsetDefinition.getComparator();
+        if (comparator != null) {
+            Collections.sort(rows, comparator);
+        }
+        return rows;
+    }
+
+    /**
+     * Gathers the rows of this rowset, sorted, from the handler's rowset
+     * cache if possible.
+     *
+     * <p>Rows are cached by the catalog and schema checksum of the
+     * connection, by the restrictions and properties of the request,
+     * and by the role and locale of the connection, since rowsets contain
+     * only the elements that the role can see, with captions in the locale.
+     * The handler empties the cache when the metadata version reported by
+     * {@link XmlaHandler.XmlaExtra#getMetadataVersion(OlapConnection)}
+     * changes, so that cached rows are not used after a schema is reloaded
+     * or removed. Rows are not cached if the version is not known, for
+     * example if the schema is not pooled.</p>
+     */
+    private List<Row> populateCached(XmlaResponse response)
+        throws XmlaException, SQLException
+    {
+        final OlapConnection connection =
+            handler.getConnection(request, extraProperties);
+        try {
+            final XmlaHandler.XmlaExtra extra =
+                XmlaHandler.getExtra(connection);
+            final long version = extra.getMetadataVersion(connection);
+            if (version < 0) {
+                return populateSorted(response, connection);
+            }
+            final List<Object> key =
+                Arrays.<Object>asList(
+                    connection.getCatalog(),
+                    extra.getSchemaChecksum(connection),
+                    rowsetDefinition,
+                    restrictions,
+                    properties,
+                    extraProperties,
+                    request.getUsername(),
+                    connection.getRoleName(),
+                    connection.getLocale());
+            List<Row> rows = handler.getCachedRowset(version, key);
+            if (rows == null) {
+                rows = populateSorted(response, connection);
+                if (extra.getMetadataVersion(connection) == version) {
+                    // No schema was loaded or removed while we were
+                    // generating the rows.
+                    handler.putCachedRowset(version, key, rows);
+                }
+            }
+            return rows;
+        } finally {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                // ignore
+            }
+        }
+    }
+
     /**
      * Gathers the set of rows which match a given set of the criteria.
+     *
+     * @param response XMLA response
+     * @param connection Connection, or null to use a connection of the
+     *     handler
+     * @param rows Sink to which to send rows; typically a
+     *     {@link BufferingRowSink}
      */
     public final void populate(
         XmlaResponse response,
         OlapConnection connection,
-        List<Row> rows)
+        RowSink rows)
         throws XmlaException
     {
         boolean ourConnection = false;
@@ -241,13 +334,41 @@ abstract class Rowset implements XmlaConstants {
         return true;
     }
 
+    /**
+     * Returns whether the rows of this rowset may be cached. Rows of a
+     * cacheable rowset must depend only on the request's restrictions and
+     * properties and on the schema metadata visible to the connection's role.
+     *
+     * <p>The default implementation returns false.</p>
+     *
+     * @return Whether rows may be cached
+     */
+    protected boolean isCacheable() {
+        return false;
+    }
+
+    /**
+     * Returns whether {@link #populateImpl} will generate rows in the order
+     * required by the rowset definition's
+     * {@link RowsetDefinition#getComparator() comparator}, given this
+     * rowset's restrictions. If so, {@link #unparse} writes each row as it is
+     * generated, and does not need to hold the rows in memory.
+     *
+     * <p>The default implementation returns false.</p>
+     *
+     * @return Whether rows will be generated in sorted order
+     */
+    protected boolean isSorted() {
+        return false;
+    }
+
     /**
      * Gathers the set of rows which match a given set of the criteria.
      */
     protected abstract void populateImpl(
         XmlaResponse response,
         OlapConnection connection,
-        List<Row> rows)
+        RowSink rows)
         throws XmlaException, SQLException;
 
     /**
@@ -255,14 +376,15 @@ abstract class Rowset implements XmlaConstants {
      * criteria. Returns whether the row was added.
      *
      * @param row Row
-     * @param rows List of result rows
+     * @param rows Sink of result rows
      */
     protected final boolean addRow(
         Row row,
-        List<Row> rows)
+        RowSink rows)
         throws XmlaException
     {
-        return rows.add(row);
+        rows.add(row);
+        return true;
     }
 
     /**
@@ -321,7 +443,7 @@ abstract class Rowset implements XmlaConstants {
             } else if (value instanceof Rowset) {
                 Rowset rowset = (Rowset) value;
                 final List<Row> rows = new ArrayList<Row>();
-                rowset.populate(response, null, rows);
+                rowset.populate(response, null, new BufferingRowSink(rows));
                 writer.startSequence(column.name, "row");
                 for (Row row1 : rows) {
                     rowset.emit(row1, response);
@@ -356,7 +478,7 @@ abstract class Rowset implements XmlaConstants {
      * Populates all of the values in an enumeration into a list of rows.
      */
     protected <E> void populate(
-        Class<E> clazz, List<Row> rows,
+        Class<E> clazz, RowSink rows,
         final Comparator<E> comparator)
         throws XmlaException
     {
@@ -385,7 +507,7 @@ abstract class Rowset implements XmlaConstants {
      * restriction then the passes method always returns true.
      *
      * <p>It is known at the beginning of a
-     * {@link Rowset#populate(XmlaResponse, org.olap4j.OlapConnection, java.util.List)}
+     * {@link Rowset#populate(XmlaResponse, org.olap4j.OlapConnection, RowSink)}
      * method whether the restriction is not specified (null), a single value
      * (String) or an array of values (String[]). So, creating the conditions
      * just once at the beginning is faster than having to determine the
@@ -518,6 +640,71 @@ abstract class Rowset implements XmlaConstants {
         }
     }
 
+    /**
+     * Receives the rows generated by {@link Rowset#populate}.
+     */
+    protected interface RowSink {
+        /**
+         * Receives a row.
+         *
+         * @param row Row
+         */
+        void add(Row row) throws XmlaException;
+    }
+
+    /**
+     * Sink that collects rows in a list.
+     */
+    static class BufferingRowSink implements RowSink {
+        private final List<Row> rows;
+
+        /**
+         * Creates a BufferingRowSink.
+         *
+         * @param rows List to which to add rows
+         */
+        BufferingRowSink(List<Row> rows) {
+            this.rows = rows;
+        }
+
+        public void add(Row row) {
+            rows.add(row);
+        }
+    }
+
+    /**
+     * Sink that writes each row as soon as it is added, and does not retain
+     * it. Used by {@link Rowset#unparse} when rows are generated in sorted
+     * order.
+     */
+    private class StreamingRowSink implements RowSink {
+        private final XmlaResponse response;
+        private final Comparator<Row> comparator;
+        private Row previous;
+
+        StreamingRowSink(XmlaResponse response, Comparator<Row> comparator) {
+            this.response = response;
+            this.comparator = comparator;
+        }
+
+        public void add(Row row) {
+            assert comparator == null
+                || previous == null
+                || comparator.compare(previous, row) <= 0
+                : "rowset " + rowsetDefinition.name() + " is not sorted";
+            try {
+                emit(row, response);
+            } catch (SQLException e) {
+                throw new XmlaException(
+                    UNKNOWN_ERROR_CODE,
+                    UNKNOWN_ERROR_FAULT_FS,
+                    "SqlException:",
+                    e);
+            }
+            previous = row;
+        }
+    }
+
     /**
      * A set of name/value pairs, which can be output using
      * {@link Rowset#addRow}. This uses less memory than simply
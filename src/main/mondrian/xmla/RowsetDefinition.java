@@ -5,7 +5,7 @@
 // You must accept the terms of that agreement to use this software.
 //
 // Copyright (C) 2003-2005 Julian Hyde
-// Copyright (C) 2005-2011 Pentaho
+// Copyright (C) 2005-2014 Pentaho
 // All Rights Reserved.
 */
 
@@ -1589,7 +1589,7 @@ public enum RowsetDefinition {
         };
 
         public void populateImpl(
-            XmlaResponse response, OlapConnection connection, List<Row> rows)
+            XmlaResponse response, OlapConnection connection, RowSink rows)
             throws XmlaException, SQLException
         {
             if (needConnection()) {
@@ -1681,7 +1681,7 @@ public enum RowsetDefinition {
         }
 
         public void populateImpl(
-            XmlaResponse response, OlapConnection connection, List<Row> rows)
+            XmlaResponse response, OlapConnection connection, RowSink rows)
             throws XmlaException
         {
             RowsetDefinition[] rowsetDefinitions =
@@ -1812,7 +1812,7 @@ public enum RowsetDefinition {
         }
 
         public void populateImpl(
-            XmlaResponse response, OlapConnection connection, List<Row> rows)
+            XmlaResponse response, OlapConnection connection, RowSink rows)
             throws XmlaException
         {
             for (PropertyDefinition propertyDefinition
@@ -1901,7 +1901,7 @@ public enum RowsetDefinition {
                 "The value of the element.\n" + "Example: 01");
 
         public void populateImpl(
-            XmlaResponse response, OlapConnection connection, List<Row> rows)
+            XmlaResponse response, OlapConnection connection, RowSink rows)
             throws XmlaException
         {
             List<Enumeration> enumerators = getEnumerators();
@@ -2003,7 +2003,7 @@ public enum RowsetDefinition {
                 + "Example: AND");
 
         public void populateImpl(
-            XmlaResponse response, OlapConnection connection, List<Row> rows)
+            XmlaResponse response, OlapConnection connection, RowSink rows)
             throws XmlaException
         {
             MondrianServer mondrianServer = MondrianServer.forId(null);
@@ -2082,7 +2082,7 @@ public enum RowsetDefinition {
             + "maximum or the maximum is unknown, the value is ?1.");
 
         public void populateImpl(
-            XmlaResponse response, OlapConnection connection, List<Row> rows)
+            XmlaResponse response, OlapConnection connection, RowSink rows)
             throws XmlaException
         {
             populate(
@@ -2157,7 +2157,7 @@ public enum RowsetDefinition {
                 "The date that the catalog was last modified.");
 
         public void populateImpl(
-            XmlaResponse response, OlapConnection connection, List<Row> rows)
+            XmlaResponse response, OlapConnection connection, RowSink rows)
             throws XmlaException, SQLException
         {
             for (Catalog catalog
@@ -2336,7 +2336,7 @@ public enum RowsetDefinition {
         public void populateImpl(
             XmlaResponse response,
             OlapConnection connection,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, OlapException
         {
             for (Catalog catalog
@@ -2412,7 +2412,7 @@ public enum RowsetDefinition {
             Cube cube,
             Hierarchy hierarchy,
             int ordinalPosition,
-            List<Row> rows)
+            RowSink rows)
         {
             String schemaName = cube.getSchema().getName();
             String cubeName = cube.getName();
@@ -2480,7 +2480,7 @@ public enum RowsetDefinition {
             Hierarchy hierarchy,
             Level level,
             int ordinalPosition,
-            List<Row> rows)
+            RowSink rows)
         {
             String schemaName = cube.getSchema().getName();
             String cubeName = cube.getName();
@@ -2738,7 +2738,7 @@ TODO: see above
         public void populateImpl(
             XmlaResponse response,
             OlapConnection connection,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException
         {
             // Identifies the (base) data types supported by the data provider.
@@ -2903,7 +2903,7 @@ TODO: see above
         public void populateImpl(
             XmlaResponse response,
             OlapConnection connection,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, OlapException
         {
             for (Catalog catalog
@@ -3035,7 +3035,7 @@ TODO: see above
         public void populateImpl(
             XmlaResponse response,
             OlapConnection connection,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, OlapException
         {
             for (Catalog catalog
@@ -3087,7 +3087,7 @@ TODO: see above
         }
 
         private void populateHierarchy(
-            Cube cube, Hierarchy hierarchy, List<Row> rows)
+            Cube cube, Hierarchy hierarchy, RowSink rows)
         {
 /*
             String schemaName = cube.getSchema().getName();
@@ -3127,7 +3127,7 @@ TODO: see above
             Cube cube,
             Hierarchy hierarchy,
             Level level,
-            List<Row> rows)
+            RowSink rows)
         {
             String schemaName = cube.getSchema().getName();
             String cubeName = cube.getName();
@@ -3301,7 +3301,7 @@ TODO: see above
         public void populateImpl(
             XmlaResponse response,
             OlapConnection connection,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, OlapException
         {
             for (Catalog catalog : catIter(connection, catNameCond())) {
@@ -3410,7 +3410,7 @@ TODO: see above
         public void populateImpl(
             XmlaResponse response,
             OlapConnection connection,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException
         {
             // mondrian doesn't support actions. It's not an error to ask for
@@ -3587,10 +3587,14 @@ TODO: see above
                 Column.OPTIONAL,
                 "Measures in this cube.");
 
+        protected boolean isCacheable() {
+            return true;
+        }
+
         public void populateImpl(
             XmlaResponse response,
             OlapConnection connection,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, SQLException
         {
             for (Catalog catalog
@@ -3873,10 +3877,14 @@ TODO: see above
                 Column.OPTIONAL,
                 "Hierarchies in this dimension.");
 
+        protected boolean isCacheable() {
+            return true;
+        }
+
         public void populateImpl(
             XmlaResponse response,
             OlapConnection connection,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, SQLException
         {
             for (Catalog catalog
@@ -3889,7 +3897,7 @@ TODO: see above
         protected void populateCatalog(
             OlapConnection connection,
             Catalog catalog,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, SQLException
         {
             for (Schema schema : filter(catalog.getSchemas(), schemaNameCond)) {
@@ -3903,7 +3911,7 @@ TODO: see above
             OlapConnection connection,
             Catalog catalog,
             Cube cube,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, SQLException
         {
             for (Dimension dimension
@@ -3922,7 +3930,7 @@ TODO: see above
             Catalog catalog,
             Cube cube,
             Dimension dimension,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, SQLException
         {
             String desc = dimension.getDescription();
@@ -4165,7 +4173,7 @@ TODO: see above
         public void populateImpl(
             XmlaResponse response,
             OlapConnection connection,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, SQLException
         {
             final XmlaHandler.XmlaExtra extra = getExtra(connection);
@@ -4429,10 +4437,14 @@ TODO: see above
                 Column.OPTIONAL,
                 "Is hierarchy a parent.");
 
+        protected boolean isCacheable() {
+            return true;
+        }
+
         public void populateImpl(
             XmlaResponse response,
             OlapConnection connection,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, SQLException
         {
             for (Catalog catalog
@@ -4445,7 +4457,7 @@ TODO: see above
         protected void populateCatalog(
             OlapConnection connection,
             Catalog catalog,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, SQLException
         {
             for (Schema schema : filter(catalog.getSchemas(), schemaNameCond)) {
@@ -4459,7 +4471,7 @@ TODO: see above
             OlapConnection connection,
             Catalog catalog,
             Cube cube,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, SQLException
         {
             int ordinal = 0;
@@ -4481,7 +4493,7 @@ TODO: see above
             Cube cube,
             Dimension dimension,
             int ordinal,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, SQLException
         {
             final NamedList<Hierarchy> hierarchies = dimension.getHierarchies();
@@ -4506,7 +4518,7 @@ TODO: see above
             Dimension dimension,
             Hierarchy hierarchy,
             int ordinal,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, SQLException
         {
             final XmlaHandler.XmlaExtra extra = getExtra(connection);
@@ -4776,10 +4788,14 @@ TODO: see above
                 "A human-readable description of the level. NULL if no "
                 + "description exists.");
 
+        protected boolean isCacheable() {
+            return true;
+        }
+
         public void populateImpl(
             XmlaResponse response,
             OlapConnection connection,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, SQLException
         {
             for (Catalog catalog
@@ -4792,7 +4808,7 @@ TODO: see above
         protected void populateCatalog(
             OlapConnection connection,
             Catalog catalog,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, SQLException
         {
             for (Schema schema : filter(catalog.getSchemas(), schemaNameCond)) {
@@ -4806,7 +4822,7 @@ TODO: see above
             OlapConnection connection,
             Catalog catalog,
             Cube cube,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, SQLException
         {
             for (Dimension dimension
@@ -4822,7 +4838,7 @@ TODO: see above
             Catalog catalog,
             Cube cube,
             Dimension dimension,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, SQLException
         {
             for (Hierarchy hierarchy
@@ -4838,7 +4854,7 @@ TODO: see above
             Catalog catalog,
             Cube cube,
             Hierarchy hierarchy,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, SQLException
         {
             for (Level level
@@ -4866,7 +4882,7 @@ TODO: see above
             Cube cube,
             Hierarchy hierarchy,
             Level level,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, SQLException
         {
             final XmlaHandler.XmlaExtra extra = getExtra(connection);
@@ -5112,10 +5128,14 @@ TODO: see above
                 Column.OPTIONAL,
                 "The default format string for the measure.");
 
+        protected boolean isCacheable() {
+            return true;
+        }
+
         public void populateImpl(
             XmlaResponse response,
             OlapConnection connection,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, SQLException
         {
             for (Catalog catalog
@@ -5128,7 +5148,7 @@ TODO: see above
         protected void populateCatalog(
             OlapConnection connection,
             Catalog catalog,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, SQLException
         {
             // SQL Server actually includes the LEVELS_LIST row
@@ -5188,7 +5208,7 @@ TODO: see above
             Member member,
             Cube cube,
             String levelListStr,
-            List<Row> rows)
+            RowSink rows)
             throws SQLException
         {
             Boolean visible =
@@ -5450,7 +5470,7 @@ TODO: see above
         public void populateImpl(
             XmlaResponse response,
             OlapConnection connection,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, SQLException
         {
             for (Catalog catalog
@@ -5463,7 +5483,7 @@ TODO: see above
         protected void populateCatalog(
             OlapConnection connection,
             Catalog catalog,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, SQLException
         {
             for (Schema schema : filter(catalog.getSchemas(), schemaNameCond)) {
@@ -5486,7 +5506,7 @@ TODO: see above
             OlapConnection connection,
             Catalog catalog,
             Cube cube,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, SQLException
         {
             if (isRestricted(LevelUniqueName)) {
@@ -5504,7 +5524,7 @@ TODO: see above
                 if (level != null) {
                     // Get members of this level, without access control, but
                     // including calculated members.
-                    List<Member> members = level.getMembers();
+                    List<Member> members = getLevelMembers(connection, level);
                     outputMembers(connection, members, catalog, cube, rows);
                 }
             } else {
@@ -5522,7 +5542,7 @@ TODO: see above
             Catalog catalog,
             Cube cube,
             Dimension dimension,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, SQLException
         {
             for (Hierarchy hierarchy
@@ -5538,7 +5558,7 @@ TODO: see above
             Catalog catalog,
             Cube cube,
             Hierarchy hierarchy,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, SQLException
         {
             if (isRestricted(LevelNumber)) {
@@ -5564,7 +5584,7 @@ TODO: see above
                 }
 
                 Level level = levels.get(levelNumber);
-                List<Member> members = level.getMembers();
+                List<Member> members = getLevelMembers(connection, level);
                 outputMembers(connection, members, catalog, cube, rows);
             } else {
                 // At this point we get ALL of the members associated with
@@ -5573,12 +5593,101 @@ TODO: see above
                 // now cached in the SchemaReader.
                 for (Level level : hierarchy.getLevels()) {
                     outputMembers(
-                        connection, level.getMembers(),
+                        connection, getLevelMembers(connection, level),
                         catalog, cube, rows);
                 }
             }
         }
 
+        /**
+         * Returns the members of a level that may satisfy this rowset's
+         * restrictions.
+         *
+         * <p>If MEMBER_NAME is restricted to a list of names, reads only the
+         * members with those names. Other restrictions, including
+         * MEMBER_NAME patterns, are applied by {@link #outputMember}.</p>
+         *
+         * <p>If rows are to be {@link #isSorted() streamed}, returns the
+         * members in order of ordinal.</p>
+         */
+        private List<Member> getLevelMembers(
+            OlapConnection connection,
+            Level level)
+            throws OlapException
+        {
+            final Object nameRestriction = restrictions.get(MemberName.name);
+            List<Member> members;
+            if (nameRestriction instanceof List) {
+                members =
+                    getExtra(connection).getLevelMembersByName(
+                        level, (List<String>) nameRestriction);
+            } else {
+                members = level.getMembers();
+            }
+            if (isSorted()) {
+                members = sortByOrdinal(connection, members);
+            }
+            return members;
+        }
+
+        /**
+         * Returns a list of members of one level in order of ordinal. Members
+         * are usually in that order already, in which case the list is
+         * returned unchanged.
+         */
+        private List<Member> sortByOrdinal(
+            OlapConnection connection,
+            List<Member> members)
+            throws OlapException
+        {
+            final XmlaHandler.XmlaExtra extra = getExtra(connection);
+            boolean sorted = true;
+            int previous = Integer.MIN_VALUE;
+            for (Member member : members) {
+                extra.checkMemberOrdinal(member);
+                if (member.getOrdinal() < previous) {
+                    sorted = false;
+                }
+                previous = member.getOrdinal();
+            }
+            if (sorted) {
+                return members;
+            }
+            final List<Member> list = new ArrayList<Member>(members);
+            Collections.sort(
+                list,
+                new Comparator<Member>() {
+                    public int compare(Member m1, Member m2) {
+                        return m1.getOrdinal() < m2.getOrdinal()
+                            ? -1
+                            : m1.getOrdinal() == m2.getOrdinal() ? 0 : 1;
+                    }
+                });
+            return list;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * <p>Rows are in sorted order if they all belong to one level of one
+         * cube in one catalog, because members of a level are generated in
+         * order of ordinal. (A catalog has one schema.)</p>
+         */
+        protected boolean isSorted() {
+            if (isRestricted(MemberUniqueName)
+                || getRestrictionValueAsString(CubeName) == null
+                || (getRestrictionValueAsString(CatalogName) == null
+                    && request.getProperties().get(
+                        PropertyDefinition.Catalog.name()) == null))
+            {
+                return false;
+            }
+            return getRestrictionValueAsString(LevelUniqueName) != null
+                || (isRestricted(LevelNumber)
+                    && getRestrictionValueAsString(HierarchyUniqueName)
+                    != null);
+        }
+
         /**
          * Returns whether a value contains all of the bits in a mask.
          */
@@ -5598,7 +5707,7 @@ TODO: see above
             Cube cube,
             Member member,
             int treeOp,
-            List<Row> rows)
+            RowSink rows)
             throws SQLException
         {
             // Visit node itself.
@@ -5682,7 +5791,7 @@ TODO: see above
             List<Member> members,
             final Catalog catalog,
             Cube cube,
-            List<Row> rows)
+            RowSink rows)
             throws SQLException
         {
             for (Member member : members) {
@@ -5694,7 +5803,7 @@ TODO: see above
             final OlapConnection connection,
             final Catalog catalog,
             Cube cube,
-            List<Row> rows)
+            RowSink rows)
             throws SQLException
         {
             final Object unameRestrictions =
@@ -5732,7 +5841,7 @@ TODO: see above
             Member member,
             final Catalog catalog,
             Cube cube,
-            List<Row> rows)
+            RowSink rows)
             throws SQLException
         {
             if (!memberNameCond.apply(member)) {
@@ -5886,7 +5995,7 @@ TODO: see above
         public void populateImpl(
             XmlaResponse response,
             OlapConnection connection,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, OlapException
         {
             for (Catalog catalog
@@ -5899,7 +6008,7 @@ TODO: see above
         private void processCatalog(
             OlapConnection connection,
             Catalog catalog,
-            List<Row> rows)
+            RowSink rows)
             throws OlapException
         {
             for (Schema schema : filter(catalog.getSchemas(), schemaNameCond)) {
@@ -5912,7 +6021,7 @@ TODO: see above
         private void populateNamedSets(
             Cube cube,
             Catalog catalog,
-            List<Row> rows)
+            RowSink rows)
         {
             for (NamedSet namedSet : filter(cube.getSets(), setUnameCond)) {
                 Row row = new Row();
@@ -6058,10 +6167,14 @@ TODO: see above
             return false;
         }
 
+        protected boolean isCacheable() {
+            return true;
+        }
+
         public void populateImpl(
             XmlaResponse response,
             OlapConnection connection,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, SQLException
         {
             // Default PROPERTY_TYPE is MDPROP_MEMBER.
@@ -6095,7 +6208,7 @@ TODO: see above
             }
         }
 
-        private void populateCell(List<Row> rows) {
+        private void populateCell(RowSink rows) {
             for (Property.StandardCellProperty property
                 : Property.StandardCellProperty.values())
             {
@@ -6112,7 +6225,7 @@ TODO: see above
             }
         }
 
-        private void populateMember(List<Row> rows) throws SQLException {
+        private void populateMember(RowSink rows) throws SQLException {
             OlapConnection connection =
                 handler.getConnection(
                     request,
@@ -6126,7 +6239,7 @@ TODO: see above
 
         protected void populateCatalog(
             Catalog catalog,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, SQLException
         {
             for (Schema schema : filter(catalog.getSchemas(), schemaNameCond)) {
@@ -6139,7 +6252,7 @@ TODO: see above
         protected void populateCube(
             Catalog catalog,
             Cube cube,
-            List<Row> rows)
+            RowSink rows)
             throws XmlaException, SQLException
         {
             if (cube instanceof SharedDimensionHolderCube) {
@@ -6175,7 +6288,7 @@ TODO: see above
             Catalog catalog,
             Cube cube,
             Dimension dimension,
-            List<Row> rows)
+            RowSink rows)
             throws SQLException
         {
             for (Hierarchy hierarchy
@@ -6190,7 +6303,7 @@ TODO: see above
             Catalog catalog,
             Cube cube,
             Hierarchy hierarchy,
-            List<Row> rows)
+            RowSink rows)
             throws SQLException
         {
             for (Level level : hierarchy.getLevels()) {
@@ -6202,7 +6315,7 @@ TODO: see above
             Catalog catalog,
             Cube cube,
             Level level,
-            List<Row> rows)
+            RowSink rows)
             throws SQLException
         {
             final XmlaHandler.XmlaExtra extra =
@@ -6223,7 +6336,7 @@ TODO: see above
             Catalog catalog,
             Cube cube,
             Level level,
-            List<Row> rows)
+            RowSink rows)
         {
             Hierarchy hierarchy = level.getHierarchy();
             Dimension dimension = hierarchy.getDimension();
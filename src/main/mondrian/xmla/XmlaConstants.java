@@ -87,6 +87,10 @@ public interface XmlaConstants {
     public static final String CONTEXT_XMLA_SESSION_STATE_END =
         "SessionStateEnd";
 
+    // context key set (to Boolean.TRUE) if the response has already been
+    // streamed to the client, and must not be marshalled again
+    public static final String CONTEXT_RESPONSE_STREAMED = "ResponseStreamed";
+
     /*************************************************************************
     *
     * The following are XMLA exception fault codes used as faultcode entries
@@ -5,7 +5,7 @@
 // You must accept the terms of that agreement to use this software.
 //
 // Copyright (C) 2003-2005 Julian Hyde
-// Copyright (C) 2005-2013 Pentaho
+// Copyright (C) 2005-2014 Pentaho
 // All Rights Reserved.
 */
 
@@ -68,6 +68,35 @@ public class XmlaHandler {
     final ConnectionFactory connectionFactory;
     private final String prefix;
 
+    /**
+     * Sorted rows of {@link Rowset#isCacheable() cacheable} metadata rowsets,
+     * keyed by the restrictions and properties of the request and the role
+     * and locale of the connection. Holds at most
+     * {@link MondrianProperties#XmlaRowsetCacheSize} entries; the least
+     * recently used entry is removed first.
+     */
+    private final Map<List<Object>, List<Rowset.Row>> rowsetCache =
+        new LinkedHashMap<List<Object>, List<Rowset.Row>>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(
+                Map.Entry<List<Object>, List<Rowset.Row>> entry)
+            {
+                return size()
+                    > MondrianProperties.instance().XmlaRowsetCacheSize.get();
+            }
+        };
+
+    /**
+     * Metadata version of the rows in {@link #rowsetCache}. Guarded by
+     * {@link #rowsetCache}.
+     */
+    private long rowsetCacheVersion = -1;
+
+    /**
+     * Number of requests served from {@link #rowsetCache}. Guarded by
+     * {@link #rowsetCache}.
+     */
+    private long rowsetCacheHitCount;
+
     public static XmlaExtra getExtra(OlapConnection connection) {
         try {
             final XmlaExtra extra = connection.unwrap(XmlaExtra.class);
@@ -653,6 +682,71 @@ public class XmlaHandler {
         this.prefix = prefix;
     }
 
+    /**
+     * Returns the cached rows of a metadata rowset, or null if not cached.
+     * If the metadata version has changed, first empties the cache.
+     *
+     * @param version Metadata version
+     * @param key Key
+     * @return Sorted rows, or null
+     */
+    List<Rowset.Row> getCachedRowset(long version, List<Object> key) {
+        synchronized (rowsetCache) {
+            if (version != rowsetCacheVersion) {
+                rowsetCache.clear();
+                rowsetCacheVersion = version;
+                return null;
+            }
+            final List<Rowset.Row> rows = rowsetCache.get(key);
+            if (rows != null) {
+                ++rowsetCacheHitCount;
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * Returns the number of metadata rowsets in the cache.
+     */
+    int getRowsetCacheSize() {
+        synchronized (rowsetCache) {
+            return rowsetCache.size();
+        }
+    }
+
+    /**
+     * Returns the number of requests whose rows were found in the cache.
+     */
+    long getRowsetCacheHitCount() {
+        synchronized (rowsetCache) {
+            return rowsetCacheHitCount;
+        }
+    }
+
+    /**
+     * Caches the rows of a metadata rowset, unless caching is disabled by
+     * {@link MondrianProperties#XmlaRowsetCacheSize}, or the metadata
+     * version has changed while the rows were being generated.
+     *
+     * @param version Metadata version
+     * @param key Key
+     * @param rows Sorted rows
+     */
+    void putCachedRowset(
+        long version,
+        List<Object> key,
+        List<Rowset.Row> rows)
+    {
+        if (MondrianProperties.instance().XmlaRowsetCacheSize.get() <= 0) {
+            return;
+        }
+        synchronized (rowsetCache) {
+            if (version == rowsetCacheVersion) {
+                rowsetCache.put(key, Collections.unmodifiableList(rows));
+            }
+        }
+    }
+
     /**
      * Processes a request.
      *
@@ -818,6 +912,12 @@ public class XmlaHandler {
                     HSB_EXECUTE_UNPARSE_FAULT_FS,
                     t);
             } finally {
+                // If unparse failed part way through, close any elements it
+                // left open. The response may already have been streamed to
+                // the client, and must remain well-formed.
+                if (responseMimeType != Enumeration.ResponseMimeType.JSON) {
+                    writer.completeBeforeElement("root");
+                }
                 writer.endElement(); // root
                 writer.endElement(); // return
                 writer.endElement(); // ExecuteResponse
@@ -2876,8 +2976,14 @@ public class XmlaHandler {
                 HSB_DISCOVER_UNPARSE_FAULT_FS,
                 t);
         } finally {
-            // keep the tags balanced, even if there's an error
+            // keep the tags balanced, even if there's an error; if rows were
+            // streamed, the error may have left a row open
             try {
+                if (getResponseMimeType(request)
+                    != Enumeration.ResponseMimeType.JSON)
+                {
+                    writer.completeBeforeElement("root");
+                }
                 writer.endElement();
                 writer.endElement();
                 writer.endElement();
@@ -3014,6 +3120,45 @@ public class XmlaHandler {
 
         void checkMemberOrdinal(Member member) throws OlapException;
 
+        /**
+         * Returns the members of a level whose names are in a given list.
+         *
+         * <p>The result is the same as filtering the result of
+         * {@link Level#getMembers()}, but the implementation may avoid
+         * reading the other members of the level.</p>
+         *
+         * @param level Level
+         * @param names Names of members
+         * @return Members of level whose names are in the list, in order
+         */
+        List<Member> getLevelMembersByName(Level level, List<String> names)
+            throws OlapException;
+
+        /**
+         * Returns the version of the metadata that a connection sees. The
+         * version changes whenever a schema is loaded, reloaded or removed.
+         *
+         * <p>Metadata rowsets are cached only if the version is known. It is
+         * not known if the connection's schema is not shared, because it
+         * may be reloaded without changing the version.</p>
+         *
+         * @param connection Connection
+         * @return Metadata version, or -1 if not known
+         */
+        long getMetadataVersion(OlapConnection connection)
+            throws SQLException;
+
+        /**
+         * Returns a checksum of the definition of a connection's schema, or
+         * null if not known. Cached metadata rowsets are keyed on it, so
+         * that catalogs with different definitions do not share rows.
+         *
+         * @param connection Connection
+         * @return Checksum of schema, or null
+         */
+        String getSchemaChecksum(OlapConnection connection)
+            throws SQLException;
+
         /**
          * Returns whether we should return a cell property in the XMLA result.
          *
@@ -3196,6 +3341,28 @@ public class XmlaHandler {
             // nothing to do
         }
 
+        public List<Member> getLevelMembersByName(
+            Level level,
+            List<String> names)
+            throws OlapException
+        {
+            final List<Member> list = new ArrayList<Member>();
+            for (Member member : level.getMembers()) {
+                if (names.contains(member.getName())) {
+                    list.add(member);
+                }
+            }
+            return list;
+        }
+
+        public long getMetadataVersion(OlapConnection connection) {
+            return -1;
+        }
+
+        public String getSchemaChecksum(OlapConnection connection) {
+            return null;
+        }
+
         public boolean shouldReturnCellProperty(
             CellSet cellSet, Property cellProperty, boolean evenEmpty)
         {
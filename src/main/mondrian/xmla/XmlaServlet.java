@@ -333,6 +333,22 @@ public abstract class XmlaServlet
 
             phase = Phase.CALLBACK_POST_ACTION;
 
+            if (Boolean.TRUE.equals(context.get(CONTEXT_RESPONSE_STREAMED))) {
+                // The response has already been sent to the client. It is
+                // too late for callbacks to modify it, or to send a fault.
+                try {
+                    for (XmlaRequestCallback callback : getCallbacks()) {
+                        callback.postAction(
+                            request, response,
+                            responseSoapParts, context);
+                    }
+                } catch (Exception ex) {
+                    LOGGER.error(
+                        "Errors when invoking callbacks postaction", ex);
+                }
+                return;
+            }
+
             try {
                 if (LOGGER.isDebugEnabled()) {
                     LOGGER.debug("Invoking callbacks postAction");
@@ -5,7 +5,7 @@
 // You must accept the terms of that agreement to use this software.
 //
 // Copyright (C) 2003-2005 Julian Hyde
-// Copyright (C) 2005-2011 Pentaho
+// Copyright (C) 2005-2014 Pentaho
 // All Rights Reserved.
 */
 
@@ -394,7 +394,7 @@ way too noisy
                 Charset.defaultCharset().name(),
                 Enumeration.ResponseMimeType.SOAP),
             connection,
-            rowList);
+            new Rowset.BufferingRowSink(rowList));
         MetadataRowset result = new MetadataRowset();
         final List<RowsetDefinition.Column> colDefs =
             new ArrayList<RowsetDefinition.Column>();
@@ -513,6 +513,15 @@ way too noisy
         public Wildcard(String pattern) {
             this.pattern = pattern;
         }
+
+        public boolean equals(Object obj) {
+            return obj instanceof Wildcard
+                && pattern.equals(((Wildcard) obj).pattern);
+        }
+
+        public int hashCode() {
+            return pattern.hashCode();
+        }
     }
 
     public static class ElementNameEncoder {
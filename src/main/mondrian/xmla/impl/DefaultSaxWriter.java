@@ -238,7 +238,10 @@ public class DefaultSaxWriter implements SaxWriter {
 
         String currentTagName  = stack.peek();
         while (!tagName.equals(currentTagName)) {
-            _endElement(null, null, currentTagName);
+            // A null entry marks a sequence without a wrapper element.
+            if (currentTagName != null) {
+                _endElement(null, null, currentTagName);
+            }
             stack.pop();
             currentTagName = stack.peek();
         }
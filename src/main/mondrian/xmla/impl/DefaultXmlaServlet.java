@@ -45,10 +45,26 @@ public abstract class DefaultXmlaServlet extends XmlaServlet {
     private static final String REQUIRE_AUTHENTICATED_SESSIONS =
         "requireAuthenticatedSessions";
 
+    /**
+     * Servlet config parameter that determines whether the xmla servlet
+     * writes the responses to SOAP Execute requests straight to the client,
+     * rather than buffering the whole response in memory.
+     *
+     * <p>When streaming, the response has no content length, so the servlet
+     * container sends it using chunked transfer encoding. If an error occurs
+     * after the first bytes have been sent, a SOAP fault is appended to the
+     * body. Callbacks' {@link XmlaRequestCallback#postAction} methods are
+     * called after the response has been sent, with no response body.</p>
+     */
+    private static final String STREAM_EXECUTE_RESPONSES =
+        "streamExecuteResponses";
+
     private DocumentBuilderFactory domFactory = null;
 
     private boolean requireAuthenticatedSessions = false;
 
+    private boolean streamExecuteResponses = false;
+
     /**
      * Session properties, keyed by session ID. Currently just username and
      * password.
@@ -62,6 +78,9 @@ public abstract class DefaultXmlaServlet extends XmlaServlet {
         this.requireAuthenticatedSessions =
             Boolean.parseBoolean(
                 servletConfig.getInitParameter(REQUIRE_AUTHENTICATED_SESSIONS));
+        this.streamExecuteResponses =
+            Boolean.parseBoolean(
+                servletConfig.getInitParameter(STREAM_EXECUTE_RESPONSES));
     }
 
     protected static DocumentBuilderFactory getDocumentBuilderFactory() {
@@ -500,6 +519,17 @@ public abstract class DefaultXmlaServlet extends XmlaServlet {
                 }
             }
 
+            if (streamExecuteResponses
+                && ereqs.length == 1
+                && responseMimeType == Enumeration.ResponseMimeType.SOAP
+                && context.get(CONTEXT_MIME_TYPE)
+                    == Enumeration.ResponseMimeType.SOAP)
+            {
+                streamSoapBody(
+                    response, xmlaReq, responseSoapParts, context);
+                return;
+            }
+
             XmlaResponse xmlaRes =
                 new DefaultXmlaResponse(osBuf, encoding, responseMimeType);
 
@@ -527,6 +557,97 @@ public abstract class DefaultXmlaServlet extends XmlaServlet {
         }
     }
 
+    /**
+     * Processes an XML/A request, writing the response directly to the
+     * client.
+     *
+     * <p>If the request fails before any of the response has been written,
+     * throws, and the servlet sends a SOAP fault in the usual way. If it fails
+     * later, appends a SOAP fault to the partial response.</p>
+     */
+    private void streamSoapBody(
+        HttpServletResponse response,
+        XmlaRequest xmlaReq,
+        byte[][] responseSoapParts,
+        Map<String, Object> context)
+        throws XmlaException, IOException
+    {
+        if (charEncoding != null) {
+            response.setCharacterEncoding(charEncoding);
+        }
+        response.setContentType("text/xml");
+        response.setStatus(HttpServletResponse.SC_OK);
+        final String encoding = response.getCharacterEncoding();
+
+        final ByteArrayOutputStream prologue = new ByteArrayOutputStream();
+        prologue.write(soapEnvelopeStart(encoding).getBytes(encoding));
+        if (responseSoapParts[0] != null) {
+            prologue.write(responseSoapParts[0]);
+        }
+        prologue.write(soapBodyStart().getBytes(encoding));
+        final SoapStreamingOutputStream out =
+            new SoapStreamingOutputStream(
+                response.getOutputStream(),
+                prologue.toByteArray(),
+                soapEnvelopeEnd().getBytes(encoding));
+
+        final XmlaResponse xmlaRes =
+            new DefaultXmlaResponse(
+                out, encoding, Enumeration.ResponseMimeType.SOAP);
+        XmlaException fault = null;
+        try {
+            getXmlaHandler().process(xmlaReq, xmlaRes);
+        } catch (XmlaException ex) {
+            fault = ex;
+        } catch (Exception ex) {
+            fault =
+                new XmlaException(
+                    SERVER_FAULT_FC,
+                    HSB_PROCESS_CODE,
+                    HSB_PROCESS_FAULT_FS,
+                    ex);
+        }
+        if (fault != null && !out.isStarted()) {
+            // Nothing has been sent yet. Let the caller reset the response
+            // and send a fault.
+            throw fault;
+        }
+        context.put(CONTEXT_RESPONSE_STREAMED, Boolean.TRUE);
+        try {
+            xmlaRes.getWriter().flush();
+            if (fault != null) {
+                LOGGER.error("Errors when streaming XML/A response", fault);
+                out.fault(createFault(Phase.PROCESS_BODY, fault, encoding));
+            }
+            out.finish();
+        } catch (IOException ioe) {
+            // The response is committed, so there is no way to tell the
+            // client. Probably the client has gone away.
+            LOGGER.warn(
+                "Exception when transferring bytes over sockets",
+                ioe);
+        }
+    }
+
+    private static String soapEnvelopeStart(String encoding) {
+        return "<?xml version=\"1.0\" encoding=\"" + encoding
+            + "\"?>\n<" + SOAP_PREFIX + ":Envelope xmlns:"
+            + SOAP_PREFIX + "=\"" + NS_SOAP_ENV_1_1 + "\" "
+            + SOAP_PREFIX + ":encodingStyle=\""
+            + NS_SOAP_ENC_1_1 + "\" >" + "\n<" + SOAP_PREFIX
+            + ":Header>\n";
+    }
+
+    private static String soapBodyStart() {
+        return "</" + SOAP_PREFIX + ":Header>\n<" + SOAP_PREFIX
+            + ":Body>\n";
+    }
+
+    private static String soapEnvelopeEnd() {
+        return "\n</" + SOAP_PREFIX + ":Body>\n</" + SOAP_PREFIX
+            + ":Envelope>\n";
+    }
+
     protected void marshallSoapMessage(
         HttpServletResponse response,
         byte[][] responseSoapParts,
@@ -578,26 +699,12 @@ public abstract class DefaultXmlaServlet extends XmlaServlet {
 
                 case SOAP:
                 default:
-                    String s0 =
-                        "<?xml version=\"1.0\" encoding=\"" + encoding
-                        + "\"?>\n<" + SOAP_PREFIX + ":Envelope xmlns:"
-                        + SOAP_PREFIX + "=\"" + NS_SOAP_ENV_1_1 + "\" "
-                        + SOAP_PREFIX + ":encodingStyle=\""
-                        + NS_SOAP_ENC_1_1 + "\" >" + "\n<" + SOAP_PREFIX
-                        + ":Header>\n";
-                    String s2 =
-                        "</" + SOAP_PREFIX + ":Header>\n<" + SOAP_PREFIX
-                        + ":Body>\n";
-                    String s4 =
-                        "\n</" + SOAP_PREFIX + ":Body>\n</" + SOAP_PREFIX
-                        + ":Envelope>\n";
-
                     byteChunks = new Object[] {
-                        s0.getBytes(encoding),
+                        soapEnvelopeStart(encoding).getBytes(encoding),
                         soapHeader,
-                        s2.getBytes(encoding),
+                        soapBodyStart().getBytes(encoding),
                         soapBody,
-                        s4.getBytes(encoding),
+                        soapEnvelopeEnd().getBytes(encoding),
                     };
                     break;
                 }
@@ -701,6 +808,19 @@ public abstract class DefaultXmlaServlet extends XmlaServlet {
             break;
         }
 
+        responseSoapParts[1] =
+            createFault(phase, t, response.getCharacterEncoding());
+    }
+
+    /**
+     * Serializes a SOAP 1.1 Fault element.
+     *
+     * @param phase Phase in which the error occurred
+     * @param t Error
+     * @param encoding Character encoding
+     * @return Serialized Fault element
+     */
+    private byte[] createFault(Phase phase, Throwable t, String encoding) {
         String code;
         String faultCode;
         String faultString;
@@ -722,8 +842,6 @@ public abstract class DefaultXmlaServlet extends XmlaServlet {
             detail = XmlaException.formatDetail(t.getMessage());
         }
 
-        String encoding = response.getCharacterEncoding();
-
         ByteArrayOutputStream osBuf = new ByteArrayOutputStream();
         try {
             SaxWriter writer = new DefaultSaxWriter(osBuf, encoding);
@@ -784,7 +902,7 @@ public abstract class DefaultXmlaServlet extends XmlaServlet {
                 "Unexcepted runimt exception when handing SOAP fault :(");
         }
 
-        responseSoapParts[1] = osBuf.toByteArray();
+        return osBuf.toByteArray();
     }
 
     private SessionInfo getSessionInfo(String sessionId) {
@@ -0,0 +1,127 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.xmla.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream that writes the body of a SOAP message straight to the
+ * client, wrapping it in the SOAP envelope.
+ *
+ * <p>Nothing is written until the first byte of the body arrives. Until
+ * then, the HTTP response has not been committed, and the servlet can still
+ * reset it and send a SOAP fault in the usual way.</p>
+ *
+ * <p>Once streaming has started, an error cannot be reported by resetting
+ * the response. Instead, call {@link #fault(byte[])} to append a
+ * <code>Fault</code> element to the body, then {@link #finish()} to close
+ * the envelope, so that the client receives a well-formed message.</p>
+ *
+ * <p>{@link #close()} does not close the underlying stream; the servlet
+ * container does that.</p>
+ *
+ * @see DefaultXmlaServlet
+ */
+class SoapStreamingOutputStream extends OutputStream {
+    private final OutputStream out;
+    private final byte[] prologue;
+    private final byte[] epilogue;
+    private boolean started;
+    private boolean finished;
+
+    /**
+     * Creates a SoapStreamingOutputStream.
+     *
+     * @param out Underlying stream, usually the servlet output stream
+     * @param prologue Bytes to write before the first byte of the body:
+     *     the XML declaration, SOAP envelope, header and the start of the
+     *     SOAP body
+     * @param epilogue Bytes to write after the body
+     */
+    SoapStreamingOutputStream(
+        OutputStream out,
+        byte[] prologue,
+        byte[] epilogue)
+    {
+        this.out = out;
+        this.prologue = prologue;
+        this.epilogue = epilogue;
+    }
+
+    /**
+     * Returns whether any bytes have been written to the underlying stream.
+     * If so, the HTTP response has probably been committed.
+     *
+     * @return Whether streaming has started
+     */
+    boolean isStarted() {
+        return started;
+    }
+
+    private void start() throws IOException {
+        if (!started) {
+            started = true;
+            out.write(prologue);
+        }
+    }
+
+    public void write(int b) throws IOException {
+        start();
+        out.write(b);
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return;
+        }
+        start();
+        out.write(b, off, len);
+    }
+
+    public void flush() throws IOException {
+        if (started) {
+            out.flush();
+        }
+    }
+
+    public void close() throws IOException {
+        flush();
+    }
+
+    /**
+     * Appends a SOAP fault to the body. Call after the body has been
+     * written (and any open elements have been closed) but before
+     * {@link #finish()}.
+     *
+     * @param faultBytes Serialized <code>Fault</code> element
+     */
+    void fault(byte[] faultBytes) throws IOException {
+        assert !finished;
+        start();
+        out.write('\n');
+        out.write(faultBytes);
+    }
+
+    /**
+     * Writes the end of the SOAP body and envelope, and flushes.
+     */
+    void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        start();
+        out.write(epilogue);
+        out.flush();
+    }
+}
+
+// End SoapStreamingOutputStream.java
@@ -0,0 +1,107 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.rolap;
+
+import mondrian.olap.*;
+import mondrian.test.FoodMartTestCase;
+import mondrian.test.TestContext;
+
+import java.util.List;
+
+/**
+ * Unit test for {@link RolapCompactMember}.
+ */
+public class CompactMemberTest extends FoodMartTestCase {
+    private static final String DIMENSION =
+        "<Dimension name=\"Big Customers\" foreignKey=\"customer_id\">\n"
+        + "  <Hierarchy hasAll=\"true\" primaryKey=\"customer_id\">\n"
+        + "    <Table name=\"customer\"/>\n"
+        + "    <Level name=\"Gender\" column=\"gender\""
+        + " uniqueMembers=\"true\"/>\n"
+        + "    <Level name=\"Name\" column=\"customer_id\""
+        + " nameColumn=\"fullname\" type=\"Numeric\" uniqueMembers=\"true\""
+        + " approxRowCount=\"10000\">\n"
+        + "      <Property name=\"Marital Status\""
+        + " column=\"marital_status\"/>\n"
+        + "      <Property name=\"Education\" column=\"education\"/>\n"
+        + "    </Level>\n"
+        + "  </Hierarchy>\n"
+        + "</Dimension>";
+
+    private static final String QUERY =
+        "with member [Measures].[Status] as\n"
+        + " '[Big Customers].CurrentMember.Properties(\"Marital Status\")'\n"
+        + "select {[Measures].[Unit Sales], [Measures].[Status]} on 0,\n"
+        + " Head([Big Customers].[Name].Members, 20) on 1\n"
+        + "from [Sales]";
+
+    public CompactMemberTest() {
+    }
+
+    public CompactMemberTest(String name) {
+        super(name);
+    }
+
+    private TestContext getBigCustomersContext() {
+        final TestContext testContext =
+            getTestContext().createSubstitutingCube("Sales", DIMENSION);
+        testContext.getConnection().getCacheControl(null).flushSchemaCache();
+        return testContext;
+    }
+
+    /**
+     * Tests that members of a level whose approximate row count exceeds
+     * {@link MondrianProperties#CompactMemberThreshold} are compact, and that
+     * queries return the same results as with regular members.
+     */
+    public void testCompactMembers() {
+        final String expected =
+            getBigCustomersContext().toString(
+                getBigCustomersContext().executeQuery(QUERY));
+
+        propSaver.set(propSaver.properties.CompactMemberThreshold, 1000);
+        final TestContext testContext = getBigCustomersContext();
+        final Result result = testContext.executeQuery(QUERY);
+        assertEquals(expected, testContext.toString(result));
+
+        final List<Position> positions = result.getAxes()[1].getPositions();
+        assertEquals(20, positions.size());
+        for (Position position : positions) {
+            final RolapMember member =
+                ((RolapCubeMember) position.get(0)).getRolapMember();
+            assertTrue(member instanceof RolapCompactMember);
+            assertEquals(
+                "[Big Customers].[" + member.getParentMember().getName()
+                + "].[" + member.getName() + "]",
+                member.getUniqueName());
+            assertNotNull(member.getPropertyValue("Education"));
+            assertNotNull(member.getPropertyValue("marital status", false));
+
+            // Members of the small level are regular.
+            assertFalse(
+                member.getParentMember() instanceof RolapCompactMember);
+        }
+
+        // Compact members are equal to the members found by name.
+        final Member first = positions.get(0).get(0);
+        final Member found =
+            testContext.getConnection().getSchemaReader().withLocus()
+                .getMemberByUniqueName(
+                    Id.Segment.toList(
+                        "Big Customers",
+                        first.getParentMember().getName(),
+                        first.getName()),
+                    true);
+        assertEquals(first, found);
+        assertEquals(first.hashCode(), found.hashCode());
+    }
+}
+
+// End CompactMemberTest.java
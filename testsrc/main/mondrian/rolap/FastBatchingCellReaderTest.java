@@ -4,7 +4,7 @@
 * http://www.eclipse.org/legal/epl-v10.html.
 * You must accept the terms of that agreement to use this software.
 *
-* Copyright (c) 2002-2013 Pentaho Corporation..  All rights reserved.
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
 */
 
 package mondrian.rolap;
@@ -24,7 +24,7 @@ import junit.framework.Assert;
 
 import java.lang.reflect.Proxy;
 import java.util.*;
-import java.util.concurrent.Future;
+import java.util.concurrent.*;
 
 /**
  * Test for <code>FastBatchingCellReader</code>.
@@ -2286,6 +2286,127 @@ public class FastBatchingCellReaderTest extends BatchTestCase {
                 Arrays.asList(intSet4),
                 Dialect.Datatype.Integer));
     }
+
+    /**
+     * Tests a query whose cells are rolled up from cached segments, with one
+     * rollup thread and with several. The results must be the same as
+     * without rollup. Then saturates the rollup pool, and checks that the
+     * query performs its rollups on its own thread.
+     */
+    public void testParallelRollup() throws Exception {
+        final String measures =
+            "{[Measures].[Unit Sales], [Measures].[Store Cost],"
+            + " [Measures].[Store Sales], [Measures].[Sales Count]}";
+        final String loadMdx =
+            "select " + measures + " on 0,\n"
+            + " CrossJoin([Gender].[Gender].Members,\n"
+            + "   [Marital Status].[Marital Status].Members) on 1\n"
+            + "from [Sales]";
+        final String rollupMdx =
+            "select " + measures + " on 0,\n"
+            + " [Gender].[Gender].Members on 1\n"
+            + "from [Sales]";
+        final String expected = execute(connection, rollupMdx);
+
+        for (int rollupThreadCount : new int[] {1, 4}) {
+            propSaver.set(
+                propSaver.properties.SegmentCacheManagerNumberRollupThreads,
+                rollupThreadCount);
+            final MondrianServer server =
+                MondrianServer.createWithRepository(
+                    new StringRepositoryContentFinder("foo bar"), null);
+            final RolapConnection rollupConnection =
+                new RolapConnection(
+                    server, getTestContext().getConnectionProperties(), null);
+            try {
+                execute(rollupConnection, loadMdx);
+                assertEquals(
+                    expected,
+                    executeWithoutFactSql(rollupConnection, rollupMdx));
+            } finally {
+                rollupConnection.close();
+                server.shutdown();
+            }
+        }
+
+        propSaver.set(
+            propSaver.properties.SegmentCacheManagerNumberRollupThreads, 1);
+        final MondrianServer server =
+            MondrianServer.createWithRepository(
+                new StringRepositoryContentFinder("foo bar"), null);
+        final RolapConnection rollupConnection =
+            new RolapConnection(
+                server, getTestContext().getConnectionProperties(), null);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            // Occupy the only rollup thread.
+            final ExecutorService rollupExecutor =
+                server.getAggregationManager().cacheMgr.rollupExecutor;
+            rollupExecutor.submit(
+                new Callable<Object>() {
+                    public Object call() throws Exception {
+                        started.countDown();
+                        release.await();
+                        return null;
+                    }
+                });
+            started.await();
+
+            // The pool is saturated, so a task runs on the calling thread
+            // before submit returns.
+            final Future<Thread> future =
+                rollupExecutor.submit(
+                    new Callable<Thread>() {
+                        public Thread call() {
+                            return Thread.currentThread();
+                        }
+                    });
+            assertTrue(future.isDone());
+            assertSame(Thread.currentThread(), future.get());
+
+            execute(rollupConnection, loadMdx);
+            assertEquals(
+                expected,
+                executeWithoutFactSql(rollupConnection, rollupMdx));
+        } finally {
+            release.countDown();
+            rollupConnection.close();
+            server.shutdown();
+        }
+    }
+
+    private static String execute(Connection connection, String mdx) {
+        return TestContext.toString(
+            connection.execute(connection.parseQuery(mdx)));
+    }
+
+    /**
+     * Executes a query, and asserts that it does not read the fact table;
+     * that is, all of its cells come from the cache, or are rolled up from
+     * cached segments.
+     */
+    private static String executeWithoutFactSql(
+        Connection connection,
+        String mdx)
+    {
+        final List<String> factSqls = new ArrayList<String>();
+        RolapUtil.setHook(
+            new RolapUtil.ExecuteQueryHook() {
+                public void onExecuteQuery(String sql) {
+                    if (sql.contains("sales_fact_1997")) {
+                        factSqls.add(sql);
+                    }
+                }
+            });
+        try {
+            final String actual = execute(connection, mdx);
+            assertEquals(Collections.<String>emptyList(), factSqls);
+            return actual;
+        } finally {
+            RolapUtil.setHook(null);
+        }
+    }
 }
 
 // End FastBatchingCellReaderTest.java
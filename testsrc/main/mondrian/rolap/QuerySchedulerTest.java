@@ -0,0 +1,164 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.rolap;
+
+import mondrian.olap.MondrianException;
+import mondrian.server.monitor.QueryQueueEvent;
+
+import junit.framework.TestCase;
+
+import java.util.*;
+
+/**
+ * Unit test for {@link QueryScheduler}.
+ */
+public class QuerySchedulerTest extends TestCase {
+    public QuerySchedulerTest() {
+    }
+
+    public QuerySchedulerTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Tests that an interactive queue is admitted more often than a batch
+     * queue, and that queues of the same priority take turns.
+     */
+    public void testFairShare() throws InterruptedException {
+        final QueryScheduler scheduler = new QueryScheduler(1, "x");
+        final QueryScheduler.Ticket first =
+            scheduler.acquire(
+                "H", QueryScheduler.Priority.INTERACTIVE, null, 0);
+        assertTrue(first.isAdmitted());
+
+        final Map<QueryScheduler.Ticket, String> tickets =
+            new LinkedHashMap<QueryScheduler.Ticket, String>();
+        for (int i = 0; i < 3; i++) {
+            tickets.put(
+                scheduler.enqueue("A", QueryScheduler.Priority.BATCH), "A");
+        }
+        for (int i = 0; i < 2; i++) {
+            tickets.put(
+                scheduler.enqueue("C", QueryScheduler.Priority.INTERACTIVE),
+                "C");
+        }
+        for (int i = 0; i < 3; i++) {
+            tickets.put(
+                scheduler.enqueue("B", QueryScheduler.Priority.INTERACTIVE),
+                "B");
+        }
+        assertEquals(8, scheduler.getQueuedCount());
+        assertEquals(
+            "{BATCH:A=3, INTERACTIVE:C=2, INTERACTIVE:B=3}",
+            scheduler.createEvent(0, 0).queueLengths.toString());
+
+        final StringBuilder buf = new StringBuilder();
+        QueryScheduler.Ticket running = first;
+        while (!tickets.isEmpty()) {
+            scheduler.release(running);
+            running = null;
+            for (Iterator<Map.Entry<QueryScheduler.Ticket, String>> iterator =
+                     tickets.entrySet().iterator();
+                 iterator.hasNext();)
+            {
+                final Map.Entry<QueryScheduler.Ticket, String> entry =
+                    iterator.next();
+                if (entry.getKey().isAdmitted()) {
+                    assertNull(running);
+                    running = entry.getKey();
+                    buf.append(entry.getValue());
+                    iterator.remove();
+                }
+            }
+            assertNotNull(running);
+        }
+        assertEquals("ACBCBBAA", buf.toString());
+        scheduler.release(running);
+        assertEquals(0, scheduler.getRunningCount());
+
+        final QueryQueueEvent event = scheduler.createEvent(0, 0);
+        assertEquals(9, event.admitCount);
+        assertEquals(8, event.waitCount);
+        assertEquals(0, event.timeoutCount);
+        assertTrue(event.queueLengths.isEmpty());
+    }
+
+    /**
+     * Tests that a query that is not admitted within the timeout fails and
+     * leaves its queue.
+     */
+    public void testTimeout() throws InterruptedException {
+        final QueryScheduler scheduler = new QueryScheduler(2, "x");
+        final QueryScheduler.Ticket t1 =
+            scheduler.acquire("A", QueryScheduler.Priority.BATCH, null, 0);
+        final QueryScheduler.Ticket t2 =
+            scheduler.acquire("A", QueryScheduler.Priority.BATCH, null, 0);
+        assertEquals(2, scheduler.getRunningCount());
+        try {
+            final QueryScheduler.Ticket t3 =
+                scheduler.acquire(
+                    "B", QueryScheduler.Priority.INTERACTIVE, null, 20);
+            fail("expected error, got " + t3);
+        } catch (MondrianException e) {
+            assertTrue(
+                e.getMessage(),
+                e.getMessage().indexOf("not started within 20") >= 0);
+        }
+        assertEquals(0, scheduler.getQueuedCount());
+        assertEquals(1, scheduler.createEvent(0, 0).timeoutCount);
+
+        // With a timeout of zero, a query fails at once, with the same
+        // error as before queries were queued.
+        try {
+            final QueryScheduler.Ticket t3 =
+                scheduler.acquire(
+                    "B", QueryScheduler.Priority.INTERACTIVE, null, 0);
+            fail("expected error, got " + t3);
+        } catch (MondrianException e) {
+            assertTrue(
+                e.getMessage(),
+                e.getMessage().indexOf("(2) has been reached") >= 0);
+        }
+        assertEquals(0, scheduler.getQueuedCount());
+        assertEquals(2, scheduler.createEvent(0, 0).timeoutCount);
+
+        // Once a thread is free, queries are admitted at once.
+        scheduler.release(t1);
+        final QueryScheduler.Ticket t4 =
+            scheduler.acquire(
+                "B", QueryScheduler.Priority.INTERACTIVE, null, 0);
+        assertTrue(t4.isAdmitted());
+        scheduler.release(t2);
+        scheduler.release(t4);
+        assertEquals(0, scheduler.getRunningCount());
+    }
+
+    /**
+     * Tests {@link QueryScheduler.Priority#lookup}.
+     */
+    public void testPriority() {
+        assertEquals(
+            QueryScheduler.Priority.INTERACTIVE,
+            QueryScheduler.Priority.lookup(null));
+        assertEquals(
+            QueryScheduler.Priority.BATCH,
+            QueryScheduler.Priority.lookup("Batch"));
+        try {
+            QueryScheduler.Priority.lookup("Urgent");
+            fail("expected error");
+        } catch (RuntimeException e) {
+            assertTrue(
+                e.getMessage(),
+                e.getMessage().indexOf("Unknown value 'Urgent'") >= 0);
+        }
+    }
+}
+
+// End QuerySchedulerTest.java
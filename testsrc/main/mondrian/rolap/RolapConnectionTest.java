@@ -255,6 +255,37 @@ public class RolapConnectionTest extends TestCase {
         }
     }
 
+    /**
+     * Tests that an invalid value of the QueryPriority property is rejected
+     * when the connection is created, not when a query is executed.
+     */
+    public void testConnectWithBadQueryPriorityFails() {
+        Util.PropertyList properties =
+            TestContext.instance().getConnectionProperties().clone();
+        properties.put(
+            RolapConnectionProperties.QueryPriority.name(), "Urgent");
+        try {
+            DriverManager.getConnection(properties, null);
+            fail("expected exception");
+        } catch (MondrianException e) {
+            assertTrue(
+                e.getMessage(),
+                e.getMessage().indexOf("Unknown value 'Urgent'") >= 0);
+        }
+
+        properties.put(
+            RolapConnectionProperties.QueryPriority.name(), "batch");
+        final RolapConnection connection =
+            (RolapConnection) DriverManager.getConnection(properties, null);
+        try {
+            assertEquals(
+                QueryScheduler.Priority.BATCH,
+                connection.getQueryPriority());
+        } finally {
+            connection.close();
+        }
+    }
+
     public void testJndiConnection() throws NamingException {
         // Cannot guarantee that this test will work if they have chosen to
         // resolve data sources other than by JNDI.
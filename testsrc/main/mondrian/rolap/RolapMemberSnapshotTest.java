@@ -0,0 +1,164 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.rolap;
+
+import mondrian.olap.*;
+import mondrian.test.FoodMartTestCase;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Unit test for {@link RolapMemberSnapshot}.
+ */
+public class RolapMemberSnapshotTest extends FoodMartTestCase {
+    private File directory;
+    private final List<String> sqlList =
+        Collections.synchronizedList(new ArrayList<String>());
+
+    public RolapMemberSnapshotTest() {
+    }
+
+    public RolapMemberSnapshotTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = File.createTempFile("snapshot", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+        propSaver.set(
+            propSaver.properties.MemberSnapshotDirectory,
+            directory.getPath());
+        flushSchemaCache();
+        RolapUtil.setHook(
+            new RolapUtil.ExecuteQueryHook() {
+                public void onExecuteQuery(String sql) {
+                    sqlList.add(sql);
+                }
+            });
+    }
+
+    protected void tearDown() throws Exception {
+        RolapUtil.setHook(null);
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+        super.tearDown();
+        flushSchemaCache();
+    }
+
+    private void flushSchemaCache() {
+        getConnection().getCacheControl(null).flushSchemaCache();
+    }
+
+    private SchemaReader getSchemaReader() {
+        return getConnection().getSchema().lookupCube("Sales", true)
+            .getSchemaReader(null).withLocus();
+    }
+
+    private Level getStoreLevel(int depth) {
+        final Cube cube = getConnection().getSchema().lookupCube("Sales", true);
+        for (Dimension dimension : cube.getDimensions()) {
+            if (dimension.getName().equals("Store")) {
+                return dimension.getHierarchies()[0].getLevels()[depth];
+            }
+        }
+        throw new AssertionError("Store dimension not found");
+    }
+
+    private List<String> getStoreCities() {
+        final List<String> list = new ArrayList<String>();
+        for (Member member
+            : getSchemaReader().getLevelMembers(getStoreLevel(3), false))
+        {
+            list.add(member.getUniqueName() + ":" + member.getCaption());
+        }
+        return list;
+    }
+
+    /**
+     * Returns the statements executed against the store table since the
+     * last call.
+     */
+    private List<String> getStoreSql() {
+        final List<String> list = new ArrayList<String>();
+        synchronized (sqlList) {
+            for (String sql : sqlList) {
+                if (sql.contains("store_city")) {
+                    list.add(sql);
+                }
+            }
+            sqlList.clear();
+        }
+        return list;
+    }
+
+    /**
+     * Tests that members that have been read in full are read from the
+     * snapshot, rather than via SQL, after the schema is reloaded.
+     */
+    public void testWarmStart() {
+        final List<String> expected = getStoreCities();
+        assertFalse(getStoreSql().isEmpty());
+
+        // Store City and its ancestors, Store State and Store Country.
+        assertEquals(3, directory.list().length);
+
+        flushSchemaCache();
+        assertEquals(expected, getStoreCities());
+        assertEquals(Collections.<String>emptyList(), getStoreSql());
+
+        // Children are read from the snapshot, too.
+        flushSchemaCache();
+        final SchemaReader schemaReader = getSchemaReader();
+        final Member ca =
+            schemaReader.getMemberByUniqueName(
+                Id.Segment.toList("Store", "USA", "CA"), true);
+        getStoreSql();
+        assertEquals(
+            "[[Store].[USA].[CA].[Alameda], "
+            + "[Store].[USA].[CA].[Beverly Hills], "
+            + "[Store].[USA].[CA].[Los Angeles], "
+            + "[Store].[USA].[CA].[San Diego], "
+            + "[Store].[USA].[CA].[San Francisco]]",
+            schemaReader.getMemberChildren(ca).toString());
+        assertEquals(Collections.<String>emptyList(), getStoreSql());
+    }
+
+    /**
+     * Tests that flushing members via {@link CacheControl} deletes the
+     * snapshot, so that members are read again via SQL.
+     */
+    public void testFlushMembers() {
+        final List<String> expected = getStoreCities();
+        assertEquals(3, directory.list().length);
+
+        final Member usa =
+            getSchemaReader().getMemberByUniqueName(
+                Id.Segment.toList("Store", "USA"), true);
+        final CacheControl cacheControl = getConnection().getCacheControl(null);
+        cacheControl.flush(cacheControl.createMemberSet(usa, true));
+        assertEquals(0, directory.list().length);
+
+        flushSchemaCache();
+        getStoreSql();
+        assertEquals(expected, getStoreCities());
+        assertFalse(getStoreSql().isEmpty());
+        assertEquals(3, directory.list().length);
+    }
+}
+
+// End RolapMemberSnapshotTest.java
@@ -0,0 +1,258 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.rolap;
+
+import mondrian.olap.*;
+import mondrian.test.FoodMartTestCase;
+import mondrian.test.TestContext;
+
+import java.util.*;
+
+/**
+ * Unit test for {@link RolapResultCache}.
+ */
+public class RolapResultCacheTest extends FoodMartTestCase {
+    private static final String QUERY =
+        "select {[Measures].[Unit Sales]} on columns,\n"
+        + " {[Store].[USA].Children} on rows\n"
+        + "from [Sales]";
+
+    private static final String EXPECTED =
+        "Axis #0:\n"
+        + "{}\n"
+        + "Axis #1:\n"
+        + "{[Measures].[Unit Sales]}\n"
+        + "Axis #2:\n"
+        + "{[Store].[USA].[CA]}\n"
+        + "{[Store].[USA].[OR]}\n"
+        + "{[Store].[USA].[WA]}\n"
+        + "Row #0: 74,748\n"
+        + "Row #1: 67,659\n"
+        + "Row #2: 124,366\n";
+
+    public RolapResultCacheTest() {
+    }
+
+    public RolapResultCacheTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        getResultCache().flushAll();
+    }
+
+    protected void tearDown() throws Exception {
+        getResultCache().flushAll();
+        super.tearDown();
+    }
+
+    private RolapResultCache getResultCache() {
+        return MondrianServer.forConnection(getConnection()).getResultCache();
+    }
+
+    /**
+     * Tests that the same query, formatted differently, is answered from the
+     * cache, and that flushing cells discards the cached result.
+     */
+    public void testCache() {
+        propSaver.set(propSaver.properties.ResultCacheMaxMegabytes, 10);
+        final RolapResultCache resultCache = getResultCache();
+        final TestContext testContext = getTestContext();
+        final long hitCount = resultCache.getHitCount();
+
+        final Result result = testContext.executeQuery(QUERY);
+        assertTrue(result instanceof RolapResultCache.CachedResult);
+        assertEquals(EXPECTED, TestContext.toString(result));
+        assertEquals(1, resultCache.getResultCount());
+        assertTrue(resultCache.getByteCount() > 0);
+
+        final Result result2 =
+            testContext.executeQuery(QUERY.replace("\n", "\n\n   "));
+        assertTrue(result2 instanceof RolapResultCache.CachedResult);
+        assertEquals(EXPECTED, TestContext.toString(result2));
+        assertEquals(hitCount + 1, resultCache.getHitCount());
+
+        final CacheControl cacheControl = testContext.getCacheControl();
+        final Cube salesCube =
+            testContext.getConnection().getSchema().lookupCube("Sales", true);
+        cacheControl.flush(cacheControl.createMeasuresRegion(salesCube));
+        assertEquals(0, resultCache.getResultCount());
+
+        final Result result3 = testContext.executeQuery(QUERY);
+        assertNotSame(result, result3);
+        assertEquals(EXPECTED, TestContext.toString(result3));
+    }
+
+    /**
+     * Tests that several threads can read the cells of a cached result at
+     * the same time, including properties that are evaluated on demand.
+     */
+    public void testConcurrentReaders() throws Exception {
+        propSaver.set(propSaver.properties.ResultCacheMaxMegabytes, 10);
+        final String query =
+            "with member [Measures].[Foo] as '[Measures].[Unit Sales] * 2',\n"
+            + " FORMAT_STRING = IIf([Measures].[Unit Sales] > 70000,"
+            + " '#,###.00', '#')\n"
+            + "select {[Measures].[Unit Sales], [Measures].[Foo]} on columns,\n"
+            + " {[Store].[USA].Children} on rows\n"
+            + "from [Sales]";
+        final long hitCount = getResultCache().getHitCount();
+        executeQuery(query);
+        final Result result = executeQuery(query);
+        assertEquals(hitCount + 1, getResultCache().getHitCount());
+        final String expected = describe(result);
+
+        final int threadCount = 8;
+        final List<Throwable> errors =
+            Collections.synchronizedList(new ArrayList<Throwable>());
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < threadCount; i++) {
+            final Thread thread = new Thread(
+                new Runnable() {
+                    public void run() {
+                        try {
+                            for (int j = 0; j < 50; j++) {
+                                assertEquals(expected, describe(result));
+                            }
+                        } catch (Throwable e) {
+                            errors.add(e);
+                        }
+                    }
+                });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(Collections.<Throwable>emptyList(), errors);
+    }
+
+    /**
+     * Tests that a cached result gives the same cells, properties and
+     * drill-through as an uncached one, after the connection that created
+     * it has been closed.
+     */
+    public void testReadAfterCreatorClosed() {
+        final String query =
+            "with member [Measures].[Foo] as '[Measures].[Unit Sales] + 1',\n"
+            + " BACK_COLOR = 'red', SOLVE_ORDER = 5\n"
+            + "select {[Measures].[Unit Sales], [Measures].[Foo]} on columns,\n"
+            + " {[Store].[USA].Children} on rows\n"
+            + "from [Sales]\n"
+            + "where [Time].[1997].[Q1]";
+        propSaver.set(propSaver.properties.ResultCacheMaxMegabytes, 0);
+        final Result uncached = executeQuery(query);
+        assertFalse(uncached instanceof RolapResultCache.CachedResult);
+        final String expected = describeContext(uncached);
+
+        propSaver.set(propSaver.properties.ResultCacheMaxMegabytes, 10);
+        final Connection connection =
+            DriverManager.getConnection(
+                getTestContext().getConnectionProperties(), null, null);
+        connection.execute(connection.parseQuery(query));
+        connection.close();
+        assertEquals(1, getResultCache().getResultCount());
+
+        final long hitCount = getResultCache().getHitCount();
+        final Result result = executeQuery(query);
+        assertTrue(result instanceof RolapResultCache.CachedResult);
+        assertEquals(hitCount + 1, getResultCache().getHitCount());
+        assertEquals(expected, describeContext(result));
+    }
+
+    /**
+     * Returns the ordinal, properties, context and drill-through of each
+     * cell of a two-dimensional result.
+     */
+    private static String describeContext(Result result) {
+        final Hierarchy storeHierarchy =
+            result.getAxes()[1].getPositions().get(0).get(0).getHierarchy();
+        final Hierarchy timeHierarchy =
+            result.getSlicerAxis().getPositions().get(0).get(0).getHierarchy();
+        final StringBuilder buf = new StringBuilder();
+        final int columnCount = result.getAxes()[0].getPositions().size();
+        final int rowCount = result.getAxes()[1].getPositions().size();
+        for (int row = 0; row < rowCount; row++) {
+            for (int column = 0; column < columnCount; column++) {
+                final Cell cell = result.getCell(new int[] {column, row});
+                buf.append(cell.getPropertyValue("CELL_ORDINAL"))
+                    .append('|')
+                    .append(cell.getFormattedValue())
+                    .append('|')
+                    .append(cell.getPropertyValue("BACK_COLOR"))
+                    .append('|')
+                    .append(cell.getPropertyValue("SOLVE_ORDER"))
+                    .append('|')
+                    .append(cell.getContextMember(storeHierarchy))
+                    .append('|')
+                    .append(cell.getContextMember(timeHierarchy))
+                    .append('|')
+                    .append(cell.canDrillThrough());
+                if (cell.canDrillThrough()) {
+                    buf.append('|')
+                        .append(cell.getDrillThroughSQL(false));
+                }
+                buf.append('\n');
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Returns the value, format string, formatted value and a property
+     * evaluated on demand of each cell of a two-dimensional result.
+     */
+    private static String describe(Result result) {
+        final StringBuilder buf = new StringBuilder();
+        final int columnCount = result.getAxes()[0].getPositions().size();
+        final int rowCount = result.getAxes()[1].getPositions().size();
+        for (int row = 0; row < rowCount; row++) {
+            for (int column = 0; column < columnCount; column++) {
+                final Cell cell = result.getCell(new int[] {column, row});
+                buf.append(cell.getValue())
+                    .append('|')
+                    .append(cell.getPropertyValue("FORMAT_STRING"))
+                    .append('|')
+                    .append(cell.getFormattedValue())
+                    .append('|')
+                    .append(cell.getPropertyValue("SOLVE_ORDER"))
+                    .append('\n');
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Tests that results are not cached if the cache is disabled, and are
+     * not shared between roles.
+     */
+    public void testNotCached() {
+        final RolapResultCache resultCache = getResultCache();
+        propSaver.set(propSaver.properties.ResultCacheMaxMegabytes, 0);
+        executeQuery(QUERY);
+        assertEquals(0, resultCache.getResultCount());
+
+        propSaver.set(propSaver.properties.ResultCacheMaxMegabytes, 10);
+        final Result result = executeQuery(QUERY);
+        assertEquals(1, resultCache.getResultCount());
+
+        // Same query, different role: a different result.
+        final Result result2 =
+            getTestContext().withRole("California manager")
+                .executeQuery(QUERY);
+        assertNotSame(result, result2);
+        assertEquals(1, result2.getAxes()[1].getPositions().size());
+        assertEquals(2, resultCache.getResultCount());
+    }
+}
+
+// End RolapResultCacheTest.java
@@ -322,6 +322,71 @@ Axis #2:
             + "Row #2: \n"
             + "Row #2: \n");
     }
+
+    /**
+     * Tests that evaluating axes in parallel gives the same results as
+     * evaluating them one after another, including for a query whose axes
+     * share a named set (which is evaluated serially).
+     */
+    public void testParallelAxisEvaluation() {
+        final String[] queries = {
+            "select NON EMPTY Filter([Product].[Product Family].Members,"
+            + " [Measures].[Unit Sales] > 1000) ON COLUMNS,\n"
+            + " NON EMPTY Order([Store].[Store State].Members,"
+            + " [Measures].[Store Sales], BDESC) ON ROWS,\n"
+            + " TopCount([Time].[Quarter].Members, 2, [Measures].[Unit Sales])"
+            + " ON PAGES\n"
+            + "from [Sales]\n"
+            + "where [Gender].[F]",
+            "with set [Top Stores] as"
+            + " 'TopCount([Store].[Store City].Members, 3,"
+            + " [Measures].[Unit Sales])'\n"
+            + "select [Top Stores] ON COLUMNS,\n"
+            + " Generate([Top Stores], {[Store].CurrentMember.Parent})"
+            + " ON ROWS\n"
+            + "from [Sales]"
+        };
+        final TestContext testContext = TestContext.instance();
+        for (String query : queries) {
+            propSaver.set(propSaver.properties.AxisEvaluationThreads, 0);
+            final String expected =
+                TestContext.toString(testContext.executeQuery(query));
+            propSaver.set(propSaver.properties.AxisEvaluationThreads, 4);
+            final String actual =
+                TestContext.toString(testContext.executeQuery(query));
+            assertEquals(expected, actual);
+        }
+    }
+
+    /**
+     * Tests that evaluating cells in parallel stripes gives the same results
+     * as evaluating them in the query's thread.
+     */
+    public void testParallelCellEvaluation() {
+        final String query =
+            "with member [Measures].[Profit Ratio] as"
+            + " '([Measures].[Store Sales] - [Measures].[Store Cost])"
+            + " / [Measures].[Store Sales]', FORMAT_STRING = '0.00%'\n"
+            + " member [Measures].[YTD Sales] as"
+            + " 'Sum(Ytd(), [Measures].[Store Sales])'\n"
+            + " member [Measures].[Sales Rank] as"
+            + " 'Rank([Store].CurrentMember, [Store].[Store City].Members,"
+            + " [Measures].[Unit Sales])'\n"
+            + "select {[Measures].[Unit Sales], [Measures].[Profit Ratio],"
+            + " [Measures].[YTD Sales], [Measures].[Sales Rank]}"
+            + " * [Time].[1997].Children ON COLUMNS,\n"
+            + " [Store].[Store City].Members ON ROWS\n"
+            + "from [Sales]";
+        final TestContext testContext = TestContext.instance();
+        propSaver.set(propSaver.properties.CellEvaluationThreads, 0);
+        final String expected =
+            TestContext.toString(testContext.executeQuery(query));
+        propSaver.set(propSaver.properties.CellEvaluationThreads, 4);
+        testContext.flushSchemaCache();
+        final String actual =
+            TestContext.toString(testContext.executeQuery(query));
+        assertEquals(expected, actual);
+    }
 }
 
 // End RolapResultTest.java
@@ -4,13 +4,15 @@
 * http://www.eclipse.org/legal/epl-v10.html.
 * You must accept the terms of that agreement to use this software.
 *
-* Copyright (c) 2002-2013 Pentaho Corporation..  All rights reserved.
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
 */
 
 package mondrian.rolap;
 
 import mondrian.olap.Util;
 import mondrian.olap.Util.PropertyList;
+import mondrian.rolap.agg.AggregationKey;
+import mondrian.spi.DataSourceChangeListener;
 import mondrian.spi.DynamicSchemaProcessor;
 import mondrian.test.FoodMartTestCase;
 import mondrian.test.TestContext;
@@ -19,6 +21,9 @@ import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
 import javax.sql.DataSource;
 
 /**
@@ -168,6 +173,161 @@ public class RolapSchemaPoolTest extends FoodMartTestCase {
         assertTrue(schema == schemaDS);
     }
 
+    /**
+     * Tests that the version of the pool changes when a schema is loaded or
+     * removed, and does not change when a pooled schema is fetched.
+     */
+    public void testVersion() {
+        final RolapSchemaPool schemaPool = RolapSchemaPool.instance();
+        schemaPool.clear();
+        final long version0 = schemaPool.getVersion();
+
+        final String catalogUrl = getFoodmartCatalogUrl().toString();
+        final Util.PropertyList connectInfo =
+            Util.parseConnectString(TestContext.getDefaultConnectString());
+        final RolapSchema schema =
+            schemaPool.get(
+                catalogUrl,
+                "connectionKeyA",
+                "joeTheUser",
+                "aDataSource",
+                connectInfo);
+        final long version1 = schemaPool.getVersion();
+        assertTrue(version1 != version0);
+
+        schemaPool.get(
+            catalogUrl,
+            "connectionKeyA",
+            "joeTheUser",
+            "aDataSource",
+            connectInfo);
+        assertEquals(version1, schemaPool.getVersion());
+        assertEquals(version1, RolapSchema.getPoolVersion());
+
+        schemaPool.remove(schema);
+        assertTrue(schemaPool.getVersion() != version1);
+    }
+
+    /**
+     * Tests that threads that ask for the same schema at the same time get
+     * the same object, and that a slow load of one schema does not block
+     * connections to other schemas.
+     */
+    public void testConcurrentGet() throws Exception {
+        final RolapSchemaPool pool = RolapSchemaPool.instance();
+        pool.clear();
+        final String catalogUrl = getFoodmartCatalogUrl().toString();
+        final Util.PropertyList connectInfo =
+            Util.parseConnectString(TestContext.getDefaultConnectString());
+
+        // Start a load that blocks until we release it.
+        final Util.PropertyList slowConnectInfo = connectInfo.clone();
+        slowConnectInfo.put(
+            RolapConnectionProperties.DynamicSchemaProcessor.name(),
+            BlockingSchemaProcessor.class.getName());
+        BlockingSchemaProcessor.started = new CountDownLatch(1);
+        BlockingSchemaProcessor.release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(5);
+        try {
+            final Future<RolapSchema> slowFuture =
+                executor.submit(
+                    new Callable<RolapSchema>() {
+                        public RolapSchema call() {
+                            return pool.get(
+                                catalogUrl, "slowKey", "joeTheUser",
+                                "aDataSource", slowConnectInfo);
+                        }
+                    });
+            assertTrue(
+                BlockingSchemaProcessor.started.await(30, TimeUnit.SECONDS));
+
+            // While it is blocked, several threads load another schema.
+            final List<Future<RolapSchema>> futures =
+                new ArrayList<Future<RolapSchema>>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(
+                    executor.submit(
+                        new Callable<RolapSchema>() {
+                            public RolapSchema call() {
+                                return pool.get(
+                                    catalogUrl, "connectionKeyA",
+                                    "joeTheUser", "aDataSource",
+                                    connectInfo);
+                            }
+                        }));
+            }
+            final RolapSchema schema =
+                futures.get(0).get(60, TimeUnit.SECONDS);
+            for (Future<RolapSchema> future : futures) {
+                assertSame(schema, future.get(60, TimeUnit.SECONDS));
+            }
+            assertFalse(slowFuture.isDone());
+            assertTrue(pool.contains(schema));
+
+            BlockingSchemaProcessor.release.countDown();
+            final RolapSchema slowSchema =
+                slowFuture.get(60, TimeUnit.SECONDS);
+            assertNotSame(schema, slowSchema);
+            assertTrue(pool.contains(slowSchema));
+        } finally {
+            BlockingSchemaProcessor.release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests that removing a schema while it is loading with content
+     * checksums cancels the load, so that the stale schema is not pooled.
+     */
+    public void testRemoveDuringChecksumLoad() throws Exception {
+        final RolapSchemaPool pool = RolapSchemaPool.instance();
+        pool.clear();
+        final String catalogUrl = getFoodmartCatalogUrl().toString();
+        final Util.PropertyList connectInfo =
+            Util.parseConnectString(TestContext.getDefaultConnectString());
+        connectInfo.put(
+            RolapConnectionProperties.UseContentChecksum.name(), "true");
+        connectInfo.put(
+            RolapConnectionProperties.DataSourceChangeListener.name(),
+            BlockingChangeListener.class.getName());
+        BlockingChangeListener.started = new CountDownLatch(1);
+        BlockingChangeListener.release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<RolapSchema> future =
+                executor.submit(
+                    new Callable<RolapSchema>() {
+                        public RolapSchema call() {
+                            return pool.get(
+                                catalogUrl, "connectionKeyA", "joeTheUser",
+                                "aDataSource", connectInfo);
+                        }
+                    });
+            assertTrue(
+                BlockingChangeListener.started.await(30, TimeUnit.SECONDS));
+
+            // Flush the schema while it is loading.
+            pool.remove(
+                catalogUrl, "connectionKeyA", "joeTheUser", "aDataSource");
+            BlockingChangeListener.release.countDown();
+            final RolapSchema schema = future.get(60, TimeUnit.SECONDS);
+            assertNotNull(schema);
+            assertFalse(pool.contains(schema));
+
+            // The next request loads the schema again, and pools it.
+            final RolapSchema schema2 =
+                pool.get(
+                    catalogUrl, "connectionKeyA", "joeTheUser",
+                    "aDataSource", connectInfo);
+            assertNotSame(schema, schema2);
+            assertTrue(pool.contains(schema2));
+        } finally {
+            BlockingChangeListener.release.countDown();
+            executor.shutdownNow();
+            pool.clear();
+        }
+    }
+
 
     protected URL getFoodmartCatalogUrl() {
         // Works if we are running in root directory of source tree
@@ -192,5 +352,47 @@ public class RolapSchemaPoolTest extends FoodMartTestCase {
             return Util.readVirtualFileAsString(schemaUrl);
         }
     }
+
+    /**
+     * Schema processor that blocks until the test releases it.
+     */
+    public static class BlockingSchemaProcessor
+        implements DynamicSchemaProcessor
+    {
+        static CountDownLatch started;
+        static CountDownLatch release;
+
+        public String processSchema(String schemaUrl, PropertyList connectInfo)
+            throws Exception
+        {
+            started.countDown();
+            release.await();
+            return Util.readVirtualFileAsString(schemaUrl);
+        }
+    }
+
+    /**
+     * Change listener whose construction, during the load of a schema,
+     * blocks until the test releases it.
+     */
+    public static class BlockingChangeListener
+        implements DataSourceChangeListener
+    {
+        static CountDownLatch started;
+        static CountDownLatch release;
+
+        public BlockingChangeListener() throws InterruptedException {
+            started.countDown();
+            release.await();
+        }
+
+        public boolean isHierarchyChanged(RolapHierarchy hierarchy) {
+            return false;
+        }
+
+        public boolean isAggregationChanged(AggregationKey aggregation) {
+            return false;
+        }
+    }
 }
 // End RolapSchemaPoolTest.java
@@ -5,7 +5,7 @@
 // You must accept the terms of that agreement to use this software.
 //
 // Copyright (C) 2004-2005 Julian Hyde
-// Copyright (C) 2005-2011 Pentaho and others
+// Copyright (C) 2005-2014 Pentaho and others
 // All Rights Reserved.
 */
 
@@ -183,6 +183,56 @@ public class RolapSchemaReaderTest extends FoodMartTestCase {
             connection.close();
         }
     }
+
+    /**
+     * Tests {@link SchemaReader#getLevelMembersByName}, which should read
+     * only the members with the given names.
+     */
+    public void testGetLevelMembersByName() {
+        getTestContext().flushSchemaCache();
+        final List<String> sqlList = new ArrayList<String>();
+        RolapUtil.setHook(
+            new RolapUtil.ExecuteQueryHook() {
+                public void onExecuteQuery(String sql) {
+                    sqlList.add(sql);
+                }
+            });
+        final Connection connection = getTestContext().getConnection();
+        try {
+            final Cube salesCube =
+                connection.getSchema().lookupCube("Sales", true);
+            final Hierarchy storeHierarchy =
+                salesCube.lookupHierarchy(new Id.NameSegment("Store"), false);
+            final Level stateLevel = storeHierarchy.getLevels()[2];
+            assertEquals("[Store].[Store State]", stateLevel.getUniqueName());
+            final SchemaReader reader =
+                connection.getSchemaReader().withLocus();
+            final List<Member> members =
+                reader.getLevelMembersByName(
+                    stateLevel, Arrays.asList("WA", "Nowhere", "CA"));
+            assertEquals(
+                "[[Store].[USA].[CA], [Store].[USA].[WA]]",
+                members.toString());
+            boolean found = false;
+            for (String sql : sqlList) {
+                if (sql.contains("store_state")
+                    && sql.contains("'CA'")
+                    && sql.contains("'Nowhere'"))
+                {
+                    found = true;
+                }
+            }
+            assertTrue(sqlList.toString(), found);
+
+            assertEquals(
+                0,
+                reader.getLevelMembersByName(
+                    stateLevel, Collections.<String>emptyList()).size());
+        } finally {
+            RolapUtil.setHook(null);
+            connection.close();
+        }
+    }
 }
 
 // End RolapSchemaReaderTest.java
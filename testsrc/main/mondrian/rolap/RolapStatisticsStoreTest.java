@@ -0,0 +1,101 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.rolap;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Unit test for {@link RolapStatisticsStore}.
+ */
+public class RolapStatisticsStoreTest extends TestCase {
+    public RolapStatisticsStoreTest() {
+    }
+
+    public RolapStatisticsStoreTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Tests that a statistic is computed once, saved, read by a new store,
+     * and computed again when the store is refreshed.
+     */
+    public void testPersistAndRefresh() throws IOException {
+        final File file = File.createTempFile("statistics", ".properties");
+        assertTrue(file.delete());
+        try {
+            final CountingProbe probe = new CountingProbe(100);
+            final RolapStatisticsStore store =
+                new RolapStatisticsStore(file, 0);
+            assertEquals(100, store.get("table:[null, foo, bar]", probe));
+            assertEquals(100, store.get("table:[null, foo, bar]", probe));
+            assertEquals(1, probe.count);
+
+            // A failed probe is remembered, and not tried again.
+            final CountingProbe failedProbe = new CountingProbe(-1);
+            assertEquals(-1, store.get("query:select *\nfrom t", failedProbe));
+            assertEquals(-1, store.get("query:select *\nfrom t", failedProbe));
+            assertEquals(1, failedProbe.count);
+
+            probe.value = 200;
+            store.refresh();
+            assertEquals(2, probe.count);
+            assertEquals(2, failedProbe.count);
+            assertEquals(200, store.get("table:[null, foo, bar]", probe));
+            store.shutdown();
+            assertTrue(file.exists());
+
+            // A new store reads the values from the file, and does not
+            // compute them, until it is refreshed.
+            final CountingProbe probe2 = new CountingProbe(300);
+            final RolapStatisticsStore store2 =
+                new RolapStatisticsStore(file, 0);
+            assertEquals(200, store2.get("table:[null, foo, bar]", probe2));
+            assertEquals(-1, store2.get("query:select *\nfrom t", probe2));
+            assertEquals(0, probe2.count);
+            store2.refresh();
+            assertEquals(2, probe2.count);
+            assertEquals(300, store2.get("table:[null, foo, bar]", probe2));
+            store2.shutdown();
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Tests that a store without a file keeps statistics in memory.
+     */
+    public void testNoFile() {
+        final CountingProbe probe = new CountingProbe(5);
+        final RolapStatisticsStore store = new RolapStatisticsStore(null, 0);
+        assertEquals(5, store.get("column:[null, foo, bar, baz]", probe));
+        assertEquals(5, store.get("column:[null, foo, bar, baz]", probe));
+        assertEquals(1, probe.count);
+        store.shutdown();
+    }
+
+    private static class CountingProbe implements RolapStatisticsStore.Probe {
+        int value;
+        int count;
+
+        CountingProbe(int value) {
+            this.value = value;
+        }
+
+        public int compute() {
+            ++count;
+            return value;
+        }
+    }
+}
+
+// End RolapStatisticsStoreTest.java
@@ -0,0 +1,121 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.rolap;
+
+import mondrian.olap.*;
+import mondrian.test.FoodMartTestCase;
+
+import java.util.*;
+
+/**
+ * Unit test for {@link ScenarioImpl}.
+ *
+ * @see mondrian.test.ScenarioTest
+ */
+public class ScenarioImplTest extends FoodMartTestCase {
+    public ScenarioImplTest() {
+    }
+
+    public ScenarioImplTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Tests that {@link ScenarioImpl.WritebackIndex#candidates} returns the
+     * same cells as comparing with every cell using
+     * {@link ScenarioImpl#getRelation}, when cells are written at different
+     * levels of the same hierarchy.
+     */
+    public void testWritebackIndex() {
+        final List<Member> stores =
+            lookupMembers(
+                new String[] {"Store", "All Stores"},
+                new String[] {"Store", "USA"},
+                new String[] {"Store", "USA", "CA"},
+                new String[] {"Store", "USA", "CA", "San Francisco"},
+                new String[] {"Store", "USA", "OR"},
+                new String[] {"Store", "Mexico"});
+        // [Drink].[Dairy] and [Food].[Dairy] have the same name but
+        // different parents.
+        final List<Member> products =
+            lookupMembers(
+                new String[] {"Product", "All Products"},
+                new String[] {"Product", "Drink"},
+                new String[] {"Product", "Drink", "Dairy"},
+                new String[] {"Product", "Food"},
+                new String[] {"Product", "Food", "Dairy"});
+        final List<Member[]> memberArrays = new ArrayList<Member[]>();
+        for (Member store : stores) {
+            for (Member product : products) {
+                memberArrays.add(new Member[] {store, product});
+            }
+        }
+
+        // Write every third cell, so that some cells have writes above them,
+        // some below, some both and some neither.
+        final List<Member[]> writtenArrays = new ArrayList<Member[]>();
+        final List<Integer> elements = new ArrayList<Integer>();
+        for (int i = 0; i < memberArrays.size(); i += 3) {
+            writtenArrays.add(memberArrays.get(i));
+            elements.add(i);
+        }
+        final ScenarioImpl.WritebackIndex<Integer> index =
+            new ScenarioImpl.WritebackIndex<Integer>(writtenArrays, elements);
+
+        int relatedCount = 0;
+        for (Member[] members : memberArrays) {
+            final List<Integer> expected = new ArrayList<Integer>();
+            for (int j = 0; j < writtenArrays.size(); j++) {
+                if (ScenarioImpl.getRelation(writtenArrays.get(j), members)
+                    != ScenarioImpl.CellRelation.NONE)
+                {
+                    expected.add(elements.get(j));
+                }
+            }
+            relatedCount += expected.size();
+            assertEquals(
+                Arrays.toString(members),
+                expected,
+                index.candidates(members));
+        }
+        // Make sure that the test is not trivial.
+        assertTrue(relatedCount > memberArrays.size());
+    }
+
+    /**
+     * Tests that an index of no cells finds no cells.
+     */
+    public void testWritebackIndexEmpty() {
+        final ScenarioImpl.WritebackIndex<Integer> index =
+            new ScenarioImpl.WritebackIndex<Integer>(
+                Collections.<Member[]>emptyList(),
+                Collections.<Integer>emptyList());
+        final List<Member> stores =
+            lookupMembers(new String[] {"Store", "USA"});
+        assertEquals(
+            Collections.<Integer>emptyList(),
+            index.candidates(stores.toArray(new Member[stores.size()])));
+    }
+
+    private List<Member> lookupMembers(String[]... names) {
+        final SchemaReader schemaReader =
+            getConnection().getSchema().lookupCube("Sales", true)
+                .getSchemaReader(null).withLocus();
+        final List<Member> members = new ArrayList<Member>();
+        for (String[] name : names) {
+            members.add(
+                schemaReader.getMemberByUniqueName(
+                    Id.Segment.toList(name), true));
+        }
+        return members;
+    }
+}
+
+// End ScenarioImplTest.java
@@ -0,0 +1,122 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.rolap;
+
+import mondrian.olap.*;
+import mondrian.test.FoodMartTestCase;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Unit test for {@link SqlMemberSource}.
+ */
+public class SqlMemberSourceTest extends FoodMartTestCase {
+    public SqlMemberSourceTest() {
+    }
+
+    public SqlMemberSourceTest(String name) {
+        super(name);
+    }
+
+    protected void tearDown() throws Exception {
+        getConnection().getCacheControl(null).flushSchemaCache();
+        super.tearDown();
+    }
+
+    private SchemaReader getSchemaReader() {
+        return getConnection().getSchema().lookupCube("Sales", true)
+            .getSchemaReader(null).withLocus();
+    }
+
+    private Level getStoreLevel(int depth) {
+        final Cube cube = getConnection().getSchema().lookupCube("Sales", true);
+        for (Dimension dimension : cube.getDimensions()) {
+            if (dimension.getName().equals("Store")) {
+                return dimension.getHierarchies()[0].getLevels()[depth];
+            }
+        }
+        throw new AssertionError("Store dimension not found");
+    }
+
+    /**
+     * Tests that when one thread reads all members of a level while other
+     * threads read the children of each parent, every thread gets the same
+     * instance of each member.
+     */
+    public void testConcurrentLevelAndChildren() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (int round = 0; round < 10; round++) {
+                checkConcurrentLevelAndChildren(executor);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void checkConcurrentLevelAndChildren(ExecutorService executor)
+        throws Exception
+    {
+        getConnection().getCacheControl(null).flushSchemaCache();
+        final Level cityLevel = getStoreLevel(3);
+        final List<Member> states =
+            getSchemaReader().getLevelMembers(getStoreLevel(2), false);
+
+        // One task reads the cities; the others read the children of each
+        // state. All start at the same time.
+        final CyclicBarrier barrier = new CyclicBarrier(states.size() + 1);
+        final List<Future<List<Member>>> futures =
+            new ArrayList<Future<List<Member>>>();
+        futures.add(
+            executor.submit(
+                new Callable<List<Member>>() {
+                    public List<Member> call() throws Exception {
+                        final SchemaReader schemaReader = getSchemaReader();
+                        barrier.await();
+                        return schemaReader.getLevelMembers(cityLevel, false);
+                    }
+                }));
+        for (final Member state : states) {
+            futures.add(
+                executor.submit(
+                    new Callable<List<Member>>() {
+                        public List<Member> call() throws Exception {
+                            final SchemaReader schemaReader =
+                                getSchemaReader();
+                            barrier.await();
+                            return schemaReader.getMemberChildren(state);
+                        }
+                    }));
+        }
+
+        final Map<String, Member> cities = new HashMap<String, Member>();
+        for (Member city : futures.get(0).get()) {
+            cities.put(city.getUniqueName(), city);
+        }
+        int childCount = 0;
+        for (Future<List<Member>> future : futures.subList(1, futures.size()))
+        {
+            for (Member child : future.get()) {
+                final Member city = cities.get(child.getUniqueName());
+                assertNotNull(child.getUniqueName(), city);
+                assertSame(child.getUniqueName(), city, child);
+                assertSame(
+                    child.getUniqueName(),
+                    ((RolapCubeMember) city).getRolapMember(),
+                    ((RolapCubeMember) child).getRolapMember());
+                ++childCount;
+            }
+        }
+        assertEquals(cities.size(), childCount);
+    }
+}
+
+// End SqlMemberSourceTest.java
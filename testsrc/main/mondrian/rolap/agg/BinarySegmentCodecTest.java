@@ -0,0 +1,313 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+package mondrian.rolap.agg;
+
+import mondrian.rolap.*;
+import mondrian.spi.*;
+import mondrian.util.ByteString;
+import mondrian.util.Pair;
+
+import junit.framework.TestCase;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.*;
+
+/**
+ * Unit test for {@link BinarySegmentCodec}.
+ */
+public class BinarySegmentCodecTest extends TestCase {
+    private static final SegmentCodec[] CODECS = {
+        SegmentCodec.Factory.create(false),
+        SegmentCodec.Factory.create(true)
+    };
+
+    public void testHeader() {
+        final Timestamp timestamp = new Timestamp(1234567890123L);
+        timestamp.setNanos(123456789);
+        final SegmentHeader header =
+            new SegmentHeader(
+                "FoodMart",
+                new ByteString(new byte[] {1, 2, 3, -4}),
+                "Sales",
+                "Unit Sales",
+                Arrays.asList(
+                    new SegmentColumn(
+                        "`store`.`store_state`",
+                        10,
+                        sortedSet("CA", "OR", "WA")),
+                    new SegmentColumn(
+                        "`time_by_day`.`the_year`",
+                        3,
+                        sortedSet(1997, 1998)),
+                    new SegmentColumn(
+                        "`customer`.`gender`",
+                        2,
+                        null),
+                    new SegmentColumn(
+                        "`product`.`price`",
+                        -1,
+                        sortedSet(
+                            new BigDecimal("1.50"), new BigDecimal("2.25"))),
+                    new SegmentColumn(
+                        "`sales`.`ts`",
+                        5,
+                        sortedSet(timestamp))),
+                Collections.singletonList("`store`.`store_id` in (1, 2)"),
+                "sales_fact_1997",
+                makeBitKey(70, 3, 68),
+                Collections.singletonList(
+                    new SegmentColumn(
+                        "`store`.`store_state`",
+                        10,
+                        sortedSet("WA"))));
+        for (SegmentCodec codec : CODECS) {
+            final SegmentHeader header2 =
+                codec.decodeHeader(codec.encodeHeader(header));
+            assertEquals(header, header2);
+            assertEquals(header.hashCode(), header2.hashCode());
+            assertEquals(header.getUniqueID(), header2.getUniqueID());
+            assertEquals(header.schemaChecksum, header2.schemaChecksum);
+            assertEquals(
+                header.getConstrainedColumns(),
+                header2.getConstrainedColumns());
+            assertNull(header2.getConstrainedColumns().get(2).values);
+            assertEquals(-1, header2.getConstrainedColumns().get(3).valueCount);
+            assertEquals(
+                timestamp,
+                header2.getConstrainedColumns().get(4).values.first());
+            assertEquals(
+                header.constrainedColsBitKey,
+                header2.constrainedColsBitKey);
+            assertEquals(header.compoundPredicates, header2.compoundPredicates);
+            assertEquals(
+                header.getExcludedRegions(), header2.getExcludedRegions());
+            // Decoded values are array sets, so columns can be merged.
+            assertEquals(
+                3,
+                header2.getConstrainedColumns().get(0)
+                    .merge(header2.getExcludedRegions().get(0))
+                    .getValues().size());
+        }
+    }
+
+    public void testDenseDoubleBody() {
+        final double[] values = new double[1000];
+        final BitSet nullValues = new BitSet();
+        for (int i = 0; i < values.length; i++) {
+            if (i % 7 == 3) {
+                nullValues.set(i);
+            } else {
+                values[i] = i * 1.5d - 100d;
+            }
+        }
+        values[1] = Double.NaN;
+        values[2] = Double.NEGATIVE_INFINITY;
+        final SegmentBody body =
+            new DenseDoubleSegmentBody(nullValues, values, makeAxes(10, 100));
+        for (SegmentCodec codec : CODECS) {
+            final SegmentBody body2 = roundTrip(codec, body);
+            assertTrue(body2 instanceof DenseDoubleSegmentBody);
+            assertTrue(
+                Arrays.equals(values, (double[]) body2.getValueArray()));
+            assertEquals(nullValues, body2.getNullValueIndicators());
+        }
+    }
+
+    public void testDenseIntBody() {
+        final int[] values = new int[600];
+        final BitSet nullValues = new BitSet();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i * i * (i % 2 == 0 ? 1 : -1);
+        }
+        values[0] = Integer.MIN_VALUE;
+        values[1] = Integer.MAX_VALUE;
+        values[2] = 0;
+        nullValues.set(2);
+        // A long run of nulls, which is written as runs
+        for (int i = 100; i < 500; i++) {
+            values[i] = 0;
+            nullValues.set(i);
+        }
+        final SegmentBody body =
+            new DenseIntSegmentBody(nullValues, values, makeAxes(6, 100));
+        for (SegmentCodec codec : CODECS) {
+            final SegmentBody body2 = roundTrip(codec, body);
+            assertTrue(body2 instanceof DenseIntSegmentBody);
+            assertTrue(Arrays.equals(values, (int[]) body2.getValueArray()));
+            assertEquals(nullValues, body2.getNullValueIndicators());
+        }
+    }
+
+    public void testDenseObjectBody() {
+        final Object[] values = {
+            null, "abc", 1, 2L, 3.5d, 4.5f, (short) 6, (byte) 7, true,
+            new BigDecimal("-12.345"), new java.sql.Date(86400000L),
+            new Date(123L), 'x', RolapUtil.sqlNullValue
+        };
+        final SegmentBody body =
+            new DenseObjectSegmentBody(values, makeAxes(values.length));
+        for (SegmentCodec codec : CODECS) {
+            final SegmentBody body2 = roundTrip(codec, body);
+            assertTrue(body2 instanceof DenseObjectSegmentBody);
+            final Object[] values2 = (Object[]) body2.getValueArray();
+            assertTrue(Arrays.equals(values, values2));
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    assertEquals(values[i].getClass(), values2[i].getClass());
+                }
+            }
+            // The null value is a singleton.
+            assertSame(RolapUtil.sqlNullValue, values2[values.length - 1]);
+        }
+    }
+
+    public void testSparseBody() {
+        final Map<CellKey, Object> data = new HashMap<CellKey, Object>();
+        final Random random = new Random(0x5EED);
+        for (int i = 0; i < 300; i++) {
+            data.put(
+                CellKey.Generator.newCellKey(
+                    new int[] {
+                        random.nextInt(1000), random.nextInt(3),
+                        random.nextInt(40)
+                    }),
+                random.nextInt(10000) / 4d);
+        }
+        final List<Pair<SortedSet<Comparable>, Boolean>> axes =
+            makeAxes(999, 3, 40);
+        // Ordinal 999 is the null value of the first axis.
+        axes.set(0, Pair.of(axes.get(0).left, Boolean.TRUE));
+        data.put(CellKey.Generator.newCellKey(new int[] {999, 2, 39}), 1d);
+        final SegmentBody body = new SparseSegmentBody(data, axes);
+        for (SegmentCodec codec : CODECS) {
+            final SegmentBody body2 = roundTrip(codec, body);
+            assertTrue(body2 instanceof SparseSegmentBody);
+            assertEquals(data, body2.getValueMap());
+        }
+    }
+
+    /**
+     * Tests that both dense and sparse bodies are smaller than when they are
+     * serialized, and that compression makes them smaller still.
+     */
+    public void testSize() {
+        final double[] values = new double[20 * 50];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i % 10;
+        }
+        final SegmentBody denseBody =
+            new DenseDoubleSegmentBody(new BitSet(), values, makeAxes(20, 50));
+
+        final Map<CellKey, Object> data = new HashMap<CellKey, Object>();
+        for (int i = 0; i < 200; i++) {
+            data.put(
+                CellKey.Generator.newCellKey(new int[] {i, i % 50}),
+                (double) (i % 10));
+        }
+        final SegmentBody sparseBody =
+            new SparseSegmentBody(data, makeAxes(200, 50));
+
+        for (SegmentBody body : new SegmentBody[] {denseBody, sparseBody}) {
+            final int serializedSize = serialize(body).length;
+            final int size = CODECS[0].encodeBody(body).length;
+            final int compressedSize = CODECS[1].encodeBody(body).length;
+            assertTrue(
+                size + " < " + serializedSize, size * 2 < serializedSize);
+            assertTrue(compressedSize + " < " + size, compressedSize < size);
+        }
+    }
+
+    public void testInvalid() {
+        final SegmentBody body =
+            new DenseIntSegmentBody(new BitSet(), new int[3], makeAxes(3));
+        final SegmentCodec codec = CODECS[0];
+        final byte[] bytes = codec.encodeBody(body);
+
+        // Wrong version
+        final byte[] bytes2 = bytes.clone();
+        bytes2[2] = (byte) (BinarySegmentCodec.VERSION + 1);
+        try {
+            codec.decodeBody(bytes2);
+            fail("expected error");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("version"));
+        }
+
+        // Truncated
+        try {
+            final byte[] bytes3 = new byte[bytes.length - 1];
+            System.arraycopy(bytes, 0, bytes3, 0, bytes3.length);
+            codec.decodeBody(bytes3);
+            fail("expected error");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("truncated"));
+        }
+
+        // A body is not a header
+        try {
+            codec.decodeHeader(bytes);
+            fail("expected error");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("not a header"));
+        }
+    }
+
+    private static SegmentBody roundTrip(SegmentCodec codec, SegmentBody body) {
+        final SegmentBody body2 = codec.decodeBody(codec.encodeBody(body));
+        assertTrue(
+            Arrays.equals(body.getAxisValueSets(), body2.getAxisValueSets()));
+        assertTrue(
+            Arrays.equals(body.getNullAxisFlags(), body2.getNullAxisFlags()));
+        return body2;
+    }
+
+    private static byte[] serialize(Object o) {
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final ObjectOutputStream oos = new ObjectOutputStream(out);
+            oos.writeObject(o);
+            oos.close();
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static SortedSet<Comparable> sortedSet(Comparable... values) {
+        return new TreeSet<Comparable>(Arrays.asList(values));
+    }
+
+    private static BitKey makeBitKey(int size, int... bits) {
+        final BitKey bitKey = BitKey.Factory.makeBitKey(size);
+        for (int bit : bits) {
+            bitKey.set(bit);
+        }
+        return bitKey;
+    }
+
+    /**
+     * Creates axes of string values, each of a given size.
+     */
+    static List<Pair<SortedSet<Comparable>, Boolean>> makeAxes(int... sizes) {
+        final List<Pair<SortedSet<Comparable>, Boolean>> axes =
+            new ArrayList<Pair<SortedSet<Comparable>, Boolean>>();
+        for (int i = 0; i < sizes.length; i++) {
+            final SortedSet<Comparable> values = new TreeSet<Comparable>();
+            for (int j = 0; j < sizes[i]; j++) {
+                values.add("Axis " + i + " value " + j);
+            }
+            axes.add(Pair.of(values, Boolean.FALSE));
+        }
+        return axes;
+    }
+}
+
+// End BinarySegmentCodecTest.java
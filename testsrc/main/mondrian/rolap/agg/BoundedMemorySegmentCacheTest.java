@@ -0,0 +1,136 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+package mondrian.rolap.agg;
+
+import mondrian.rolap.BitKey;
+import mondrian.rolap.CellKey;
+import mondrian.rolap.cache.BoundedMemorySegmentCache;
+import mondrian.spi.*;
+import mondrian.util.ByteString;
+import mondrian.util.Pair;
+
+import junit.framework.TestCase;
+
+import java.util.*;
+
+/**
+ * Unit test for {@link BoundedMemorySegmentCache} and
+ * {@link SegmentFootprint}.
+ */
+public class BoundedMemorySegmentCacheTest extends TestCase {
+    public void testFootprint() {
+        final long small = SegmentFootprint.estimate(makeBody(100));
+        final long large = SegmentFootprint.estimate(makeBody(10000));
+        assertTrue(small > 800);
+        assertTrue(large > 80000);
+        assertTrue(large > 50 * small);
+
+        final Map<CellKey, Object> data = new HashMap<CellKey, Object>();
+        for (int i = 0; i < 10; i++) {
+            data.put(CellKey.Generator.newCellKey(new int[] {i}), i * 2d);
+        }
+        final long sparse =
+            SegmentFootprint.estimate(
+                new SparseSegmentBody(data, makeAxes(100)));
+        assertTrue(sparse > 10 * 8);
+        assertTrue(sparse < large);
+    }
+
+    /**
+     * Tests that a segment that was expensive to load outlives a cheap
+     * segment of the same size, even if the cheap segment was used more
+     * recently, and that listeners are told about evictions.
+     */
+    public void testCostAwareEviction() {
+        final long bodySize = SegmentFootprint.estimate(makeBody(1000));
+        final BoundedMemorySegmentCache cache =
+            new BoundedMemorySegmentCache(bodySize * 2 + bodySize / 2);
+        final List<SegmentHeader> deleted = new ArrayList<SegmentHeader>();
+        cache.addListener(
+            new SegmentCache.SegmentCacheListener() {
+                public void handle(SegmentCacheEvent e) {
+                    if (!e.isLocal()
+                        && e.getEventType()
+                        == SegmentCacheEvent.EventType.ENTRY_DELETED)
+                    {
+                        deleted.add(e.getSource());
+                    }
+                }
+            });
+        final SegmentHeader expensive = makeHeader("expensive");
+        final SegmentHeader cheap = makeHeader("cheap");
+        final SegmentHeader other = makeHeader("other");
+
+        // Took 10 seconds to load.
+        cache.put(expensive, makeBody(1000), 10000000000L);
+        cache.put(cheap, makeBody(1000), 1000000L);
+        assertNotNull(cache.get(cheap));
+        assertEquals(2, cache.getSegmentCount());
+        assertEquals(2 * bodySize, cache.getByteCount());
+
+        cache.put(other, makeBody(1000), 1000000L);
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(Collections.singletonList(cheap), deleted);
+        assertNotNull(cache.get(expensive));
+        assertNull(cache.get(cheap));
+        assertNotNull(cache.get(other));
+        assertTrue(cache.getByteCount() <= cache.getMaxByteCount());
+
+        // The expensive segment survives again; "other" has the lowest
+        // priority, so it goes.
+        deleted.clear();
+        assertNotNull(cache.get(expensive));
+        cache.put(cheap, makeBody(1000));
+        assertEquals(2, cache.getEvictionCount());
+        assertEquals(Collections.singletonList(other), deleted);
+
+        // A segment larger than the whole budget is not cached.
+        final SegmentHeader huge = makeHeader("huge");
+        assertFalse(cache.put(huge, makeBody(100000)));
+        assertNull(cache.get(huge));
+
+        assertTrue(cache.remove(expensive));
+        assertFalse(cache.remove(expensive));
+        assertEquals(1, cache.getSegmentCount());
+        assertEquals(bodySize, cache.getByteCount());
+        cache.tearDown();
+        assertEquals(0, cache.getByteCount());
+    }
+
+    private static SegmentBody makeBody(int n) {
+        final double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = i;
+        }
+        return new DenseDoubleSegmentBody(new BitSet(), values, makeAxes(n));
+    }
+
+    private static List<Pair<SortedSet<Comparable>, Boolean>> makeAxes(int n) {
+        final SortedSet<Comparable> values = new TreeSet<Comparable>();
+        for (int i = 0; i < n; i++) {
+            values.add(i);
+        }
+        return Collections.singletonList(Pair.of(values, Boolean.FALSE));
+    }
+
+    private static SegmentHeader makeHeader(String measureName) {
+        return new SegmentHeader(
+            "dummySchemaName",
+            new ByteString(new byte[]{}),
+            "dummyCubeName",
+            measureName,
+            Collections.<SegmentColumn>emptyList(),
+            Collections.<String>emptyList(),
+            "dummyFactTable",
+            BitKey.Factory.makeBitKey(3),
+            Collections.<SegmentColumn>emptyList());
+    }
+}
+
+// End BoundedMemorySegmentCacheTest.java
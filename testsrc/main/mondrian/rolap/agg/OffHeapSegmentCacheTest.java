@@ -0,0 +1,199 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+package mondrian.rolap.agg;
+
+import mondrian.rolap.BitKey;
+import mondrian.rolap.CellKey;
+import mondrian.rolap.cache.OffHeapSegmentCache;
+import mondrian.spi.*;
+import mondrian.util.ByteString;
+import mondrian.util.Pair;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Unit test for {@link OffHeapSegmentCache}.
+ */
+public class OffHeapSegmentCacheTest extends TestCase {
+    private static final int BLOCK_SIZE = 1024;
+
+    public void testRoundTripDense() {
+        final OffHeapSegmentCache cache =
+            new OffHeapSegmentCache(64 * BLOCK_SIZE, null, BLOCK_SIZE);
+        final SegmentHeader header = makeHeader("Unit Sales");
+        final BitSet nullValues = new BitSet();
+        nullValues.set(3);
+        final double[] values = new double[1000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i == 3 ? 0d : i * 1.5d;
+        }
+        final SegmentBody body0 =
+            new DenseDoubleSegmentBody(nullValues, values, makeAxes(1000));
+        assertTrue(cache.put(header, body0));
+        final SegmentBody body = cache.get(header);
+        assertNotNull(body);
+        assertTrue(
+            Arrays.equals(values, (double[]) body.getValueArray()));
+        assertEquals(nullValues, body.getNullValueIndicators());
+        assertEquals(1000, body.getAxisValueSets()[0].size());
+        assertEquals(1, cache.getSegmentCount());
+        // 1000 doubles need more than 8 blocks of 1k
+        assertTrue(cache.getByteCount() > 8 * BLOCK_SIZE);
+
+        assertTrue(cache.remove(header));
+        assertNull(cache.get(header));
+        assertEquals(0, cache.getSegmentCount());
+        assertEquals(0, cache.getByteCount());
+        assertFalse(cache.remove(header));
+        cache.tearDown();
+    }
+
+    public void testRoundTripSparse() {
+        final OffHeapSegmentCache cache =
+            new OffHeapSegmentCache(64 * BLOCK_SIZE, null, BLOCK_SIZE);
+        final SegmentHeader header = makeHeader("Store Sales");
+        final Map<CellKey, Object> data = new HashMap<CellKey, Object>();
+        data.put(CellKey.Generator.newCellKey(new int[] {2}), 7.5d);
+        data.put(CellKey.Generator.newCellKey(new int[] {5}), 11d);
+        cache.put(header, new SparseSegmentBody(data, makeAxes(10)));
+        assertEquals(data, cache.get(header).getValueMap());
+        cache.tearDown();
+    }
+
+    /**
+     * Tests that segments are evicted in least-recently-used order when the
+     * budget is exhausted, and that listeners are told about it.
+     */
+    public void testEviction() {
+        // Measure a body, then create a cache that can hold two such bodies
+        // but not three.
+        final OffHeapSegmentCache probe =
+            new OffHeapSegmentCache(1024 * BLOCK_SIZE, null, BLOCK_SIZE);
+        probe.put(makeHeader("probe"), makeBody(1000));
+        final long bodySize = probe.getByteCount();
+        probe.tearDown();
+        final OffHeapSegmentCache cache =
+            new OffHeapSegmentCache(
+                bodySize * 2 + bodySize / 2, null, BLOCK_SIZE);
+        final List<SegmentHeader> deleted = new ArrayList<SegmentHeader>();
+        cache.addListener(
+            new SegmentCache.SegmentCacheListener() {
+                public void handle(SegmentCacheEvent e) {
+                    if (!e.isLocal()
+                        && e.getEventType()
+                        == SegmentCacheEvent.EventType.ENTRY_DELETED)
+                    {
+                        deleted.add(e.getSource());
+                    }
+                }
+            });
+        final SegmentHeader h0 = makeHeader("m0");
+        final SegmentHeader h1 = makeHeader("m1");
+        final SegmentHeader h2 = makeHeader("m2");
+        cache.put(h0, makeBody(1000));
+        cache.put(h1, makeBody(1000));
+        assertEquals(0, cache.getEvictionCount());
+
+        // Touch h0, so that h1 is the least recently used.
+        assertNotNull(cache.get(h0));
+        cache.put(h2, makeBody(1000));
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(Collections.singletonList(h1), deleted);
+        assertNotNull(cache.get(h0));
+        assertNull(cache.get(h1));
+        assertNotNull(cache.get(h2));
+        assertTrue(cache.getByteCount() <= cache.getMaxByteCount());
+
+        // A segment larger than the whole budget is not cached.
+        final SegmentHeader h3 = makeHeader("m3");
+        assertFalse(cache.put(h3, makeBody(100000)));
+        assertNull(cache.get(h3));
+        cache.tearDown();
+    }
+
+    /**
+     * Tests that a segment body is decoded without holding the lock of the
+     * cache, so that readers do not wait for each other to decode.
+     */
+    public void testDecodeWithoutLock() {
+        final List<Boolean> lockHeld = new ArrayList<Boolean>();
+        final OffHeapSegmentCache cache =
+            new OffHeapSegmentCache(64 * BLOCK_SIZE, null, BLOCK_SIZE) {
+                protected SegmentBody decode(byte[] bytes) {
+                    lockHeld.add(Thread.holdsLock(this));
+                    return super.decode(bytes);
+                }
+            };
+        final SegmentHeader header = makeHeader("Unit Sales");
+        cache.put(header, makeBody(500));
+        assertEquals(
+            500,
+            ((double[]) cache.get(header).getValueArray()).length);
+        assertEquals(Collections.singletonList(false), lockHeld);
+        cache.tearDown();
+    }
+
+    public void testMemoryMapped() throws Exception {
+        final File dir = File.createTempFile("mondrian", "dir");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdir());
+        try {
+            final OffHeapSegmentCache cache =
+                new OffHeapSegmentCache(
+                    64 * BLOCK_SIZE, dir.getPath(), BLOCK_SIZE);
+            final SegmentHeader header = makeHeader("Unit Sales");
+            cache.put(header, makeBody(500));
+            assertEquals(1, dir.listFiles().length);
+            assertEquals(
+                500,
+                ((double[]) cache.get(header).getValueArray()).length);
+            cache.tearDown();
+            assertEquals(0, dir.listFiles().length);
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    private static SegmentBody makeBody(int n) {
+        final double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = i;
+        }
+        return new DenseDoubleSegmentBody(new BitSet(), values, makeAxes(n));
+    }
+
+    private static List<Pair<SortedSet<Comparable>, Boolean>> makeAxes(int n) {
+        final SortedSet<Comparable> values = new TreeSet<Comparable>();
+        for (int i = 0; i < n; i++) {
+            values.add(i);
+        }
+        return Collections.singletonList(Pair.of(values, Boolean.FALSE));
+    }
+
+    private static SegmentHeader makeHeader(String measureName) {
+        return new SegmentHeader(
+            "dummySchemaName",
+            new ByteString(new byte[]{}),
+            "dummyCubeName",
+            measureName,
+            Collections.<SegmentColumn>emptyList(),
+            Collections.<String>emptyList(),
+            "dummyFactTable",
+            BitKey.Factory.makeBitKey(3),
+            Collections.<SegmentColumn>emptyList());
+    }
+}
+
+// End OffHeapSegmentCacheTest.java
@@ -4,7 +4,7 @@
 // http://www.eclipse.org/legal/epl-v10.html.
 // You must accept the terms of that agreement to use this software.
 //
-// Copyright (c) 2002-2013 Pentaho Corporation..  All rights reserved.
+// Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
 */
 package mondrian.rolap.agg;
 
@@ -120,6 +120,178 @@ public class SegmentBuilderTest extends BatchTestCase {
         assertTrue(rollup.right instanceof DenseDoubleSegmentBody);
     }
 
+    /**
+     * Tests that rolling up dense segments of primitive values, which does
+     * not box values, gives the same cells as rolling up the same values
+     * stored as objects.
+     */
+    public void testPrimitiveRollupMatchesObjectRollup() {
+        final String[] colNames = {"col1", "col2", "col3"};
+        final String[][] colVals = dummyColumnValues(3, 7);
+        final int cellCount = 7 * 7 * 7;
+        final Random random = new Random(1234);
+        final double[] doubles = new double[cellCount];
+        final int[] ints = new int[cellCount];
+        final Object[] doubleObjects = new Object[cellCount];
+        final Object[] intObjects = new Object[cellCount];
+        final BitSet nullValues = new BitSet(cellCount);
+        for (int i = 0; i < cellCount; i++) {
+            if (random.nextInt(5) == 0) {
+                nullValues.set(i);
+                continue;
+            }
+            ints[i] = random.nextInt(100);
+            doubles[i] = ints[i] + 0.25d;
+            intObjects[i] = ints[i];
+            doubleObjects[i] = doubles[i];
+        }
+        final SegmentHeader header =
+            makeDummyHeaderBodyPair(colNames, colVals, 0).left;
+        final List<Pair<SortedSet<Comparable>, Boolean>> axes =
+            makeAxes(colVals);
+        for (RolapAggregator aggregator
+            : new RolapAggregator[] {
+                RolapAggregator.Sum,
+                RolapAggregator.Min,
+                RolapAggregator.Max})
+        {
+            for (Set<String> keepColumns
+                : Arrays.<Set<String>>asList(
+                    new HashSet<String>(Arrays.asList("col1", "col3")),
+                    Collections.singleton("col2")))
+            {
+                final Pair<SegmentHeader, SegmentBody> doubleRollup =
+                    SegmentBuilder.rollup(
+                        Collections.<SegmentHeader, SegmentBody>singletonMap(
+                            header,
+                            new DenseDoubleSegmentBody(
+                                nullValues, doubles, axes)),
+                        keepColumns, null, aggregator,
+                        Dialect.Datatype.Numeric);
+                assertTrue(
+                    doubleRollup.right instanceof DenseDoubleSegmentBody);
+                assertEquals(
+                    SegmentBuilder.rollup(
+                        Collections.<SegmentHeader, SegmentBody>singletonMap(
+                            header,
+                            new DenseObjectSegmentBody(doubleObjects, axes)),
+                        keepColumns, null, aggregator,
+                        Dialect.Datatype.Numeric).right.getValueMap(),
+                    doubleRollup.right.getValueMap());
+
+                final Pair<SegmentHeader, SegmentBody> intRollup =
+                    SegmentBuilder.rollup(
+                        Collections.<SegmentHeader, SegmentBody>singletonMap(
+                            header,
+                            new DenseIntSegmentBody(nullValues, ints, axes)),
+                        keepColumns, null, aggregator,
+                        Dialect.Datatype.Integer);
+                assertTrue(intRollup.right instanceof DenseIntSegmentBody);
+                assertEquals(
+                    SegmentBuilder.rollup(
+                        Collections.<SegmentHeader, SegmentBody>singletonMap(
+                            header,
+                            new DenseObjectSegmentBody(intObjects, axes)),
+                        keepColumns, null, aggregator,
+                        Dialect.Datatype.Integer).right.getValueMap(),
+                    intRollup.right.getValueMap());
+            }
+        }
+    }
+
+    /**
+     * Tests that the primitive and object rollups agree when several
+     * segments, whose values are all negative, contribute to each target
+     * cell. Max used to start from {@link Double#MIN_VALUE}, which is
+     * positive, so the object rollup returned null.
+     */
+    public void testRollupOfNegativeValuesFromSeveralSegments() {
+        final String[] colNames = {"col1", "col2", "col3"};
+        final String[][] allColVals = dummyColumnValues(3, 6);
+        final Random random = new Random(5678);
+        final Map<SegmentHeader, SegmentBody> doubleBodies =
+            new HashMap<SegmentHeader, SegmentBody>();
+        final Map<SegmentHeader, SegmentBody> doubleObjectBodies =
+            new HashMap<SegmentHeader, SegmentBody>();
+        final Map<SegmentHeader, SegmentBody> intBodies =
+            new HashMap<SegmentHeader, SegmentBody>();
+        final Map<SegmentHeader, SegmentBody> intObjectBodies =
+            new HashMap<SegmentHeader, SegmentBody>();
+        // Three segments, each with two of the values of col1.
+        for (int k = 0; k < 3; k++) {
+            final String[][] colVals = {
+                {allColVals[0][2 * k], allColVals[0][2 * k + 1]},
+                allColVals[1],
+                allColVals[2]
+            };
+            final int cellCount = 2 * 6 * 6;
+            final double[] doubles = new double[cellCount];
+            final int[] ints = new int[cellCount];
+            final Object[] doubleObjects = new Object[cellCount];
+            final Object[] intObjects = new Object[cellCount];
+            for (int i = 0; i < cellCount; i++) {
+                ints[i] = -1 - random.nextInt(100);
+                doubles[i] = ints[i] - 0.25d;
+                intObjects[i] = ints[i];
+                doubleObjects[i] = doubles[i];
+            }
+            final SegmentHeader header =
+                makeDummyHeaderBodyPair(colNames, colVals, 0).left;
+            final List<Pair<SortedSet<Comparable>, Boolean>> axes =
+                makeAxes(colVals);
+            doubleBodies.put(
+                header,
+                new DenseDoubleSegmentBody(new BitSet(), doubles, axes));
+            doubleObjectBodies.put(
+                header, new DenseObjectSegmentBody(doubleObjects, axes));
+            intBodies.put(
+                header, new DenseIntSegmentBody(new BitSet(), ints, axes));
+            intObjectBodies.put(
+                header, new DenseObjectSegmentBody(intObjects, axes));
+        }
+        final Set<String> keepColumns = Collections.singleton("col2");
+        for (RolapAggregator aggregator
+            : new RolapAggregator[] {
+                RolapAggregator.Sum,
+                RolapAggregator.Min,
+                RolapAggregator.Max})
+        {
+            final Pair<SegmentHeader, SegmentBody> doubleRollup =
+                SegmentBuilder.rollup(
+                    doubleBodies, keepColumns, null, aggregator,
+                    Dialect.Datatype.Numeric);
+            assertTrue(doubleRollup.right instanceof DenseDoubleSegmentBody);
+            final Map<CellKey, Object> doubleValues =
+                doubleRollup.right.getValueMap();
+            assertEquals(
+                SegmentBuilder.rollup(
+                    doubleObjectBodies, keepColumns, null, aggregator,
+                    Dialect.Datatype.Numeric).right.getValueMap(),
+                doubleValues);
+            assertEquals(6, doubleValues.size());
+            for (Object value : doubleValues.values()) {
+                assertTrue(((Double) value) < 0d);
+            }
+
+            final Pair<SegmentHeader, SegmentBody> intRollup =
+                SegmentBuilder.rollup(
+                    intBodies, keepColumns, null, aggregator,
+                    Dialect.Datatype.Integer);
+            assertTrue(intRollup.right instanceof DenseIntSegmentBody);
+            final Map<CellKey, Object> intValues =
+                intRollup.right.getValueMap();
+            assertEquals(
+                SegmentBuilder.rollup(
+                    intObjectBodies, keepColumns, null, aggregator,
+                    Dialect.Datatype.Integer).right.getValueMap(),
+                intValues);
+            assertEquals(6, intValues.size());
+            for (Object value : intValues.values()) {
+                assertTrue(((Integer) value) < 0);
+            }
+        }
+    }
+
     public void testBadRollupCausesGreaterThan12Iterations() {
         // http://jira.pentaho.com/browse/MONDRIAN-1729
         // The first two queries populate the cache with segments
@@ -545,6 +717,20 @@ public class SegmentBuilderTest extends BatchTestCase {
                 axes));
     }
 
+    private List<Pair<SortedSet<Comparable>, Boolean>> makeAxes(
+        String[][] colVals)
+    {
+        final List<Pair<SortedSet<Comparable>, Boolean>> axes =
+            new ArrayList<Pair<SortedSet<Comparable>, Boolean>>();
+        for (String[] vals : colVals) {
+            axes.add(
+                Pair.<SortedSet<Comparable>, Boolean>of(
+                    new TreeSet<Comparable>(Arrays.<Comparable>asList(vals)),
+                    Boolean.FALSE));
+        }
+        return axes;
+    }
+
     private String [][] dummyColumnValues(int cols, int numVals) {
         String [][] dummyColVals = new String[cols][numVals];
         for (int i = 0; i < cols; i++) {
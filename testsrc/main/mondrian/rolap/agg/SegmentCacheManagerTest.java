@@ -0,0 +1,229 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+package mondrian.rolap.agg;
+
+import mondrian.olap.*;
+import mondrian.rolap.RolapConnection;
+import mondrian.rolap.RolapCube;
+import mondrian.rolap.RolapStar;
+import mondrian.server.Execution;
+import mondrian.server.Locus;
+import mondrian.server.StringRepositoryContentFinder;
+import mondrian.server.monitor.ServerInfo;
+import mondrian.test.FoodMartTestCase;
+import mondrian.test.TestContext;
+
+import java.util.*;
+
+/**
+ * Unit test for the shards of {@link SegmentCacheManager}.
+ */
+public class SegmentCacheManagerTest extends FoodMartTestCase {
+    private static final String[] CUBE_NAMES = {
+        "Sales", "Warehouse", "Store", "HR", "Sales Ragged", "Sales 2"
+    };
+
+    /**
+     * Tests that commands for a star run on the thread of the shard that
+     * owns it, that {@link SegmentCacheManager#executeAll} visits every
+     * shard, and that each shard reports its statistics.
+     */
+    public void testShards() {
+        propSaver.set(
+            propSaver.properties.SegmentCacheManagerNumberShards, 4);
+        final Connection connection = getTestContext().getConnection();
+        final SegmentCacheManager cacheMgr =
+            new SegmentCacheManager(MondrianServer.forConnection(connection));
+        try {
+            assertEquals(4, cacheMgr.getShardCount());
+            final Locus locus =
+                new Locus(Execution.NONE, "SegmentCacheManagerTest", null);
+            for (String cubeName : CUBE_NAMES) {
+                final RolapStar star =
+                    ((RolapCube) connection.getSchema()
+                        .lookupCube(cubeName, true)).getStar();
+                final int shard = cacheMgr.getShard(star);
+                assertTrue(shard >= 0 && shard < 4);
+                assertEquals(shard, cacheMgr.getShard(star));
+                assertFalse(cacheMgr.isLocal(star));
+                final Boolean local =
+                    cacheMgr.execute(
+                        star,
+                        new SegmentCacheManager.Command<Boolean>() {
+                            public Boolean call() {
+                                // Asserts that the index is owned by this
+                                // thread.
+                                cacheMgr.getIndexRegistry().getIndex(star)
+                                    .cancel(Execution.NONE);
+                                return cacheMgr.isLocal(star)
+                                    && cacheMgr.isActorThread(
+                                        Thread.currentThread());
+                            }
+                            public Locus getLocus() {
+                                return locus;
+                            }
+                        });
+                assertTrue(cubeName, local);
+            }
+            assertFalse(cacheMgr.isActorThread(Thread.currentThread()));
+
+            final List<String> threadNames =
+                cacheMgr.executeAll(
+                    new SegmentCacheManager.Command<String>() {
+                        public String call() {
+                            return Thread.currentThread().getName();
+                        }
+                        public Locus getLocus() {
+                            return locus;
+                        }
+                    });
+            assertEquals(4, threadNames.size());
+            assertEquals(4, new HashSet<String>(threadNames).size());
+
+            final List<SegmentCacheManager.ShardStatistics> statistics =
+                cacheMgr.getShardStatistics();
+            assertEquals(4, statistics.size());
+            long messageCount = 0;
+            for (int i = 0; i < 4; i++) {
+                final SegmentCacheManager.ShardStatistics shardStatistics =
+                    statistics.get(i);
+                assertEquals(i, shardStatistics.shard);
+                assertEquals(threadNames.get(i), shardStatistics.threadName);
+                assertTrue(shardStatistics.queueDepth >= 0);
+                assertTrue(
+                    shardStatistics.maxLatencyNanos
+                    >= shardStatistics.getAverageLatencyNanos());
+                messageCount += shardStatistics.messageCount;
+            }
+            // A shard counts a message just after it replies, so the
+            // executeAll command may not be counted yet.
+            assertTrue(messageCount >= CUBE_NAMES.length);
+        } finally {
+            cacheMgr.shutdown();
+        }
+    }
+
+    /**
+     * Tests a query over a virtual cube whose base cubes' stars belong to
+     * different shards. The cell requests of each batch are split by shard,
+     * and the responses are merged; the result must be the same as with one
+     * shard. Each shard reports its statistics to the server's monitor.
+     */
+    public void testVirtualCubeAcrossShards() throws InterruptedException {
+        final String mdx =
+            "select {[Measures].[Unit Sales], [Measures].[Units Shipped],\n"
+            + "  [Measures].[Warehouse Sales]} on 0,\n"
+            + " {[Product].Children} on 1\n"
+            + "from [Warehouse and Sales]\n"
+            + "where [Time].[1997]";
+        final Connection connection = getTestContext().getConnection();
+        final RolapStar salesStar =
+            ((RolapCube) connection.getSchema().lookupCube("Sales", true))
+                .getStar();
+        final RolapStar warehouseStar =
+            ((RolapCube) connection.getSchema().lookupCube("Warehouse", true))
+                .getStar();
+        assertNotSame(salesStar, warehouseStar);
+
+        // Choose a number of shards that puts the stars in different
+        // shards. (The shard of a star is its hash code modulo the number
+        // of shards.)
+        final int salesHash = salesStar.hashCode() & Integer.MAX_VALUE;
+        final int warehouseHash = warehouseStar.hashCode() & Integer.MAX_VALUE;
+        int shardCount = 2;
+        while (salesHash % shardCount == warehouseHash % shardCount) {
+            ++shardCount;
+        }
+        propSaver.set(
+            propSaver.properties.SegmentCacheManagerNumberShards, shardCount);
+
+        // A server of our own, so that its cache manager has the shards, and
+        // its cache is empty.
+        final MondrianServer server =
+            MondrianServer.createWithRepository(
+                new StringRepositoryContentFinder("foo bar"), null);
+        final RolapConnection shardedConnection =
+            new RolapConnection(
+                server, getTestContext().getConnectionProperties(), null);
+        try {
+            final SegmentCacheManager cacheMgr =
+                server.getAggregationManager().cacheMgr;
+            assertEquals(shardCount, cacheMgr.getShardCount());
+            final int salesShard = cacheMgr.getShard(salesStar);
+            final int warehouseShard = cacheMgr.getShard(warehouseStar);
+            assertTrue(salesShard != warehouseShard);
+
+            final String actual =
+                TestContext.toString(
+                    shardedConnection.execute(
+                        shardedConnection.parseQuery(mdx)));
+            final String expected =
+                TestContext.toString(
+                    connection.execute(connection.parseQuery(mdx)));
+            assertEquals(expected, actual);
+
+            // Both shards did work for the query.
+            final List<SegmentCacheManager.ShardStatistics> statistics =
+                cacheMgr.getShardStatistics();
+            assertTrue(statistics.get(salesShard).messageCount > 0);
+            assertTrue(statistics.get(warehouseShard).messageCount > 0);
+
+            // Both shards report to the server's monitor. Shards report
+            // asynchronously, so wait for the reports to arrive.
+            final String salesKey =
+                server.getId() + ":" + statistics.get(salesShard).threadName;
+            final String warehouseKey =
+                server.getId() + ":"
+                + statistics.get(warehouseShard).threadName;
+            final long deadline = System.currentTimeMillis() + 10000;
+            ServerInfo serverInfo = server.getMonitor().getServer();
+            while (!(serverInfo.cellCacheShardQueueDepths.containsKey(salesKey)
+                    && serverInfo.cellCacheShardQueueDepths.containsKey(
+                        warehouseKey))
+                && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(10);
+                serverInfo = server.getMonitor().getServer();
+            }
+            assertTrue(
+                serverInfo.cellCacheShardQueueDepths.toString(),
+                serverInfo.cellCacheShardQueueDepths.containsKey(salesKey));
+            assertTrue(
+                serverInfo.cellCacheShardQueueDepths.toString(),
+                serverInfo.cellCacheShardQueueDepths.containsKey(
+                    warehouseKey));
+            assertTrue(serverInfo.cellCacheShardMessageCount > 0);
+        } finally {
+            shardedConnection.close();
+            server.shutdown();
+        }
+    }
+
+    /**
+     * Tests that a non-positive number of shards means one shard.
+     */
+    public void testSingleShard() {
+        propSaver.set(
+            propSaver.properties.SegmentCacheManagerNumberShards, 0);
+        final SegmentCacheManager cacheMgr =
+            new SegmentCacheManager(
+                MondrianServer.forConnection(
+                    getTestContext().getConnection()));
+        try {
+            assertEquals(1, cacheMgr.getShardCount());
+            assertEquals(
+                "mondrian.rolap.agg.SegmentCacheManager$ACTOR",
+                cacheMgr.getShardStatistics().get(0).threadName);
+        } finally {
+            cacheMgr.shutdown();
+        }
+    }
+}
+
+// End SegmentCacheManagerTest.java
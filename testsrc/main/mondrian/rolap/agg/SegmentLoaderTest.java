@@ -619,6 +619,64 @@ public class SegmentLoaderTest extends BatchTestCase {
             new SegmentLoader(cacheMgr).getRollupBitKey(4, rowList, 5));
     }
 
+    /**
+     * Tests {@link AxisValueAccumulator}, which collects distinct axis values
+     * without boxing, gives the same result as a TreeSet.
+     */
+    public void testAxisValueAccumulator() {
+        final Random random = new Random(1234);
+        final AxisValueAccumulator ints =
+            AxisValueAccumulator.forType(SqlStatement.Type.INT);
+        final AxisValueAccumulator longs =
+            AxisValueAccumulator.forType(SqlStatement.Type.LONG);
+        final AxisValueAccumulator doubles =
+            AxisValueAccumulator.forType(SqlStatement.Type.DOUBLE);
+        final SortedSet<Comparable> intSet = new TreeSet<Comparable>();
+        final SortedSet<Comparable> longSet = new TreeSet<Comparable>();
+        final SortedSet<Comparable> doubleSet = new TreeSet<Comparable>();
+        for (int i = 0; i < 10000; i++) {
+            // Enough distinct values that the arrays grow, and enough
+            // duplicates that they are compacted.
+            final int x = random.nextInt(500) - 250;
+            ints.add(x);
+            intSet.add(x);
+            longs.add(x * 10000000000L);
+            longSet.add(x * 10000000000L);
+            doubles.add(x / 4d);
+            doubleSet.add(x / 4d);
+        }
+        doubles.add(-0d);
+        doubleSet.add(-0d);
+        doubles.add(Double.NaN);
+        doubleSet.add(Double.NaN);
+        doubles.add(Double.NaN);
+
+        assertEquals(intSet.size(), ints.size());
+        assertEquals(doubleSet.size(), doubles.size());
+        checkAccumulator(intSet, ints);
+        checkAccumulator(longSet, longs);
+        checkAccumulator(doubleSet, doubles);
+
+        assertNull(AxisValueAccumulator.forType(SqlStatement.Type.STRING));
+        try {
+            ints.add(1.5d);
+            fail("expected error");
+        } catch (UnsupportedOperationException e) {
+            // ok
+        }
+    }
+
+    private void checkAccumulator(
+        SortedSet<Comparable> expected,
+        AxisValueAccumulator accumulator)
+    {
+        final SortedSet<Comparable> actual = new TreeSet<Comparable>();
+        accumulator.addTo(actual);
+        assertEquals(
+            new ArrayList<Comparable>(expected),
+            new ArrayList<Comparable>(actual));
+    }
+
     public void testGroupingSetsUtilForMissingGroupingBitKeys() {
         List<GroupingSet> groupingSets = new ArrayList<GroupingSet>();
         groupingSets.add(getDefaultGroupingSet());
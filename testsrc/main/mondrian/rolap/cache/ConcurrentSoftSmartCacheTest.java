@@ -0,0 +1,142 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.rolap.cache;
+
+import junit.framework.TestCase;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Unit test for {@link ConcurrentSoftSmartCache}.
+ */
+public class ConcurrentSoftSmartCacheTest extends TestCase {
+    public ConcurrentSoftSmartCacheTest() {
+    }
+
+    public ConcurrentSoftSmartCacheTest(String name) {
+        super(name);
+    }
+
+    public void testBasic() {
+        final SmartCache<String, String> cache =
+            new ConcurrentSoftSmartCache<String, String>();
+        assertNull(cache.put("a", "1"));
+        assertNull(cache.put("b", "2"));
+        assertEquals("1", cache.put("a", "3"));
+        assertEquals("3", cache.get("a"));
+        assertEquals(2, cache.size());
+
+        // Putting null is the same as removing.
+        assertEquals("2", cache.put("b", null));
+        assertNull(cache.get("b"));
+        assertEquals("3", cache.remove("a"));
+        assertEquals(0, cache.size());
+
+        cache.put("c", "4");
+        cache.clear();
+        assertNull(cache.get("c"));
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * Tests that {@link SmartCache#putIfAbsent} keeps the first value, and
+     * that its result agrees with {@link SoftSmartCache}.
+     */
+    public void testPutIfAbsent() {
+        final List<SmartCache<String, String>> caches =
+            Arrays.<SmartCache<String, String>>asList(
+                new ConcurrentSoftSmartCache<String, String>(),
+                new SoftSmartCache<String, String>());
+        for (SmartCache<String, String> cache : caches) {
+            assertNull(cache.putIfAbsent("a", "1"));
+            assertEquals("1", cache.putIfAbsent("a", "2"));
+            assertEquals("1", cache.get("a"));
+            assertEquals(1, cache.size());
+        }
+    }
+
+    /**
+     * Tests that a task can iterate over the cache and remove entries.
+     */
+    public void testExecute() {
+        final SmartCache<String, String> cache =
+            new ConcurrentSoftSmartCache<String, String>();
+        for (int i = 0; i < 10; i++) {
+            cache.put("k" + i, "v" + i);
+        }
+        final List<String> seen = new ArrayList<String>();
+        cache.execute(
+            new SmartCache.SmartCacheTask<String, String>() {
+                public void execute(
+                    Iterator<Map.Entry<String, String>> iterator)
+                {
+                    while (iterator.hasNext()) {
+                        final Map.Entry<String, String> entry =
+                            iterator.next();
+                        seen.add(entry.getKey() + "=" + entry.getValue());
+                        if (entry.getKey().compareTo("k5") < 0) {
+                            iterator.remove();
+                        }
+                    }
+                }
+            });
+        Collections.sort(seen);
+        assertEquals(
+            "[k0=v0, k1=v1, k2=v2, k3=v3, k4=v4, k5=v5, k6=v6, k7=v7, "
+            + "k8=v8, k9=v9]",
+            seen.toString());
+        assertEquals(5, cache.size());
+        assertNull(cache.get("k4"));
+        assertEquals("v5", cache.get("k5"));
+    }
+
+    /**
+     * Tests that threads can read and write the cache at the same time.
+     */
+    public void testConcurrent() throws Exception {
+        final SmartCache<Integer, Integer> cache =
+            new ConcurrentSoftSmartCache<Integer, Integer>();
+        final int threadCount = 8;
+        final ExecutorService executor =
+            Executors.newFixedThreadPool(threadCount);
+        try {
+            final List<Future<Integer>> futures =
+                new ArrayList<Future<Integer>>();
+            for (int t = 0; t < threadCount; t++) {
+                final int offset = t;
+                futures.add(
+                    executor.submit(
+                        new Callable<Integer>() {
+                            public Integer call() {
+                                int errorCount = 0;
+                                for (int i = 0; i < 10000; i++) {
+                                    final int key = (i * 7 + offset) % 1000;
+                                    final Integer value = cache.get(key);
+                                    if (value == null) {
+                                        cache.put(key, key * 2);
+                                    } else if (value != key * 2) {
+                                        ++errorCount;
+                                    }
+                                }
+                                return errorCount;
+                            }
+                        }));
+            }
+            for (Future<Integer> future : futures) {
+                assertEquals(0, future.get().intValue());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
+
+// End ConcurrentSoftSmartCacheTest.java
@@ -320,6 +320,24 @@ public class DialectTest extends TestCase {
         }
     }
 
+    /**
+     * Tests that a dialect which claims to support LIMIT and OFFSET generates
+     * a clause that the database accepts after ORDER BY.
+     */
+    public void testLimitAndOffset() {
+        if (!getDialect().supportsLimitAndOffset()) {
+            return;
+        }
+        final String sql =
+            dialectize(
+                "select [customer_id] from [customer]"
+                + " order by [customer_id] ");
+        assertQuerySucceeds(
+            sql + getDialect().generateLimitAndOffset(10, 20));
+        assertQuerySucceeds(
+            sql + getDialect().generateLimitAndOffset(0, 20));
+    }
+
     public void testRequiresFromQueryAlias() {
         if (getDialect().requiresAliasForFromQuery()) {
             assertTrue(getDialect().allowsFromQuery());
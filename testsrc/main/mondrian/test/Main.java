@@ -21,6 +21,7 @@ import mondrian.olap.type.TypeTest;
 import mondrian.rolap.*;
 import mondrian.rolap.agg.*;
 import mondrian.rolap.aggmatcher.*;
+import mondrian.rolap.cache.ConcurrentSoftSmartCacheTest;
 import mondrian.rolap.sql.SelectNotInGroupByTest;
 import mondrian.rolap.sql.SqlQueryTest;
 import mondrian.test.build.CodeComplianceTest;
@@ -31,6 +32,7 @@ import mondrian.udf.NullValueTest;
 import mondrian.util.*;
 import mondrian.xmla.*;
 import mondrian.xmla.impl.DynamicDatasourceXmlaServletTest;
+import mondrian.xmla.impl.SoapStreamingOutputStreamTest;
 import mondrian.xmla.test.XmlaTest;
 
 import junit.framework.Test;
@@ -205,6 +207,10 @@ public class Main extends TestSuite {
                 return suite;
             }
             addTest(suite, SegmentBuilderTest.class);
+            addTest(suite, OffHeapSegmentCacheTest.class);
+            addTest(suite, BoundedMemorySegmentCacheTest.class);
+            addTest(suite, SegmentCacheManagerTest.class);
+            addTest(suite, BinarySegmentCodecTest.class);
             addTest(suite, NativeFilterMatchingTest.class);
             addTest(suite, RolapConnectionTest.class);
             addTest(suite, FilteredIterableTest.class);
@@ -217,6 +223,7 @@ public class Main extends TestSuite {
             addTest(suite, ResultComparatorTest.class, "suite");
             addTest(suite, DrillThroughTest.class);
             addTest(suite, ScenarioTest.class);
+            addTest(suite, ScenarioImplTest.class);
             addTest(suite, BasicQueryTest.class);
             addTest(suite, SegmentCacheTest.class);
             addTest(suite, CVBasicTest.class, "suite");
@@ -232,6 +239,13 @@ public class Main extends TestSuite {
             addTest(suite, OrderTest.class, "suite");
             addTest(suite, CacheControlTest.class);
             addTest(suite, MemberCacheControlTest.class);
+            addTest(suite, RolapResultCacheTest.class);
+            addTest(suite, QuerySchedulerTest.class);
+            addTest(suite, RolapStatisticsStoreTest.class);
+            addTest(suite, ConcurrentSoftSmartCacheTest.class);
+            addTest(suite, CompactMemberTest.class);
+            addTest(suite, SqlMemberSourceTest.class);
+            addTest(suite, RolapMemberSnapshotTest.class);
             addTest(suite, FunctionTest.class);
             addTest(suite, CurrentDateMemberUdfTest.class);
             addTest(suite, PartialSortTest.class);
@@ -265,8 +279,11 @@ public class Main extends TestSuite {
             addTest(suite, XmlaExcel2007Test.class);
             addTest(suite, XmlaCognosTest.class);
             addTest(suite, XmlaTabularTest.class);
+            addTest(suite, XmlaRowsetCacheTest.class);
+            addTest(suite, XmlaMembersRowsetTest.class);
             addTest(suite, XmlaTests.class);
             addTest(suite, DynamicDatasourceXmlaServletTest.class);
+            addTest(suite, SoapStreamingOutputStreamTest.class);
             addTest(suite, XmlaTest.class, "suite");
             if (isRunOnce()) {
                 addTest(suite, TestCalculatedMembers.class);
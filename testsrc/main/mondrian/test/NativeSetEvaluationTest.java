@@ -229,6 +229,206 @@ public class NativeSetEvaluationTest extends BatchTestCase {
           assertQueryReturns(mdx, NativeTopCountWithAgg.result);
     }
 
+    /**
+     * Tests that Order over a stored measure, breaking the hierarchy, is
+     * evaluated in SQL, and gives the same result as the interpreter.
+     */
+    public void testNativeOrder() {
+        propSaver.set(propSaver.properties.EnableNativeOrder, true);
+        final String mdx =
+            "select {[Measures].[Unit Sales]} on 0,\n"
+            + "non empty Order([Store].[Store City].Members,\n"
+            + "  [Measures].[Unit Sales], BDESC) on 1\n"
+            + "from [Sales]\n"
+            + "where [Time].[1997]";
+        checkNative(0, 13, mdx, null, true);
+
+        final String ascMdx =
+            "select {[Measures].[Unit Sales]} on 0,\n"
+            + "non empty Order([Store].[Store City].Members,\n"
+            + "  [Measures].[Store Sales], BASC) on 1\n"
+            + "from [Sales]\n"
+            + "where [Time].[1997]";
+        checkNative(0, 13, ascMdx, null, true);
+    }
+
+    /**
+     * Tests that Order falls back to the interpreter if the sort key is a
+     * calculated or distinct-count measure, or if the order keeps the
+     * hierarchy, or if the axis is not non-empty.
+     */
+    public void testNativeOrderFallback() {
+        propSaver.set(propSaver.properties.EnableNativeOrder, true);
+        checkNotNative(
+            13,
+            "with member [Measures].[Double Sales] as\n"
+            + "  '[Measures].[Unit Sales] * 2'\n"
+            + "select {[Measures].[Unit Sales]} on 0,\n"
+            + "non empty Order([Store].[Store City].Members,\n"
+            + "  [Measures].[Double Sales], BDESC) on 1\n"
+            + "from [Sales]\n"
+            + "where [Time].[1997]");
+        checkNotNative(
+            13,
+            "select {[Measures].[Unit Sales]} on 0,\n"
+            + "non empty Order([Store].[Store City].Members,\n"
+            + "  [Measures].[Customer Count], BDESC) on 1\n"
+            + "from [Sales]\n"
+            + "where [Time].[1997]");
+        checkNotNative(
+            13,
+            "select {[Measures].[Unit Sales]} on 0,\n"
+            + "non empty Order([Store].[Store City].Members,\n"
+            + "  [Measures].[Unit Sales], DESC) on 1\n"
+            + "from [Sales]\n"
+            + "where [Time].[1997]");
+        checkNotNative(
+            7,
+            "select {[Measures].[Unit Sales]} on 0,\n"
+            + "Order([Store].[USA].[WA].Children,\n"
+            + "  [Measures].[Unit Sales], BDESC) on 1\n"
+            + "from [Sales]\n"
+            + "where [Time].[1997]");
+    }
+
+    /**
+     * Tests that Head and Subset over a non-empty set are evaluated in SQL,
+     * with the window pushed into the query, and give the same result as the
+     * interpreter.
+     */
+    public void testNativeSubset() {
+        propSaver.set(propSaver.properties.EnableNativeSubset, true);
+        checkNative(
+            0,
+            10,
+            "select {[Measures].[Unit Sales]} on 0,\n"
+            + "Subset(NonEmpty([Customers].[Name].Members), 100, 10) on 1\n"
+            + "from [Sales]\n"
+            + "where [Time].[1997]",
+            null,
+            true);
+        checkNative(
+            0,
+            5,
+            "select {[Measures].[Unit Sales]} on 0,\n"
+            + "Head(NonEmptyCrossJoin([Gender].[Gender].Members,\n"
+            + "  [Store].[Store City].Members), 5) on 1\n"
+            + "from [Sales]\n"
+            + "where [Time].[1997]",
+            null,
+            true);
+    }
+
+    /**
+     * Tests that Head and Subset fall back to the interpreter if the set may
+     * contain empty tuples, if the window is not a literal, or if the current
+     * measure is calculated.
+     */
+    public void testNativeSubsetFallback() {
+        propSaver.set(propSaver.properties.EnableNativeSubset, true);
+        checkNotNative(
+            10,
+            "select {[Measures].[Unit Sales]} on 0,\n"
+            + "Subset([Customers].[Name].Members, 100, 10) on 1\n"
+            + "from [Sales]\n"
+            + "where [Time].[1997]");
+        checkNotNative(
+            10,
+            "select {[Measures].[Unit Sales]} on 0,\n"
+            + "Subset(NonEmpty([Customers].[Name].Members), 100, 5 + 5) on 1\n"
+            + "from [Sales]\n"
+            + "where [Time].[1997]");
+        checkNotNative(
+            5,
+            "with member [Measures].[Double Sales] as\n"
+            + "  '[Measures].[Unit Sales] * 2'\n"
+            + "select Head(NonEmpty([Store].[Store City].Members), 5) on 0\n"
+            + "from [Sales]\n"
+            + "where ([Time].[1997], [Measures].[Double Sales])");
+    }
+
+    /**
+     * Tests that Count of a non-empty set is computed in SQL.
+     */
+    public void testNativeCount() {
+        propSaver.set(propSaver.properties.EnableNativeCount, true);
+        checkNative(
+            0,
+            2,
+            "with member [Measures].[Active Customers] as\n"
+            + "  'Count(NonEmpty([Customers].[Name].Members,\n"
+            + "    {[Measures].[Unit Sales]}))'\n"
+            + "select {[Measures].[Active Customers]} on 0,\n"
+            + "{[Gender].[Gender].Members} on 1\n"
+            + "from [Sales]\n"
+            + "where [Time].[1997].[Q1]",
+            null,
+            true);
+        checkNative(
+            0,
+            3,
+            "with member [Measures].[Active Pairs] as\n"
+            + "  'Count(NonEmpty(CrossJoin([Customers].[City].Members,\n"
+            + "    [Product].[Product Family].Members),\n"
+            + "    [Measures].[Unit Sales]))'\n"
+            + "select {[Measures].[Active Pairs]} on 0,\n"
+            + "{[Store].[Store Country].Members} on 1\n"
+            + "from [Sales]\n"
+            + "where [Time].[1997]",
+            null,
+            true);
+    }
+
+    /**
+     * Tests that Count falls back to the interpreter if the set may contain
+     * empty tuples, if emptiness is decided by a calculated measure, or if
+     * the role restricts access to the cube.
+     */
+    public void testNativeCountFallback() {
+        propSaver.set(propSaver.properties.EnableNativeCount, true);
+        checkNotNative(
+            2,
+            "with member [Measures].[Cities] as\n"
+            + "  'Count([Customers].[City].Members)'\n"
+            + "select {[Measures].[Cities]} on 0,\n"
+            + "{[Gender].[Gender].Members} on 1\n"
+            + "from [Sales]\n"
+            + "where [Time].[1997]");
+        checkNotNative(
+            2,
+            "with member [Measures].[Double Sales] as\n"
+            + "  '[Measures].[Unit Sales] * 2'\n"
+            + "member [Measures].[Cities] as\n"
+            + "  'Count(NonEmpty([Customers].[City].Members,\n"
+            + "    {[Measures].[Double Sales]}))'\n"
+            + "select {[Measures].[Cities]} on 0,\n"
+            + "{[Gender].[Gender].Members} on 1\n"
+            + "from [Sales]\n"
+            + "where [Time].[1997]");
+
+        // With a role that hides customers, the count must agree with the
+        // interpreter.
+        final String mdx =
+            "with member [Measures].[Active Customers] as\n"
+            + "  'Count(NonEmpty([Customers].[Name].Members,\n"
+            + "    {[Measures].[Unit Sales]}))'\n"
+            + "select {[Measures].[Active Customers]} on 0,\n"
+            + "{[Gender].[Gender].Members} on 1\n"
+            + "from [Sales]\n"
+            + "where [Time].[1997].[Q1]";
+        final String nativeResult =
+            TestContext.toString(
+                getTestContext().withFreshConnection()
+                    .withRole("California manager").executeQuery(mdx));
+        propSaver.set(propSaver.properties.EnableNativeCount, false);
+        getConnection().getCacheControl(null).flushSchemaCache();
+        final String interpretedResult =
+            TestContext.toString(
+                getTestContext().withFreshConnection()
+                    .withRole("California manager").executeQuery(mdx));
+        assertEquals(interpretedResult, nativeResult);
+    }
+
     public void testNativeFilterWithAggDescendants() {
       final boolean useAgg =
           MondrianProperties.instance().UseAggregates.get()
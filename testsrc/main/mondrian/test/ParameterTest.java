@@ -11,6 +11,7 @@
 
 package mondrian.test;
 
+import mondrian.calc.Calc;
 import mondrian.olap.*;
 import mondrian.rolap.RolapConnectionProperties;
 
@@ -18,10 +19,14 @@ import junit.framework.Assert;
 
 import org.eigenbase.util.property.Property;
 
+import org.olap4j.CellSet;
+import org.olap4j.OlapConnection;
+import org.olap4j.PreparedOlapStatement;
 import org.olap4j.impl.Olap4jUtil;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.sql.SQLException;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.util.*;
@@ -1201,6 +1206,75 @@ public class ParameterTest extends FoodMartTestCase {
             + "from [Warehouse]",
             "MDX object '[Customers]' not found in cube 'Warehouse'");
     }
+
+    /**
+     * Tests that a query that is executed several times compiles the formulas
+     * of its calculated members only once, and that the compiled formulas
+     * see new parameter values.
+     */
+    public void testCompiledExpressionsReused() {
+        final Connection connection = getConnection();
+        final Query query =
+            connection.parseQuery(
+                "with member [Measures].[Sales Plus] as\n"
+                + " '[Measures].[Unit Sales]\n"
+                + "   + Parameter(\"Bonus\", NUMERIC, 1)'\n"
+                + "select {[Measures].[Sales Plus]} on columns,\n"
+                + " {[Store].[USA].[CA]} on rows\n"
+                + "from [Sales]");
+        Result result = connection.execute(query);
+        assertEquals(
+            74749d,
+            ((Number) result.getCell(new int[] {0, 0}).getValue())
+                .doubleValue());
+        final Map<Object, Calc> compiledExps =
+            new HashMap<Object, Calc>(query.getCompiledExpressions());
+        assertFalse(compiledExps.isEmpty());
+
+        query.setParameter("Bonus", 1000);
+        result = connection.execute(query);
+        assertEquals(
+            75748d,
+            ((Number) result.getCell(new int[] {0, 0}).getValue())
+                .doubleValue());
+        // Same calcs as the first execution.
+        assertEquals(compiledExps, query.getCompiledExpressions());
+    }
+
+    /**
+     * Tests that a prepared statement is prepared again, keeping its
+     * parameter values, if the role of the connection changes.
+     */
+    public void testPreparedStatementRoleChange() throws SQLException {
+        final OlapConnection connection =
+            getTestContext().getOlap4jConnection();
+        try {
+            final PreparedOlapStatement pstmt =
+                connection.prepareOlapStatement(
+                    "select {[Measures].[Unit Sales]} on columns,\n"
+                    + " Filter([Store].[USA].Children,\n"
+                    + "   [Measures].[Unit Sales]\n"
+                    + "     > Parameter(\"Min\", NUMERIC, 0))\n"
+                    + " on rows\n"
+                    + "from [Sales]");
+            pstmt.setInt(1, 80000);
+            CellSet cellSet = pstmt.executeQuery();
+            assertEquals(1, cellSet.getAxes().get(1).getPositionCount());
+            assertEquals(
+                "[Store].[USA].[WA]",
+                cellSet.getAxes().get(1).getPositions().get(0).getMembers()
+                    .get(0).getUniqueName());
+
+            // California manager sees only CA, whose sales are below the
+            // parameter value. (If the value were lost, it would be 0.)
+            connection.setRoleName("California manager");
+            cellSet = pstmt.executeQuery();
+            assertEquals(0, cellSet.getAxes().get(1).getPositionCount());
+            assertTrue(pstmt.isSet(1));
+        } finally {
+            connection.close();
+        }
+    }
 }
 
 // End ParameterTest.java
@@ -12,6 +12,8 @@ package mondrian.test;
 import mondrian.olap.*;
 import mondrian.olap.fun.FunUtil;
 import mondrian.olap.type.*;
+import mondrian.rolap.SqlStatement;
+import mondrian.rolap.agg.AxisValueAccumulator;
 import mondrian.spi.UserDefinedFunction;
 import mondrian.util.Bug;
 
@@ -19,6 +21,10 @@ import org.apache.commons.collections.ComparatorUtils;
 import org.apache.log4j.Logger;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -662,6 +668,157 @@ public class PerformanceTest extends FoodMartTestCase {
         }
     }
 
+    /**
+     * Benchmark for collecting the distinct values of a segment axis while
+     * loading a segment. Compares the old approach, which boxed each value
+     * and added it to a {@link TreeSet}, with {@link AxisValueAccumulator},
+     * which collects values in a primitive array and boxes each distinct
+     * value once.
+     *
+     * <p>The old approach allocates an object for every row (except
+     * integers between -128 and 127); the accumulator allocates only when
+     * its array grows, plus one object per distinct value at the end.</p>
+     *
+     * <p>Runs 5M rows if debug logging is enabled, otherwise a quick
+     * 100K-row check of correctness.</p>
+     */
+    public void testSegmentAxisValueIngestion() {
+        final int rowCount = LOGGER.isDebugEnabled() ? 5000000 : 100000;
+        final int runCount = LOGGER.isDebugEnabled() ? 10 : 1;
+        final int distinctCount = 5000;
+        final int[] rows = new int[rowCount];
+        final Random random = new Random(1235);
+        for (int i = 0; i < rowCount; i++) {
+            rows[i] = 1000 + random.nextInt(distinctCount);
+        }
+
+        final Statistician boxedStatistician =
+            new Statistician("testSegmentAxisValueIngestion: TreeSet");
+        final Statistician primitiveStatistician =
+            new Statistician(
+                "testSegmentAxisValueIngestion: AxisValueAccumulator");
+        SortedSet<Comparable> boxed = null;
+        SortedSet<Comparable> primitive = null;
+        for (int i = 0; i < runCount; i++) {
+            long start = System.currentTimeMillis();
+            boxed = new TreeSet<Comparable>();
+            for (int row : rows) {
+                boxed.add(row);
+            }
+            boxedStatistician.record(start);
+
+            start = System.currentTimeMillis();
+            final AxisValueAccumulator accumulator =
+                AxisValueAccumulator.forType(SqlStatement.Type.INT);
+            for (int row : rows) {
+                accumulator.add(row);
+            }
+            primitive = new TreeSet<Comparable>();
+            accumulator.addTo(primitive);
+            primitiveStatistician.record(start);
+        }
+        boxedStatistician.printDurations();
+        primitiveStatistician.printDurations();
+        assertEquals(distinctCount, boxed.size());
+        assertEquals(
+            new ArrayList<Comparable>(boxed),
+            new ArrayList<Comparable>(primitive));
+    }
+
+    /**
+     * Stress test for {@link mondrian.rolap.RolapSchemaPool}. Several threads
+     * connect to several catalogs at the same time, first when the pool is
+     * empty (startup) and then again when the schemas are pooled
+     * (reconnect).
+     *
+     * <p>Each schema is loaded once, by whichever thread asks for it first;
+     * connections to other catalogs do not wait for that load. Logs the
+     * latency of each connect if debug logging is enabled.</p>
+     */
+    public void testSchemaPoolContention() throws Exception {
+        final int catalogCount = LOGGER.isDebugEnabled() ? 16 : 3;
+        final int threadCount = LOGGER.isDebugEnabled() ? 16 : 4;
+        final List<Util.PropertyList> catalogs =
+            new ArrayList<Util.PropertyList>();
+        for (int i = 0; i < catalogCount; i++) {
+            // Each catalog has different content, so has its own pool entry.
+            catalogs.add(
+                getTestContext().withSchema(
+                    TestContext.getRawFoodMartSchema()
+                    + "\n<!-- catalog #" + i + " -->")
+                    .getConnectionProperties());
+        }
+        getTestContext().flushSchemaCache();
+        final Statistician startup =
+            new Statistician("testSchemaPoolContention: startup");
+        final Statistician reconnect =
+            new Statistician("testSchemaPoolContention: reconnect");
+        final ExecutorService executor =
+            Executors.newFixedThreadPool(threadCount);
+        try {
+            final Map<Integer, Set<Schema>> startupSchemas =
+                connectAll(executor, threadCount, catalogs, startup);
+            final Map<Integer, Set<Schema>> reconnectSchemas =
+                connectAll(executor, threadCount, catalogs, reconnect);
+            for (int i = 0; i < catalogCount; i++) {
+                // Every thread got the same schema, both times.
+                assertEquals(1, startupSchemas.get(i).size());
+                assertEquals(startupSchemas.get(i), reconnectSchemas.get(i));
+            }
+        } finally {
+            executor.shutdownNow();
+            getTestContext().flushSchemaCache();
+        }
+        startup.printDurations();
+        reconnect.printDurations();
+    }
+
+    /**
+     * Connects to each catalog from each of several threads, and returns,
+     * for each catalog, the set of schemas that the connections used.
+     * Threads visit catalogs in different orders.
+     */
+    private static Map<Integer, Set<Schema>> connectAll(
+        ExecutorService executor,
+        int threadCount,
+        final List<Util.PropertyList> catalogs,
+        final Statistician statistician)
+        throws Exception
+    {
+        final Map<Integer, Set<Schema>> schemas =
+            new HashMap<Integer, Set<Schema>>();
+        for (int i = 0; i < catalogs.size(); i++) {
+            schemas.put(i, new HashSet<Schema>());
+        }
+        final List<Future<Object>> futures = new ArrayList<Future<Object>>();
+        for (int t = 0; t < threadCount; t++) {
+            final int offset = t;
+            futures.add(
+                executor.submit(
+                    new Callable<Object>() {
+                        public Object call() {
+                            for (int j = 0; j < catalogs.size(); j++) {
+                                final int i = (j + offset) % catalogs.size();
+                                final long start = System.currentTimeMillis();
+                                final Connection connection =
+                                    DriverManager.getConnection(
+                                        catalogs.get(i), null, null);
+                                synchronized (statistician) {
+                                    statistician.record(start);
+                                    schemas.get(i).add(connection.getSchema());
+                                }
+                                connection.close();
+                            }
+                            return null;
+                        }
+                    }));
+        }
+        for (Future<Object> future : futures) {
+            future.get();
+        }
+        return schemas;
+    }
+
     private enum StableSortAlgorithm {
         // First, regular array sort.
         // N=1M, L=10: 338 first; 247.4 +- 0.8; 246 min; 251 max
@@ -0,0 +1,310 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.xmla;
+
+import mondrian.test.FoodMartTestCase;
+import mondrian.xmla.impl.DefaultSaxWriter;
+import mondrian.xmla.impl.DefaultXmlaResponse;
+
+import org.olap4j.OlapConnection;
+import org.olap4j.metadata.*;
+
+import org.xml.sax.InputSource;
+
+import java.io.*;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+/**
+ * Unit test for the MDSCHEMA_MEMBERS rowset, in particular for rows that are
+ * written as they are generated rather than collected and sorted.
+ */
+public class XmlaMembersRowsetTest extends FoodMartTestCase {
+    private static final Pattern MEMBER_ORDINAL_PATTERN =
+        Pattern.compile("<MEMBER_ORDINAL>([0-9]+)</MEMBER_ORDINAL>");
+
+    public XmlaMembersRowsetTest() {
+    }
+
+    public XmlaMembersRowsetTest(String name) {
+        super(name);
+    }
+
+    private XmlaHandler createHandler() {
+        return new XmlaHandler(null, "xmla") {
+            @Override
+            public OlapConnection getConnection(
+                XmlaRequest request,
+                Map<String, String> propMap)
+            {
+                try {
+                    return getTestContext().getOlap4jConnection();
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates an MDSCHEMA_MEMBERS request for the Sales cube with the given
+     * restrictions, plus a restriction on the catalog.
+     */
+    private XmlaRequest createRequest(String... restrictionNamesAndValues)
+        throws SQLException
+    {
+        final Map<String, Object> restrictions =
+            new HashMap<String, Object>();
+        final OlapConnection connection =
+            getTestContext().getOlap4jConnection();
+        try {
+            restrictions.put(
+                "CATALOG_NAME",
+                Collections.singletonList(
+                    connection.getOlapCatalog().getName()));
+        } finally {
+            connection.close();
+        }
+        restrictions.put("CUBE_NAME", Collections.singletonList("Sales"));
+        for (int i = 0; i < restrictionNamesAndValues.length; i += 2) {
+            restrictions.put(
+                restrictionNamesAndValues[i],
+                Collections.singletonList(restrictionNamesAndValues[i + 1]));
+        }
+        return new XmlaRequest() {
+            public XmlaConstants.Method getMethod() {
+                return XmlaConstants.Method.DISCOVER;
+            }
+
+            public Map<String, String> getProperties() {
+                return Collections.emptyMap();
+            }
+
+            public Map<String, Object> getRestrictions() {
+                return restrictions;
+            }
+
+            public String getStatement() {
+                return null;
+            }
+
+            public String getRoleName() {
+                return null;
+            }
+
+            public String getRequestType() {
+                return RowsetDefinition.MDSCHEMA_MEMBERS.name();
+            }
+
+            public boolean isDrillThrough() {
+                return false;
+            }
+
+            public String getUsername() {
+                return null;
+            }
+
+            public String getPassword() {
+                return null;
+            }
+
+            public String getSessionId() {
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Returns a level of the Sales cube.
+     */
+    private Level getLevel(String dimensionName, int depth)
+        throws SQLException
+    {
+        final OlapConnection connection =
+            getTestContext().getOlap4jConnection();
+        try {
+            final Cube cube =
+                connection.getOlapSchema().getCubes().get("Sales");
+            return cube.getDimensions().get(dimensionName)
+                .getDefaultHierarchy().getLevels().get(depth);
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Writes the rows of a rowset using {@link Rowset#unparse}.
+     */
+    private String unparse(Rowset rowset) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final XmlaResponse response =
+            new DefaultXmlaResponse(
+                out, "UTF-8", Enumeration.ResponseMimeType.SOAP);
+        response.getWriter().startDocument();
+        rowset.unparse(response);
+        response.getWriter().endDocument();
+        response.getWriter().flush();
+        return out.toString("UTF-8");
+    }
+
+    /**
+     * Writes the rows of a rowset the way that {@link Rowset#unparse} does
+     * if the rowset is not sorted: collects all rows, sorts them, then
+     * writes them.
+     */
+    private String unparseBuffered(Rowset rowset) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final XmlaResponse response =
+            new DefaultXmlaResponse(
+                out, "UTF-8", Enumeration.ResponseMimeType.SOAP);
+        final List<Rowset.Row> rows = new ArrayList<Rowset.Row>();
+        rowset.populate(response, null, new Rowset.BufferingRowSink(rows));
+        Collections.sort(
+            rows, RowsetDefinition.MDSCHEMA_MEMBERS.getComparator());
+        final SaxWriter writer = response.getWriter();
+        writer.startDocument();
+        writer.startSequence(null, "row");
+        for (Rowset.Row row : rows) {
+            rowset.emit(row, response);
+        }
+        writer.endSequence();
+        writer.endDocument();
+        writer.flush();
+        return out.toString("UTF-8");
+    }
+
+    /**
+     * Checks that a request is streamed, and that the streamed rows are the
+     * same as the collected and sorted rows.
+     */
+    private String checkStreamed(XmlaRequest request) throws Exception {
+        final XmlaHandler handler = createHandler();
+        final Rowset rowset =
+            RowsetDefinition.MDSCHEMA_MEMBERS.getRowset(request, handler);
+        assertTrue(rowset.isSorted());
+        final String streamed = unparse(rowset);
+        assertEquals(unparseBuffered(rowset), streamed);
+
+        // Ordinals never decrease, and there is more than one row.
+        final Matcher matcher = MEMBER_ORDINAL_PATTERN.matcher(streamed);
+        int rowCount = 0;
+        int previous = Integer.MIN_VALUE;
+        while (matcher.find()) {
+            final int ordinal = Integer.parseInt(matcher.group(1));
+            assertTrue(streamed, ordinal >= previous);
+            previous = ordinal;
+            ++rowCount;
+        }
+        assertTrue(streamed, rowCount > 1);
+        return streamed;
+    }
+
+    /**
+     * Tests that members restricted by LEVEL_UNIQUE_NAME are streamed in
+     * the same order as if they were collected and sorted.
+     */
+    public void testStreamedByLevelUniqueName() throws Exception {
+        final Level level = getLevel("Store", 2);
+        final String response =
+            checkStreamed(
+                createRequest("LEVEL_UNIQUE_NAME", level.getUniqueName()));
+        assertTrue(response, response.contains("[Store].[USA].[CA]"));
+    }
+
+    /**
+     * Tests that members restricted by LEVEL_NUMBER and
+     * HIERARCHY_UNIQUE_NAME are streamed in the same order as if they were
+     * collected and sorted.
+     */
+    public void testStreamedByLevelNumber() throws Exception {
+        final Level level = getLevel("Store", 2);
+        final String response =
+            checkStreamed(
+                createRequest(
+                    "HIERARCHY_UNIQUE_NAME",
+                    level.getHierarchy().getUniqueName(),
+                    "LEVEL_NUMBER",
+                    String.valueOf(level.getDepth())));
+        assertTrue(response, response.contains("[Store].[USA].[CA]"));
+    }
+
+    /**
+     * Tests that a level that contains calculated members as well as stored
+     * members is streamed in order of ordinal. The level lists calculated
+     * members after stored members, whatever their ordinals, so the rowset
+     * may need to sort the members before writing them.
+     */
+    public void testStreamedWithCalculatedMembers() throws Exception {
+        final Level level = getLevel("Measures", 0);
+        final String response =
+            checkStreamed(
+                createRequest("LEVEL_UNIQUE_NAME", level.getUniqueName()));
+        assertTrue(response, response.contains("[Measures].[Unit Sales]"));
+        assertTrue(response, response.contains("[Measures].[Profit]"));
+    }
+
+    /**
+     * Tests that if writing fails after some rows have been streamed, the
+     * handler reports the error and leaves the response well-formed.
+     */
+    public void testStreamedFailure() throws Exception {
+        final Level level = getLevel("Store", 2);
+        final XmlaRequest request =
+            createRequest("LEVEL_UNIQUE_NAME", level.getUniqueName());
+        final StringWriter out = new StringWriter();
+        final SaxWriter writer =
+            new DefaultSaxWriter(out) {
+                int rowCount;
+
+                @Override
+                public void startElement(String tagName) {
+                    if (tagName.equals("row")) {
+                        ++rowCount;
+                    } else if (rowCount == 3
+                        && tagName.equals("MEMBER_UNIQUE_NAME"))
+                    {
+                        throw new RuntimeException("failed in third row");
+                    }
+                    super.startElement(tagName);
+                }
+            };
+        final XmlaResponse response =
+            new XmlaResponse() {
+                public void error(Throwable t) {
+                    throw new UnsupportedOperationException();
+                }
+
+                public SaxWriter getWriter() {
+                    return writer;
+                }
+            };
+        try {
+            createHandler().process(request, response);
+            fail("expected error");
+        } catch (XmlaException e) {
+            assertTrue(
+                e.getCause().getMessage(),
+                e.getCause().getMessage().contains("failed in third row"));
+        }
+        writer.flush();
+        final String s = out.toString();
+
+        // Two rows were written, and the third row was closed.
+        assertTrue(s, s.contains("[Store].[Mexico].[DF]"));
+        assertTrue(s, s.trim().endsWith("DiscoverResponse>"));
+        DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(
+            new InputSource(new StringReader(s)));
+    }
+}
+
+// End XmlaMembersRowsetTest.java
@@ -0,0 +1,254 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.xmla;
+
+import mondrian.test.FoodMartTestCase;
+import mondrian.test.TestContext;
+import mondrian.xmla.impl.DefaultXmlaResponse;
+
+import org.olap4j.OlapConnection;
+
+import java.io.ByteArrayOutputStream;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Unit test for the cache of metadata rowsets in {@link XmlaHandler}.
+ */
+public class XmlaRowsetCacheTest extends FoodMartTestCase {
+    private TestContext testContext;
+    private String roleName;
+    private Locale locale;
+
+    public XmlaRowsetCacheTest() {
+    }
+
+    public XmlaRowsetCacheTest(String name) {
+        super(name);
+    }
+
+    protected void tearDown() throws Exception {
+        testContext = null;
+        roleName = null;
+        locale = null;
+        super.tearDown();
+    }
+
+    /**
+     * Creates a handler whose connections have the test context, role and
+     * locale currently set in this test.
+     */
+    private XmlaHandler createHandler() {
+        return new XmlaHandler(null, "xmla") {
+            @Override
+            public OlapConnection getConnection(
+                XmlaRequest request,
+                Map<String, String> propMap)
+            {
+                try {
+                    final OlapConnection connection =
+                        (testContext == null ? getTestContext() : testContext)
+                            .getOlap4jConnection();
+                    if (roleName != null) {
+                        connection.setRoleName(roleName);
+                    }
+                    if (locale != null) {
+                        connection.setLocale(locale);
+                    }
+                    return connection;
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Executes an MDSCHEMA_CUBES request and returns the response.
+     */
+    private String discoverCubes(XmlaHandler handler) throws Exception {
+        final XmlaRequest request = new XmlaRequest() {
+            public XmlaConstants.Method getMethod() {
+                return XmlaConstants.Method.DISCOVER;
+            }
+
+            public Map<String, String> getProperties() {
+                return Collections.emptyMap();
+            }
+
+            public Map<String, Object> getRestrictions() {
+                return Collections.emptyMap();
+            }
+
+            public String getStatement() {
+                return null;
+            }
+
+            public String getRoleName() {
+                return roleName;
+            }
+
+            public String getRequestType() {
+                return RowsetDefinition.MDSCHEMA_CUBES.name();
+            }
+
+            public boolean isDrillThrough() {
+                return false;
+            }
+
+            public String getUsername() {
+                return null;
+            }
+
+            public String getPassword() {
+                return null;
+            }
+
+            public String getSessionId() {
+                return null;
+            }
+        };
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final XmlaResponse response =
+            new DefaultXmlaResponse(
+                out, "UTF-8", Enumeration.ResponseMimeType.SOAP);
+        final Rowset rowset =
+            RowsetDefinition.MDSCHEMA_CUBES.getRowset(request, handler);
+        response.getWriter().startDocument();
+        rowset.unparse(response);
+        response.getWriter().endDocument();
+        response.getWriter().flush();
+        return out.toString("UTF-8");
+    }
+
+    /**
+     * Tests that an identical request is served from the cache, and that
+     * requests with another role or locale are not.
+     */
+    public void testCache() throws Exception {
+        propSaver.set(propSaver.properties.XmlaRowsetCacheSize, 10);
+        final XmlaHandler handler = createHandler();
+
+        final String response = discoverCubes(handler);
+        assertTrue(response, response.contains("<CUBE_NAME>Warehouse<"));
+        assertEquals(1, handler.getRowsetCacheSize());
+        assertEquals(0, handler.getRowsetCacheHitCount());
+
+        assertEquals(response, discoverCubes(handler));
+        assertEquals(1, handler.getRowsetCacheSize());
+        assertEquals(1, handler.getRowsetCacheHitCount());
+
+        // A role that can see only the Sales cube gets its own rows.
+        roleName = "California manager";
+        final String roleResponse = discoverCubes(handler);
+        assertTrue(
+            roleResponse, roleResponse.contains("<CUBE_NAME>Sales<"));
+        assertFalse(
+            roleResponse, roleResponse.contains("<CUBE_NAME>Warehouse<"));
+        assertEquals(2, handler.getRowsetCacheSize());
+        assertEquals(1, handler.getRowsetCacheHitCount());
+        assertEquals(roleResponse, discoverCubes(handler));
+        assertEquals(2, handler.getRowsetCacheHitCount());
+
+        // Another locale gets its own rows.
+        roleName = null;
+        locale = Locale.GERMANY;
+        discoverCubes(handler);
+        assertEquals(3, handler.getRowsetCacheSize());
+        assertEquals(2, handler.getRowsetCacheHitCount());
+
+        // Back to the first role and locale: still cached.
+        locale = null;
+        assertEquals(response, discoverCubes(handler));
+        assertEquals(3, handler.getRowsetCacheHitCount());
+    }
+
+    /**
+     * Tests that flushing the schema cache invalidates the cached rows.
+     */
+    public void testFlush() throws Exception {
+        propSaver.set(propSaver.properties.XmlaRowsetCacheSize, 10);
+        final XmlaHandler handler = createHandler();
+        final String response = discoverCubes(handler);
+        assertEquals(1, handler.getRowsetCacheSize());
+
+        getConnection().getCacheControl(null).flushSchemaCache();
+        assertEquals(response, discoverCubes(handler));
+        assertEquals(0, handler.getRowsetCacheHitCount());
+        assertEquals(1, handler.getRowsetCacheSize());
+
+        assertEquals(response, discoverCubes(handler));
+        assertEquals(1, handler.getRowsetCacheHitCount());
+    }
+
+    /**
+     * Tests that catalogs with the same name but different definitions do
+     * not share rows.
+     */
+    public void testSchemaChecksum() throws Exception {
+        propSaver.set(propSaver.properties.XmlaRowsetCacheSize, 10);
+        final TestContext copyContext =
+            getTestContext().create(
+                null,
+                null,
+                "<VirtualCube name=\"Sales Copy\">\n"
+                + "  <VirtualCubeDimension cubeName=\"Sales\"\n"
+                + "      name=\"Store\"/>\n"
+                + "  <VirtualCubeMeasure cubeName=\"Sales\"\n"
+                + "      name=\"[Measures].[Unit Sales]\"/>\n"
+                + "</VirtualCube>",
+                null,
+                null,
+                null);
+        // Load both schemas now, so that the version of the schema pool does
+        // not change while the test is running.
+        copyContext.getConnection();
+        final XmlaHandler handler = createHandler();
+        final String response = discoverCubes(handler);
+        assertFalse(response, response.contains("<CUBE_NAME>Sales Copy<"));
+        assertEquals(1, handler.getRowsetCacheSize());
+
+        testContext = copyContext;
+        final String copyResponse = discoverCubes(handler);
+        assertTrue(
+            copyResponse, copyResponse.contains("<CUBE_NAME>Sales Copy<"));
+        assertEquals(0, handler.getRowsetCacheHitCount());
+        assertEquals(2, handler.getRowsetCacheSize());
+    }
+
+    /**
+     * Tests that rows of a schema that is not in the schema pool are not
+     * cached. Such a schema is loaded again by each connection, so it may
+     * change without the version of the pool changing.
+     */
+    public void testUnpooledSchema() throws Exception {
+        propSaver.set(propSaver.properties.XmlaRowsetCacheSize, 10);
+        testContext = getTestContext().withSchemaPool(false);
+        final XmlaHandler handler = createHandler();
+        final String response = discoverCubes(handler);
+        assertEquals(response, discoverCubes(handler));
+        assertEquals(0, handler.getRowsetCacheSize());
+        assertEquals(0, handler.getRowsetCacheHitCount());
+    }
+
+    /**
+     * Tests that a cache size of 0 disables the cache.
+     */
+    public void testDisabled() throws Exception {
+        propSaver.set(propSaver.properties.XmlaRowsetCacheSize, 0);
+        final XmlaHandler handler = createHandler();
+        final String response = discoverCubes(handler);
+        assertEquals(response, discoverCubes(handler));
+        assertEquals(0, handler.getRowsetCacheSize());
+        assertEquals(0, handler.getRowsetCacheHitCount());
+    }
+}
+
+// End XmlaRowsetCacheTest.java
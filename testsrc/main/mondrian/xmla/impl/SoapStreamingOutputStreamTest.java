@@ -0,0 +1,83 @@
+/*
+* This software is subject to the terms of the Eclipse Public License v1.0
+* Agreement, available at the following URL:
+* http://www.eclipse.org/legal/epl-v10.html.
+* You must accept the terms of that agreement to use this software.
+*
+* Copyright (c) 2002-2014 Pentaho Corporation..  All rights reserved.
+*/
+
+package mondrian.xmla.impl;
+
+import mondrian.xmla.SaxWriter;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Unit test for {@link SoapStreamingOutputStream}.
+ */
+public class SoapStreamingOutputStreamTest extends TestCase {
+    private static final String PROLOGUE = "<Envelope><Body>";
+    private static final String EPILOGUE = "</Body></Envelope>";
+
+    public void testNothingWrittenUntilBody() throws Exception {
+        final ByteArrayOutputStream client = new ByteArrayOutputStream();
+        final SoapStreamingOutputStream out = create(client);
+        out.flush();
+        assertFalse(out.isStarted());
+        assertEquals(0, client.size());
+
+        out.write("<a/>".getBytes("UTF-8"));
+        assertTrue(out.isStarted());
+        assertEquals(PROLOGUE + "<a/>", client.toString("UTF-8"));
+
+        out.close();
+        out.finish();
+        out.finish();
+        assertEquals(PROLOGUE + "<a/>" + EPILOGUE, client.toString("UTF-8"));
+    }
+
+    /**
+     * Tests that if an error occurs after the response has started, the
+     * fault goes after the elements written so far, and the envelope is
+     * well-formed.
+     */
+    public void testFaultAfterStart() throws Exception {
+        final ByteArrayOutputStream client = new ByteArrayOutputStream();
+        final SoapStreamingOutputStream out = create(client);
+        final SaxWriter writer = new DefaultSaxWriter(out, "UTF-8");
+        writer.startDocument();
+        writer.startElement("ExecuteResponse");
+        writer.startElement("root");
+        writer.startElement("CellData");
+        writer.startElement("Cell");
+        writer.characters("12");
+        // Error occurs here; close elements as XmlaHandler does.
+        writer.completeBeforeElement("root");
+        writer.endElement(); // root
+        writer.endElement(); // ExecuteResponse
+        writer.flush();
+        assertTrue(out.isStarted());
+
+        out.fault("<Fault/>".getBytes("UTF-8"));
+        out.finish();
+        final String s = client.toString("UTF-8");
+        assertTrue(s, s.startsWith(PROLOGUE + "<ExecuteResponse>"));
+        assertTrue(s, s.endsWith("</ExecuteResponse>\n<Fault/>" + EPILOGUE));
+        assertTrue(s, s.contains("<Cell>12</Cell>"));
+        assertTrue(s, s.contains("</CellData>"));
+    }
+
+    private static SoapStreamingOutputStream create(
+        ByteArrayOutputStream client) throws Exception
+    {
+        return new SoapStreamingOutputStream(
+            client,
+            PROLOGUE.getBytes("UTF-8"),
+            EPILOGUE.getBytes("UTF-8"));
+    }
+}
+
+// End SoapStreamingOutputStreamTest.java